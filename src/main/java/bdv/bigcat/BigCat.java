@@ -17,8 +17,9 @@ import org.scijava.ui.behaviour.util.TriggerBehaviourBindings;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 
+import bdv.ViewerSetupImgLoader;
 import bdv.bigcat.annotation.AnnotationsHdf5Store;
-import bdv.bigcat.composite.ARGBCompositeAlphaYCbCr;
+import bdv.bigcat.composite.ARGBCompositeAlphaYCbCrInt;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeCopy;
 import bdv.bigcat.control.AnnotationsController;
@@ -34,7 +35,6 @@ import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.PairLabelMultiSetLongIdPicker;
 import bdv.bigcat.ui.ARGBConvertedLabelPairSource;
 import bdv.bigcat.ui.Util;
-import bdv.bigcat.util.DirtyInterval;
 import bdv.img.SetCache;
 import bdv.img.h5.AbstractH5SetupImageLoader;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
@@ -72,6 +72,9 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		@Parameter( names = { "--outfile", "-o" }, description = "Output file path" )
 		public String outFile;
 
+		@Parameter( names = { "--annotationchunksize" }, description = "Store annotations in spatial chunks of this size (0 keeps the layout of the file)" )
+		public double annotationChunkSize = 0;
+
 		@Override
 		public void init()
 		{
@@ -91,9 +94,6 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	 */
 	protected CellImg< LongType, ? > canvas = null;
 
-	/** interval in which pixels were modified */
-	final protected DirtyInterval dirtyLabelsInterval = new DirtyInterval();
-
 	/** controllers */
 	protected LabelPersistenceController persistenceController;
 
@@ -132,6 +132,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	 * depend on previous members initialized.
 	 *
 	 * <ol>
+	 * <li>Configure cell caches and label encoding,</li>
 	 * <li>Load raw and canvas,</li>
 	 * <li>setup IdService,</li>
 	 * <li>setup assignments,</li>
@@ -144,6 +145,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 	@Override
 	protected void init( final P params ) throws IOException
 	{
+		initCellCache( params );
 		initRaw( params );
 		initCanvas( params );
 		initIdService( params );
@@ -170,7 +172,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		for ( final String raw : params.raws )
 			if ( reader.exists( raw ) )
 			{
-				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache );
+				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache, cellCache );
 				raws.add( rawLoader );
 				max( maxRawDimensions, Intervals.dimensionsAsLongArray( rawLoader.getVolatileImage( 0, 0 ) ) );
 			}
@@ -300,7 +302,7 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		}
 		for ( final H5LabelMultisetSetupImageLoader loader : labels )
 		{
-			composites.add( new ARGBCompositeAlphaYCbCr() );
+			composites.add( new ARGBCompositeAlphaYCbCrInt() );
 			cacheLoaders.add( loader );
 		}
 
@@ -312,7 +314,11 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 				convertedLabels,
 				cacheLoaders,
 				composites,
-				config );
+				config,
+				params.sliceCacheBudget * 1024 * 1024,
+				assignment::getVersion,
+				colorStream::getVersion,
+				dirtyLabelsInterval::getVersion );
 
 		bdv.getViewerFrame().setVisible( true );
 		bdv.getViewerFrame().setSize( 1248, 656 );
@@ -495,6 +501,8 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		bindings.addBehaviourMap( "translate_z", translateZController.getBehaviourMap() );
 
 		final AnnotationsHdf5Store annotationsStore = new AnnotationsHdf5Store( params.inFile, idService );
+		if ( params.annotationChunkSize > 0 )
+			annotationsStore.setChunkSize( new double[] { params.annotationChunkSize, params.annotationChunkSize, params.annotationChunkSize } );
 		annotationsController = new AnnotationsController(
 				annotationsStore,
 				bdv,
@@ -514,6 +522,11 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 
 		if ( selectionController != null )
 			bdv.getViewer().getDisplay().addOverlayRenderer( selectionController.getSelectionOverlay() );
+
+		final ArrayList< ViewerSetupImgLoader< ?, ? > > prefetchLoaders = new ArrayList<>();
+		prefetchLoaders.addAll( raws );
+		prefetchLoaders.addAll( labels );
+		initPrefetcher( params, prefetchLoaders );
 	}
 
 	/**
@@ -542,7 +555,9 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 						labelDataset,
 						setupId++,
 						cellDimensions,
-						cache );
+						cache,
+						cellCache,
+						compactLabels );
 
 		/* pair labels */
 		final RandomAccessiblePair< VolatileLabelMultisetType, LongType > labelCanvasPair =
@@ -557,7 +572,9 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 						labelCanvasPair,
 						canvas, // as Interval, used just for the size
 						labelLoader.getMipmapTransforms(),
-						colorStream );
+						colorStream,
+						segmentCache,
+						segmentLevel );
 
 		labels.add( labelLoader );
 		convertedLabels.add( convertedLabelCanvasPair );
@@ -585,11 +602,15 @@ public class BigCat< P extends BigCat.Parameters > extends BigCatViewer< P >
 		if ( save )
 		{
 			bdv.getViewerFrame().setCursor( Cursor.getPredefinedCursor( Cursor.WAIT_CURSOR ) );
-			annotationsController.saveAnnotations();
+			final boolean annotationsSaved = annotationsController.saveAnnotations();
 			persistenceController.saveNextId();
 			persistenceController.saveFragmentSegmentAssignment();
 			persistenceController.saveCompleteSegmentsAssignment();
 			persistenceController.savePaintedLabels();
+			bdv.getViewerFrame().setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
+			/* stay open rather than lose the annotations */
+			if ( !annotationsSaved )
+				return false;
 		}
 		return reallyClose;
 	}
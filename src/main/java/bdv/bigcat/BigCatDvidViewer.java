@@ -13,7 +13,8 @@ import org.scijava.ui.behaviour.util.TriggerBehaviourBindings;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 
-import bdv.bigcat.composite.ARGBCompositeAlphaYCbCr;
+import bdv.ViewerSetupImgLoader;
+import bdv.bigcat.composite.ARGBCompositeAlphaYCbCrInt;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeCopy;
 import bdv.bigcat.control.ConfirmSegmentController;
@@ -23,6 +24,7 @@ import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.bigcat.label.LabelMultiSetIdPicker;
 import bdv.bigcat.label.SegmentAssignment;
+import bdv.bigcat.label.SegmentMultisetCache;
 import bdv.bigcat.ui.ARGBConvertedLabelsSource;
 import bdv.bigcat.ui.ModalGoldenAngleSaturatedARGBStream;
 import bdv.bigcat.ui.Util;
@@ -32,6 +34,7 @@ import bdv.img.dvid.Uint8blkImageLoader;
 import bdv.labels.labelset.LabelMultisetType;
 import bdv.util.LocalIdService;
 import bdv.util.dvid.DatasetKeyValue;
+import bdv.util.http.Codec;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
@@ -47,6 +50,9 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 		@Parameter( names = { "--uuid" }, description = "UUID" )
 		public String uuid = "";
 
+		@Parameter( names = { "--compression" }, description = "compression of raw and label block transfers: none, gzip or lz4" )
+		public String compression = "none";
+
 		public Parameters()
 		{
 			raws = Arrays.asList( new String[] { "grayscale" } );
@@ -96,7 +102,9 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 			final Uint8blkImageLoader rawLoader = new Uint8blkImageLoader(
 					params.url,
 					params.uuid,
-					raw);
+					raw,
+					Codec.fromName( params.compression ),
+					diskCache );
 
 			raws.add( rawLoader );
 		}
@@ -132,6 +140,9 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 		/* color stream */
 		colorStream = new ModalGoldenAngleSaturatedARGBStream( assignment, completeSegments );
 		colorStream.setAlpha( 0x20 );
+
+		if ( segmentLevel >= 0 )
+			segmentCache = new SegmentMultisetCache( assignment );
 	}
 
 	/**
@@ -164,14 +175,18 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 						label,
 						resolutions,
 //						new DatasetKeyValue[]{ datasetKeyValue } );
-						new DatasetKeyValue[ 0 ] );
+						new DatasetKeyValue[ 0 ],
+						Codec.fromName( params.compression ),
+						diskCache );
 
 				/* converted labels */
 				final ARGBConvertedLabelsSource convertedLabelsSource =
 						new ARGBConvertedLabelsSource(
 								setupId++,
 								labelLoader,
-								colorStream );
+								colorStream,
+								segmentCache,
+								segmentLevel );
 
 				labels.add( labelLoader );
 				convertedLabels.add( convertedLabelsSource );
@@ -207,7 +222,7 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 		}
 		for ( final LabelblkMultisetSetupImageLoader loader : labels )
 		{
-			composites.add( new ARGBCompositeAlphaYCbCr() );
+			composites.add( new ARGBCompositeAlphaYCbCrInt() );
 			cacheLoaders.add( loader );
 		}
 
@@ -219,7 +234,11 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 				convertedLabels,
 				cacheLoaders,
 				composites,
-				config );
+				config,
+				params.sliceCacheBudget * 1024 * 1024,
+				assignment::getVersion,
+				colorStream::getVersion,
+				dirtyLabelsInterval::getVersion );
 
 		bdv.getViewerFrame().setVisible( true );
 
@@ -293,6 +312,11 @@ public class BigCatDvidViewer extends BigCatViewer< BigCatDvidViewer.Parameters
 
 		if ( selectionController != null )
 			bdv.getViewer().getDisplay().addOverlayRenderer( selectionController.getSelectionOverlay() );
+
+		final ArrayList< ViewerSetupImgLoader< ?, ? > > prefetchLoaders = new ArrayList<>();
+		prefetchLoaders.addAll( raws );
+		prefetchLoaders.addAll( labels );
+		initPrefetcher( params, prefetchLoaders );
 	}
 
 	static protected InputTriggerConfig getInputTriggerConfig() throws IllegalArgumentException
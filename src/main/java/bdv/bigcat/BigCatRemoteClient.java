@@ -16,8 +16,9 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.google.gson.Gson;
 
+import bdv.ViewerSetupImgLoader;
 import bdv.bigcat.annotation.AnnotationsHdf5Store;
-import bdv.bigcat.composite.ARGBCompositeAlphaYCbCr;
+import bdv.bigcat.composite.ARGBCompositeAlphaYCbCrInt;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeCopy;
 import bdv.bigcat.control.AgglomerationClientController;
@@ -108,7 +109,7 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 		}
 		for ( final H5LabelMultisetSetupImageLoader loader : labels )
 		{
-			composites.add( new ARGBCompositeAlphaYCbCr() );
+			composites.add( new ARGBCompositeAlphaYCbCrInt() );
 			cacheLoaders.add( loader );
 		}
 
@@ -120,7 +121,11 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 				convertedLabels,
 				cacheLoaders,
 				composites,
-				config );
+				config,
+				params.sliceCacheBudget * 1024 * 1024,
+				assignment::getVersion,
+				colorStream::getVersion,
+				dirtyLabelsInterval::getVersion );
 
 		bdv.getViewerFrame().setVisible( true );
 
@@ -287,6 +292,8 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 		bindings.addBehaviourMap( "translate_z", translateZController.getBehaviourMap() );
 
 		final AnnotationsHdf5Store annotationsStore = new AnnotationsHdf5Store( params.inFile, idService );
+		if ( params.annotationChunkSize > 0 )
+			annotationsStore.setChunkSize( new double[] { params.annotationChunkSize, params.annotationChunkSize, params.annotationChunkSize } );
 		annotationsController = new AnnotationsController(
 				annotationsStore,
 				bdv,
@@ -306,5 +313,10 @@ public class BigCatRemoteClient extends BigCat< BigCatRemoteClient.Parameters >
 
 		if ( selectionController != null )
 			bdv.getViewer().getDisplay().addOverlayRenderer( selectionController.getSelectionOverlay() );
+
+		final ArrayList< ViewerSetupImgLoader< ?, ? > > prefetchLoaders = new ArrayList<>();
+		prefetchLoaders.addAll( raws );
+		prefetchLoaders.addAll( labels );
+		initPrefetcher( params, prefetchLoaders );
 	}
 }
@@ -2,6 +2,7 @@ package bdv.bigcat;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -15,9 +16,11 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 
 import bdv.BigDataViewer;
-import bdv.bigcat.composite.ARGBCompositeAlphaYCbCr;
+import bdv.ViewerSetupImgLoader;
+import bdv.bigcat.composite.ARGBCompositeAlphaYCbCrInt;
 import bdv.bigcat.composite.Composite;
 import bdv.bigcat.composite.CompositeCopy;
+import bdv.bigcat.control.CacheStatisticsController;
 import bdv.bigcat.control.ConfirmSegmentController;
 import bdv.bigcat.control.MergeController;
 import bdv.bigcat.control.SelectionController;
@@ -25,11 +28,17 @@ import bdv.bigcat.control.TranslateZController;
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.bigcat.label.LabelMultiSetIdPicker;
 import bdv.bigcat.label.SegmentAssignment;
+import bdv.bigcat.label.SegmentMultisetCache;
 import bdv.bigcat.ui.ARGBConvertedLabelsSource;
 import bdv.bigcat.ui.AbstractARGBConvertedLabelsSource;
 import bdv.bigcat.ui.ModalGoldenAngleSaturatedARGBStream;
 import bdv.bigcat.ui.Util;
+import bdv.bigcat.util.DirtyInterval;
+import bdv.img.CellPrefetcher;
+import bdv.img.DiskCellCache;
+import bdv.img.MemoryBoundedCellCache;
 import bdv.img.SetCache;
+import bdv.img.VolatileImgPrefetchTarget;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import bdv.img.h5.H5UnsignedByteSetupImageLoader;
@@ -39,6 +48,8 @@ import bdv.labels.labelset.LabelMultisetType;
 import bdv.labels.labelset.Multiset;
 import bdv.util.IdService;
 import bdv.util.LocalIdService;
+import bdv.util.http.HttpTransport;
+import bdv.viewer.ViewerPanel;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import gnu.trove.map.hash.TLongLongHashMap;
@@ -71,6 +82,33 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		@Parameter( names = { "--complete", "-f" }, description = "complete segments" )
 		public String completeSegments = "/complete_segments";
 
+		@Parameter( names = { "--cachebudget" }, description = "memory budget for cached cells in MB, 0 to limit the number of cells only" )
+		public long cacheBudget = 0;
+
+		@Parameter( names = { "--slicecachebudget" }, description = "memory budget for rendered screen images that are reused when revisiting a view in MB, 0 to disable" )
+		public long sliceCacheBudget = 64;
+
+		@Parameter( names = { "--diskcache" }, description = "directory of the on-disk cache for cells of remote sources that cannot change, e.g. locked DVID nodes, disabled if not set" )
+		public String diskCache = null;
+
+		@Parameter( names = { "--diskcachebudget" }, description = "disk budget for cached cells of remote sources in MB" )
+		public long diskCacheBudget = 4096;
+
+		@Parameter( names = { "--maxconnections" }, description = "maximum number of concurrent requests per host of remote sources" )
+		public int maxConnections = HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+		@Parameter( names = { "--prefetch" }, description = "number of sections or pan steps ahead in the direction of motion whose cells are prefetched, 0 to disable" )
+		public int prefetchSteps = 3;
+
+		@Parameter( names = { "--prefetchbudget" }, description = "maximum number of cells prefetched per view change" )
+		public int prefetchBudget = 256;
+
+		@Parameter( names = { "--compactlabels" }, description = "store cached label cells in a compact encoding that is decoded on access" )
+		public boolean compactLabels = false;
+
+		@Parameter( names = { "--segmentlevel" }, description = "first mipmap level that is rendered from label multisets merged by segment, -1 to disable" )
+		public int segmentLevel = -1;
+
 		public void init()
 		{
 			if ( inFileLabels == null )
@@ -105,8 +143,29 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	/** compositions of labels and canvas that are displayed */
 	final protected ArrayList< AbstractARGBConvertedLabelsSource > convertedLabels = new ArrayList<>();
 
+	/** interval in which pixels were modified */
+	final protected DirtyInterval dirtyLabelsInterval = new DirtyInterval();
+
 	final protected VolatileGlobalCellCache cache;
 
+	/** byte bounded store shared by raw and label cells, null if disabled */
+	protected MemoryBoundedCellCache cellCache = null;
+
+	/** on-disk cache for cells of remote sources, {@code null} if disabled */
+	protected DiskCellCache diskCache = null;
+
+	/** store label cells in compact encoding */
+	protected boolean compactLabels = false;
+
+	/** first mipmap level rendered from segment merged label multisets */
+	protected int segmentLevel = -1;
+
+	/** label multisets merged by segment, {@code null} if disabled */
+	protected SegmentMultisetCache segmentCache = null;
+
+	/** prefetches cells ahead of the viewer, {@code null} if disabled */
+	protected CellPrefetcher prefetcher = null;
+
 	/** main BDV instance */
 	protected BigDataViewer bdv;
 
@@ -137,6 +196,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	 * Initialize BigCatViewer, order is important because individual initializers depend on previous members initialized.
 	 *
 	 * <ol>
+	 * <li>Configure cell caches and label encoding,</li>
 	 * <li>Load raw,</li>
 	 * <li>setup IdService,</li>
 	 * <li>setup assignments,</li>
@@ -148,12 +208,34 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 	 */
 	protected void init( final P params ) throws IOException
 	{
+		initCellCache( params );
 		initRaw( params );
 		initIdService( params );
 		initAssignments( params );
 		initLabels( params );
 	}
 
+	/**
+	 * Configure the connections to remote sources, create the byte bounded
+	 * cell store if a budget was set, open the disk cache for remote sources
+	 * if a directory was set, choose the label cell encoding and the first
+	 * segment level.
+	 *
+	 * @param params
+	 * @throws IOException
+	 */
+	protected void initCellCache( final P params ) throws IOException
+	{
+		HttpTransport.configureKeepAlive( params.maxConnections );
+		HttpTransport.setDefault( new HttpTransport( params.maxConnections ) );
+		if ( params.cacheBudget > 0 )
+			cellCache = new MemoryBoundedCellCache( params.cacheBudget * 1024 * 1024 );
+		if ( params.diskCache != null )
+			diskCache = new DiskCellCache( Paths.get( params.diskCache ), params.diskCacheBudget * 1024 * 1024 );
+		compactLabels = params.compactLabels;
+		segmentLevel = params.segmentLevel;
+	}
+
 	/**
 	 * Load raw data and labels and initialize canvas
 	 *
@@ -170,7 +252,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		{
 			if ( reader.exists( raw ) )
 			{
-				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache );
+				final H5UnsignedByteSetupImageLoader rawLoader = new H5UnsignedByteSetupImageLoader( reader, raw, setupId++, cellDimensions, cache, cellCache );
 				raws.add( rawLoader );
 			}
 			else
@@ -231,6 +313,9 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		colorStream = new ModalGoldenAngleSaturatedARGBStream( assignment, completeSegments );
 		colorStream.setAlpha( 0x20 );
 
+		if ( segmentLevel >= 0 )
+			segmentCache = new SegmentMultisetCache( assignment );
+
 		reader.close();
 	}
 
@@ -280,7 +365,7 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 		}
 		for ( final H5LabelMultisetSetupImageLoader loader : labels )
 		{
-			composites.add( new ARGBCompositeAlphaYCbCr() );
+			composites.add( new ARGBCompositeAlphaYCbCrInt() );
 			cacheLoaders.add( loader );
 		}
 
@@ -292,7 +377,11 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 				convertedLabels,
 				cacheLoaders,
 				composites,
-				config );
+				config,
+				params.sliceCacheBudget * 1024 * 1024,
+				assignment::getVersion,
+				colorStream::getVersion,
+				dirtyLabelsInterval::getVersion );
 
 		bdv.getViewerFrame().setVisible( true );
 
@@ -366,6 +455,48 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 
 		if ( selectionController != null )
 			bdv.getViewer().getDisplay().addOverlayRenderer( selectionController.getSelectionOverlay() );
+
+		final ArrayList< ViewerSetupImgLoader< ?, ? > > prefetchLoaders = new ArrayList<>();
+		prefetchLoaders.addAll( raws );
+		prefetchLoaders.addAll( labels );
+		initPrefetcher( params, prefetchLoaders );
+	}
+
+	/**
+	 * Create the prefetcher for raw and label cells if enabled and let it
+	 * follow the viewer transform.  Bind a key that shows the statistics of
+	 * the prefetcher and the disk cache.
+	 *
+	 * Depends on {@link #bdv} being initialized.
+	 *
+	 * Modifies {@link #prefetcher}.
+	 *
+	 * @param params
+	 * @param loaders
+	 */
+	protected void initPrefetcher( final P params, final List< ? extends ViewerSetupImgLoader< ?, ? > > loaders )
+	{
+		final ViewerPanel viewer = bdv.getViewer();
+		if ( params.prefetchSteps > 0 && params.prefetchBudget > 0 )
+		{
+			final ArrayList< CellPrefetcher.Target > targets = new ArrayList<>();
+			for ( final ViewerSetupImgLoader< ?, ? > loader : loaders )
+				targets.add( new VolatileImgPrefetchTarget( loader, 0 ) );
+			prefetcher = new CellPrefetcher( targets, params.prefetchSteps, params.prefetchBudget );
+
+			viewer.addTransformListener( transform -> prefetcher.transformChanged(
+					transform,
+					viewer.getDisplay().getWidth(),
+					viewer.getDisplay().getHeight() ) );
+		}
+
+		new CacheStatisticsController(
+				viewer,
+				prefetcher,
+				cellCache,
+				diskCache,
+				config,
+				bdv.getViewerFrame().getKeybindings() );
 	}
 
 	/**
@@ -392,14 +523,18 @@ public class BigCatViewer< P extends BigCatViewer.Parameters >
 						labelDataset,
 						setupId++,
 						cellDimensions,
-						cache );
+						cache,
+						cellCache,
+						compactLabels );
 
 		/* converted labels */
 		final ARGBConvertedLabelsSource convertedLabelsSource =
 				new ARGBConvertedLabelsSource(
 						setupId++,
 						labelLoader,
-						colorStream );
+						colorStream,
+						segmentCache,
+						segmentLevel );
 
 		labels.add( labelLoader );
 		convertedLabels.add( convertedLabelsSource );
@@ -16,6 +16,7 @@
  */
 package bdv.bigcat;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 
 import com.google.gson.JsonDeserializationContext;
@@ -26,6 +27,9 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
+import bdv.util.BinaryMessage;
+import bdv.util.http.Codec;
+
 /**
  *
  *
@@ -35,17 +39,37 @@ public class Message
 {
 	static public enum MessageType
 	{
-		MERGE( "merge" ),
-		SEPARATE( "separate" ),
-		ISOLATE( "isolate" ),
-		FRAGMENT_SEGMENT_LUT( "fragment-segment-lut" ),
-		HANDSHAKE( "handshake" );
+		MERGE( "merge", 1 ),
+		SEPARATE( "separate", 2 ),
+		ISOLATE( "isolate", 3 ),
+		MERGE_AND_SEPARATE( "merge-and-separate", 4 ),
+		FRAGMENT_SEGMENT_LUT( "fragment-segment-lut", 5 ),
+		FRAGMENT_SEGMENT_LUT_DELTA( "fragment-segment-lut-delta", 6 ),
+		FRAGMENT_SEGMENT_LUT_REQUEST( "fragment-segment-lut-request", 7 ),
+		HANDSHAKE( "handshake", 0 );
 
 		private final String name;
 
-		private MessageType( final String name )
+		/** tag of the binary encoding */
+		private final byte code;
+
+		private MessageType( final String name, final int code )
 		{
 			this.name = name;
+			this.code = ( byte )code;
+		}
+
+		public byte getCode()
+		{
+			return code;
+		}
+
+		static public MessageType forCode( final byte code )
+		{
+			for ( final MessageType type : values() )
+				if ( type.code == code )
+					return type;
+			return null;
 		}
 
 		public boolean equalsName( final String otherName )
@@ -76,12 +100,99 @@ public class Message
 		public long fragment;
 	}
 
+	static public class MergeAndSeparateData
+	{
+		public long[] fragments;
+		public long[] from;
+	}
+
+	/**
+	 * The complete fragment-segment lookup.  Sent initially and then
+	 * occasionally to resynchronize, or on request.  The sequence number is
+	 * that of the last delta included in the lookup, -1 if the solver does
+	 * not number its updates.
+	 */
 	static public class FragmentSegmentLUTData
 	{
+		public long sequence = -1;
+		public long[] fragments;
+		public long[] segments;
+	}
+
+	/**
+	 * Only the fragments whose segment has changed since the update with
+	 * sequence number {@code sequence - 1}.
+	 */
+	static public class FragmentSegmentLUTDeltaData
+	{
+		public long sequence;
 		public long[] fragments;
 		public long[] segments;
 	}
 
+	/**
+	 * Sent to the solver to request a complete lookup, e.g. after a gap in
+	 * the sequence of deltas.
+	 */
+	static public class FragmentSegmentLUTRequestData
+	{
+		public long lastSequence;
+	}
+
+	/**
+	 * Sent by the client with the formats and compressions it supports in
+	 * order of preference.  The solver answers with the first format and
+	 * compression that it supports, in this order.  Until then, and if the
+	 * solver does not answer, messages are exchanged as JSON.
+	 */
+	static public class HandshakeData
+	{
+		final static public String JSON = "json";
+		final static public String BINARY = "binary";
+
+		public String[] formats = new String[] { BINARY, JSON };
+		public String[] compressions = new String[] { Codec.LZ4.getName(), Codec.GZIP.getName(), "none" };
+
+		/**
+		 * @return the preferred format, {@link #JSON} if none was offered
+		 */
+		public String getFormat()
+		{
+			return formats == null || formats.length == 0 || formats[ 0 ] == null ? JSON : formats[ 0 ];
+		}
+
+		/**
+		 * @return the preferred compression, {@link Codec#NONE} if none was
+		 *         offered
+		 */
+		public Codec getCodec()
+		{
+			return compressions == null || compressions.length == 0 ? Codec.NONE : Codec.fromName( compressions[ 0 ] );
+		}
+
+		/**
+		 * Answer an offer with the first offered format and compression
+		 * that are also offered by this.
+		 */
+		public HandshakeData select( final HandshakeData offer )
+		{
+			final HandshakeData answer = new HandshakeData();
+			answer.formats = new String[] { first( offer.formats, formats, JSON ) };
+			answer.compressions = new String[] { first( offer.compressions, compressions, "none" ) };
+			return answer;
+		}
+
+		static private String first( final String[] offered, final String[] supported, final String fallback )
+		{
+			if ( offered != null && supported != null )
+				for ( final String a : offered )
+					for ( final String b : supported )
+						if ( a != null && a.equals( b ) )
+							return a;
+			return fallback;
+		}
+	}
+
 	protected Object data = null;
 
 
@@ -116,8 +227,14 @@ public class Message
 				return MessageType.SEPARATE;
 			if ( MessageType.ISOLATE.equalsName( typeName ) )
 				return MessageType.ISOLATE;
+			if ( MessageType.MERGE_AND_SEPARATE.equalsName( typeName ) )
+				return MessageType.MERGE_AND_SEPARATE;
 			if ( MessageType.FRAGMENT_SEGMENT_LUT.equalsName( typeName ) )
 				return MessageType.FRAGMENT_SEGMENT_LUT;
+			if ( MessageType.FRAGMENT_SEGMENT_LUT_DELTA.equalsName( typeName ) )
+				return MessageType.FRAGMENT_SEGMENT_LUT_DELTA;
+			if ( MessageType.FRAGMENT_SEGMENT_LUT_REQUEST.equalsName( typeName ) )
+				return MessageType.FRAGMENT_SEGMENT_LUT_REQUEST;
 		}
 		return MessageType.HANDSHAKE;
 	}
@@ -133,13 +250,165 @@ public class Message
 				return MessageType.SEPARATE;
 			if ( IsolateData.class.isInstance( data ) )
 				return MessageType.ISOLATE;
+			if ( MergeAndSeparateData.class.isInstance( data ) )
+				return MessageType.MERGE_AND_SEPARATE;
 			if ( FragmentSegmentLUTData.class.isInstance( data ) )
 				return MessageType.FRAGMENT_SEGMENT_LUT;
+			if ( FragmentSegmentLUTDeltaData.class.isInstance( data ) )
+				return MessageType.FRAGMENT_SEGMENT_LUT_DELTA;
+			if ( FragmentSegmentLUTRequestData.class.isInstance( data ) )
+				return MessageType.FRAGMENT_SEGMENT_LUT_REQUEST;
 		}
 		return MessageType.HANDSHAKE;
 	}
 
 
+	/**
+	 * Encode as a {@link BinaryMessage} frame.
+	 *
+	 * @param codec
+	 *            compresses large payloads, {@link Codec#NONE} or
+	 *            {@code null} for no compression
+	 */
+	public byte[] toBinary( final Codec codec ) throws IOException
+	{
+		final MessageType type = getType();
+		final BinaryMessage.Writer writer;
+		switch ( type )
+		{
+		case MERGE:
+		{
+			final MergeData d = ( MergeData )data;
+			writer = new BinaryMessage.Writer( type.getCode(), sizeOf( d.fragments ) );
+			writer.putLongs( d.fragments );
+			break;
+		}
+		case SEPARATE:
+		{
+			final SeparateData d = ( SeparateData )data;
+			writer = new BinaryMessage.Writer( type.getCode() );
+			writer.putLong( d.fragmentA ).putLong( d.fragmentB );
+			break;
+		}
+		case ISOLATE:
+		{
+			writer = new BinaryMessage.Writer( type.getCode() );
+			writer.putLong( ( ( IsolateData )data ).fragment );
+			break;
+		}
+		case MERGE_AND_SEPARATE:
+		{
+			final MergeAndSeparateData d = ( MergeAndSeparateData )data;
+			writer = new BinaryMessage.Writer( type.getCode(), sizeOf( d.fragments ) + sizeOf( d.from ) );
+			writer.putLongs( d.fragments ).putLongs( d.from );
+			break;
+		}
+		case FRAGMENT_SEGMENT_LUT:
+		{
+			final FragmentSegmentLUTData d = ( FragmentSegmentLUTData )data;
+			writer = new BinaryMessage.Writer( type.getCode(), Long.BYTES + sizeOf( d.fragments ) + sizeOf( d.segments ) );
+			writer.putLong( d.sequence ).putLongs( d.fragments ).putLongs( d.segments );
+			break;
+		}
+		case FRAGMENT_SEGMENT_LUT_DELTA:
+		{
+			final FragmentSegmentLUTDeltaData d = ( FragmentSegmentLUTDeltaData )data;
+			writer = new BinaryMessage.Writer( type.getCode(), Long.BYTES + sizeOf( d.fragments ) + sizeOf( d.segments ) );
+			writer.putLong( d.sequence ).putLongs( d.fragments ).putLongs( d.segments );
+			break;
+		}
+		case FRAGMENT_SEGMENT_LUT_REQUEST:
+		{
+			writer = new BinaryMessage.Writer( type.getCode() );
+			writer.putLong( ( ( FragmentSegmentLUTRequestData )data ).lastSequence );
+			break;
+		}
+		default:
+		{
+			writer = new BinaryMessage.Writer( type.getCode() );
+			final HandshakeData d = ( HandshakeData )data;
+			writer.putStrings( d == null ? null : d.formats ).putStrings( d == null ? null : d.compressions );
+		}
+		}
+		return writer.toFrame( codec );
+	}
+
+	static private int sizeOf( final long[] array )
+	{
+		return Integer.BYTES + ( array == null ? 0 : array.length * Long.BYTES );
+	}
+
+	/**
+	 * Decode a {@link BinaryMessage} frame.
+	 */
+	static public Message fromBinary( final byte[] frame ) throws IOException
+	{
+		final BinaryMessage.Reader reader = new BinaryMessage.Reader( frame );
+		final MessageType type = MessageType.forCode( reader.getTag() );
+		if ( type == null )
+			throw new IOException( "Unknown binary message type " + reader.getTag() + "." );
+
+		switch ( type )
+		{
+		case MERGE:
+		{
+			final MergeData d = new MergeData();
+			d.fragments = reader.getLongs();
+			return new Message( d );
+		}
+		case SEPARATE:
+		{
+			final SeparateData d = new SeparateData();
+			d.fragmentA = reader.getLong();
+			d.fragmentB = reader.getLong();
+			return new Message( d );
+		}
+		case ISOLATE:
+		{
+			final IsolateData d = new IsolateData();
+			d.fragment = reader.getLong();
+			return new Message( d );
+		}
+		case MERGE_AND_SEPARATE:
+		{
+			final MergeAndSeparateData d = new MergeAndSeparateData();
+			d.fragments = reader.getLongs();
+			d.from = reader.getLongs();
+			return new Message( d );
+		}
+		case FRAGMENT_SEGMENT_LUT:
+		{
+			final FragmentSegmentLUTData d = new FragmentSegmentLUTData();
+			d.sequence = reader.getLong();
+			d.fragments = reader.getLongs();
+			d.segments = reader.getLongs();
+			return new Message( d );
+		}
+		case FRAGMENT_SEGMENT_LUT_DELTA:
+		{
+			final FragmentSegmentLUTDeltaData d = new FragmentSegmentLUTDeltaData();
+			d.sequence = reader.getLong();
+			d.fragments = reader.getLongs();
+			d.segments = reader.getLongs();
+			return new Message( d );
+		}
+		case FRAGMENT_SEGMENT_LUT_REQUEST:
+		{
+			final FragmentSegmentLUTRequestData d = new FragmentSegmentLUTRequestData();
+			d.lastSequence = reader.getLong();
+			return new Message( d );
+		}
+		default:
+		{
+			final HandshakeData d = new HandshakeData();
+			d.formats = reader.getStrings();
+			d.compressions = reader.getStrings();
+			return new Message( d );
+		}
+		}
+	}
+
+
 	static public class Serializer implements JsonSerializer< Message >
 	{
 		@SuppressWarnings( "incomplete-switch" )
@@ -155,8 +424,15 @@ public class Message
 			case MERGE:
 			case SEPARATE:
 			case ISOLATE:
+			case MERGE_AND_SEPARATE:
 			case FRAGMENT_SEGMENT_LUT:
+			case FRAGMENT_SEGMENT_LUT_DELTA:
+			case FRAGMENT_SEGMENT_LUT_REQUEST:
 				json.add( "data", context.serialize( src.data ) );
+				break;
+			case HANDSHAKE:
+				if ( src.data != null )
+					json.add( "data", context.serialize( src.data ) );
 			}
 
 			return json;
@@ -193,9 +469,21 @@ public class Message
 					case ISOLATE:
 						data = context.deserialize( dataJsonObject, IsolateData.class );
 						break;
+					case MERGE_AND_SEPARATE:
+						data = context.deserialize( dataJsonObject, MergeAndSeparateData.class );
+						break;
 					case FRAGMENT_SEGMENT_LUT:
 						data = context.deserialize( dataJsonObject, FragmentSegmentLUTData.class );
 						break;
+					case FRAGMENT_SEGMENT_LUT_DELTA:
+						data = context.deserialize( dataJsonObject, FragmentSegmentLUTDeltaData.class );
+						break;
+					case FRAGMENT_SEGMENT_LUT_REQUEST:
+						data = context.deserialize( dataJsonObject, FragmentSegmentLUTRequestData.class );
+						break;
+					case HANDSHAKE:
+						data = context.deserialize( dataJsonObject, HandshakeData.class );
+						break;
 					}
 				}
 			}
@@ -0,0 +1,417 @@
+package bdv.bigcat.annotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.RealLocalizable;
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+
+/**
+ * Dynamic spatial index over the positions of 3D annotations.  Annotations
+ * are hashed into a sparse uniform grid of cubic cells, so that insert,
+ * remove and move take constant time.
+ *
+ * Convex polytope queries subdivide the occupied grid box recursively and
+ * discard boxes outside of any plane or accept boxes inside of all planes.
+ * k-nearest queries search shells of cells around the query point until no
+ * closer annotation can exist.  Both answer the same as a
+ * {@link net.imglib2.KDTree} over the current positions.
+ *
+ * The index keeps a copy of each position.  If a position is changed in
+ * place, the annotation has to be updated with {@link #update(Annotation)}.
+ */
+public class AnnotationIndex {
+
+	final static public double DEFAULT_CELL_SIZE = 128;
+
+	/* cell coordinates are packed into 21 bits per dimension */
+	final static private int BITS = 21;
+	final static private long OFFSET = 1L << (BITS - 1);
+	final static private long MASK = (1L << BITS) - 1;
+
+	static private class Entry {
+
+		final Annotation annotation;
+		final double[] position = new double[3];
+		long key;
+		int indexInCell;
+
+		Entry(final Annotation annotation) {
+			this.annotation = annotation;
+		}
+	}
+
+	static private class Candidate implements Comparable<Candidate> {
+
+		final Entry entry;
+		final double squDistance;
+
+		Candidate(final Entry entry, final double squDistance) {
+			this.entry = entry;
+			this.squDistance = squDistance;
+		}
+
+		/* reversed for a max-heap */
+		@Override
+		public int compareTo(final Candidate o) {
+			return Double.compare(o.squDistance, squDistance);
+		}
+	}
+
+	private final double cellSize;
+
+	private final TLongObjectHashMap<ArrayList<Entry>> cells = new TLongObjectHashMap<ArrayList<Entry>>();
+
+	private final HashMap<Annotation, Entry> entries = new HashMap<Annotation, Entry>();
+
+	/* bounds of all occupied cells, conservative after removal */
+	private final long[] minCell = new long[3];
+	private final long[] maxCell = new long[3];
+
+	public AnnotationIndex(final double cellSize) {
+
+		this.cellSize = cellSize;
+		clear();
+	}
+
+	public AnnotationIndex() {
+
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public int size() {
+
+		return entries.size();
+	}
+
+	public void clear() {
+
+		cells.clear();
+		entries.clear();
+		for (int d = 0; d < 3; ++d) {
+			minCell[d] = Long.MAX_VALUE;
+			maxCell[d] = Long.MIN_VALUE;
+		}
+	}
+
+	private long cell(final double x) {
+
+		final long c = (long)Math.floor(x / cellSize);
+		return Math.max(-OFFSET, Math.min(OFFSET - 1, c));
+	}
+
+	private static long key(final long x, final long y, final long z) {
+
+		return (((x + OFFSET) & MASK) << (2 * BITS)) | (((y + OFFSET) & MASK) << BITS) | ((z + OFFSET) & MASK);
+	}
+
+	private static long cellOfKey(final long key, final int d) {
+
+		return ((key >>> ((2 - d) * BITS)) & MASK) - OFFSET;
+	}
+
+	private void insert(final Entry entry) {
+
+		final RealLocalizable p = entry.annotation.getPosition();
+		for (int d = 0; d < 3; ++d)
+			entry.position[d] = p.getDoublePosition(d);
+		final long x = cell(entry.position[0]);
+		final long y = cell(entry.position[1]);
+		final long z = cell(entry.position[2]);
+		entry.key = key(x, y, z);
+
+		ArrayList<Entry> cell = cells.get(entry.key);
+		if (cell == null) {
+			cell = new ArrayList<Entry>(4);
+			cells.put(entry.key, cell);
+		}
+		entry.indexInCell = cell.size();
+		cell.add(entry);
+
+		minCell[0] = Math.min(minCell[0], x);
+		minCell[1] = Math.min(minCell[1], y);
+		minCell[2] = Math.min(minCell[2], z);
+		maxCell[0] = Math.max(maxCell[0], x);
+		maxCell[1] = Math.max(maxCell[1], y);
+		maxCell[2] = Math.max(maxCell[2], z);
+	}
+
+	private void detach(final Entry entry) {
+
+		final ArrayList<Entry> cell = cells.get(entry.key);
+		final Entry last = cell.remove(cell.size() - 1);
+		if (last != entry) {
+			cell.set(entry.indexInCell, last);
+			last.indexInCell = entry.indexInCell;
+		}
+		if (cell.isEmpty())
+			cells.remove(entry.key);
+	}
+
+	/**
+	 * Add an annotation or update its position if it is indexed already.
+	 */
+	public void add(final Annotation annotation) {
+
+		final Entry entry = entries.get(annotation);
+		if (entry != null)
+			update(annotation);
+		else {
+			final Entry newEntry = new Entry(annotation);
+			entries.put(annotation, newEntry);
+			insert(newEntry);
+		}
+	}
+
+	public void remove(final Annotation annotation) {
+
+		final Entry entry = entries.remove(annotation);
+		if (entry != null)
+			detach(entry);
+	}
+
+	/**
+	 * Re-read the position of an indexed annotation.
+	 */
+	public void update(final Annotation annotation) {
+
+		final Entry entry = entries.get(annotation);
+		if (entry == null)
+			return;
+		detach(entry);
+		insert(entry);
+	}
+
+	/**
+	 * Index exactly the given annotations.
+	 */
+	public void rebuild(final Collection<Annotation> annotations) {
+
+		clear();
+		for (final Annotation a : annotations)
+			add(a);
+	}
+
+	/* polytope queries */
+
+	private static boolean inside(final double[] p, final double[][] normals, final double[] distances) {
+
+		for (int i = 0; i < normals.length; ++i) {
+			final double[] n = normals[i];
+			if (n[0] * p[0] + n[1] * p[1] + n[2] * p[2] < distances[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return -1 if the box [min, max] is outside of a plane, 1 if it is
+	 *         inside of all planes, 0 otherwise
+	 */
+	private static int classify(final double[] min, final double[] max, final double[][] normals, final double[] distances) {
+
+		boolean allInside = true;
+		for (int i = 0; i < normals.length; ++i) {
+			final double[] n = normals[i];
+			double lo = 0, hi = 0;
+			for (int d = 0; d < 3; ++d) {
+				if (n[d] >= 0) {
+					lo += n[d] * min[d];
+					hi += n[d] * max[d];
+				} else {
+					lo += n[d] * max[d];
+					hi += n[d] * min[d];
+				}
+			}
+			/* margin for rounding, points close to the plane are tested individually */
+			final double eps = 1e-9 * (Math.abs(distances[i]) + Math.abs(lo) + Math.abs(hi));
+			if (hi < distances[i] - eps)
+				return -1;
+			if (lo < distances[i] + eps)
+				allInside = false;
+		}
+		return allInside ? 1 : 0;
+	}
+
+	private void addCell(final ArrayList<Entry> cell, final int classification, final double[][] normals, final double[] distances, final List<Annotation> result) {
+
+		if (classification > 0)
+			for (final Entry entry : cell)
+				result.add(entry.annotation);
+		else
+			for (final Entry entry : cell)
+				if (inside(entry.position, normals, distances))
+					result.add(entry.annotation);
+	}
+
+	private void clip(final long[] lo, final long[] hi, final double[][] normals, final double[] distances, final List<Annotation> result) {
+
+		final double[] min = new double[3];
+		final double[] max = new double[3];
+		for (int d = 0; d < 3; ++d) {
+			min[d] = lo[d] * cellSize;
+			max[d] = (hi[d] + 1) * cellSize;
+		}
+		final int classification = classify(min, max, normals, distances);
+		if (classification < 0)
+			return;
+
+		int longest = 0;
+		for (int d = 1; d < 3; ++d)
+			if (hi[d] - lo[d] > hi[longest] - lo[longest])
+				longest = d;
+
+		if (classification > 0 || hi[longest] == lo[longest]) {
+			for (long x = lo[0]; x <= hi[0]; ++x)
+				for (long y = lo[1]; y <= hi[1]; ++y)
+					for (long z = lo[2]; z <= hi[2]; ++z) {
+						final ArrayList<Entry> cell = cells.get(key(x, y, z));
+						if (cell != null)
+							addCell(cell, classification, normals, distances, result);
+					}
+			return;
+		}
+
+		final long split = lo[longest] + (hi[longest] - lo[longest]) / 2;
+		final long[] hi1 = hi.clone();
+		hi1[longest] = split;
+		clip(lo, hi1, normals, distances, result);
+		final long[] lo2 = lo.clone();
+		lo2[longest] = split + 1;
+		clip(lo2, hi, normals, distances, result);
+	}
+
+	/**
+	 * Find all annotations inside a convex polytope, i.e. on the positive
+	 * side of all its planes.
+	 */
+	public List<Annotation> getInside(final ConvexPolytope polytope) {
+
+		final List<Annotation> result = new ArrayList<Annotation>();
+		if (entries.isEmpty())
+			return result;
+
+		final Collection<? extends HyperPlane> planes = polytope.getHyperplanes();
+		final double[][] normals = new double[planes.size()][];
+		final double[] distances = new double[planes.size()];
+		int i = 0;
+		for (final HyperPlane plane : planes) {
+			normals[i] = plane.getNormal();
+			distances[i] = plane.getDistance();
+			++i;
+		}
+
+		double volume = 1;
+		for (int d = 0; d < 3; ++d)
+			volume *= maxCell[d] - minCell[d] + 1;
+
+		if (volume > cells.size()) {
+			/* sparse, test occupied cells directly */
+			final double[] min = new double[3];
+			final double[] max = new double[3];
+			for (final TLongObjectIterator<ArrayList<Entry>> it = cells.iterator(); it.hasNext();) {
+				it.advance();
+				for (int d = 0; d < 3; ++d) {
+					min[d] = cellOfKey(it.key(), d) * cellSize;
+					max[d] = min[d] + cellSize;
+				}
+				final int classification = classify(min, max, normals, distances);
+				if (classification >= 0)
+					addCell(it.value(), classification, normals, distances, result);
+			}
+		} else
+			clip(minCell.clone(), maxCell.clone(), normals, distances, result);
+
+		return result;
+	}
+
+	/* k-nearest queries */
+
+	private static double squDistance(final double[] a, final double[] b) {
+
+		final double dx = a[0] - b[0], dy = a[1] - b[1], dz = a[2] - b[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static void offer(final PriorityQueue<Candidate> heap, final int k, final Entry entry, final double[] q) {
+
+		final double squDistance = squDistance(entry.position, q);
+		if (heap.size() < k)
+			heap.add(new Candidate(entry, squDistance));
+		else if (squDistance < heap.peek().squDistance) {
+			heap.poll();
+			heap.add(new Candidate(entry, squDistance));
+		}
+	}
+
+	private void offerCell(final long x, final long y, final long z, final PriorityQueue<Candidate> heap, final int k, final double[] q) {
+
+		if (x < minCell[0] || x > maxCell[0] || y < minCell[1] || y > maxCell[1] || z < minCell[2] || z > maxCell[2])
+			return;
+		final ArrayList<Entry> cell = cells.get(key(x, y, z));
+		if (cell != null)
+			for (final Entry entry : cell)
+				offer(heap, k, entry, q);
+	}
+
+	/**
+	 * Find the k nearest annotations to a point.
+	 *
+	 * @return at most k annotations, sorted by distance
+	 */
+	public List<Annotation> getKNearest(final RealLocalizable pos, final int k) {
+
+		final List<Annotation> result = new ArrayList<Annotation>();
+		if (entries.isEmpty() || k <= 0)
+			return result;
+
+		final double[] q = new double[] { pos.getDoublePosition(0), pos.getDoublePosition(1), pos.getDoublePosition(2) };
+		final long[] c = new long[] { cell(q[0]), cell(q[1]), cell(q[2]) };
+		final PriorityQueue<Candidate> heap = new PriorityQueue<Candidate>(Math.min(k, entries.size()) + 1);
+
+		for (long r = 0;; ++r) {
+
+			final double shellVolume = Math.pow(2 * r + 1, 3) - (r == 0 ? 0 : Math.pow(2 * r - 1, 3));
+			if (shellVolume > cells.size()) {
+				/* searching empty space, test all annotations instead */
+				heap.clear();
+				for (final Entry entry : entries.values())
+					offer(heap, k, entry, q);
+				break;
+			}
+
+			for (long dx = -r; dx <= r; ++dx)
+				for (long dy = -r; dy <= r; ++dy) {
+					if (Math.abs(dx) == r || Math.abs(dy) == r)
+						for (long dz = -r; dz <= r; ++dz)
+							offerCell(c[0] + dx, c[1] + dy, c[2] + dz, heap, k, q);
+					else {
+						offerCell(c[0] + dx, c[1] + dy, c[2] - r, heap, k, q);
+						offerCell(c[0] + dx, c[1] + dy, c[2] + r, heap, k, q);
+					}
+				}
+
+			boolean coversAll = true;
+			double bound = Double.MAX_VALUE;
+			for (int d = 0; d < 3; ++d) {
+				coversAll &= c[d] - r <= minCell[d] && c[d] + r >= maxCell[d];
+				bound = Math.min(bound, Math.min(q[d] - (c[d] - r) * cellSize, (c[d] + r + 1) * cellSize - q[d]));
+			}
+			if (coversAll || (heap.size() == k && heap.peek().squDistance <= bound * bound))
+				break;
+		}
+
+		final Candidate[] candidates = heap.toArray(new Candidate[heap.size()]);
+		Arrays.sort(candidates);
+		for (int i = candidates.length - 1; i >= 0; --i)
+			result.add(candidates[i].entry.annotation);
+		return result;
+	}
+}
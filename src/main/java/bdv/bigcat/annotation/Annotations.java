@@ -1,16 +1,13 @@
 package bdv.bigcat.annotation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
-import net.imglib2.KDTree;
-import net.imglib2.KDTreeNode;
 import net.imglib2.RealPoint;
-import net.imglib2.algorithm.kdtree.ClipConvexPolytopeKDTree;
 import net.imglib2.algorithm.kdtree.ConvexPolytope;
-import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
 
 /**
  * Set of annotations and query functions.
@@ -26,16 +23,24 @@ public class Annotations {
 	
 	public void add(Annotation annotation) {
 	
-		annotations.put(annotation.getId(), annotation);
-		kdTreeDirty = true;
+		synchronized (index) {
+			final Annotation previous = annotations.put(annotation.getId(), annotation);
+			if (previous != null && previous != annotation)
+				index.remove(previous);
+			index.add(annotation);
+			modificationCount++;
+		}
 		for (AnnotationsListener l : listeners)
 			l.onAnnotationAdded(annotation);
 	}	
 	
 	public void remove(Annotation annotation) {
 		
-		annotations.remove(annotation.getId());
-		kdTreeDirty = true;
+		synchronized (index) {
+			annotations.remove(annotation.getId());
+			index.remove(annotation);
+			modificationCount++;
+		}
 		for (AnnotationsListener l : listeners)
 			l.onAnnotationRemoved(annotation);
 	}
@@ -45,22 +50,27 @@ public class Annotations {
 		return annotations.values();
 	}
 	
+	/**
+	 * @return a copy of all annotations that can be used while annotations
+	 * are added or removed in other threads
+	 */
+	public List< Annotation > getSnapshot() {
+
+		synchronized (index) {
+			return new ArrayList< Annotation >(annotations.values());
+		}
+	}
+
 	public List< Annotation > getLocalAnnotations(ConvexPolytope polytope) {
 
-		List< Annotation > localAnnotations = new LinkedList< Annotation >();
-		if (annotations.size() == 0)
-			return localAnnotations;
-	
-		if (kdTreeDirty)
-			updateKdTree();
-	
-		final ClipConvexPolytopeKDTree< Annotation > clip = new ClipConvexPolytopeKDTree< Annotation >( kdTree );
-		clip.clip( polytope );
-		
-		for (KDTreeNode< Annotation > node : clip.getInsideNodes())
-			localAnnotations.add(node.get());
-			
-		return localAnnotations;
+		if (loader != null)
+			loader.load(polytope, this);
+
+		synchronized (index) {
+			if (indexDirty)
+				updateIndex();
+			return index.getInside(polytope);
+		}
 	}
 	
 	/**
@@ -71,21 +81,25 @@ public class Annotations {
 	 */
 	public List< Annotation > getKNearest(RealPoint pos, int k) {
 
-		List< Annotation > nearest = new LinkedList< Annotation >();
+		synchronized (index) {
+			if (indexDirty)
+				updateIndex();
+			return index.getKNearest(pos, k);
+		}
+	}
 
-		if (annotations.size() == 0)
-			return nearest;
-	
-		if (kdTreeDirty)
-			updateKdTree();
+	/**
+	 * Move an annotation and update the index for it.
+	 * @param annotation
+	 * @param pos
+	 */
+	public void move(Annotation annotation, RealPoint pos) {
 
-		KNearestNeighborSearchOnKDTree< Annotation > search = new KNearestNeighborSearchOnKDTree< Annotation >(kdTree, k);
-		search.search(pos);
-		
-		for (int i = 0; i < k && search.getSampler(i) != null; i++)
-			nearest.add(search.getSampler(i).get());
-		
-		return nearest;
+		synchronized (index) {
+			annotation.setPosition(pos);
+			index.update(annotation);
+			modificationCount++;
+		}
 	}
 
 	public Annotation getById(long id) {
@@ -93,21 +107,58 @@ public class Annotations {
 		return annotations.get(id);
 	}
 	
+	/**
+	 * Re-index all annotations before the next query, necessary only if
+	 * positions have been changed in place instead of through
+	 * {@link #move(Annotation, RealPoint)}.
+	 */
 	public void markDirty() {
 		
-		kdTreeDirty = true;
+		indexDirty = true;
+		modificationCount++;
+	}
+
+	/**
+	 * Note a change to an annotation that does not affect its position,
+	 * like a new comment or partner.
+	 */
+	public void markModified() {
+
+		modificationCount++;
+	}
+
+	/**
+	 * @return a counter that changes whenever annotations are added,
+	 * removed, moved, or marked as modified
+	 */
+	public long getModificationCount() {
+
+		return modificationCount;
 	}
 	
-	private void updateKdTree() {
+	private void updateIndex() {
 	
-		List< RealPoint > positions = new LinkedList< RealPoint >();
-		List< Annotation > annotations = new LinkedList< Annotation >();
-		for (Annotation a : this.annotations.values()) {
-			positions.add(a.getPosition());
-			annotations.add(a);
-		}
-		kdTree = new KDTree< Annotation >( annotations, positions );
-		kdTreeDirty = false;
+		index.rebuild(annotations.values());
+		indexDirty = false;
+	}
+
+	/**
+	 * Loads annotations on demand when a region is queried.  Must not block
+	 * the query, annotations can be added later from another thread.
+	 */
+	public interface Loader {
+
+		public void load(ConvexPolytope polytope, Annotations annotations);
+	}
+
+	/**
+	 * Set a loader to be asked for annotations in a region before it is
+	 * queried with {@link #getLocalAnnotations(ConvexPolytope)}.
+	 * @param loader
+	 */
+	public void setLoader(Loader loader) {
+
+		this.loader = loader;
 	}
 
 	public interface AnnotationsListener {
@@ -127,8 +178,10 @@ public class Annotations {
 	}
 	
 	private HashMap< Long, Annotation > annotations;
-	private KDTree< Annotation > kdTree;
-	private boolean kdTreeDirty = true;
+	private final AnnotationIndex index = new AnnotationIndex();
+	private boolean indexDirty = false;
+	private Loader loader = null;
+	private volatile long modificationCount = 0;
 	
 	private List<AnnotationsListener> listeners;
 }
@@ -1,6 +1,15 @@
 package bdv.bigcat.annotation;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import bdv.util.IdService;
 import ch.systemsx.cisd.base.mdarray.MDFloatArray;
@@ -9,14 +18,60 @@ import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import ncsa.hdf.hdf5lib.exceptions.HDF5SymbolTableException;
+import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
-
-public class AnnotationsHdf5Store implements AnnotationsStore {
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+
+/**
+ * Reads and writes annotations in HDF5 files.
+ *
+ * File format 0.3 stores annotations in spatial chunks, each a group
+ * <code>chunks/&lt;z&gt;_&lt;y&gt;_&lt;x&gt;</code> with the datasets of format
+ * 0.2.  Chunks are loaded in the background when the overlay queries a
+ * region that intersects them, and only chunks whose content has changed
+ * are written.
+ * Files of older formats are read entirely and written in their layout
+ * unless a chunk size is set with {@link #setChunkSize(double[])}, which
+ * converts them on the next write.
+ */
+public class AnnotationsHdf5Store implements AnnotationsStore, Annotations.Loader {
+
+	final static public double CHUNKED_FILE_FORMAT = 0.3;
 
 	private String filename;
 	private String groupname;
 	private double fileFormat;
 
+	// chunk size in (x,y,z), null for files that are not chunked
+	private double[] chunkSize = null;
+
+	// largest id in the file, lets unloaded chunks reserve their ids
+	private long maxId = 0;
+
+	// chunks in the file
+	final private HashSet<String> chunks = new HashSet<String>();
+
+	// loaded chunks and the signature of their content when last read or written
+	final private HashMap<String, Long> loadedChunks = new HashMap<String, Long>();
+
+	// chunks that are being loaded in the background, and that failed to load
+	final private HashSet<String> pendingChunks = new HashSet<String>();
+	final private HashSet<String> failedChunks = new HashSet<String>();
+
+	// loads chunks off the painter thread
+	final private ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+		final Thread thread = new Thread(r, "annotations-loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// serializes file access of the loader and writes
+	final private Object fileLock = new Object();
+
+	// partners of presynaptic sites whose postsynaptic site is not loaded yet, by pre id
+	final private HashMap<Long, Long> unresolvedPartners = new HashMap<Long, Long>();
+
 	final private IdService idService;
 
 	// annotations offset in (x,y,z)
@@ -57,6 +112,15 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 			offset[2] = data[0];
 		}
 
+		if (fileFormat == CHUNKED_FILE_FORMAT) {
+			final double[] data = reader.float64().getArrayAttr(groupname, "chunk_size");
+			chunkSize = new double[]{data[2], data[1], data[0]};
+			if (reader.hasAttribute(groupname, "max_id"))
+				maxId = reader.uint64().getAttr(groupname, "max_id");
+			if (reader.exists(groupname + "/chunks"))
+				chunks.addAll(reader.object().getGroupMembers(groupname + "/chunks"));
+		}
+
 		reader.close();
 
 		System.out.println("AnnotationsHdf5Store: detected file format " + fileFormat);
@@ -97,6 +161,12 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 			readAnnotations(annotations, reader, "all", factory);
 			readPrePostPartners(annotations, reader);
 
+		} else if (fileFormat == CHUNKED_FILE_FORMAT) {
+
+			// chunks are loaded on demand
+			idService.invalidate(maxId);
+			annotations.setLoader(this);
+
 		} else {
 
 			throw new Exception("unsupported file format: " + fileFormat + ". Is your bigcat up-to-date?");
@@ -109,7 +179,10 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 	private void readAnnotations(final Annotations annotations, final IHDF5Reader reader, final String type, final AnnotationFactory factory) throws Exception {
 
 		// prior to 0.1 there was no groupname prefix
-		final String groupname = (fileFormat == 0.0 ? "" : this.groupname);
+		readAnnotations(annotations, reader, (fileFormat == 0.0 ? "" : this.groupname), type, factory);
+	}
+
+	private void readAnnotations(final Annotations annotations, final IHDF5Reader reader, final String groupname, final String type, final AnnotationFactory factory) throws Exception {
 
 		String locationsDataset;
 		String idsDataset;
@@ -193,131 +266,204 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 	private void readPrePostPartners(final Annotations annotations, final IHDF5Reader reader) {
 
 		// prior to 0.1 there was no groupname prefix
-		final String groupname = (fileFormat == 0.0 ? "" : this.groupname);
-
-		final String prePostDataset;
-		final MDLongArray prePostPartners;
+		readPrePostPartners(annotations, reader, (fileFormat == 0.0 ? "" : this.groupname));
+	}
 
-		if (fileFormat == 0.0)
-			prePostDataset = "pre_post_partners";
-		else
-			prePostDataset = "presynaptic_site/partners";
+	private void readPrePostPartners(final Annotations annotations, final IHDF5Reader reader, final String groupname) {
 
-		try {
-			prePostPartners = reader.uint64().readMDArray(groupname + "/" + prePostDataset);
-		} catch (final HDF5SymbolTableException e) {
+		final MDLongArray prePostPartners = readPartners(reader, groupname);
+		if (prePostPartners == null)
 			return;
-		}
 
 		for (int i = 0; i < prePostPartners.dimensions()[0]; i++) {
 			final long pre = prePostPartners.get(i, 0);
 			final long post = prePostPartners.get(i, 1);
 			final PreSynapticSite preSite = (PreSynapticSite)annotations.getById(pre);
 			final PostSynapticSite postSite = (PostSynapticSite)annotations.getById(post);
-
 			preSite.setPartner(postSite);
 			postSite.setPartner(preSite);
 		}
 	}
 
-	@Override
-	public void write(final Annotations annotations) {
+	/**
+	 * @return (pre,post) pairs, or null if there are none
+	 */
+	private MDLongArray readPartners(final IHDF5Reader reader, final String groupname) {
 
-		final IHDF5Writer writer = HDF5Factory.open(filename);
+		final String prePostDataset;
 
-		final int numAnnotations = annotations.getAnnotations().size();
+		if (fileFormat == 0.0)
+			prePostDataset = "pre_post_partners";
+		else
+			prePostDataset = "presynaptic_site/partners";
 
-		class Counter extends AnnotationVisitor {
+		try {
+			return reader.uint64().readMDArray(groupname + "/" + prePostDataset);
+		} catch (final HDF5SymbolTableException e) {
+			return null;
+		}
+	}
 
-			public int numComments = 0;
-			public int numPartners = 0;
+	/**
+	 * Datasets for a collection of annotations.
+	 */
+	private class Datasets {
 
-			@Override
-			public void visit(final Annotation annotation) {
-				if (annotation.getComment() != null && !annotation.getComment().isEmpty())
-					numComments++;
-			}
+		final float[][] locations;
+		final long[] ids;
+		final String[] types;
+		final String[] comments;
+		final long[] commentTargets;
+		final long[][] partners;
 
-			@Override
-			public void visit(final Synapse synapse) {
-			}
+		Datasets(final Collection<Annotation> annotations) {
 
-			@Override
-			public void visit(final PreSynapticSite preSynapticSite) {
-				if (preSynapticSite.getPartner() != null)
-					numPartners++;
-			}
+			final int numAnnotations = annotations.size();
 
-			@Override
-			public void visit(final PostSynapticSite postSynapticSite) {
+			class Counter extends AnnotationVisitor {
+
+				public int numComments = 0;
+				public int numPartners = 0;
+
+				@Override
+				public void visit(final Annotation annotation) {
+					if (annotation.getComment() != null && !annotation.getComment().isEmpty())
+						numComments++;
+				}
+
+				@Override
+				public void visit(final Synapse synapse) {
+				}
+
+				@Override
+				public void visit(final PreSynapticSite preSynapticSite) {
+					if (preSynapticSite.getPartner() != null || unresolvedPartners.containsKey(preSynapticSite.getId()))
+						numPartners++;
+				}
+
+				@Override
+				public void visit(final PostSynapticSite postSynapticSite) {
+				}
 			}
-		}
 
-		final Counter counter = new Counter();
-		for (final Annotation a : annotations.getAnnotations())
-			a.accept(counter);
+			final Counter counter = new Counter();
+			for (final Annotation a : annotations)
+				a.accept(counter);
 
-		class AnnotationsCrawler extends AnnotationVisitor {
+			locations = new float[numAnnotations][3];
+			ids = new long[numAnnotations];
+			types = new String[numAnnotations];
+			comments = new String[counter.numComments];
+			commentTargets = new long[counter.numComments];
+			partners  = new long[counter.numPartners][2];
 
-			float[][] locations = new float[numAnnotations][3];
-			long[] ids = new long[numAnnotations];
-			String[] types = new String[numAnnotations];
-			String[] comments = new String[counter.numComments];
-			long[] commentTargets = new long[counter.numComments];
-			long[][] partners  = new long[counter.numPartners][2];
+			class AnnotationsCrawler extends AnnotationVisitor {
 
-			private int annotationIndex = 0;
-			private int typeIndex = 0;
-			private int commentIndex = 0;
-			private int partnerIndex = 0;
+				private int annotationIndex = 0;
+				private int typeIndex = 0;
+				private int commentIndex = 0;
+				private int partnerIndex = 0;
 
-			private void fillPosition(final float[] data, final Annotation a) {
+				private void fillPosition(final float[] data, final Annotation a) {
 
-				// We store locations as (z,y,x). The internal coordinates
-				// are (x,y,z) and need to be inverted.
-				for (int i = 0; i < 3; i++)
-					data[i] = a.getPosition().getFloatPosition(2 - i) - offset[2 - i];
-			}
+					// We store locations as (z,y,x). The internal coordinates
+					// are (x,y,z) and need to be inverted.
+					for (int i = 0; i < 3; i++)
+						data[i] = a.getPosition().getFloatPosition(2 - i) - offset[2 - i];
+				}
 
-			@Override
-			public void visit(final Annotation annotation) {
-				fillPosition(locations[annotationIndex], annotation);
-				ids[annotationIndex] = annotation.getId();
-				if (annotation.getComment() != null && !annotation.getComment().isEmpty()) {
-					comments[commentIndex] = annotation.getComment();
-					commentTargets[commentIndex] = annotation.getId();
-					commentIndex++;
+				@Override
+				public void visit(final Annotation annotation) {
+					fillPosition(locations[annotationIndex], annotation);
+					ids[annotationIndex] = annotation.getId();
+					if (annotation.getComment() != null && !annotation.getComment().isEmpty()) {
+						comments[commentIndex] = annotation.getComment();
+						commentTargets[commentIndex] = annotation.getId();
+						commentIndex++;
+					}
+					annotationIndex++;
 				}
-				annotationIndex++;
-			}
 
-			@Override
-			public void visit(final Synapse synapse) {
-				types[typeIndex] = "synapse";
-				typeIndex++;
-			}
+				@Override
+				public void visit(final Synapse synapse) {
+					types[typeIndex] = "synapse";
+					typeIndex++;
+				}
 
-			@Override
-			public void visit(final PreSynapticSite preSynapticSite) {
-				if (preSynapticSite.getPartner() != null) {
-					partners[partnerIndex][0] = preSynapticSite.getId();
-					partners[partnerIndex][1] = preSynapticSite.getPartner().getId();
-					partnerIndex++;
+				@Override
+				public void visit(final PreSynapticSite preSynapticSite) {
+					if (preSynapticSite.getPartner() != null) {
+						partners[partnerIndex][0] = preSynapticSite.getId();
+						partners[partnerIndex][1] = preSynapticSite.getPartner().getId();
+						partnerIndex++;
+					} else if (unresolvedPartners.containsKey(preSynapticSite.getId())) {
+						partners[partnerIndex][0] = preSynapticSite.getId();
+						partners[partnerIndex][1] = unresolvedPartners.get(preSynapticSite.getId());
+						partnerIndex++;
+					}
+					types[typeIndex] = "presynaptic_site";
+					typeIndex++;
 				}
-				types[typeIndex] = "presynaptic_site";
-				typeIndex++;
-			}
 
-			@Override
-			public void visit(final PostSynapticSite postSynapticSite) {
-				types[typeIndex] = "postsynaptic_site";
-				typeIndex++;
+				@Override
+				public void visit(final PostSynapticSite postSynapticSite) {
+					types[typeIndex] = "postsynaptic_site";
+					typeIndex++;
+				}
 			}
+
+			final AnnotationsCrawler crawler = new AnnotationsCrawler();
+			for (final Annotation a : annotations)
+				a.accept(crawler);
+		}
+
+		/**
+		 * 64 bit FNV-1a hash of the content, to detect modified chunks.
+		 */
+		long signature() {
+
+			long hash = 0xcbf29ce484222325L;
+			for (final float[] location : locations)
+				for (final float v : location)
+					hash = hash(hash, Float.floatToIntBits(v));
+			for (final long id : ids)
+				hash = hash(hash, id);
+			for (final String type : types)
+				hash = hash(hash, type.hashCode());
+			for (int i = 0; i < comments.length; ++i)
+				hash = hash(hash(hash, commentTargets[i]), comments[i].hashCode());
+			for (final long[] partner : partners)
+				hash = hash(hash(hash, partner[0]), partner[1]);
+			return hash;
+		}
+
+		void write(final IHDF5Writer writer, final String groupname) {
+
+			createGroup(writer, groupname);
+			createGroup(writer, groupname + "/comments");
+			createGroup(writer, groupname + "/presynaptic_site");
+
+			writer.float32().writeMatrix(groupname + "/locations", locations);
+			writer.uint64().writeArray(groupname + "/ids", ids);
+			writer.string().writeArray(groupname + "/types", types);
+
+			writer.string().writeArray(groupname + "/comments/comments", comments);
+			writer.uint64().writeArray(groupname + "/comments/target_ids", commentTargets);
+
+			writer.uint64().writeMatrix(groupname + "/presynaptic_site/partners", partners);
+		}
+	}
+
+	static private long hash(long hash, final long value) {
+
+		for (int i = 0; i < 8; ++i) {
+			hash ^= (value >>> (8 * i)) & 0xff;
+			hash *= 0x100000001b3L;
 		}
+		return hash;
+	}
 
-		final AnnotationsCrawler crawler = new AnnotationsCrawler();
-		for (final Annotation a : annotations.getAnnotations())
-			a.accept(crawler);
+	static private void createGroup(final IHDF5Writer writer, final String groupname) {
 
 		// TODO: following calls are deprecated, but what to use instead?
 		try {
@@ -325,16 +471,192 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 		} catch (final HDF5SymbolTableException e) {
 			// already existed
 		}
-		try {
-			writer.createGroup(groupname + "/comments");
-		} catch (final HDF5SymbolTableException e) {
-			// already existed
+	}
+
+	/**
+	 * Store annotations in spatial chunks of the given size in (x,y,z) from
+	 * the next {@link #write(Annotations)} on.  Files of older formats are
+	 * converted then.
+	 *
+	 * @param chunkSize
+	 */
+	public synchronized void setChunkSize(final double[] chunkSize) {
+
+		if (fileFormat != CHUNKED_FILE_FORMAT)
+			this.chunkSize = chunkSize.clone();
+	}
+
+	private String chunkName(final RealLocalizable p) {
+
+		final long[] c = new long[3];
+		for (int d = 0; d < 3; ++d)
+			c[d] = (long)Math.floor(p.getDoublePosition(d) / chunkSize[d]);
+		return c[2] + "_" + c[1] + "_" + c[0];
+	}
+
+	private void chunkBounds(final String name, final double[] min, final double[] max) {
+
+		final String[] c = name.split("_");
+		for (int d = 0; d < 3; ++d) {
+			min[d] = Long.parseLong(c[2 - d]) * chunkSize[d];
+			max[d] = min[d] + chunkSize[d];
+		}
+	}
+
+	/**
+	 * Start loading the chunks that intersect a polytope and are neither
+	 * loaded nor being loaded.  Returns immediately, the annotations are
+	 * added when they have been read.  Chunks that failed to load are
+	 * tried again only before they are written.
+	 */
+	@Override
+	public synchronized void load(final ConvexPolytope polytope, final Annotations annotations) {
+
+		if (chunkSize == null || fileFormat != CHUNKED_FILE_FORMAT || loadedChunks.size() == chunks.size())
+			return;
+
+		final List<String> intersecting = new ArrayList<String>();
+		final double[] min = new double[3];
+		final double[] max = new double[3];
+		for (final String name : chunks) {
+			if (loadedChunks.containsKey(name) || pendingChunks.contains(name) || failedChunks.contains(name))
+				continue;
+			chunkBounds(name, min, max);
+			if (intersects(min, max, polytope))
+				intersecting.add(name);
+		}
+		if (intersecting.isEmpty())
+			return;
+
+		pendingChunks.addAll(intersecting);
+		loader.submit(() -> {
+			HashMap<String, Chunk> read = null;
+			try {
+				synchronized (fileLock) {
+					read = readChunks(intersecting);
+				}
+			} catch (final Exception e) {
+				System.out.println("AnnotationsHdf5Store: failed to load chunks " + intersecting + ": " + e.getMessage());
+			}
+			synchronized (this) {
+				pendingChunks.removeAll(intersecting);
+				if (read == null)
+					failedChunks.addAll(intersecting);
+				else
+					addChunks(read, annotations);
+			}
+		});
+	}
+
+	/**
+	 * Wait until the chunks requested so far are loaded.
+	 */
+	void awaitLoading() throws InterruptedException, ExecutionException {
+
+		loader.submit(() -> {}).get();
+	}
+
+	private static boolean intersects(final double[] min, final double[] max, final ConvexPolytope polytope) {
+
+		for (final HyperPlane plane : polytope.getHyperplanes()) {
+			final double[] n = plane.getNormal();
+			double hi = 0;
+			for (int d = 0; d < 3; ++d)
+				hi += n[d] * (n[d] >= 0 ? max[d] : min[d]);
+			if (hi < plane.getDistance())
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Annotations and (pre,post) pairs read from a chunk.
+	 */
+	private static class Chunk {
+
+		final Annotations annotations = new Annotations();
+		MDLongArray partners = null;
+	}
+
+	/**
+	 * Read chunks without adding them to any annotations, such that nothing
+	 * is added if one of them fails.
+	 */
+	private HashMap<String, Chunk> readChunks(final Collection<String> names) throws Exception {
+
+		final HashMap<String, Chunk> read = new HashMap<String, Chunk>();
+		final IHDF5Reader reader = HDF5Factory.openForReading(filename);
+		final AnnotationFactory factory = new AnnotationFactory();
 		try {
-			writer.createGroup(groupname + "/presynaptic_site");
-		} catch (final HDF5SymbolTableException e) {
-			// already existed
+			for (final String name : names) {
+				final String chunkGroup = groupname + "/chunks/" + name;
+				final Chunk chunk = new Chunk();
+				readAnnotations(chunk.annotations, reader, chunkGroup, "all", factory);
+				chunk.partners = readPartners(reader, chunkGroup);
+				read.put(name, chunk);
+			}
+		} finally {
+			reader.close();
 		}
+		return read;
+	}
+
+	/**
+	 * Add chunks that are not loaded yet, e.g. by a write since they were
+	 * read, and connect the partners that are loaded now.
+	 */
+	private void addChunks(final Map<String, Chunk> read, final Annotations annotations) {
+
+		for (final Map.Entry<String, Chunk> entry : read.entrySet()) {
+			final String name = entry.getKey();
+			if (loadedChunks.containsKey(name))
+				continue;
+			final Chunk chunk = entry.getValue();
+			for (final Annotation a : chunk.annotations.getAnnotations())
+				annotations.add(a);
+			if (chunk.partners != null)
+				for (int i = 0; i < chunk.partners.dimensions()[0]; i++)
+					unresolvedPartners.put(chunk.partners.get(i, 0), chunk.partners.get(i, 1));
+			loadedChunks.put(name, new Datasets(chunk.annotations.getAnnotations()).signature());
+			failedChunks.remove(name);
+		}
+		resolvePartners(annotations);
+	}
+
+	private void resolvePartners(final Annotations annotations) {
+
+		for (final Iterator<Map.Entry<Long, Long>> it = unresolvedPartners.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<Long, Long> entry = it.next();
+			final Annotation pre = annotations.getById(entry.getKey());
+			final Annotation post = annotations.getById(entry.getValue());
+			if (pre instanceof PreSynapticSite && post instanceof PostSynapticSite) {
+				((PreSynapticSite)pre).setPartner((PostSynapticSite)post);
+				((PostSynapticSite)post).setPartner((PreSynapticSite)pre);
+				it.remove();
+			} else if (pre == null || ((PreSynapticSite)pre).getPartner() != null)
+				// removed or assigned a new partner since
+				it.remove();
+		}
+	}
+
+	@Override
+	public synchronized void write(final Annotations annotations) throws Exception {
+
+		synchronized (fileLock) {
+			if (chunkSize != null)
+				writeChunks(annotations);
+			else
+				writeAll(annotations);
+		}
+	}
+
+	private void writeAll(final Annotations annotations) {
+
+		final IHDF5Writer writer = HDF5Factory.open(filename);
+
+		final Datasets datasets = new Datasets(annotations.getAnnotations());
+
+		createGroup(writer, groupname);
 
 		writer.string().setAttr("/", "file_format", "0.2");
 
@@ -343,14 +665,7 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 			writer.setFloatArrayAttribute(groupname, "offset", data);
 		}
 
-		writer.float32().writeMatrix(groupname + "/locations", crawler.locations);
-		writer.uint64().writeArray(groupname + "/ids", crawler.ids);
-		writer.string().writeArray(groupname + "/types", crawler.types);
-
-		writer.string().writeArray(groupname + "/comments/comments", crawler.comments);
-		writer.uint64().writeArray(groupname + "/comments/target_ids", crawler.commentTargets);
-
-		writer.uint64().writeMatrix(groupname + "/presynaptic_site/partners", crawler.partners);
+		datasets.write(writer, groupname);
 
 		// delete old datasets and groups
 		if (fileFormat == 0.0) {
@@ -364,6 +679,104 @@ public class AnnotationsHdf5Store implements AnnotationsStore {
 		writer.close();
 	}
 
+	/**
+	 * Write the chunks whose content has changed since they were loaded or
+	 * last written, and delete chunks that have become empty.  Chunks that
+	 * annotations were moved into are loaded first, nothing is written if
+	 * that fails.
+	 */
+	private void writeChunks(final Annotations annotations) throws Exception {
+
+		final boolean convert = fileFormat != CHUNKED_FILE_FORMAT;
+
+		HashMap<String, List<Annotation>> byChunk = groupByChunk(annotations.getAnnotations());
+		final List<String> unloaded = new ArrayList<String>();
+		for (final String name : byChunk.keySet())
+			if (chunks.contains(name) && !loadedChunks.containsKey(name))
+				unloaded.add(name);
+		if (!unloaded.isEmpty()) {
+			addChunks(readChunks(unloaded), annotations);
+			byChunk = groupByChunk(annotations.getAnnotations());
+		}
+
+		final IHDF5Writer writer = HDF5Factory.open(filename);
+
+		createGroup(writer, groupname);
+		createGroup(writer, groupname + "/chunks");
+
+		for (final Map.Entry<String, List<Annotation>> entry : byChunk.entrySet()) {
+			final String name = entry.getKey();
+			final Datasets datasets = new Datasets(entry.getValue());
+			final long signature = datasets.signature();
+			final Long previous = loadedChunks.get(name);
+			if (previous == null || previous != signature)
+				datasets.write(writer, groupname + "/chunks/" + name);
+			loadedChunks.put(name, signature);
+			chunks.add(name);
+			for (final long id : datasets.ids)
+				maxId = IdService.max(maxId, id);
+		}
+
+		// loaded chunks without annotations
+		for (final Iterator<String> it = loadedChunks.keySet().iterator(); it.hasNext();) {
+			final String name = it.next();
+			if (!byChunk.containsKey(name)) {
+				deleteObject(writer, groupname + "/chunks/" + name);
+				chunks.remove(name);
+				it.remove();
+			}
+		}
+
+		writer.string().setAttr("/", "file_format", Double.toString(CHUNKED_FILE_FORMAT));
+		writer.float64().setArrayAttr(groupname, "chunk_size", new double[]{chunkSize[2], chunkSize[1], chunkSize[0]});
+		writer.uint64().setAttr(groupname, "max_id", maxId);
+
+		if (writer.hasAttribute(groupname, "offset")) {
+			final float[] data = { offset[2], offset[1], offset[0] };
+			writer.setFloatArrayAttribute(groupname, "offset", data);
+		}
+
+		// delete datasets of the previous layout
+		if (convert) {
+			if (fileFormat == 0.0) {
+				for (final String type : new String[]{"synapse", "presynaptic_site", "postsynaptic_site" })
+					for (final String ds : new String[]{"locations", "ids", "comments" })
+						deleteDataset(writer, type + "_" + ds);
+				deleteDataset(writer, "pre_post_partners");
+			} else
+				for (final String ds : new String[]{"locations", "ids", "types", "comments", "presynaptic_site" })
+					deleteDataset(writer, ds);
+			fileFormat = CHUNKED_FILE_FORMAT;
+			annotations.setLoader(this);
+		}
+
+		writer.close();
+	}
+
+	private HashMap<String, List<Annotation>> groupByChunk(final Collection<Annotation> annotations) {
+
+		final HashMap<String, List<Annotation>> byChunk = new HashMap<String, List<Annotation>>();
+		for (final Annotation a : annotations) {
+			final String name = chunkName(a.getPosition());
+			List<Annotation> chunk = byChunk.get(name);
+			if (chunk == null) {
+				chunk = new ArrayList<Annotation>();
+				byChunk.put(name, chunk);
+			}
+			chunk.add(a);
+		}
+		return byChunk;
+	}
+
+	private void deleteObject(final IHDF5Writer writer, final String name) {
+
+		try {
+			writer.delete(name);
+		} catch (final Exception e) {
+			System.out.println("couldn't delete " + name);
+		}
+	}
+
 	private void deleteDataset(final IHDF5Writer writer, final String name) {
 
 		// prior to 0.1 there was no groupname prefix
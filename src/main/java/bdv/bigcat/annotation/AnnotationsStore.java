@@ -4,5 +4,5 @@ public interface AnnotationsStore {
 
 	public Annotations read() throws Exception;
 	
-	public void write(Annotations annotations);
+	public void write(Annotations annotations) throws Exception;
 }
@@ -49,4 +49,10 @@ public class ARGBCompositeAlpha implements Composite< ARGBType, ARGBType >
 
 		a.set( ARGBType.rgba( rTarget, gTarget, bTarget, ( int )( aTarget * 255 ) ) );
 	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
 }
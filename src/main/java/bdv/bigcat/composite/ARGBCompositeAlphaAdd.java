@@ -50,4 +50,10 @@ public class ARGBCompositeAlphaAdd implements Composite< ARGBType, ARGBType >
 
 		a.set( ARGBType.rgba( rTarget, gTarget, bTarget, ( int )( aTarget * 255 ) ) );
 	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
 }
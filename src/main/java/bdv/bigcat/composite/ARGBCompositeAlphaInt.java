@@ -0,0 +1,60 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+import static bdv.bigcat.composite.FixedPoint.ALPHA;
+import static bdv.bigcat.composite.FixedPoint.HALF;
+import static bdv.bigcat.composite.FixedPoint.SHIFT;
+
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Overlays b over a using b's alpha transparency value.  Integer
+ * fixed-point implementation of {@link ARGBCompositeAlpha}.
+ */
+public class ARGBCompositeAlphaInt implements Composite< ARGBType, ARGBType >
+{
+	@Override
+	public void compose( final ARGBType a, final ARGBType b )
+	{
+		final int argbA = a.get();
+		final int argbB = b.get();
+
+		final int rA = ( argbA >> 16 ) & 0xff;
+		final int gA = ( argbA >> 8 ) & 0xff;
+		final int bA = argbA & 0xff;
+		final int rB = ( argbB >> 16 ) & 0xff;
+		final int gB = ( argbB >> 8 ) & 0xff;
+		final int bB = argbB & 0xff;
+
+		final int alphaA = argbA >>> 24;
+		final int alphaB = argbB >>> 24;
+		final int w = ALPHA[ alphaB ];
+
+		final int rTarget = rA + ( ( ( rB - rA ) * w + HALF ) >> SHIFT );
+		final int gTarget = gA + ( ( ( gB - gA ) * w + HALF ) >> SHIFT );
+		final int bTarget = bA + ( ( ( bB - bA ) * w + HALF ) >> SHIFT );
+
+		a.set( ( FixedPoint.alphaOver( alphaA, alphaB ) << 24 ) | ( rTarget << 16 ) | ( gTarget << 8 ) | bTarget );
+	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
+}
@@ -53,4 +53,10 @@ public class ARGBCompositeAlphaMultiply implements Composite< ARGBType, ARGBType
 				Math.max( 0,  Math.min( 255, ( int )Math.round( bTarget * 255 ) ) ),
 				( int )( aTarget * 255 ) ) );
 	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
 }
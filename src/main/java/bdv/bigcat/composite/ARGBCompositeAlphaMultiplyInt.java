@@ -0,0 +1,60 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+import static bdv.bigcat.composite.FixedPoint.ALPHA;
+import static bdv.bigcat.composite.FixedPoint.HALF;
+import static bdv.bigcat.composite.FixedPoint.SHIFT;
+
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Multiplies a by b and combines the result with a weighted by b's alpha
+ * value.  Integer fixed-point implementation of
+ * {@link ARGBCompositeAlphaMultiply}.
+ */
+public class ARGBCompositeAlphaMultiplyInt implements Composite< ARGBType, ARGBType >
+{
+	/* a - a * alpha + a * b * alpha = a + ( a * b - a ) * alpha */
+	final static private int multiply( final int cA, final int cB, final int w )
+	{
+		return cA + ( ( ( FixedPoint.div255( cA * cB ) - cA ) * w + HALF ) >> SHIFT );
+	}
+
+	@Override
+	public void compose( final ARGBType a, final ARGBType b )
+	{
+		final int argbA = a.get();
+		final int argbB = b.get();
+
+		final int alphaA = argbA >>> 24;
+		final int alphaB = argbB >>> 24;
+		final int w = ALPHA[ alphaB ];
+
+		final int rTarget = multiply( ( argbA >> 16 ) & 0xff, ( argbB >> 16 ) & 0xff, w );
+		final int gTarget = multiply( ( argbA >> 8 ) & 0xff, ( argbB >> 8 ) & 0xff, w );
+		final int bTarget = multiply( argbA & 0xff, argbB & 0xff, w );
+
+		a.set( ( FixedPoint.alphaOver( alphaA, alphaB ) << 24 ) | ( rTarget << 16 ) | ( gTarget << 8 ) | bTarget );
+	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+import static bdv.bigcat.composite.FixedPoint.ALPHA;
+import static bdv.bigcat.composite.FixedPoint.ONE;
+
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Combines the Y-channel of a with the Cb and Cr channels of b, and mixes the result
+ * into a weighted by b's alpha value.  Integer fixed-point implementation of
+ * {@link ARGBCompositeAlphaYCbCr}.
+ *
+ * Keeping Y of a and mixing Cb and Cr is linear in RGB:
+ *
+ * rgb = rgbA + alphaB * D * ( rgbB - rgbA ),
+ *
+ * with D = ycbcr2rgb * diag( 0, 1, 1 ) * rgb2ycbcr, such that the
+ * color space conversions collapse into one 3x3 fixed-point matrix.
+ */
+public class ARGBCompositeAlphaYCbCrInt implements Composite< ARGBType, ARGBType >
+{
+	final static private int d00, d01, d02, d10, d11, d12, d20, d21, d22;
+	static
+	{
+		final double[] m = ARGBCompositeAlphaYCbCr.rgb2ycbcr;
+		final double[] mInv = ARGBCompositeAlphaYCbCr.ycbcr2rgb;
+		final int[] d = new int[ 9 ];
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+			{
+				double s = 0;
+				for ( int k = 1; k < 3; ++k )
+					s += mInv[ r * 3 + k ] * m[ k * 3 + c ];
+				d[ r * 3 + c ] = ( int )Math.round( s * ONE );
+			}
+		d00 = d[ 0 ]; d01 = d[ 1 ]; d02 = d[ 2 ];
+		d10 = d[ 3 ]; d11 = d[ 4 ]; d12 = d[ 5 ];
+		d20 = d[ 6 ]; d21 = d[ 7 ]; d22 = d[ 8 ];
+	}
+
+	/* round( c + s * w / 2^32 ) clamped to [0, 255] */
+	final static private int mix( final int c, final int s, final int w )
+	{
+		return FixedPoint.clamp( c + ( int )( ( ( long )s * w + ( 1L << 31 ) ) >> 32 ) );
+	}
+
+	@Override
+	public void compose( final ARGBType a, final ARGBType b )
+	{
+		final int argbA = a.get();
+		final int argbB = b.get();
+
+		final int rA = ( argbA >> 16 ) & 0xff;
+		final int gA = ( argbA >> 8 ) & 0xff;
+		final int bA = argbA & 0xff;
+
+		final int rD = ( ( argbB >> 16 ) & 0xff ) - rA;
+		final int gD = ( ( argbB >> 8 ) & 0xff ) - gA;
+		final int bD = ( argbB & 0xff ) - bA;
+
+		final int alphaA = argbA >>> 24;
+		final int alphaB = argbB >>> 24;
+		final int w = ALPHA[ alphaB ];
+
+		final int rTarget = mix( rA, d00 * rD + d01 * gD + d02 * bD, w );
+		final int gTarget = mix( gA, d10 * rD + d11 * gD + d12 * bD, w );
+		final int bTarget = mix( bA, d20 * rD + d21 * gD + d22 * bD, w );
+
+		a.set( ( FixedPoint.alphaOver( alphaA, alphaB ) << 24 ) | ( rTarget << 16 ) | ( gTarget << 8 ) | bTarget );
+	}
+
+	@Override
+	public boolean isAlphaPreserving()
+	{
+		return true;
+	}
+}
@@ -31,4 +31,13 @@ public interface Composite< A, B >
 	 * @param b
 	 */
 	public void compose( final A a, final B b );
+
+	/**
+	 * @return true if composing a completely transparent b leaves a
+	 *         unchanged, such that transparent regions of b can be skipped
+	 */
+	default public boolean isAlphaPreserving()
+	{
+		return false;
+	}
 }
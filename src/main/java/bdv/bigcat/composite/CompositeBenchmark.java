@@ -0,0 +1,80 @@
+package bdv.bigcat.composite;
+
+import java.util.Random;
+
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Throughput of the floating-point ARGB composites and their integer
+ * fixed-point counterparts, composing a random image over another as the
+ * accumulate projector does.  Each composite is warmed up before it is
+ * measured.
+ */
+public class CompositeBenchmark
+{
+	private static long compose(
+			final Composite< ARGBType, ARGBType > composite,
+			final int[] as,
+			final int[] bs,
+			final int numIterations )
+	{
+		final ARGBType a = new ARGBType();
+		final ARGBType b = new ARGBType();
+		long sum = 0;
+		for ( int k = 0; k < numIterations; ++k )
+			for ( int i = 0; i < as.length; ++i )
+			{
+				a.set( as[ i ] );
+				b.set( bs[ i ] );
+				composite.compose( a, b );
+				sum += a.get();
+			}
+		return sum;
+	}
+
+	/**
+	 * @param args
+	 *            number of pixels and number of measured iterations,
+	 *            default 1000000 and 20
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static void main( final String[] args )
+	{
+		final int n = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000000;
+		final int numIterations = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 20;
+
+		final Random rnd = new Random( 1 );
+		final int[] as = new int[ n ];
+		final int[] bs = new int[ n ];
+		for ( int i = 0; i < n; ++i )
+		{
+			as[ i ] = rnd.nextInt();
+			bs[ i ] = rnd.nextInt();
+		}
+
+		final Composite< ARGBType, ARGBType >[] composites = new Composite[] {
+				new ARGBCompositeAlpha(),
+				new ARGBCompositeAlphaInt(),
+				new ARGBCompositeAlphaAdd(),
+				new ARGBCompositeAlphaAddInt(),
+				new ARGBCompositeAlphaMultiply(),
+				new ARGBCompositeAlphaMultiplyInt(),
+				new ARGBCompositeAlphaYCbCr(),
+				new ARGBCompositeAlphaYCbCrInt() };
+
+		/* keeps the results alive */
+		long sink = 0;
+		for ( final Composite< ARGBType, ARGBType > composite : composites )
+		{
+			sink += compose( composite, as, bs, numIterations );
+			final long t0 = System.nanoTime();
+			sink += compose( composite, as, bs, numIterations );
+			final double seconds = ( System.nanoTime() - t0 ) / 1e9;
+			System.out.println( String.format(
+					"%-32s %10.1f Mpixels/s",
+					composite.getClass().getSimpleName(),
+					( double )n * numIterations / seconds / 1e6 ) );
+		}
+		System.out.println( "checksum " + sink );
+	}
+}
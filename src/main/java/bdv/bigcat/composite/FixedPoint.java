@@ -0,0 +1,62 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.composite;
+
+/**
+ * Fixed-point helpers for the integer ARGB composites.
+ */
+final class FixedPoint
+{
+	final static int SHIFT = 16;
+
+	final static int ONE = 1 << SHIFT;
+
+	final static int HALF = ONE >> 1;
+
+	/* alpha / 255 in 16 bit fixed-point for all 8 bit alpha values */
+	final static int[] ALPHA = new int[ 256 ];
+	static
+	{
+		for ( int i = 0; i < 256; ++i )
+			ALPHA[ i ] = ( int )Math.round( i * ( double )ONE / 255.0 );
+	}
+
+	private FixedPoint() {}
+
+	/**
+	 * Alpha of a over b, equals ( int )( ( aA + aB - aA * aB ) * 255 ) for
+	 * normalized alphas.
+	 */
+	final static int alphaOver( final int alphaA, final int alphaB )
+	{
+		return alphaA + alphaB - ( alphaA * alphaB + 254 ) / 255;
+	}
+
+	/**
+	 * Rounded x / 255 for 0 &lt;= x &lt;= 255 * 255.
+	 */
+	final static int div255( final int x )
+	{
+		final int y = x + 128;
+		return ( y + ( y >> 8 ) ) >> 8;
+	}
+
+	final static int clamp( final int v )
+	{
+		return v < 0 ? 0 : v > 255 ? 255 : v;
+	}
+}
@@ -0,0 +1,402 @@
+package bdv.bigcat.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.LongSupplier;
+
+import bdv.tools.brightness.ConverterSetup;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import bdv.viewer.state.ViewerState;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+
+/**
+ * {@link AccumulateProjectorFactory} that keeps a least recently used cache
+ * of completely rendered screen images.  Images are keyed by the viewer
+ * transform, interpolation, and timepoint, the screen image size, the
+ * visible sources, the display ranges and colors of the
+ * {@link ConverterSetup}s, and a set of version
+ * counters that change with every edit that changes the rendering, e.g.
+ * of the fragment segment assignment, the color stream, and the painted
+ * canvas.  Revisiting a slice copies the cached image instead of
+ * rendering all sources.
+ *
+ * The viewer transform, interpolation, and timepoint are taken from a copy
+ * of the {@link ViewerState} made when the projector is created.  The
+ * renderer creates projectors while it holds the lock of the state it
+ * renders, so the copy is the state of the rendered image.  Only images
+ * whose sources were completely loaded are cached, and only if the display
+ * settings and versions did not change while rendering them.
+ */
+public class RenderedSliceCache implements AccumulateProjectorFactory< ARGBType >
+{
+	static private class Key
+	{
+		final private double[] transform;
+		final private Interpolation interpolation;
+		final private int timepoint;
+		final private long width;
+		final private long height;
+		final private List< Source< ? > > sources;
+		final private double[] display;
+		final private long[] versions;
+		final private int hashCode;
+
+		public Key(
+				final double[] transform,
+				final Interpolation interpolation,
+				final int timepoint,
+				final long width,
+				final long height,
+				final List< Source< ? > > sources,
+				final double[] display,
+				final long[] versions )
+		{
+			this.transform = transform;
+			this.interpolation = interpolation;
+			this.timepoint = timepoint;
+			this.width = width;
+			this.height = height;
+			this.sources = sources;
+			this.display = display;
+			this.versions = versions;
+
+			int h = Arrays.hashCode( transform );
+			h = 31 * h + Objects.hashCode( interpolation );
+			h = 31 * h + timepoint;
+			h = 31 * h + Long.hashCode( width );
+			h = 31 * h + Long.hashCode( height );
+			h = 31 * h + sources.hashCode();
+			h = 31 * h + Arrays.hashCode( display );
+			h = 31 * h + Arrays.hashCode( versions );
+			hashCode = h;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+			final Key other = ( Key )o;
+			return
+					hashCode == other.hashCode &&
+					interpolation == other.interpolation &&
+					timepoint == other.timepoint &&
+					width == other.width &&
+					height == other.height &&
+					Arrays.equals( transform, other.transform ) &&
+					sources.equals( other.sources ) &&
+					Arrays.equals( display, other.display ) &&
+					Arrays.equals( versions, other.versions );
+		}
+	}
+
+	/**
+	 * Renders through the wrapped factory's projector and caches the result
+	 * once it is complete.
+	 */
+	private class CachingProjector implements VolatileProjector
+	{
+		final private VolatileProjector projector;
+		final private RandomAccessibleInterval< ARGBType > target;
+		final private ViewerState state;
+		final private ArrayList< Source< ? > > sources;
+		final private Key key;
+
+		public CachingProjector(
+				final VolatileProjector projector,
+				final RandomAccessibleInterval< ARGBType > target,
+				final ViewerState state,
+				final ArrayList< Source< ? > > sources,
+				final Key key )
+		{
+			this.projector = projector;
+			this.target = target;
+			this.state = state;
+			this.sources = sources;
+			this.key = key;
+		}
+
+		@Override
+		public boolean map()
+		{
+			return map( true );
+		}
+
+		@Override
+		public boolean map( final boolean clearUntouchedTargetPixels )
+		{
+			final boolean success = projector.map( clearUntouchedTargetPixels );
+			if ( success && projector.isValid() && key.equals( key( state, sources, target ) ) )
+				put( key, target );
+			return success;
+		}
+
+		@Override
+		public void cancel()
+		{
+			projector.cancel();
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return projector.getLastFrameRenderNanoTime();
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return projector.isValid();
+		}
+	}
+
+	/**
+	 * Copies a cached image.
+	 */
+	static private class CachedProjector implements VolatileProjector
+	{
+		final private int[] image;
+		final private RandomAccessibleInterval< ARGBType > target;
+		private long lastFrameRenderNanoTime = 0;
+
+		public CachedProjector( final int[] image, final RandomAccessibleInterval< ARGBType > target )
+		{
+			this.image = image;
+			this.target = target;
+		}
+
+		@Override
+		public boolean map()
+		{
+			return map( true );
+		}
+
+		@Override
+		public boolean map( final boolean clearUntouchedTargetPixels )
+		{
+			final long t = System.nanoTime();
+			final Cursor< ARGBType > cursor = Views.flatIterable( target ).cursor();
+			for ( int i = 0; cursor.hasNext(); ++i )
+				cursor.next().set( image[ i ] );
+			lastFrameRenderNanoTime = System.nanoTime() - t;
+			return true;
+		}
+
+		@Override
+		public void cancel()
+		{}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return lastFrameRenderNanoTime;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return true;
+		}
+	}
+
+	final private AccumulateProjectorFactory< ARGBType > factory;
+
+	final private long maxBytes;
+
+	final private LinkedHashMap< Key, int[] > images = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long bytes = 0;
+
+	final private CopyOnWriteArrayList< LongSupplier > versions = new CopyOnWriteArrayList<>();
+
+	private List< ConverterSetup > converterSetups = new ArrayList<>();
+
+	/* viewer whose rendered state is part of the key, null if not attached */
+	private ViewerPanel viewer = null;
+
+	private long numHits = 0;
+
+	private long numMisses = 0;
+
+	/**
+	 * @param factory
+	 *            renders images that are not cached
+	 * @param maxBytes
+	 *            memory budget for cached images
+	 */
+	public RenderedSliceCache( final AccumulateProjectorFactory< ARGBType > factory, final long maxBytes )
+	{
+		this.factory = factory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Key images by the state of a viewer and the display settings of its
+	 * converter setups.
+	 *
+	 * @param viewer
+	 * @param converterSetups
+	 */
+	public void attach( final ViewerPanel viewer, final List< ConverterSetup > converterSetups )
+	{
+		this.converterSetups = converterSetups;
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Add a counter that changes whenever the rendering changes, e.g. with
+	 * edits.
+	 *
+	 * @param version
+	 */
+	public void addVersion( final LongSupplier version )
+	{
+		versions.add( version );
+	}
+
+	/**
+	 * @param state
+	 *            the rendered viewer state, {@code null} if not attached
+	 */
+	private Key key(
+			final ViewerState state,
+			final ArrayList< Source< ? > > sources,
+			final RandomAccessibleInterval< ARGBType > target )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		Interpolation interpolation = null;
+		int timepoint = 0;
+		if ( state != null )
+		{
+			state.getViewerTransform( transform );
+			interpolation = state.getInterpolation();
+			timepoint = state.getCurrentTimepoint();
+		}
+
+		final double[] display = new double[ converterSetups.size() * 3 ];
+		for ( int i = 0, j = 0; i < converterSetups.size(); ++i )
+		{
+			final ConverterSetup setup = converterSetups.get( i );
+			display[ j++ ] = setup.getDisplayRangeMin();
+			display[ j++ ] = setup.getDisplayRangeMax();
+			display[ j++ ] = setup.getColor().get();
+		}
+
+		final long[] versionValues = new long[ versions.size() ];
+		int i = 0;
+		for ( final LongSupplier version : versions )
+			versionValues[ i++ ] = version.getAsLong();
+
+		return new Key(
+				transform.getRowPackedCopy(),
+				interpolation,
+				timepoint,
+				target.dimension( 0 ),
+				target.dimension( 1 ),
+				new ArrayList< Source< ? > >( sources ),
+				display,
+				versionValues );
+	}
+
+	private synchronized int[] get( final Key key )
+	{
+		final int[] image = images.get( key );
+		if ( image == null )
+			++numMisses;
+		else
+			++numHits;
+		return image;
+	}
+
+	private synchronized void put( final Key key, final RandomAccessibleInterval< ARGBType > target )
+	{
+		if ( images.containsKey( key ) )
+			return;
+
+		final long size = target.dimension( 0 ) * target.dimension( 1 );
+		if ( size * 4 > maxBytes )
+			return;
+
+		final int[] image = new int[ ( int )size ];
+		final Cursor< ARGBType > cursor = Views.flatIterable( target ).cursor();
+		for ( int i = 0; cursor.hasNext(); ++i )
+			image[ i ] = cursor.next().get();
+
+		images.put( key, image );
+		bytes += 4L * image.length;
+
+		for ( final Iterator< Map.Entry< Key, int[] > > it = images.entrySet().iterator(); bytes > maxBytes && it.hasNext(); )
+		{
+			bytes -= 4L * it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return the number of images taken from the cache
+	 */
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+
+	/**
+	 * @return the number of images rendered
+	 */
+	public synchronized long getNumMisses()
+	{
+		return numMisses;
+	}
+
+	@Override
+	public VolatileProjector createAccumulateProjector(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final ArrayList< Source< ? > > sources,
+			final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+			final RandomAccessibleInterval< ARGBType > targetScreenImage,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		/* called by the renderer while it holds the lock of the state it renders */
+		final ViewerState state = viewer == null ? null : viewer.getState();
+		final Key key = key( state, sources, targetScreenImage );
+		final int[] image = get( key );
+		if ( image != null )
+			return new CachedProjector( image, targetScreenImage );
+
+		return new CachingProjector(
+				factory.createAccumulateProjector(
+						sourceProjectors,
+						sources,
+						sourceScreenImages,
+						targetScreenImage,
+						numThreads,
+						executorService ),
+				targetScreenImage,
+				state,
+				sources,
+				key );
+	}
+}
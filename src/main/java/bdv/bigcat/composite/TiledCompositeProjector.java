@@ -0,0 +1,311 @@
+package bdv.bigcat.composite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bdv.viewer.Source;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Composes the screen images of all sources into the target like
+ * {@link CompositeProjector} but splits the target into square tiles of
+ * {@link #TILE_SIZE} pixels.  Sources that are completely transparent
+ * (alpha 0) in a tile, e.g. a label source with nothing painted or
+ * segments hidden, are not composed into this tile if their
+ * {@link Composite#isAlphaPreserving() Composite leaves the target
+ * unchanged for transparent pixels}.  Tiles are composed onto transparent
+ * black unless the first composed source is copied.
+ *
+ * Tiles are rendered by one task per rendering thread, each task takes the
+ * next tile that nobody else took yet, such that fast threads take over the
+ * work of slow threads.
+ */
+public class TiledCompositeProjector implements VolatileProjector
+{
+	public static class TiledCompositeProjectorFactory implements AccumulateProjectorFactory< ARGBType >
+	{
+		final private Map< Source< ? extends ARGBType >, Composite< ARGBType, ARGBType > > composites;
+
+		/**
+		 * Constructor with a map that associates sources and {@link Composite Composites}.
+		 *
+		 * @param composites
+		 */
+		public TiledCompositeProjectorFactory( final Map< Source< ? extends ARGBType >, Composite< ARGBType, ARGBType > > composites )
+		{
+			this.composites = composites;
+		}
+
+		@Override
+		public VolatileProjector createAccumulateProjector(
+				final ArrayList< VolatileProjector > sourceProjectors,
+				final ArrayList< Source< ? > > sources,
+				final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+				final RandomAccessibleInterval< ARGBType > targetScreenImage,
+				final int numThreads,
+				final ExecutorService executorService )
+		{
+			final TiledCompositeProjector projector = new TiledCompositeProjector(
+					sourceProjectors,
+					sourceScreenImages,
+					targetScreenImage,
+					numThreads,
+					executorService );
+
+			final ArrayList< Composite< ARGBType, ARGBType > > activeComposites = new ArrayList< Composite< ARGBType, ARGBType > >();
+			for ( final Source< ? > activeSource : sources )
+				activeComposites.add( composites.get( activeSource ) );
+
+			projector.setComposites( activeComposites );
+
+			return projector;
+		}
+	}
+
+	final static public int TILE_SIZE = 64;
+
+	final protected ArrayList< VolatileProjector > sourceProjectors;
+
+	final protected ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sources;
+
+	final protected ArrayList< Composite< ARGBType, ARGBType > > composites = new ArrayList< Composite< ARGBType, ARGBType > >();
+
+	final protected RandomAccessibleInterval< ARGBType > target;
+
+	final protected int numThreads;
+
+	final protected ExecutorService executorService;
+
+	final protected AtomicInteger numSkipped = new AtomicInteger();
+
+	protected volatile boolean canceled = false;
+
+	protected volatile boolean valid = false;
+
+	protected long lastFrameRenderNanoTime = -1;
+
+	public TiledCompositeProjector(
+			final ArrayList< VolatileProjector > sourceProjectors,
+			final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sources,
+			final RandomAccessibleInterval< ARGBType > target,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.sourceProjectors = sourceProjectors;
+		this.sources = sources;
+		this.target = target;
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+	}
+
+	public void setComposites( final List< Composite< ARGBType, ARGBType > > composites )
+	{
+		this.composites.clear();
+		this.composites.addAll( composites );
+	}
+
+	/**
+	 * @return the number of source tiles that were skipped because they
+	 *         were transparent in the last call of {@link #map(boolean)}
+	 */
+	public int getNumSkippedTiles()
+	{
+		return numSkipped.get();
+	}
+
+	@Override
+	public boolean map()
+	{
+		return map( true );
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		if ( canceled )
+			return false;
+
+		final long t = System.nanoTime();
+
+		valid = true;
+		for ( final VolatileProjector p : sourceProjectors )
+			if ( !p.isValid() )
+			{
+				if ( !p.map( clearUntouchedTargetPixels ) )
+					return false;
+				valid &= p.isValid();
+			}
+
+		final int numTilesX = ( int )( ( target.dimension( 0 ) + TILE_SIZE - 1 ) / TILE_SIZE );
+		final int numTilesY = ( int )( ( target.dimension( 1 ) + TILE_SIZE - 1 ) / TILE_SIZE );
+		final int numTiles = numTilesX * numTilesY;
+		final AtomicInteger nextTile = new AtomicInteger();
+		numSkipped.set( 0 );
+
+		final int numTasks = Math.min( numThreads, numTiles );
+		if ( executorService == null || numTasks < 2 )
+			renderTiles( nextTile, numTilesX, numTiles );
+		else
+		{
+			final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >( numTasks );
+			for ( int i = 0; i < numTasks; ++i )
+				tasks.add( () -> {
+					renderTiles( nextTile, numTilesX, numTiles );
+					return null;
+				} );
+			try
+			{
+				executorService.invokeAll( tasks );
+			}
+			catch ( final InterruptedException e )
+			{
+				/* some tiles may not have been composed */
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		lastFrameRenderNanoTime = System.nanoTime() - t;
+
+		return !canceled;
+	}
+
+	/**
+	 * Render tiles until all are taken.
+	 */
+	protected void renderTiles( final AtomicInteger nextTile, final int numTilesX, final int numTiles )
+	{
+		final int numSources = composites.size();
+		final RandomAccess< ARGBType > targetAccess = target.randomAccess();
+		@SuppressWarnings( "unchecked" )
+		final RandomAccess< ? extends ARGBType >[] sourceAccesses = new RandomAccess[ numSources ];
+		for ( int s = 0; s < numSources; ++s )
+			sourceAccesses[ s ] = sources.get( s ).randomAccess();
+
+		@SuppressWarnings( "unchecked" )
+		final RandomAccess< ? extends ARGBType >[] activeAccesses = new RandomAccess[ numSources ];
+		@SuppressWarnings( "unchecked" )
+		final Composite< ARGBType, ARGBType >[] activeComposites = new Composite[ numSources ];
+
+		for ( int tile = nextTile.getAndIncrement(); tile < numTiles && !canceled; tile = nextTile.getAndIncrement() )
+		{
+			final long x0 = target.min( 0 ) + ( long )( tile % numTilesX ) * TILE_SIZE;
+			final long y0 = target.min( 1 ) + ( long )( tile / numTilesX ) * TILE_SIZE;
+			final int w = ( int )Math.min( TILE_SIZE, target.max( 0 ) + 1 - x0 );
+			final int h = ( int )Math.min( TILE_SIZE, target.max( 1 ) + 1 - y0 );
+
+			int numActive = 0;
+			for ( int s = 0; s < numSources; ++s )
+			{
+				if ( composites.get( s ).isAlphaPreserving() && isTransparent( sourceAccesses[ s ], x0, y0, w, h ) )
+					numSkipped.incrementAndGet();
+				else
+				{
+					activeAccesses[ numActive ] = sourceAccesses[ s ];
+					activeComposites[ numActive ] = composites.get( s );
+					++numActive;
+				}
+			}
+
+			if ( numActive == 0 || !( activeComposites[ 0 ] instanceof CompositeCopy ) )
+				clearTile( targetAccess, x0, y0, w, h );
+			if ( numActive > 0 )
+				composeTile( targetAccess, activeAccesses, activeComposites, numActive, x0, y0, w, h );
+		}
+	}
+
+	static protected boolean isTransparent(
+			final RandomAccess< ? extends ARGBType > access,
+			final long x0,
+			final long y0,
+			final int w,
+			final int h )
+	{
+		for ( int y = 0; y < h; ++y )
+		{
+			access.setPosition( x0, 0 );
+			access.setPosition( y0 + y, 1 );
+			for ( int x = 0; x < w; ++x, access.fwd( 0 ) )
+				if ( ( access.get().get() & 0xff000000 ) != 0 )
+					return false;
+		}
+		return true;
+	}
+
+	static protected void clearTile(
+			final RandomAccess< ARGBType > targetAccess,
+			final long x0,
+			final long y0,
+			final int w,
+			final int h )
+	{
+		for ( int y = 0; y < h; ++y )
+		{
+			targetAccess.setPosition( x0, 0 );
+			targetAccess.setPosition( y0 + y, 1 );
+			for ( int x = 0; x < w; ++x, targetAccess.fwd( 0 ) )
+				targetAccess.get().set( 0 );
+		}
+	}
+
+	static protected void composeTile(
+			final RandomAccess< ARGBType > targetAccess,
+			final RandomAccess< ? extends ARGBType >[] accesses,
+			final Composite< ARGBType, ARGBType >[] composites,
+			final int numSources,
+			final long x0,
+			final long y0,
+			final int w,
+			final int h )
+	{
+		for ( int y = 0; y < h; ++y )
+		{
+			targetAccess.setPosition( x0, 0 );
+			targetAccess.setPosition( y0 + y, 1 );
+			for ( int s = 0; s < numSources; ++s )
+			{
+				accesses[ s ].setPosition( x0, 0 );
+				accesses[ s ].setPosition( y0 + y, 1 );
+			}
+			for ( int x = 0; x < w; ++x )
+			{
+				final ARGBType t = targetAccess.get();
+				for ( int s = 0; s < numSources; ++s )
+				{
+					composites[ s ].compose( t, accesses[ s ].get() );
+					accesses[ s ].fwd( 0 );
+				}
+				targetAccess.fwd( 0 );
+			}
+		}
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled = true;
+		for ( final VolatileProjector p : sourceProjectors )
+			p.cancel();
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+}
@@ -16,7 +16,9 @@
  */
 package bdv.bigcat.control;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,9 +46,12 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
+import bdv.bigcat.Message;
 import bdv.bigcat.label.FragmentSegmentAssignment;
 import bdv.bigcat.label.IdPicker;
 import bdv.labels.labelset.Label;
+import bdv.util.BinaryMessage;
+import bdv.util.http.Codec;
 import bdv.viewer.ViewerPanel;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.TLongSet;
@@ -81,6 +86,11 @@ public class AgglomerationClientController
 	static public interface Action
 	{
 		public String getType();
+
+		/**
+		 * @return the equivalent {@link Message} for the binary format
+		 */
+		public Message toMessage();
 	}
 
 	static private class Merge implements Action
@@ -94,6 +104,14 @@ public class AgglomerationClientController
 
 		@Override
 		public String getType() { return "merge"; }
+
+		@Override
+		public Message toMessage()
+		{
+			final Message.MergeData data = new Message.MergeData();
+			data.fragments = fragments;
+			return new Message( data );
+		}
 	}
 
 	static private class Separate implements Action
@@ -109,6 +127,21 @@ public class AgglomerationClientController
 
 		@Override
 		public String getType() { return "separate"; }
+
+		@Override
+		public Message toMessage()
+		{
+			if ( from.length == 1 )
+			{
+				final Message.SeparateData data = new Message.SeparateData();
+				data.fragmentA = fragment;
+				data.fragmentB = from[ 0 ];
+				return new Message( data );
+			}
+			final Message.IsolateData data = new Message.IsolateData();
+			data.fragment = fragment;
+			return new Message( data );
+		}
 	}
 
 	static private class MergeAndSeparate implements Action
@@ -124,6 +157,15 @@ public class AgglomerationClientController
 
 		@Override
 		public String getType() { return "merge-and-separate"; }
+
+		@Override
+		public Message toMessage()
+		{
+			final Message.MergeAndSeparateData data = new Message.MergeAndSeparateData();
+			data.fragments = fragments;
+			data.from = from;
+			return new Message( data );
+		}
 	}
 
 	static private class ActionSerializer implements JsonSerializer< Action >
@@ -142,41 +184,81 @@ public class AgglomerationClientController
 		}
 	}
 
-	static private class FragmentSegmentLutMessage
+	protected class SocketListener extends Thread
 	{
-		private class Data
-		{
-			private long[] fragments;
-			private long[] segments;
-		}
+		/** sequence number of the last applied update */
+		private long lastSequence = -1;
 
-		final public String type = "fragment-segment-lut";
-		final public Data data;
+		/** deltas are ignored until the requested complete lookup arrives */
+		private boolean awaitingLut = false;
 
-		public FragmentSegmentLutMessage( final Data data )
+		final void handleMessage( final byte[] frame ) throws IOException
 		{
-			this.data = data;
+			final Message message =
+					BinaryMessage.isBinary( frame ) ?
+							Message.fromBinary( frame ) :
+							gson.fromJson( new String( frame, StandardCharsets.UTF_8 ), Message.class );
+			switch ( message.getType() )
+			{
+			case HANDSHAKE:
+			{
+				final Message.HandshakeData data = ( Message.HandshakeData )message.getData();
+				if ( data != null )
+				{
+					codec = data.getCodec();
+					binary = Message.HandshakeData.BINARY.equals( data.getFormat() );
+					System.out.println( "Solver messages are " + ( binary ? "binary, compression " + codec : "JSON" ) );
+				}
+				break;
+			}
+			case FRAGMENT_SEGMENT_LUT:
+			{
+				final Message.FragmentSegmentLUTData data = ( Message.FragmentSegmentLUTData )message.getData();
+
+				final TLongLongHashMap lut = new TLongLongHashMap();
+				final long[] fragments = data.fragments;
+				final long[] segments = data.segments;
+				final int n = Math.min( fragments.length, segments.length );
+				for ( int i = 0; i < n; ++i )
+					lut.put( fragments[ i ], segments[ i ] );
+
+				assignment.initLut( lut );
+				lastSequence = data.sequence;
+				awaitingLut = false;
+				viewer.requestRepaint();
+				break;
+			}
+			case FRAGMENT_SEGMENT_LUT_DELTA:
+			{
+				final Message.FragmentSegmentLUTDeltaData data = ( Message.FragmentSegmentLUTDeltaData )message.getData();
+				if ( awaitingLut )
+					break;
+				if ( data.sequence != lastSequence + 1 )
+				{
+					/* missed an update */
+					System.out.println( "Fragment-segment lookup delta " + data.sequence + " does not follow " + lastSequence + ", requesting complete lookup" );
+					awaitingLut = true;
+					requestLut();
+					break;
+				}
+
+				final long[] changed = assignment.applyLutDelta( data.fragments, data.segments );
+				lastSequence = data.sequence;
+				if ( changed.length > 0 )
+					viewer.requestRepaint();
+				break;
+			}
+			default:
+				/* other messages are for other clients */
+				break;
+			}
 		}
-	}
 
-	protected class SocketListener extends Thread
-	{
-		final void handleMessage( final String json )
+		private void requestLut() throws IOException
 		{
-			final FragmentSegmentLutMessage lutMsg = gson.fromJson( json, FragmentSegmentLutMessage.class );
-
-			System.out.println( "Message received" );
-			System.out.println( gson.toJson( lutMsg ) );
-
-			final TLongLongHashMap lut = new TLongLongHashMap();
-			final long[] fragments = lutMsg.data.fragments;
-			final long[] segments = lutMsg.data.segments;
-			final int n = Math.min( fragments.length, segments.length );
-			for ( int i = 0; i < n; ++i )
-				lut.put( fragments[ i ], segments[ i ] );
-
-			assignment.initLut( lut );
-			viewer.requestRepaint();
+			final Message.FragmentSegmentLUTRequestData data = new Message.FragmentSegmentLUTRequestData();
+			data.lastSequence = lastSequence;
+			send( new Message( data ) );
 		}
 
 		@Override
@@ -184,8 +266,17 @@ public class AgglomerationClientController
 		{
 			while ( !isInterrupted() )
 			{
-				final String json = socket.recvStr();
-				handleMessage( json );
+				final byte[] frame = socket.recv();
+				if ( frame == null )
+					continue;
+				try
+				{
+					handleMessage( frame );
+				}
+				catch ( final IOException | RuntimeException e )
+				{
+					System.out.println( "Failed to handle solver message: " + e.getMessage() );
+				}
 			}
 		}
 	}
@@ -208,11 +299,61 @@ public class AgglomerationClientController
 				new FragmentSegmentAssignment.FragmentSegmentSerializer() )
 		.registerTypeAdapter(
 				Action.class,
-				new ActionSerializer() );
+				new ActionSerializer() )
+		.registerTypeAdapter(
+				Message.class,
+				new Message.Serializer() )
+		.registerTypeAdapter(
+				Message.class,
+				new Message.GSONDeserializer() );
 		//gsonBuilder.setPrettyPrinting();
 	}
 	final Gson gson = gsonBuilder.create();
 
+	/* negotiated in the handshake, JSON until the solver answers */
+	private volatile boolean binary = false;
+	private volatile Codec codec = Codec.NONE;
+
+	/**
+	 * Send a message in the negotiated format.
+	 */
+	protected void send( final Message message ) throws IOException
+	{
+		if ( binary )
+		{
+			final byte[] frame = message.toBinary( codec );
+			while ( !socket.send( frame ) );
+		}
+		else
+		{
+			final String json = gson.toJson( message );
+			while ( !socket.send( json ) );
+		}
+	}
+
+	/**
+	 * Send an action to the solver in the negotiated format.
+	 */
+	protected void send( final Action action )
+	{
+		try
+		{
+			if ( binary )
+				send( action.toMessage() );
+			else
+			{
+				final String json = gson.toJson( action, Action.class );
+				System.out.println( "Sending to " + socket + " :" );
+				System.out.println( json );
+				while ( !socket.send( json ) );
+			}
+		}
+		catch ( final IOException e )
+		{
+			System.out.println( "Failed to send " + action.getType() + ": " + e.getMessage() );
+		}
+	}
+
 	public AgglomerationClientController(
 			final ViewerPanel viewer,
 			final IdPicker idPicker,
@@ -245,6 +386,16 @@ public class AgglomerationClientController
 
 		socketListener = new SocketListener();
 		socketListener.start();
+
+		/* offer the binary format, older solvers ignore or do not answer this */
+		try
+		{
+			send( new Message( new Message.HandshakeData() ) );
+		}
+		catch ( final IOException e )
+		{
+			System.out.println( "Failed to send handshake: " + e.getMessage() );
+		}
 	}
 
 	////////////////
@@ -309,12 +460,7 @@ public class AgglomerationClientController
 
 				/* solver */
 				final Merge action = new Merge( new long[]{ oldActiveFragmentId, id } );
-				do
-				{
-					System.out.println( "Sending to " + socket + " :" );
-					System.out.println( gson.toJson( action, Action.class ) );
-				}
-				while ( !socket.send( gson.toJson( action, Action.class ) ) );
+				send( action );
 
 				/* TODO not necessary, just for the record */
 				actions.add( action );
@@ -352,12 +498,7 @@ public class AgglomerationClientController
 
 				/* solver */
 				final Separate action = new Separate( id, from );
-				do
-				{
-					System.out.println( "Sending to " + socket + " :" );
-					System.out.println( gson.toJson( action, Action.class ) );
-				}
-				while ( !socket.send( gson.toJson( action, Action.class ) ) );
+				send( action );
 
 				/* TODO not necessary, just for the record */
 				actions.add( action );
@@ -394,12 +535,7 @@ public class AgglomerationClientController
 						new MergeAndSeparate(
 								visibleInActiveSegmentIds.toArray(),
 								visibleNotInActiveSegmentIds.toArray() );
-				do
-				{
-					System.out.println( "Sending to " + socket + " :" );
-					System.out.println( gson.toJson( action, Action.class ) );
-				}
-				while ( !socket.send( gson.toJson( action, Action.class ) ) );
+				send( action );
 
 				/* TODO not necessary, just for the record */
 				actions.add( action );
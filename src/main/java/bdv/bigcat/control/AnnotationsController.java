@@ -185,8 +185,19 @@ public class AnnotationsController implements WindowListener, Selection.Selectio
 		return null;
 	}
 
-	public void saveAnnotations() {
-		store.write(annotations);
+	/**
+	 * @return false if the annotations could not be saved, the reason is
+	 * shown in the viewer
+	 */
+	public boolean saveAnnotations() {
+		try {
+			store.write(annotations);
+			return true;
+		} catch (final Exception e) {
+			System.out.println("Failed to save annotations: " + e.getMessage());
+			viewer.showMessage("Failed to save annotations: " + e.getMessage());
+			return false;
+		}
 	}
 
 	////////////////
@@ -368,15 +379,12 @@ public class AnnotationsController implements WindowListener, Selection.Selectio
 
 			final RealPoint pos = new RealPoint(3);
 			viewer.displayToGlobalCoordinates(x, y, pos);
-			annotation.setPosition(pos);
+			annotations.move(annotation, pos);
 			viewer.requestRepaint();
 		}
 
 		@Override
-		public void end(final int x, final int y) {
-
-			annotations.markDirty();
-		}
+		public void end(final int x, final int y) {}
 
 		private Annotation annotation;
 	}
@@ -401,6 +409,7 @@ public class AnnotationsController implements WindowListener, Selection.Selectio
 			if (comment == null)
 				return;
 			active.setComment(comment);
+			annotations.markModified();
 			viewer.requestRepaint();
 		}
 	}
@@ -415,12 +424,14 @@ public class AnnotationsController implements WindowListener, Selection.Selectio
 
 		@Override
 		public void actionPerformed(final ActionEvent e) {
+			final boolean saved;
 			synchronized (viewer) {
 				viewer.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-				saveAnnotations();
+				saved = saveAnnotations();
 				viewer.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
 			}
-			viewer.showMessage("Annotations saved");
+			if (saved)
+				viewer.showMessage("Annotations saved");
 		}
 	}
 
@@ -0,0 +1,133 @@
+package bdv.bigcat.control;
+
+import java.awt.event.ActionEvent;
+
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+
+import org.scijava.ui.behaviour.KeyStrokeAdder;
+import org.scijava.ui.behaviour.io.InputTriggerConfig;
+import org.scijava.ui.behaviour.util.AbstractNamedAction;
+import org.scijava.ui.behaviour.util.InputActionBindings;
+
+import bdv.img.CellPrefetcher;
+import bdv.img.DiskCellCache;
+import bdv.img.MemoryBoundedCellCache;
+import bdv.viewer.ViewerPanel;
+
+/**
+ * Show how well the cell prefetcher, the byte bounded cell store and the
+ * disk cell cache work in the viewer.
+ */
+public class CacheStatisticsController
+{
+	final protected ViewerPanel viewer;
+	final protected CellPrefetcher prefetcher;
+	final protected MemoryBoundedCellCache cellCache;
+	final protected DiskCellCache diskCache;
+
+	// for keystroke actions
+	private final ActionMap ksActionMap = new ActionMap();
+	private final InputMap ksInputMap = new InputMap();
+	private final KeyStrokeAdder ksKeyStrokeAdder;
+
+	/**
+	 * @param viewer
+	 * @param prefetcher {@code null} if disabled
+	 * @param cellCache {@code null} if disabled
+	 * @param diskCache {@code null} if disabled
+	 * @param config
+	 * @param inputActionBindings
+	 */
+	public CacheStatisticsController(
+			final ViewerPanel viewer,
+			final CellPrefetcher prefetcher,
+			final MemoryBoundedCellCache cellCache,
+			final DiskCellCache diskCache,
+			final InputTriggerConfig config,
+			final InputActionBindings inputActionBindings )
+	{
+		this.viewer = viewer;
+		this.prefetcher = prefetcher;
+		this.cellCache = cellCache;
+		this.diskCache = diskCache;
+		ksKeyStrokeAdder = config.keyStrokeAdder( ksInputMap, "cache statistics" );
+
+		new ShowStatistics( "show cache statistics", "F8" ).register();
+
+		inputActionBindings.addActionMap( "cache statistics", ksActionMap );
+		inputActionBindings.addInputMap( "cache statistics", ksInputMap );
+	}
+
+	/**
+	 * @return a one line summary of the prefetcher, cell store and disk cache
+	 *         counters
+	 */
+	public String getStatistics()
+	{
+		final StringBuilder statistics = new StringBuilder();
+		if ( prefetcher != null )
+			statistics.append( String.format(
+					"prefetched %d cells, %d shown, %d expired, %d pending",
+					prefetcher.getNumRequested(),
+					prefetcher.getNumUsed(),
+					prefetcher.getNumExpired(),
+					prefetcher.getNumPending() ) );
+		if ( cellCache != null )
+		{
+			if ( statistics.length() > 0 )
+				statistics.append( "; " );
+			statistics.append( String.format(
+					"cell store %d/%d MB, %d hits, %d misses, %d evicted",
+					cellCache.getSizeInBytes() / 1024 / 1024,
+					cellCache.getMaxSizeInBytes() / 1024 / 1024,
+					cellCache.getHits(),
+					cellCache.getMisses(),
+					cellCache.getEvictions() ) );
+		}
+		if ( diskCache != null )
+		{
+			if ( statistics.length() > 0 )
+				statistics.append( "; " );
+			statistics.append( String.format(
+					"disk cache %d/%d MB, %d hits, %d misses, %d evicted",
+					diskCache.getSizeInBytes() / 1024 / 1024,
+					diskCache.getMaxSizeInBytes() / 1024 / 1024,
+					diskCache.getHits(),
+					diskCache.getMisses(),
+					diskCache.getEvictions() ) );
+		}
+		return statistics.length() > 0 ? statistics.toString() : "prefetcher, cell store and disk cache disabled";
+	}
+
+	private abstract class SelfRegisteringAction extends AbstractNamedAction
+	{
+		private final String[] defaultTriggers;
+
+		public SelfRegisteringAction( final String name, final String ... defaultTriggers )
+		{
+			super( name );
+			this.defaultTriggers = defaultTriggers;
+		}
+
+		public void register()
+		{
+			put( ksActionMap );
+			ksKeyStrokeAdder.put( name(), defaultTriggers );
+		}
+	}
+
+	private class ShowStatistics extends SelfRegisteringAction
+	{
+		public ShowStatistics( final String name, final String ... defaultTriggers )
+		{
+			super( name, defaultTriggers );
+		}
+
+		@Override
+		public void actionPerformed( final ActionEvent e )
+		{
+			viewer.showMessage( getStatistics() );
+		}
+	}
+}
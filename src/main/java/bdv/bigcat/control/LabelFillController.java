@@ -17,7 +17,6 @@ import bdv.img.AccessBoxRandomAccessible;
 import bdv.img.GrowingStoreRandomAccessibleSingletonAccess;
 import bdv.labels.labelset.Label;
 import bdv.labels.labelset.LabelMultisetType;
-import bdv.labels.labelset.Multiset;
 import bdv.util.Affine3DHelpers;
 import bdv.viewer.ViewerPanel;
 import net.imglib2.Localizable;
@@ -455,18 +454,7 @@ public class LabelFillController
 
 	public static long getBiggestLabel( final LabelMultisetType t )
 	{
-		int maxCount = Integer.MIN_VALUE;
-		long maxLabel = -1;
-		for ( final Multiset.Entry< Label > e : t.entrySet() )
-		{
-			final int c = e.getCount();
-			if ( c > maxCount )
-			{
-				maxLabel = e.getElement().id();
-				maxCount = c;
-			}
-		}
-		return maxLabel;
+		return t.argMax();
 	}
 
 }
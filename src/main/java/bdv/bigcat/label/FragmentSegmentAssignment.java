@@ -19,6 +19,7 @@ package bdv.bigcat.label;
 import java.lang.reflect.Type;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.ArrayUtils;
 
@@ -42,6 +43,7 @@ import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 /**
  *
@@ -50,6 +52,19 @@ import gnu.trove.map.hash.TLongObjectHashMap;
  */
 public class FragmentSegmentAssignment
 {
+	/**
+	 * Notified after fragments have been assigned to a different segment.
+	 */
+	public interface AssignmentListener
+	{
+		/**
+		 * @param fragmentIds
+		 *            the fragments whose segment has changed or {@code null}
+		 *            if the entire lookup has been replaced
+		 */
+		public void fragmentsReassigned( final long[] fragmentIds );
+	}
+
 	/**
 	 * Serializes {@link FragmentSegmentAssignment} into JSON of the form
 	 * <pre>
@@ -293,6 +308,11 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 
 	protected IdService idService;
 
+	final protected CopyOnWriteArrayList< AssignmentListener > listeners = new CopyOnWriteArrayList<>();
+
+	/* changes with every reassignment */
+	protected volatile long version = 0;
+
 	public FragmentSegmentAssignment( final IdService idService )
 	{
 		this.idService = idService;
@@ -320,12 +340,38 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		this.idService = idService;
 	}
 
+	public void addAssignmentListener( final AssignmentListener listener )
+	{
+		listeners.add( listener );
+	}
+
+	public void removeAssignmentListener( final AssignmentListener listener )
+	{
+		listeners.remove( listener );
+	}
+
+	/**
+	 * @return a counter that changes whenever fragments are reassigned
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	protected void notifyFragmentsReassigned( final long[] fragmentIds )
+	{
+		++version;
+		for ( final AssignmentListener listener : listeners )
+			listener.fragmentsReassigned( fragmentIds );
+	}
+
 	public void initLut( final TLongLongHashMap lut )
 	{
 		this.lut.clear();
 		this.ilut.clear();
 		this.lut.putAll( lut );
 		syncILut();
+		notifyFragmentsReassigned( null );
 
 		System.out.println( "Done" );
 	}
@@ -338,19 +384,115 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 	protected void syncILut()
 	{
 		ilut.clear();
+		final TLongObjectHashMap< TLongArrayList > segmentFragments = new TLongObjectHashMap< TLongArrayList >();
 		final TLongLongIterator lutIterator =  lut.iterator();
 		while ( lutIterator.hasNext() )
 		{
 			lutIterator.advance();
 			final long fragmentId = lutIterator.key();
 			final long segmentId = lutIterator.value();
-			long[] fragments = ilut.get( segmentId );
+			TLongArrayList fragments = segmentFragments.get( segmentId );
 			if ( fragments == null )
-				fragments = new long[]{ fragmentId };
-			else
-				fragments = ArrayUtils.add( fragments, fragmentId );
-			ilut.put( segmentId, fragments);
+			{
+				fragments = new TLongArrayList( 2 );
+				segmentFragments.put( segmentId, fragments );
+			}
+			fragments.add( fragmentId );
+		}
+		final TLongObjectIterator< TLongArrayList > it = segmentFragments.iterator();
+		while ( it.hasNext() )
+		{
+			it.advance();
+			ilut.put( it.key(), it.value().toArray() );
+		}
+	}
+
+	/**
+	 * Apply changed fragment &rarr; segment assignments to the forward and
+	 * inverse lookup without rebuilding them.  The inverse lookup of each
+	 * affected segment is updated only once.  If a fragment is listed more
+	 * than once, the last assignment wins.
+	 *
+	 * @param fragments
+	 * @param segments
+	 * @return the fragments whose segment has changed
+	 */
+	public long[] applyLutDelta( final long[] fragments, final long[] segments )
+	{
+		final int n = Math.min( fragments.length, segments.length );
+		final TLongLongHashMap delta = new TLongLongHashMap( Math.max( n, Constants.DEFAULT_CAPACITY ), Constants.DEFAULT_LOAD_FACTOR, Label.TRANSPARENT, Label.TRANSPARENT );
+		for ( int i = 0; i < n; ++i )
+			delta.put( fragments[ i ], segments[ i ] );
+
+		final TLongArrayList changed = new TLongArrayList();
+		synchronized ( this )
+		{
+			final TLongObjectHashMap< TLongHashSet > removed = new TLongObjectHashMap< TLongHashSet >();
+			final TLongObjectHashMap< TLongArrayList > added = new TLongObjectHashMap< TLongArrayList >();
+			final TLongLongIterator deltaIterator = delta.iterator();
+			while ( deltaIterator.hasNext() )
+			{
+				deltaIterator.advance();
+				final long fragmentId = deltaIterator.key();
+				final long segmentId = deltaIterator.value();
+				final long oldSegmentId = lut.put( fragmentId, segmentId );
+				if ( oldSegmentId == segmentId )
+					continue;
+
+				changed.add( fragmentId );
+				if ( oldSegmentId != lut.getNoEntryValue() )
+				{
+					TLongHashSet removedFragments = removed.get( oldSegmentId );
+					if ( removedFragments == null )
+					{
+						removedFragments = new TLongHashSet();
+						removed.put( oldSegmentId, removedFragments );
+					}
+					removedFragments.add( fragmentId );
+				}
+				TLongArrayList addedFragments = added.get( segmentId );
+				if ( addedFragments == null )
+				{
+					addedFragments = new TLongArrayList();
+					added.put( segmentId, addedFragments );
+				}
+				addedFragments.add( fragmentId );
+			}
+
+			final TLongObjectIterator< TLongHashSet > removedIterator = removed.iterator();
+			while ( removedIterator.hasNext() )
+			{
+				removedIterator.advance();
+				final long segmentId = removedIterator.key();
+				final TLongHashSet removedFragments = removedIterator.value();
+				final long[] oldFragments = ilut.get( segmentId );
+				if ( oldFragments == null )
+					continue;
+				final TLongArrayList remainingFragments = new TLongArrayList( oldFragments.length );
+				for ( final long fragmentId : oldFragments )
+					if ( !removedFragments.contains( fragmentId ) )
+						remainingFragments.add( fragmentId );
+				if ( remainingFragments.isEmpty() )
+					ilut.remove( segmentId );
+				else
+					ilut.put( segmentId, remainingFragments.toArray() );
+			}
+
+			final TLongObjectIterator< TLongArrayList > addedIterator = added.iterator();
+			while ( addedIterator.hasNext() )
+			{
+				addedIterator.advance();
+				final long segmentId = addedIterator.key();
+				final long[] oldFragments = ilut.get( segmentId );
+				final long[] addedFragments = addedIterator.value().toArray();
+				ilut.put( segmentId, oldFragments == null ? addedFragments : ArrayUtils.addAll( oldFragments, addedFragments ) );
+			}
 		}
+
+		final long[] changedFragments = changed.toArray();
+		if ( changedFragments.length > 0 )
+			notifyFragmentsReassigned( changedFragments );
+		return changedFragments;
 	}
 
 	/**
@@ -401,15 +543,17 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 		if ( segmentId1 == segmentId2 )
 			return;
 
+		final long[] fragments1;
 		synchronized ( this )
 		{
-			final long[] fragments1 = ilut.get( segmentId1 );
+			fragments1 = ilut.get( segmentId1 );
 			final long[] fragments2 = ilut.get( segmentId2 );
 			for ( final long fragmentId : fragments1 )
 				lut.put( fragmentId, segmentId2 );
 			ilut.put( segmentId2, ArrayUtils.addAll( fragments1, fragments2 ) );
 			ilut.remove( segmentId1 );
 		}
+		notifyFragmentsReassigned( fragments1 );
 	}
 
 	/**
@@ -424,17 +568,19 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 			return;
 
 		final long mergedSegmentId = idService.next();
+		final long[] fragments;
 		synchronized ( this )
 		{
 			final long[] fragments1 = ilut.get( segmentId1 );
 			final long[] fragments2 = ilut.get( segmentId2 );
-			final long[] fragments = ArrayUtils.addAll( fragments1, fragments2 );
+			fragments = ArrayUtils.addAll( fragments1, fragments2 );
 			for ( final long fragmentId : fragments )
 				lut.put( fragmentId, mergedSegmentId );
 			ilut.put( mergedSegmentId, fragments );
 			ilut.remove( segmentId1 );
 			ilut.remove( segmentId2 );
 		}
+		notifyFragmentsReassigned( fragments );
 	}
 
 	/**
@@ -458,6 +604,7 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 	 */
 	public void detachFragment( final long fragmentId )
 	{
+		final boolean detached;
 		synchronized ( this )
 		{
 			final long segmentId = lut.get( fragmentId );
@@ -470,7 +617,12 @@ A:					for ( final Entry< String, JsonElement > entry : ilutJsonEntrySet )
 				final long newSegmentId = fragmentId;
 				lut.put( fragmentId, newSegmentId );
 				ilut.put( newSegmentId, new long[]{ fragmentId } );
+				detached = true;
 			}
+			else
+				detached = false;
 		}
+		if ( detached )
+			notifyFragmentsReassigned( new long[]{ fragmentId } );
 	}
 }
@@ -49,20 +49,7 @@ public class LabelMultiSetIdPicker implements IdPicker
 
 	final static public long getMostSignificantId( final LabelMultisetType t )
 	{
-		long fragmentId = Label.TRANSPARENT;
-		long maxCount = 0;
-		for ( final Entry< Label > entry : t.entrySet() )
-		{
-			final Label label = entry.getElement();
-			final long count = entry.getCount();
-
-			if ( count > maxCount )
-			{
-				maxCount = count;
-				fragmentId = label.id();
-			}
-		}
-		return fragmentId;
+		return t.argMax();
 	}
 
 	@Override
@@ -0,0 +1,318 @@
+package bdv.bigcat.label;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+import bdv.labels.labelset.Label;
+import bdv.labels.labelset.LabelMultisetEntry;
+import bdv.labels.labelset.LabelMultisetEntryList;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Label multisets merged by segment under a {@link FragmentSegmentAssignment}.
+ *
+ * For each cell ({@link VolatileLabelMultisetArray}) of the fragment pyramid,
+ * the lists of all voxels are merged by segment when first requested. Each
+ * segment is represented by its fragment with the largest count, so that the
+ * merged lists can be colored by the same color streams as fragment
+ * lists. The active fragment is not merged into its segment such that it
+ * can still be highlighted, cells that contain the previous or the new
+ * active fragment are merged again when it changes. Cells are held weakly,
+ * i.e. as long as the fragment cell is cached.
+ *
+ * A block fragment index (fragment id &gt; cells that contain it) is built
+ * as cells are merged. When the assignment of fragments changes, only the
+ * cells that contain these fragments are invalidated and merged again on the
+ * next request.
+ *
+ * Each thread remembers the last cell it requested such that consecutive
+ * voxels of the same cell are served without locking.
+ */
+public class SegmentMultisetCache implements FragmentSegmentAssignment.AssignmentListener
+{
+	private static class SegmentCell
+	{
+		private volatile boolean valid = true;
+
+		/** list key &gt; offset in {@link #listData} */
+		private final TIntIntHashMap keyOffsets;
+
+		private final LongMappedAccessData listData;
+
+		/** sorted */
+		private final long[] fragments;
+
+		/** the fragment that was not merged into its segment */
+		private final long activeFragment;
+
+		public SegmentCell(
+				final TIntIntHashMap keyOffsets,
+				final LongMappedAccessData listData,
+				final long[] fragments,
+				final long activeFragment )
+		{
+			this.keyOffsets = keyOffsets;
+			this.listData = listData;
+			this.fragments = fragments;
+			this.activeFragment = activeFragment;
+		}
+
+		public boolean contains( final long fragmentId )
+		{
+			return Arrays.binarySearch( fragments, fragmentId ) >= 0;
+		}
+
+		/**
+		 * @return whether this cell looks the same if merged with
+		 *         {@code activeFragment} not merged into its segment
+		 */
+		public boolean isValidFor( final long activeFragment )
+		{
+			return valid && ( this.activeFragment == activeFragment || !( contains( this.activeFragment ) || contains( activeFragment ) ) );
+		}
+	}
+
+	private static class CellReference extends WeakReference< SegmentCell >
+	{
+		private final long[] fragments;
+
+		public CellReference( final SegmentCell cell, final ReferenceQueue< SegmentCell > queue )
+		{
+			super( cell, queue );
+			fragments = cell.fragments;
+		}
+	}
+
+	private static class LastCell
+	{
+		private final VolatileLabelMultisetArray array;
+
+		private final SegmentCell cell;
+
+		public LastCell( final VolatileLabelMultisetArray array, final SegmentCell cell )
+		{
+			this.array = array;
+			this.cell = cell;
+		}
+	}
+
+	final private FragmentSegmentAssignment assignment;
+
+	final private WeakHashMap< VolatileLabelMultisetArray, SegmentCell > cells = new WeakHashMap<>();
+
+	/** block fragment index */
+	final private TLongObjectHashMap< ArrayList< CellReference > > fragmentCells = new TLongObjectHashMap<>();
+
+	final private ReferenceQueue< SegmentCell > queue = new ReferenceQueue<>();
+
+	final private ThreadLocal< LastCell > lastCell = new ThreadLocal<>();
+
+	/** incremented on each invalidation to detect cells merged concurrently */
+	private long generation = 0;
+
+	public SegmentMultisetCache( final FragmentSegmentAssignment assignment )
+	{
+		this.assignment = assignment;
+		assignment.addAssignmentListener( this );
+	}
+
+	/**
+	 * Make {@code ref} refer to the segment list of voxel {@code index} in
+	 * {@code array}. The list must be treated as read-only.
+	 *
+	 * @param activeFragment
+	 *            a fragment that is not merged into its segment
+	 */
+	public void getValue(
+			final VolatileLabelMultisetArray array,
+			final int index,
+			final long activeFragment,
+			final LabelMultisetEntryList ref )
+	{
+		final SegmentCell cell = getCell( array, activeFragment );
+		ref.referToDataAt( cell.listData, cell.keyOffsets.get( array.listKey( index ) ) );
+	}
+
+	private SegmentCell getCell( final VolatileLabelMultisetArray array, final long activeFragment )
+	{
+		final LastCell last = lastCell.get();
+		if ( last != null && last.array == array && last.cell.isValidFor( activeFragment ) )
+			return last.cell;
+
+		final SegmentCell cell = findOrMergeCell( array, activeFragment );
+		lastCell.set( new LastCell( array, cell ) );
+		return cell;
+	}
+
+	private SegmentCell findOrMergeCell( final VolatileLabelMultisetArray array, final long activeFragment )
+	{
+		final long cellGeneration;
+		synchronized ( this )
+		{
+			final SegmentCell cell = cells.get( array );
+			if ( cell != null && cell.isValidFor( activeFragment ) )
+				return cell;
+			cellGeneration = generation;
+		}
+
+		final SegmentCell cell = mergeSegments( array, activeFragment );
+
+		synchronized ( this )
+		{
+			expungeStaleCells();
+			cells.put( array, cell );
+			final CellReference reference = new CellReference( cell, queue );
+			for ( final long fragmentId : cell.fragments )
+			{
+				ArrayList< CellReference > references = fragmentCells.get( fragmentId );
+				if ( references == null )
+				{
+					references = new ArrayList<>( 1 );
+					fragmentCells.put( fragmentId, references );
+				}
+				references.add( reference );
+			}
+			/* assignment changed while merging, use once and merge again */
+			if ( cellGeneration != generation )
+				cell.valid = false;
+		}
+		return cell;
+	}
+
+	private SegmentCell mergeSegments( final VolatileLabelMultisetArray array, final long activeFragment )
+	{
+		final TIntIntHashMap keyOffsets = new TIntIntHashMap( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1, -1 );
+		final TLongHashSet fragments = new TLongHashSet();
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList fragmentList = new LabelMultisetEntryList();
+		final LabelMultisetEntryList segmentList = new LabelMultisetEntryList( listData, 0 );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+
+		final TLongIntHashMap segmentCounts = new TLongIntHashMap();
+		final TLongLongHashMap segmentFragments = new TLongLongHashMap();
+		final TLongIntHashMap segmentFragmentCounts = new TLongIntHashMap();
+		final TLongIntHashMap representativeCounts = new TLongIntHashMap();
+
+		int nextListOffset = 0;
+		for ( int i = 0; i < array.getNumEntities(); ++i )
+		{
+			final int key = array.listKey( i );
+			if ( keyOffsets.containsKey( key ) )
+				continue;
+
+			segmentCounts.clear();
+			segmentFragments.clear();
+			segmentFragmentCounts.clear();
+			int activeFragmentCount = 0;
+			array.getValue( i, fragmentList );
+			for ( final LabelMultisetEntry e : fragmentList )
+			{
+				final long fragmentId = e.getId();
+				final int count = e.getCount();
+				fragments.add( fragmentId );
+				if ( fragmentId == activeFragment )
+				{
+					activeFragmentCount = count;
+					continue;
+				}
+				final long segmentId = Label.regular( fragmentId ) ? assignment.getSegment( fragmentId ) : fragmentId;
+				segmentCounts.adjustOrPutValue( segmentId, count, count );
+				if ( count > segmentFragmentCounts.get( segmentId ) )
+				{
+					segmentFragmentCounts.put( segmentId, count );
+					segmentFragments.put( segmentId, fragmentId );
+				}
+			}
+
+			representativeCounts.clear();
+			for ( final long segmentId : segmentCounts.keys() )
+				representativeCounts.put( segmentFragments.get( segmentId ), segmentCounts.get( segmentId ) );
+			if ( activeFragmentCount > 0 )
+				representativeCounts.put( activeFragment, activeFragmentCount );
+			final long[] representatives = representativeCounts.keys();
+			Arrays.sort( representatives );
+
+			segmentList.createListAt( listData, nextListOffset );
+			for ( final long fragmentId : representatives )
+			{
+				entry.setId( fragmentId );
+				entry.setCount( representativeCounts.get( fragmentId ) );
+				segmentList.add( entry );
+			}
+			keyOffsets.put( key, nextListOffset );
+			nextListOffset += segmentList.getSizeInBytes();
+		}
+
+		final long[] sortedFragments = fragments.toArray();
+		Arrays.sort( sortedFragments );
+		return new SegmentCell( keyOffsets, listData, sortedFragments, activeFragment );
+	}
+
+	private void expungeStaleCells()
+	{
+		for ( Reference< ? extends SegmentCell > reference = queue.poll(); reference != null; reference = queue.poll() )
+		{
+			for ( final long fragmentId : ( ( CellReference ) reference ).fragments )
+			{
+				final ArrayList< CellReference > references = fragmentCells.get( fragmentId );
+				if ( references != null )
+				{
+					references.remove( reference );
+					if ( references.isEmpty() )
+						fragmentCells.remove( fragmentId );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invalidate the cells that contain any of the reassigned fragments.
+	 */
+	@Override
+	public synchronized void fragmentsReassigned( final long[] fragmentIds )
+	{
+		++generation;
+		if ( fragmentIds == null )
+		{
+			clear();
+			return;
+		}
+		for ( final long fragmentId : fragmentIds )
+		{
+			final ArrayList< CellReference > references = fragmentCells.remove( fragmentId );
+			if ( references != null )
+			{
+				for ( final CellReference reference : references )
+				{
+					final SegmentCell cell = reference.get();
+					if ( cell != null )
+						cell.valid = false;
+				}
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		for ( final SegmentCell cell : cells.values() )
+			cell.valid = false;
+		cells.clear();
+		fragmentCells.clear();
+	}
+
+	public synchronized int getNumCells()
+	{
+		return cells.size();
+	}
+}
@@ -1,5 +1,6 @@
 package bdv.bigcat.ui;
 
+import bdv.bigcat.label.SegmentMultisetCache;
 import bdv.labels.labelset.VolatileLabelMultisetType;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
@@ -16,6 +17,8 @@ public class ARGBConvertedLabelPairSource extends AbstractARGBConvertedLabelsSou
 	final private RandomAccessiblePair< VolatileLabelMultisetType, LongType > source;
 	final private Interval interval;
 	final private AffineTransform3D[] sourceTransforms;
+	final private SegmentMultisetCache segmentCache;
+	final private int segmentLevel;
 
 	public ARGBConvertedLabelPairSource(
 			final int setupId,
@@ -23,16 +26,42 @@ public class ARGBConvertedLabelPairSource extends AbstractARGBConvertedLabelsSou
 			final Interval interval,
 			final AffineTransform3D[] sourceTransforms,
 			final ARGBStream argbStream )
+	{
+		this( setupId, source, interval, sourceTransforms, argbStream, null, 0 );
+	}
+
+	/**
+	 * @param segmentCache
+	 *            segment merged multisets, {@code null} to always convert
+	 *            fragments
+	 * @param segmentLevel
+	 *            first mipmap level that is converted from segment merged
+	 *            multisets
+	 */
+	public ARGBConvertedLabelPairSource(
+			final int setupId,
+			final RandomAccessiblePair< VolatileLabelMultisetType, LongType > source,
+			final Interval interval,
+			final AffineTransform3D[] sourceTransforms,
+			final ARGBStream argbStream,
+			final SegmentMultisetCache segmentCache,
+			final int segmentLevel )
 	{
 		super( setupId, argbStream );
 		this.source = source;
 		this.interval = interval;
 		this.sourceTransforms = sourceTransforms;
+		this.segmentCache = segmentCache;
+		this.segmentLevel = segmentLevel;
 	}
 
 	@Override
 	public RandomAccessibleInterval< VolatileARGBType > getSource( final int t, final int level )
 	{
+		final VolatileLabelMultisetARGBConverter labelConverter =
+				segmentCache == null || level < segmentLevel ?
+						new VolatileLabelMultisetARGBConverter( argbStream ) :
+						new SegmentLabelMultisetARGBConverter( argbStream, segmentCache );
 		return Converters.convert(
 				// cast necessary for java-8-openjdk-amd64, version 1.8.0_66-internal, vendor: Oracle Corporation
 				// to prevent
@@ -41,7 +70,7 @@ public class ARGBConvertedLabelPairSource extends AbstractARGBConvertedLabelsSou
 				// [ERROR] method <A,B>convert(net.imglib2.IterableInterval<A>,net.imglib2.converter.Converter<? super A,? super B>,B) in net.imglib2.converter.Converters match
 				( RandomAccessibleInterval< Pair< VolatileLabelMultisetType, LongType > > )Views.interval( source, interval ),
 				//Views.interval( source, interval ),
-				new PairVolatileLabelMultisetLongARGBConverter( argbStream ),
+				new PairVolatileLabelMultisetLongARGBConverter( argbStream, labelConverter ),
 				new VolatileARGBType() );
 	}
 
@@ -1,6 +1,7 @@
 package bdv.bigcat.ui;
 
 import bdv.AbstractViewerSetupImgLoader;
+import bdv.bigcat.label.SegmentMultisetCache;
 import bdv.labels.labelset.LabelMultisetType;
 import bdv.labels.labelset.VolatileLabelMultisetType;
 import net.imglib2.RandomAccessibleInterval;
@@ -12,13 +13,37 @@ public class ARGBConvertedLabelsSource extends AbstractARGBConvertedLabelsSource
 {
 	final private AbstractViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > multisetImageLoader;
 
+	final private SegmentMultisetCache segmentCache;
+
+	final private int segmentLevel;
+
 	public ARGBConvertedLabelsSource(
 			final int setupId,
 			final AbstractViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > multisetImageLoader,
 			final ARGBStream argStream )
+	{
+		this( setupId, multisetImageLoader, argStream, null, 0 );
+	}
+
+	/**
+	 * @param segmentCache
+	 *            segment merged multisets, {@code null} to always convert
+	 *            fragments
+	 * @param segmentLevel
+	 *            first mipmap level that is converted from segment merged
+	 *            multisets
+	 */
+	public ARGBConvertedLabelsSource(
+			final int setupId,
+			final AbstractViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > multisetImageLoader,
+			final ARGBStream argStream,
+			final SegmentMultisetCache segmentCache,
+			final int segmentLevel )
 	{
 		super( setupId, argStream );
 		this.multisetImageLoader = multisetImageLoader;
+		this.segmentCache = segmentCache;
+		this.segmentLevel = segmentLevel;
 	}
 
 	final public AbstractViewerSetupImgLoader< LabelMultisetType, VolatileLabelMultisetType > getLoader()
@@ -29,9 +54,13 @@ public class ARGBConvertedLabelsSource extends AbstractARGBConvertedLabelsSource
 	@Override
 	public RandomAccessibleInterval< VolatileARGBType > getSource( final int t, final int level )
 	{
+		final VolatileLabelMultisetARGBConverter converter =
+				segmentCache == null || level < segmentLevel ?
+						new VolatileLabelMultisetARGBConverter( argbStream ) :
+						new SegmentLabelMultisetARGBConverter( argbStream, segmentCache );
 		return Converters.convert(
 				multisetImageLoader.getVolatileImage( t, level ),
-				new VolatileLabelMultisetARGBConverter( argbStream ),
+				converter,
 				new VolatileARGBType() );
 	}
 
@@ -52,6 +52,9 @@ abstract public class AbstractARGBStream implements ARGBStream
 			Constants.DEFAULT_LOAD_FACTOR,
 			Label.TRANSPARENT,
 			0 );
+	/* changes whenever the caches are cleared */
+	protected volatile long version = 0;
+
 	protected TLongIntHashMap segmentARGBCache = new TLongIntHashMap(
 			Constants.DEFAULT_CAPACITY ,
 			Constants.DEFAULT_LOAD_FACTOR,
@@ -138,9 +141,23 @@ abstract public class AbstractARGBStream implements ARGBStream
 		clearCache();
 	}
 
+	public long getActiveFragment()
+	{
+		return activeFragment;
+	}
+
+	/**
+	 * @return a counter that changes whenever colors change
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
 	public void clearCache()
 	{
 		fragmentARGBCache.clear();
 		segmentARGBCache.clear();
+		++version;
 	}
 }
\ No newline at end of file
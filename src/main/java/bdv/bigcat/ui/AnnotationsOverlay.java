@@ -8,8 +8,12 @@ import java.awt.Graphics2D;
 import java.awt.Polygon;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import bdv.bigcat.annotation.Annotation;
@@ -37,6 +41,22 @@ public class AnnotationsOverlay implements OverlayRenderer
 		this.viewer = viewer;
 		this.annotations = annotations;
 		this.controller = controller;
+
+		// annotations may be loaded in the background after they were queried
+		annotations.addAnnotationsListener( new Annotations.AnnotationsListener()
+		{
+			@Override
+			public void onAnnotationAdded( final Annotation a )
+			{
+				viewer.getDisplay().repaint();
+			}
+
+			@Override
+			public void onAnnotationRemoved( final Annotation a )
+			{
+				viewer.getDisplay().repaint();
+			}
+		} );
 	}
 	
 	public void setVisible( final boolean visible )
@@ -58,6 +78,12 @@ public class AnnotationsOverlay implements OverlayRenderer
 		return height;
 	}
 
+	/**
+	 * Draw the annotations near the current plane.  The rendered overlay is
+	 * cached and reused as long as the viewer transform, canvas size,
+	 * selection, and annotations do not change, e.g. while only the label
+	 * layer is repainted.
+	 */
 	@Override
 	public void drawOverlays( Graphics g )
 	{
@@ -68,114 +94,171 @@ public class AnnotationsOverlay implements OverlayRenderer
 		{
 			viewer.getState().getViewerTransform( viewerTransform );
 		}
-		
+
+		final Annotation selected = controller.getSelectedAnnotation();
+		final double[] transform = viewerTransform.getRowPackedCopy();
+
+		if (cache == null ||
+				cache.getWidth() != width ||
+				cache.getHeight() != height ||
+				selected != cachedSelection ||
+				annotations.getModificationCount() != cachedModificationCount ||
+				!Arrays.equals(transform, cachedTransform)) {
+
+			render(selected);
+			cachedSelection = selected;
+			cachedTransform = transform;
+		}
+
+		g.drawImage(cache, 0, 0, null);
+	}
+
+	private void render(final Annotation selected) {
+
+		if (cache == null || cache.getWidth() != width || cache.getHeight() != height)
+			cache = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+
+		final Graphics2D g2d = cache.createGraphics();
+		g2d.setComposite(AlphaComposite.Clear);
+		g2d.fillRect(0, 0, cache.getWidth(), cache.getHeight());
+
 		AffineTransform3D invTransform = viewerTransform.inverse();
 		
-		HyperPlane left   = new HyperPlane(1, 0, 0, 0);
-		HyperPlane right  = new HyperPlane(-1, 0, 0, -width);
-		HyperPlane bottom = new HyperPlane(0, 1, 0, 0);
-		HyperPlane top    = new HyperPlane(0, -1, 0, -height);
+		HyperPlane left   = new HyperPlane(1, 0, 0, -radius);
+		HyperPlane right  = new HyperPlane(-1, 0, 0, -width - radius);
+		HyperPlane bottom = new HyperPlane(0, 1, 0, -radius);
+		HyperPlane top    = new HyperPlane(0, -1, 0, -height - radius);
 		HyperPlane front  = new HyperPlane(0, 0, -1, -visibilityThreshold);
 		HyperPlane back   = new HyperPlane(0, 0, 1, -visibilityThreshold);
 		
 		ConvexPolytope visibilityClip = ConvexPolytope.transform(new ConvexPolytope(left, right, bottom, top, front, back), invTransform);
 		
+		// read before the query such that annotations loaded in the background
+		// while querying are rendered with the next paint
+		cachedModificationCount = annotations.getModificationCount();
+
 		List< Annotation > visibleAnnotations = annotations.getLocalAnnotations(visibilityClip);
 
-		Graphics2D g2d = (Graphics2D)g;
+		if (visibleAnnotations.size() > maxIndividualAnnotations)
+			renderDensity(g2d, visibleAnnotations, selected);
+		else
+			renderIndividual(g2d, visibleAnnotations, selected);
+
+		g2d.dispose();
+	}
+
+	private float alpha(final double z) {
+
+		return Math.max(0, (float)1.0 - (float)zAlphaScale*Math.abs((float)z));
+	}
+
+	private void setAlpha(final Graphics2D g2d, final float alpha) {
+
+		g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+	}
+
+	private static int type(final Annotation a) {
+
+		return a instanceof Synapse ? 0 : a instanceof PreSynapticSite ? 1 : 2;
+	}
+
+	private void drawSite(final Graphics2D g2d, final double x, final double y, final Color color, final boolean isSelected) {
+
+		g2d.setStroke(siteStroke);
+		if (isSelected)
+			g2d.setPaint(color.brighter().brighter());
+		else
+			g2d.setPaint(color);
+		g2d.fillOval(
+				(int)Math.round(x - radius),
+				(int)Math.round(y - radius),
+				2 * radius + 1,
+				2 * radius + 1 );
+		g2d.setPaint(color.darker());
+		g2d.drawOval(
+				(int)Math.round(x - radius),
+				(int)Math.round(y - radius),
+				2 * radius + 1,
+				2 * radius + 1 );
+	}
+
+	/**
+	 * Draw each annotation.  Annotations that are almost transparent
+	 * because of their distance to the plane are skipped, as are
+	 * annotations that would be drawn on top of an equal one at almost the
+	 * same screen position.
+	 */
+	private void renderIndividual(final Graphics2D g2d, final List< Annotation > visibleAnnotations, final Annotation selected) {
+
+		final int n = visibleAnnotations.size();
+		final double[] x = new double[n];
+		final double[] y = new double[n];
+		final float[] alpha = new float[n];
+		final boolean[] culled = new boolean[n];
+
+		final HashSet< Long > occupied = new HashSet< Long >();
+		final RealPoint displayPosition = new RealPoint(3);
+		for (int i = 0; i < n; ++i) {
+			final Annotation a = visibleAnnotations.get(i);
+			viewerTransform.apply(a.getPosition(), displayPosition);
+			x[i] = displayPosition.getDoublePosition(0);
+			y[i] = displayPosition.getDoublePosition(1);
+			alpha[i] = alpha(displayPosition.getDoublePosition(2));
+			if (alpha[i] < minAlpha) {
+				culled[i] = true;
+				continue;
+			}
+			// keep what is drawn differently from equal annotations
+			if (a == selected || a instanceof PreSynapticSite && ((PreSynapticSite)a).getPartner() != null)
+				continue;
+			final long bin =
+					(((long)Math.floor(x[i] / occlusionBinSize) & 0xfffff) << 44) |
+					(((long)Math.floor(y[i] / occlusionBinSize) & 0xfffff) << 24) |
+					((long)(alpha[i] * 15) << 4) |
+					type(a);
+			culled[i] = !occupied.add(bin);
+		}
+
 		class AnnotationRenderer extends AnnotationVisitor {
 			
 			private final int pass;
+			private int i;
 			
 			AnnotationRenderer(int pass) {
 				this.pass = pass;
 			}
 			
-			private void setAlpha(double z) {
-				
-				float zAlpha = Math.max(0, (float)1.0 - (float)zAlphaScale*Math.abs((float)z));
-				g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, zAlpha));
-			}
-			
 			@Override
 			public void visit(Annotation a) {
 				
-				if (pass != 2)
+				if (pass != 2 || a.getComment() == null || a.getComment().isEmpty() || n > maxCommentedAnnotations)
 					return;
 				
-				RealPoint displayPosition = new RealPoint(3);
-				viewerTransform.apply(a.getPosition(), displayPosition);
-
-				double x = displayPosition.getDoublePosition(0);
-				double y = displayPosition.getDoublePosition(1);
-				double z = displayPosition.getDoublePosition(2);
-				
 				g2d.setPaint(Color.white);
-				setAlpha(z);
-				g2d.drawString(a.getComment(), (int)x, (int)y);
+				setAlpha(g2d, alpha[i]);
+				g2d.drawString(a.getComment(), (int)x[i], (int)y[i]);
 			}
 			
 			@Override
 			public void visit(Synapse s) {
 				
-				RealPoint displayPosition = new RealPoint(3);
-				viewerTransform.apply(s.getPosition(), displayPosition);
+				if (pass != 1)
+					return;
 
-					
-				double sx = displayPosition.getDoublePosition(0);
-				double sy = displayPosition.getDoublePosition(1);
-				double sz = displayPosition.getDoublePosition(2);
-				
-				setAlpha(sz);
-
-				if (pass == 1) {
-
-					final int radius = 10;
-					if (s == controller.getSelectedAnnotation())
-						g2d.setPaint(synapseColor.brighter().brighter());
-					else
-						g2d.setPaint(synapseColor);
-					g2d.setStroke(new BasicStroke(2.0f));
-					g2d.fillOval(
-							(int)Math.round(sx - radius),
-							(int)Math.round(sy - radius),
-							2 * radius + 1,
-							2 * radius + 1 );
-					g2d.setPaint(synapseColor.darker());
-					g2d.drawOval(
-							(int)Math.round(sx - radius),
-							(int)Math.round(sy - radius),
-							2 * radius + 1,
-							2 * radius + 1 );
-				}
+				setAlpha(g2d, alpha[i]);
+				drawSite(g2d, x[i], y[i], synapseColor, s == selected);
 			}
 
 			@Override
 			public void visit(PreSynapticSite synapticSite) {
 				
-				RealPoint displayPosition = new RealPoint(3);
-				viewerTransform.apply(synapticSite.getPosition(), displayPosition);
-
-				setAlpha(displayPosition.getDoublePosition(2));
-
-				final int radius = 10;
-				if (synapticSite == controller.getSelectedAnnotation())
-					g2d.setPaint(preSynapticSiteColor.brighter().brighter());
-				else
-					g2d.setPaint(preSynapticSiteColor);
-				g2d.setStroke(new BasicStroke(2.0f));
-				g2d.fillOval(
-						(int)Math.round(displayPosition.getDoublePosition(0) - radius),
-						(int)Math.round(displayPosition.getDoublePosition(1) - radius),
-						2 * radius + 1,
-						2 * radius + 1 );
-				g2d.setPaint(preSynapticSiteColor.darker());
-				g2d.drawOval(
-						(int)Math.round(displayPosition.getDoublePosition(0) - radius),
-						(int)Math.round(displayPosition.getDoublePosition(1) - radius),
-						2 * radius + 1,
-						2 * radius + 1 );
-			
+				if (pass == 2)
+					return;
+
+				setAlpha(g2d, alpha[i]);
+
+				if (pass == 1)
+					drawSite(g2d, x[i], y[i], preSynapticSiteColor, synapticSite == selected);
 
 				if (synapticSite.getPartner() != null) {
 
@@ -185,7 +268,7 @@ public class AnnotationsOverlay implements OverlayRenderer
 					double px = siteDisplayPosition.getDoublePosition(0);
 					double py = siteDisplayPosition.getDoublePosition(1);
 					
-					drawArrow(g2d, displayPosition.getDoublePosition(0), displayPosition.getDoublePosition(1), px, py, pass);
+					drawArrow(g2d, x[i], y[i], px, py, pass);
 				}
 			}
 
@@ -195,35 +278,80 @@ public class AnnotationsOverlay implements OverlayRenderer
 				if (pass != 0)
 					return;
 				
-				RealPoint displayPosition = new RealPoint(3);
-				viewerTransform.apply(synapticSite.getPosition(), displayPosition);
-
-				setAlpha(displayPosition.getDoublePosition(2));
-
-				final int radius = 10;
-				if (synapticSite == controller.getSelectedAnnotation())
-					g2d.setPaint(postSynapticSiteColor.brighter().brighter());
-				else
-					g2d.setPaint(postSynapticSiteColor);
-				g2d.setStroke(new BasicStroke(2.0f));
-				g2d.fillOval(
-						Math.round(displayPosition.getFloatPosition(0) - radius),
-						Math.round(displayPosition.getFloatPosition(1) - radius),
-						2 * radius + 1,
-						2 * radius + 1 );
-				g2d.setPaint(postSynapticSiteColor.darker());
-				g2d.drawOval(
-						Math.round(displayPosition.getFloatPosition(0) - radius),
-						Math.round(displayPosition.getFloatPosition(1) - radius),
-						2 * radius + 1,
-						2 * radius + 1 );
+				setAlpha(g2d, alpha[i]);
+				drawSite(g2d, x[i], y[i], postSynapticSiteColor, synapticSite == selected);
 			}
 		}
 		
 		for (int pass = 0; pass < 3; pass++) {
 			AnnotationRenderer renderer = new AnnotationRenderer(pass);
-			for (Annotation a : visibleAnnotations)
-				a.accept(renderer);
+			for (renderer.i = 0; renderer.i < n; ++renderer.i)
+				if (!culled[renderer.i])
+					visibleAnnotations.get(renderer.i).accept(renderer);
+		}
+	}
+
+	/**
+	 * Aggregate annotations into screen cells of the size of one annotation
+	 * and draw a glyph per cell, colored by the most frequent type and
+	 * sized by the number of annotations.  The selected annotation is drawn
+	 * on top.
+	 */
+	private void renderDensity(final Graphics2D g2d, final List< Annotation > visibleAnnotations, final Annotation selected) {
+
+		final int cellSize = 2 * radius + 1;
+		final int cellsX = width / cellSize + 3;
+		final int cellsY = height / cellSize + 3;
+
+		// counts of synapses, pre-, and postsynaptic sites, and the largest alpha per cell
+		final int[][] counts = new int[3][cellsX * cellsY];
+		final float[] cellAlpha = new float[cellsX * cellsY];
+
+		final RealPoint displayPosition = new RealPoint(3);
+		final double[] selectedPosition = new double[3];
+		boolean selectedVisible = false;
+		for (final Annotation a : visibleAnnotations) {
+			viewerTransform.apply(a.getPosition(), displayPosition);
+			if (a == selected) {
+				displayPosition.localize(selectedPosition);
+				selectedVisible = true;
+			}
+			final float alpha = alpha(displayPosition.getDoublePosition(2));
+			if (alpha < minAlpha)
+				continue;
+			final int cx = Math.max(0, Math.min(cellsX - 1, (int)Math.floor(displayPosition.getDoublePosition(0) / cellSize) + 1));
+			final int cy = Math.max(0, Math.min(cellsY - 1, (int)Math.floor(displayPosition.getDoublePosition(1) / cellSize) + 1));
+			final int cell = cy * cellsX + cx;
+			++counts[type(a)][cell];
+			cellAlpha[cell] = Math.max(cellAlpha[cell], alpha);
+		}
+
+		for (int cy = 0; cy < cellsY; ++cy) {
+			for (int cx = 0; cx < cellsX; ++cx) {
+				final int cell = cy * cellsX + cx;
+				int count = 0;
+				int type = 0;
+				for (int t = 0; t < 3; ++t) {
+					count += counts[t][cell];
+					if (counts[t][cell] > counts[type][cell])
+						type = t;
+				}
+				if (count == 0)
+					continue;
+
+				// grows from half to full size with the number of annotations
+				final double r = Math.min(radius, radius * (0.5 + 0.125 * Math.log(count) / Math.log(2)));
+				final double x = (cx - 0.5) * cellSize;
+				final double y = (cy - 0.5) * cellSize;
+				setAlpha(g2d, cellAlpha[cell]);
+				g2d.setPaint(colors[type]);
+				g2d.fill(new Ellipse2D.Double(x - r, y - r, 2 * r, 2 * r));
+			}
+		}
+
+		if (selectedVisible) {
+			setAlpha(g2d, alpha(selectedPosition[2]));
+			drawSite(g2d, selectedPosition[0], selectedPosition[1], colors[type(selected)], true);
 		}
 	}
 
@@ -272,8 +400,21 @@ public class AnnotationsOverlay implements OverlayRenderer
 	private int width, height;
 	final private int visibilityThreshold = 40; // show annotations closer than this to currently visible plane
 	final private double zAlphaScale = 1.0/visibilityThreshold;
+	final private int radius = 10;
+	final private float minAlpha = 1.0f/32; // skip annotations that are almost transparent
+	final private double occlusionBinSize = 2.0; // draw only one of equal annotations that are closer than this in pixels
+	final private int maxIndividualAnnotations = 2000; // aggregate into density glyphs if more annotations are visible
+	final private int maxCommentedAnnotations = 500; // draw comments only if at most this many annotations are visible
+
+	// overlay as rendered for the last transform, selection, and modification count
+	private BufferedImage cache = null;
+	private double[] cachedTransform = null;
+	private Annotation cachedSelection = null;
+	private long cachedModificationCount = -1;
 	
 	final static private Color synapseColor = new Color(155, 13, 75);
 	final static private Color preSynapticSiteColor = new Color(75, 13, 155);
 	final static private Color postSynapticSiteColor = new Color(75, 155, 13);
+	final static private Color[] colors = {synapseColor, preSynapticSiteColor, postSynapticSiteColor};
+	final static private BasicStroke siteStroke = new BasicStroke(2.0f);
 }
@@ -4,10 +4,15 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -16,7 +21,11 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
+import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TableModelEvent;
@@ -31,6 +40,7 @@ import bdv.bigcat.annotation.PreSynapticSite;
 import bdv.bigcat.annotation.Synapse;
 import bdv.bigcat.control.AnnotationsController;
 import bdv.bigcat.util.Selection;
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.imglib2.RealPoint;
 
 public class AnnotationsWindow extends JFrame implements
@@ -49,6 +59,16 @@ public class AnnotationsWindow extends JFrame implements
 
 	private Boolean editingSelection = false;
 
+	// rows are replaced, the table selection is restored afterwards
+	private boolean updatingRows = false;
+
+	/**
+	 * Table model that holds only the ids of the rows and reads the
+	 * annotations for the visible cells from {@link Annotations} on demand.
+	 * The rows are filtered and sorted on a background thread whenever
+	 * annotations are added or removed or the filter or sort order change,
+	 * and replaced on the event dispatch thread.
+	 */
 	class AnnotationsTableModel extends AbstractTableModel implements
 			Annotations.AnnotationsListener {
 
@@ -63,28 +83,152 @@ public class AnnotationsWindow extends JFrame implements
 		public final String[] ColumnNames = { "id", "type", "x", "y", "z",
 				"comment" };
 
-		public List<Long> ids;
-		public Map<Long, Integer> idsToRow = new HashMap<Long, Integer>();
+		// ids of the rows and their inverse, accessed on the EDT only
+		private long[] ids = new long[0];
+		private final TLongIntHashMap idsToRow = new TLongIntHashMap(10, 0.5f, -1, -1);
+
+		private volatile String filter = "";
+		private volatile int sortColumn = -1;
+		private volatile boolean sortAscending = true;
+
+		private final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
+			final Thread thread = new Thread(r, "annotations-table");
+			thread.setDaemon(true);
+			return thread;
+		});
+		private final AtomicBoolean updatePending = new AtomicBoolean(false);
 
 		public AnnotationsTableModel() {
 
 			annotations.addAnnotationsListener(this);
-			ids = new LinkedList<Long>();
-			for (final Annotation a : annotations.getAnnotations())
-				ids.add(a.getId());
-			updateTableFromIds();
+			update();
 		}
 
 		public long getIdFromRow(final int row) {
 
-			return ids.get(row);
+			return ids[row];
 		}
 
+		/**
+		 * @return the row of an annotation or -1 if it is filtered out or
+		 * not in the table yet
+		 */
 		public int getRowFromId(final long id) {
 
 			return idsToRow.get(id);
 		}
 
+		/**
+		 * Show only annotations whose id, type, or comment contain the given
+		 * string, ignoring case.
+		 */
+		public void setFilter(final String filter) {
+
+			this.filter = filter.toLowerCase();
+			update();
+		}
+
+		/**
+		 * Sort by a column, reverse the order if already sorted by it.
+		 */
+		public void sortBy(final int column) {
+
+			if (column == sortColumn)
+				sortAscending = !sortAscending;
+			else {
+				sortColumn = column;
+				sortAscending = true;
+			}
+			update();
+		}
+
+		/**
+		 * Filter and sort the rows in the background.  Requests that arrive
+		 * before a pending update has started are merged into it.
+		 */
+		private void update() {
+
+			if (!updatePending.compareAndSet(false, true))
+				return;
+
+			exec.submit(() -> {
+				updatePending.set(false);
+				final String filter = this.filter;
+				final int sortColumn = this.sortColumn;
+				final boolean sortAscending = this.sortAscending;
+
+				final List<Annotation> rows;
+				if (filter.isEmpty())
+					rows = annotations.getSnapshot();
+				else {
+					rows = new ArrayList<Annotation>();
+					for (final Annotation a : annotations.getSnapshot())
+						if (matches(a, filter))
+							rows.add(a);
+				}
+
+				if (sortColumn >= 0) {
+					final Comparator<Annotation> comparator = comparator(sortColumn);
+					Collections.sort(rows, sortAscending ? comparator : comparator.reversed());
+				}
+
+				final long[] newIds = new long[rows.size()];
+				for (int i = 0; i < newIds.length; ++i)
+					newIds[i] = rows.get(i).getId();
+
+				SwingUtilities.invokeLater(() -> setIds(newIds));
+			});
+		}
+
+		private void setIds(final long[] newIds) {
+
+			// keep the selection across the update
+			final int[] selectedRows = table == null ? new int[0] : table.getSelectedRows();
+			final long[] selectedIds = new long[selectedRows.length];
+			for (int i = 0; i < selectedRows.length; ++i)
+				selectedIds[i] = ids[selectedRows[i]];
+
+			ids = newIds;
+			idsToRow.clear();
+			for (int row = 0; row < ids.length; ++row)
+				idsToRow.put(ids[row], row);
+
+			updatingRows = true;
+			fireTableDataChanged();
+			for (final long id : selectedIds) {
+				final int row = getRowFromId(id);
+				if (row >= 0)
+					table.addRowSelectionInterval(row, row);
+			}
+			updatingRows = false;
+		}
+
+		private boolean matches(final Annotation a, final String filter) {
+
+			return
+					Long.toString(a.getId()).contains(filter) ||
+					toTypeString(a).contains(filter) ||
+					(a.getComment() != null && a.getComment().toLowerCase().contains(filter));
+		}
+
+		private Comparator<Annotation> comparator(final int column) {
+
+			switch (column) {
+
+			case TYPE_INDEX:
+				return Comparator.comparing(a -> toTypeString(a));
+			case LOCATION_X_INDEX:
+			case LOCATION_Y_INDEX:
+			case LOCATION_Z_INDEX:
+				final int d = column - LOCATION_X_INDEX;
+				return Comparator.comparingDouble(a -> a.getPosition().getDoublePosition(d));
+			case COMMENT_INDEX:
+				return Comparator.comparing(a -> a.getComment() == null ? "" : a.getComment());
+			default:
+				return Comparator.comparingLong(a -> a.getId());
+			}
+		}
+
 		@Override
 		public String getColumnName(final int column) {
 
@@ -122,13 +266,17 @@ public class AnnotationsWindow extends JFrame implements
 		@Override
 		public Object getValueAt(final int row, final int column) {
 
-			final Long id = ids.get(row);
+			final long id = ids[row];
 
 			if (column == ID_INDEX)
 				return id;
 
 			final Annotation a = annotations.getById(id);
 
+			// removed, the rows are being updated
+			if (a == null)
+				return null;
+
 			switch (column) {
 
 			case TYPE_INDEX:
@@ -152,10 +300,12 @@ public class AnnotationsWindow extends JFrame implements
 			if (column != COMMENT_INDEX)
 				return;
 
-			final Long id = ids.get(row);
-			final Annotation a = annotations.getById(id);
+			final Annotation a = annotations.getById(ids[row]);
+			if (a == null)
+				return;
 
 			a.setComment((String) value);
+			annotations.markModified();
 
 			fireTableCellUpdated(row, column);
 		}
@@ -163,7 +313,7 @@ public class AnnotationsWindow extends JFrame implements
 		@Override
 		public int getRowCount() {
 
-			return ids.size();
+			return ids.length;
 		}
 
 		@Override
@@ -175,27 +325,13 @@ public class AnnotationsWindow extends JFrame implements
 		@Override
 		public void onAnnotationAdded(final Annotation a) {
 
-			ids.add(a.getId());
-			updateTableFromIds();
+			update();
 		}
 
 		@Override
 		public void onAnnotationRemoved(final Annotation a) {
 
-			ids.remove(a.getId());
-			updateTableFromIds();
-		}
-
-		private void updateTableFromIds() {
-
-			int row = 0;
-			idsToRow.clear();
-			for (final long id : ids) {
-				idsToRow.put(id, row);
-				row++;
-			}
-
-			fireTableDataChanged();
+			update();
 		}
 	}
 
@@ -237,6 +373,14 @@ public class AnnotationsWindow extends JFrame implements
 		tableModel = new AnnotationsTableModel();
 		table = new BigCatTable(tableModel);
 		table.getSelectionModel().addListSelectionListener(this);
+		table.getTableHeader().addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(final MouseEvent e) {
+				final int column = table.columnAtPoint(e.getPoint());
+				if (column >= 0)
+					tableModel.sortBy(table.convertColumnIndexToModel(column));
+			}
+		});
 		final JScrollPane scrollPane = new JScrollPane(table);
 		return scrollPane;
 	}
@@ -277,6 +421,32 @@ public class AnnotationsWindow extends JFrame implements
 		gridBag.setConstraints(numItems, c);
 		panel.add(numItems);
 
+		final JLabel filterLabel = new JLabel(" filter: ");
+		c.gridx = 2;
+		gridBag.setConstraints(filterLabel, c);
+		panel.add(filterLabel);
+
+		final JTextField filterField = new JTextField(15);
+		filterField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(final DocumentEvent e) {
+				tableModel.setFilter(filterField.getText());
+			}
+			@Override
+			public void removeUpdate(final DocumentEvent e) {
+				tableModel.setFilter(filterField.getText());
+			}
+			@Override
+			public void changedUpdate(final DocumentEvent e) {
+				tableModel.setFilter(filterField.getText());
+			}
+		});
+		c.gridx = 3;
+		c.weightx = 1.0;
+		c.fill = GridBagConstraints.HORIZONTAL;
+		gridBag.setConstraints(filterField, c);
+		panel.add(filterField);
+
 		return panel;
 	}
 
@@ -361,7 +531,8 @@ public class AnnotationsWindow extends JFrame implements
 				return;
 
 			final int row = tableModel.getRowFromId(t.getId());
-			table.addRowSelectionInterval(row, row);
+			if (row >= 0)
+				table.addRowSelectionInterval(row, row);
 		}
 	}
 
@@ -374,7 +545,8 @@ public class AnnotationsWindow extends JFrame implements
 				return;
 
 			final int row = tableModel.getRowFromId(t.getId());
-			table.removeRowSelectionInterval(row, row);
+			if (row >= 0)
+				table.removeRowSelectionInterval(row, row);
 		}
 	}
 
@@ -393,6 +565,9 @@ public class AnnotationsWindow extends JFrame implements
 	@Override
 	public void valueChanged(final ListSelectionEvent event) {
 
+		if (updatingRows)
+			return;
+
 		synchronized (editingSelection) {
 
 			editingSelection = true;
@@ -36,6 +36,9 @@ public class BigCatTable extends JTable implements TableModelListener {
 	private static final int MIN_COLUMN_WIDTH = 50;
 	private static final double ENLARGE_COLUMN_WIDTH = 1.05;
 
+	// number of rows measured to size the columns
+	private static final int NUM_SAMPLE_ROWS = 100;
+
 	private boolean inLayout = false;
 	private boolean initialized = false;
 
@@ -154,8 +157,11 @@ public class BigCatTable extends JTable implements TableModelListener {
 				continue;
 
 			int width = MIN_COLUMN_WIDTH;
-		
-			for (int row = 0; row < getRowCount(); row++) {
+
+			// measure the first rows and a sample of the others
+			final int numRows = getRowCount();
+			final int step = Math.max(1, numRows / NUM_SAMPLE_ROWS);
+			for (int row = 0; row < numRows; row += (row < NUM_SAMPLE_ROWS ? 1 : step)) {
 				
 				TableCellRenderer renderer = getCellRenderer(row, column);
 				Component comp = prepareRenderer(renderer, row, column);
@@ -17,10 +17,8 @@
 package bdv.bigcat.ui;
 
 import bdv.labels.labelset.Label;
-import bdv.labels.labelset.Multiset.Entry;
 import bdv.labels.labelset.VolatileLabelMultisetType;
 import net.imglib2.converter.Converter;
-import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.volatiles.VolatileARGBType;
 import net.imglib2.util.Pair;
@@ -31,41 +29,30 @@ import net.imglib2.util.Pair;
 public class PairVolatileLabelMultisetLongARGBConverter
 		implements Converter< Pair< VolatileLabelMultisetType, LongType >, VolatileARGBType >
 {
-	final static private double iFF = 1.0 / 255.0;
-
 	final protected ARGBStream argbStream;
 
+	final protected VolatileLabelMultisetARGBConverter labelConverter;
+
 	public PairVolatileLabelMultisetLongARGBConverter( final ARGBStream argbStream )
+	{
+		this( argbStream, new VolatileLabelMultisetARGBConverter( argbStream ) );
+	}
+
+	/**
+	 * @param labelConverter
+	 *            converts the labels where the canvas is transparent
+	 */
+	public PairVolatileLabelMultisetLongARGBConverter(
+			final ARGBStream argbStream,
+			final VolatileLabelMultisetARGBConverter labelConverter )
 	{
 		this.argbStream = argbStream;
+		this.labelConverter = labelConverter;
 	}
 
 	protected void convertValid( final VolatileLabelMultisetType input, final VolatileARGBType output )
 	{
-		double a = 0;
-		double r = 0;
-		double g = 0;
-		double b = 0;
-		double alphaCountSize = 0;
-
-		for ( final Entry< Label > entry : input.get().entrySet() )
-		{
-			final int argb = argbStream.argb( entry.getElement().id() );
-			final double alpha = ARGBType.alpha( argb );
-			final double alphaCount = alpha * iFF * entry.getCount();
-			a += alphaCount * alpha;
-			r += alphaCount * ARGBType.red( argb );
-			g += alphaCount * ARGBType.green( argb );
-			b += alphaCount * ARGBType.blue( argb );
-			alphaCountSize += alphaCount;
-		}
-		final double iAlphaCountSize = 1.0 / alphaCountSize;
-		final int aInt = Math.min( 255, ( int ) ( a * iAlphaCountSize ) );
-		final int rInt = Math.min( 255, ( int ) ( r * iAlphaCountSize ) );
-		final int gInt = Math.min( 255, ( int ) ( g * iAlphaCountSize ) );
-		final int bInt = Math.min( 255, ( int ) ( b * iAlphaCountSize ) );
-		output.setValid( true );
-		output.set( ( ( ( ( ( aInt << 8 ) | rInt ) << 8 ) | gInt ) << 8 ) | bInt );
+		labelConverter.convertValid( input, output );
 	}
 
 	@Override
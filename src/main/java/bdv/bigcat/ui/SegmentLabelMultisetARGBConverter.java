@@ -0,0 +1,63 @@
+/**
+ * License: GPL
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License 2
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package bdv.bigcat.ui;
+
+import bdv.bigcat.label.SegmentMultisetCache;
+import bdv.labels.labelset.Label;
+import bdv.labels.labelset.LabelMultisetEntryList;
+import bdv.labels.labelset.LabelMultisetType;
+import bdv.labels.labelset.VolatileLabelMultisetType;
+import net.imglib2.type.volatiles.VolatileARGBType;
+
+/**
+ * Converts label multisets by iterating over their segments as merged by a
+ * {@link SegmentMultisetCache} instead of over all fragments.  The active
+ * fragment of an {@link AbstractARGBStream} is kept separate from its segment
+ * such that it is highlighted as in fragment rendering.
+ */
+public class SegmentLabelMultisetARGBConverter extends VolatileLabelMultisetARGBConverter
+{
+	final protected SegmentMultisetCache segmentCache;
+
+	final private ThreadLocal< LabelMultisetEntryList > segments = new ThreadLocal< LabelMultisetEntryList >()
+	{
+		@Override
+		protected LabelMultisetEntryList initialValue()
+		{
+			return new LabelMultisetEntryList();
+		}
+	};
+
+	public SegmentLabelMultisetARGBConverter( final ARGBStream argbSource, final SegmentMultisetCache segmentCache )
+	{
+		super( argbSource );
+		this.segmentCache = segmentCache;
+	}
+
+	@Override
+	protected void convertValid( final VolatileLabelMultisetType input, final VolatileARGBType output )
+	{
+		final LabelMultisetType t = input.get();
+		final LabelMultisetEntryList list = segments.get();
+		final long activeFragment =
+				argbSource instanceof AbstractARGBStream ?
+						( ( AbstractARGBStream ) argbSource ).getActiveFragment() :
+						Label.INVALID;
+		segmentCache.getValue( t.getAccess(), t.getIndex(), activeFragment, list );
+		convertEntries( list, output );
+	}
+}
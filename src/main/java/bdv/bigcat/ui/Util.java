@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.LongSupplier;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -50,7 +51,8 @@ import bdv.BigDataViewer;
 import bdv.ViewerSetupImgLoader;
 import bdv.bigcat.CombinedImgLoader;
 import bdv.bigcat.composite.Composite;
-import bdv.bigcat.composite.CompositeProjector;
+import bdv.bigcat.composite.RenderedSliceCache;
+import bdv.bigcat.composite.TiledCompositeProjector;
 import bdv.img.SetCache;
 import bdv.spimdata.SequenceDescriptionMinimal;
 import bdv.spimdata.SpimDataMinimal;
@@ -158,6 +160,27 @@ public class Util
 			final List< ? extends SetCache > cacheLoaders,
 			final List< Composite< ARGBType, ARGBType > > composites,
 			final InputTriggerConfig config)
+	{
+		return createViewer( windowTitle, rawDataLoaders, labelSources, cacheLoaders, composites, config, 0 );
+	}
+
+	/**
+	 * Create a viewer whose rendered screen images are cached in a
+	 * {@link RenderedSliceCache} if {@code sliceCacheBytes} &gt; 0.
+	 *
+	 * @param sliceCacheVersions
+	 *            counters that change with every edit that changes the
+	 *            rendering, cached images are used only if they match
+	 */
+	public static < A extends ViewerSetupImgLoader< ? extends NumericType< ? >, ? > & SetCache > BigDataViewer createViewer(
+			final String windowTitle,
+			final List< A > rawDataLoaders,
+			final List< ? extends AbstractARGBConvertedLabelsSource > labelSources,
+			final List< ? extends SetCache > cacheLoaders,
+			final List< Composite< ARGBType, ARGBType > > composites,
+			final InputTriggerConfig config,
+			final long sliceCacheBytes,
+			final LongSupplier... sliceCacheVersions )
 	{
 		/* raw */
 		final CombinedImgLoader.SetupIdAndLoader[] loaders = new CombinedImgLoader.SetupIdAndLoader[ rawDataLoaders.size() ];
@@ -211,8 +234,10 @@ public class Util
 		for ( int i = 0; i < composites.size(); ++i )
 			sourceCompositesMap.put( ( Source< ? extends ARGBType > ) sources.get( i ).getSpimSource(), composites.get( i ) );
 
-		final AccumulateProjectorFactory< ARGBType > projectorFactory =
-				new CompositeProjector.CompositeProjectorFactory< ARGBType >( sourceCompositesMap );
+		final AccumulateProjectorFactory< ARGBType > compositeProjectorFactory =
+				new TiledCompositeProjector.TiledCompositeProjectorFactory( sourceCompositesMap );
+		final RenderedSliceCache sliceCache = sliceCacheBytes > 0 ? new RenderedSliceCache( compositeProjectorFactory, sliceCacheBytes ) : null;
+		final AccumulateProjectorFactory< ARGBType > projectorFactory = sliceCache == null ? compositeProjectorFactory : sliceCache;
 
 		ViewerOptions options = ViewerOptions.options()
 				.accumulateProjectorFactory( projectorFactory )
@@ -228,6 +253,13 @@ public class Util
 		bdv.getViewer().setCurrentViewerTransform( transform );
 		bdv.getViewer().setDisplayMode( DisplayMode.FUSED );
 
+		if ( sliceCache != null )
+		{
+			sliceCache.attach( bdv.getViewer(), converterSetups );
+			for ( final LongSupplier version : sliceCacheVersions )
+				sliceCache.addVersion( version );
+		}
+
 		/* separate source min max */
 		for ( final ConverterSetup converterSetup : converterSetups )
 		{
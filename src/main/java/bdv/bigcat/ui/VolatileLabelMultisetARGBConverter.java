@@ -41,6 +41,11 @@ public class VolatileLabelMultisetARGBConverter implements Converter< VolatileLa
 	}
 
 	protected void convertValid( final VolatileLabelMultisetType input, final VolatileARGBType output )
+	{
+		convertEntries( input.get().entrySet(), output );
+	}
+
+	protected void convertEntries( final Iterable< ? extends Entry< Label > > entries, final VolatileARGBType output )
 	{
 		double a = 0;
 		double r = 0;
@@ -48,7 +53,7 @@ public class VolatileLabelMultisetARGBConverter implements Converter< VolatileLa
 		double b = 0;
 		double alphaCountSize = 0;
 
-		for ( final Entry< Label > entry : input.get().entrySet() )
+		for ( final Entry< Label > entry : entries )
 		{
 			final int argb = argbSource.argb( entry.getElement().id() );
 			final double alpha = ARGBType.alpha( argb );
@@ -29,8 +29,12 @@ public class DirtyInterval
 {
 	protected FinalInterval dirtyInterval = null;
 
+	/* changes with every touch */
+	protected volatile long version = 0;
+
 	public void touch( final Interval interval )
 	{
+		++version;
 		if ( dirtyInterval == null )
 			dirtyInterval = new FinalInterval( interval );
 		else
@@ -42,6 +46,14 @@ public class DirtyInterval
 		dirtyInterval = null;
 	}
 
+	/**
+	 * @return a counter that changes whenever an interval is touched
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
 	public FinalInterval getDirtyInterval()
 	{
 		return dirtyInterval;
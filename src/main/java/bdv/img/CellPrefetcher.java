@@ -0,0 +1,411 @@
+package bdv.img;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Requests cells ahead of the viewer.  The prefetcher watches the viewer
+ * transform and, as long as only the translation changes, extrapolates the
+ * last step of the view, e.g. a z-step of {@code TranslateZController} or a
+ * pan, and requests the cells that the next {@code numSteps} views will show
+ * from each {@link Target}.  Targets are expected to enqueue those cells at
+ * low priority, the cells visible in the current view are left to the
+ * renderer.
+ *
+ * At most {@code budget} cells are requested per view change.  Requested
+ * cells are remembered such that they are not requested again, and counted
+ * as used when a later view shows them or as expired when they are dropped
+ * from the bounded list of pending cells without having been shown.
+ */
+public class CellPrefetcher
+{
+	/**
+	 * A multi-resolution cell source.
+	 */
+	public interface Target
+	{
+		public int numLevels();
+
+		/**
+		 * @return transform from voxel coordinates at level into world
+		 *         coordinates
+		 */
+		public AffineTransform3D getTransform( final int level );
+
+		public CellGrid getCellGrid( final int level );
+
+		/**
+		 * Enqueue a cell for loading without waiting for it.
+		 *
+		 * @param cellGridPosition
+		 *            position of the cell in the cell grid
+		 */
+		public void request( final int level, final long[] cellGridPosition );
+	}
+
+	final static private class CellKey
+	{
+		final private int target;
+
+		final private int level;
+
+		final private long index;
+
+		public CellKey( final int target, final int level, final long index )
+		{
+			this.target = target;
+			this.level = level;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( !( other instanceof CellKey ) )
+				return false;
+			final CellKey that = ( CellKey ) other;
+			return target == that.target && level == that.level && index == that.index;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ( int ) ( ( ( 31 * target + level ) * 31 + index ) ^ ( index >>> 32 ) );
+		}
+	}
+
+	final static private class View
+	{
+		final private AffineTransform3D transform;
+
+		final private int width;
+
+		final private int height;
+
+		public View( final AffineTransform3D transform, final int width, final int height )
+		{
+			this.transform = transform;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	final static private double EPSILON = 1e-6;
+
+	final private List< ? extends Target > targets;
+
+	final private int numSteps;
+
+	final private int budget;
+
+	final private int maxPending;
+
+	/** requested cells that have not been shown yet, oldest first */
+	final private LinkedHashSet< CellKey > pending = new LinkedHashSet<>();
+
+	private AffineTransform3D previous = null;
+
+	final private double[] step = new double[ 3 ];
+
+	final private AtomicReference< View > nextView = new AtomicReference<>();
+
+	final private AtomicBoolean scheduled = new AtomicBoolean( false );
+
+	final private ExecutorService exec = Executors.newSingleThreadExecutor( r -> {
+		final Thread thread = new Thread( r, "cell-prefetcher" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	final private AtomicLong numRequested = new AtomicLong();
+
+	final private AtomicLong numUsed = new AtomicLong();
+
+	final private AtomicLong numExpired = new AtomicLong();
+
+	/**
+	 * @param targets
+	 * @param numSteps
+	 *            number of views ahead in the direction of motion
+	 * @param budget
+	 *            maximum number of cells requested per view change
+	 */
+	public CellPrefetcher( final List< ? extends Target > targets, final int numSteps, final int budget )
+	{
+		this.targets = targets;
+		this.numSteps = numSteps;
+		this.budget = budget;
+		this.maxPending = Math.max( 1, 4 * budget );
+	}
+
+	/**
+	 * Schedule {@link #update(AffineTransform3D, int, int)} on the
+	 * prefetcher thread, such that it can be called from a transform
+	 * listener.  Only the most recent of the views that arrive while the
+	 * prefetcher is busy is processed.
+	 */
+	public void transformChanged( final AffineTransform3D viewerTransform, final int width, final int height )
+	{
+		nextView.set( new View( viewerTransform.copy(), width, height ) );
+		if ( scheduled.compareAndSet( false, true ) )
+			exec.execute( () -> {
+				scheduled.set( false );
+				final View view = nextView.getAndSet( null );
+				if ( view != null )
+					update( view.transform, view.width, view.height );
+			} );
+	}
+
+	/**
+	 * Count the pending cells that are shown by this view as used, update
+	 * the motion estimate and request cells for the next views.
+	 *
+	 * @param viewerTransform
+	 *            transform from world into screen coordinates
+	 * @param width
+	 *            width of the screen
+	 * @param height
+	 *            height of the screen
+	 */
+	synchronized public void update( final AffineTransform3D viewerTransform, final int width, final int height )
+	{
+		final double[] center = center( viewerTransform, width, height );
+
+		final HashSet< CellKey > visible = new HashSet<>();
+		final int[] levels = new int[ targets.size() ];
+		for ( int t = 0; t < targets.size(); ++t )
+		{
+			levels[ t ] = bestLevel( targets.get( t ), viewerTransform );
+			collectCells( t, levels[ t ], viewerTransform, width, height, new double[ 3 ], visible, Integer.MAX_VALUE );
+		}
+		for ( final CellKey key : visible )
+			if ( pending.remove( key ) )
+				numUsed.incrementAndGet();
+
+		final boolean isTranslation = previous != null && sameLinearPart( previous, viewerTransform );
+		if ( isTranslation )
+		{
+			final double[] previousCenter = center( previous, width, height );
+			for ( int d = 0; d < 3; ++d )
+				step[ d ] = center[ d ] - previousCenter[ d ];
+		}
+		previous = viewerTransform.copy();
+		if ( !isTranslation || Math.abs( step[ 0 ] ) + Math.abs( step[ 1 ] ) + Math.abs( step[ 2 ] ) < EPSILON )
+			return;
+
+		final LinkedHashSet< CellKey > ahead = new LinkedHashSet<>();
+		final double[] offset = new double[ 3 ];
+		for ( int k = 1; k <= numSteps && ahead.size() < budget; ++k )
+		{
+			for ( int d = 0; d < 3; ++d )
+				offset[ d ] = k * step[ d ];
+			for ( int t = 0; t < targets.size() && ahead.size() < budget; ++t )
+			{
+				final ArrayList< CellKey > cells = new ArrayList<>();
+				collectCells( t, levels[ t ], viewerTransform, width, height, offset, cells, budget + visible.size() + pending.size() );
+				for ( final CellKey key : cells )
+				{
+					if ( ahead.size() >= budget )
+						break;
+					if ( !visible.contains( key ) && !pending.contains( key ) )
+						ahead.add( key );
+				}
+			}
+		}
+
+		final long[] cellGridPosition = new long[ 3 ];
+		for ( final CellKey key : ahead )
+		{
+			final Target target = targets.get( key.target );
+			IntervalIndexer.indexToPosition( key.index, target.getCellGrid( key.level ).getGridDimensions(), cellGridPosition );
+			target.request( key.level, cellGridPosition );
+			pending.add( key );
+			numRequested.incrementAndGet();
+		}
+
+		final Iterator< CellKey > it = pending.iterator();
+		for ( int n = pending.size(); n > maxPending && it.hasNext(); --n )
+		{
+			it.next();
+			it.remove();
+			numExpired.incrementAndGet();
+		}
+	}
+
+	static private double[] center( final AffineTransform3D viewerTransform, final int width, final int height )
+	{
+		final double[] center = new double[] { 0.5 * width, 0.5 * height, 0 };
+		viewerTransform.applyInverse( center, center );
+		return center;
+	}
+
+	static private boolean sameLinearPart( final AffineTransform3D a, final AffineTransform3D b )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				if ( Math.abs( a.get( r, c ) - b.get( r, c ) ) > EPSILON * Math.max( 1, Math.abs( a.get( r, c ) ) ) )
+					return false;
+		return true;
+	}
+
+	/**
+	 * The coarsest level whose voxels are not larger than a screen pixel, or
+	 * the finest level if all are.
+	 */
+	static private int bestLevel( final Target target, final AffineTransform3D viewerTransform )
+	{
+		int best = 0;
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		for ( int level = 0; level < target.numLevels(); ++level )
+		{
+			sourceToScreen.set( viewerTransform );
+			sourceToScreen.concatenate( target.getTransform( level ) );
+			double size = 0;
+			for ( int d = 0; d < 2; ++d )
+			{
+				final double x = sourceToScreen.get( d, 0 ), y = sourceToScreen.get( d, 1 ), z = sourceToScreen.get( d, 2 );
+				size = Math.max( size, Math.sqrt( x * x + y * y + z * z ) );
+			}
+			if ( size <= 1 + EPSILON )
+				best = level;
+		}
+		return best;
+	}
+
+	/**
+	 * Collect the cells of target at level that intersect the bounding box of
+	 * the screen plane shifted by offset in world coordinates, in z, y, x
+	 * order.
+	 */
+	private void collectCells(
+			final int t,
+			final int level,
+			final AffineTransform3D viewerTransform,
+			final int width,
+			final int height,
+			final double[] offset,
+			final Collection< CellKey > cells,
+			final int maxNumCells )
+	{
+		final Target target = targets.get( t );
+		final AffineTransform3D sourceTransform = target.getTransform( level );
+		final CellGrid grid = target.getCellGrid( level );
+		final long[] dimensions = grid.getImgDimensions();
+		final long[] gridDimensions = grid.getGridDimensions();
+		final int[] cellDimensions = new int[ 3 ];
+		grid.cellDimensions( cellDimensions );
+
+		final double[] min = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		final double[] max = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final double[] p = new double[ 3 ];
+		for ( int corner = 0; corner < 4; ++corner )
+		{
+			p[ 0 ] = ( corner & 1 ) == 0 ? 0 : width;
+			p[ 1 ] = ( corner & 2 ) == 0 ? 0 : height;
+			p[ 2 ] = 0;
+			viewerTransform.applyInverse( p, p );
+			for ( int d = 0; d < 3; ++d )
+				p[ d ] += offset[ d ];
+			sourceTransform.applyInverse( p, p );
+			for ( int d = 0; d < 3; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], p[ d ] );
+				max[ d ] = Math.max( max[ d ], p[ d ] );
+			}
+		}
+
+		final long[] cellMin = new long[ 3 ];
+		final long[] cellMax = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			/* voxel centers are at integer coordinates */
+			final long lo = Math.max( 0, ( long ) Math.floor( min[ d ] + 0.5 ) );
+			final long hi = Math.min( dimensions[ d ] - 1, ( long ) Math.floor( max[ d ] + 0.5 ) );
+			if ( lo > hi )
+				return;
+			cellMin[ d ] = lo / cellDimensions[ d ];
+			cellMax[ d ] = hi / cellDimensions[ d ];
+		}
+
+		final long[] position = new long[ 3 ];
+		int n = 0;
+		for ( position[ 2 ] = cellMin[ 2 ]; position[ 2 ] <= cellMax[ 2 ]; ++position[ 2 ] )
+			for ( position[ 1 ] = cellMin[ 1 ]; position[ 1 ] <= cellMax[ 1 ]; ++position[ 1 ] )
+				for ( position[ 0 ] = cellMin[ 0 ]; position[ 0 ] <= cellMax[ 0 ]; ++position[ 0 ] )
+				{
+					if ( n++ >= maxNumCells )
+						return;
+					cells.add( new CellKey( t, level, IntervalIndexer.positionToIndex( position, gridDimensions ) ) );
+				}
+	}
+
+	/**
+	 * @return the number of cells requested ahead of the viewer
+	 */
+	public long getNumRequested()
+	{
+		return numRequested.get();
+	}
+
+	/**
+	 * @return the number of requested cells that were shown later
+	 */
+	public long getNumUsed()
+	{
+		return numUsed.get();
+	}
+
+	/**
+	 * @return the number of requested cells that were dropped without having
+	 *         been shown
+	 */
+	public long getNumExpired()
+	{
+		return numExpired.get();
+	}
+
+	synchronized public int getNumPending()
+	{
+		return pending.size();
+	}
+
+	public void resetCounters()
+	{
+		numRequested.set( 0 );
+		numUsed.set( 0 );
+		numExpired.set( 0 );
+	}
+
+	/**
+	 * Stop the prefetcher thread.
+	 */
+	public void shutdown()
+	{
+		exec.shutdown();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%s[requested=%d, used=%d, expired=%d, pending=%d]",
+				getClass().getSimpleName(),
+				getNumRequested(),
+				getNumUsed(),
+				getNumExpired(),
+				getNumPending() );
+	}
+}
@@ -0,0 +1,60 @@
+package bdv.img;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.EmptyArrayCreator;
+import bdv.labels.labelset.CompactVolatileLabelMultisetArray;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+
+/**
+ * {@link CacheArrayLoader} that re-encodes the arrays of another loader as
+ * {@link CompactVolatileLabelMultisetArray CompactVolatileLabelMultisetArrays}
+ * if that makes them smaller.
+ */
+public class CompactLabelMultisetArrayLoader implements CacheArrayLoader< VolatileLabelMultisetArray >
+{
+	final private CacheArrayLoader< VolatileLabelMultisetArray > loader;
+
+	public CompactLabelMultisetArrayLoader( final CacheArrayLoader< VolatileLabelMultisetArray > loader )
+	{
+		this.loader = loader;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public VolatileLabelMultisetArray loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
+	{
+		final VolatileLabelMultisetArray array = loader.loadArray( timepoint, setup, level, dimensions, min );
+		if ( array == null || !array.isValid() )
+			return array;
+
+		final CompactVolatileLabelMultisetArray compact = CompactVolatileLabelMultisetArray.compact( array );
+		return compact.getSizeInBytes() < array.getSizeInBytes() ? compact : array;
+	}
+
+	@Override
+	public EmptyArrayCreator< VolatileLabelMultisetArray > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	/**
+	 * Wrap a loader, or return it unchanged if {@code compact} is
+	 * {@code false}.
+	 */
+	static public CacheArrayLoader< VolatileLabelMultisetArray > wrap(
+			final CacheArrayLoader< VolatileLabelMultisetArray > loader,
+			final boolean compact )
+	{
+		return compact ? new CompactLabelMultisetArrayLoader( loader ) : loader;
+	}
+}
@@ -0,0 +1,212 @@
+package bdv.img;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.EmptyArrayCreator;
+import bdv.labels.labelset.CompactVolatileLabelMultisetArray;
+import bdv.labels.labelset.LongMappedAccess;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.MappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+
+/**
+ * {@link CacheArrayLoader} that reads cells from a {@link DiskCellCache}
+ * before asking the wrapped loader and writes the cells loaded by the
+ * wrapped loader into it.  Cells are keyed by a source string, typically
+ * the URL of the remote data set, such that they are found again by the
+ * next session.  Invalid arrays, i.e. failed loads, are never stored.
+ */
+public class DiskCacheArrayLoader< A > implements CacheArrayLoader< A >
+{
+	final private CacheArrayLoader< A > loader;
+
+	final private DiskCellCache diskCache;
+
+	final private String source;
+
+	final private DiskCellCache.Serializer< A > serializer;
+
+	public DiskCacheArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final DiskCellCache diskCache,
+			final String source,
+			final DiskCellCache.Serializer< A > serializer )
+	{
+		this.loader = loader;
+		this.diskCache = diskCache;
+		this.source = source;
+		this.serializer = serializer;
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public A loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
+	{
+		final A cached = diskCache.get( source, timepoint, level, min, dimensions, serializer );
+		if ( cached != null )
+			return cached;
+
+		final A array = loader.loadArray( timepoint, setup, level, dimensions, min );
+		if ( array != null && ( !( array instanceof VolatileAccess ) || ( ( VolatileAccess ) array ).isValid() ) )
+			diskCache.put( source, timepoint, level, min, dimensions, array, serializer );
+		return array;
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	public DiskCellCache getDiskCache()
+	{
+		return diskCache;
+	}
+
+	public String getSource()
+	{
+		return source;
+	}
+
+	final static public DiskCellCache.Serializer< VolatileByteArray > byteArraySerializer = new DiskCellCache.Serializer< VolatileByteArray >()
+	{
+		@Override
+		public int sizeInBytes( final VolatileByteArray array )
+		{
+			return array.getCurrentStorageArray().length;
+		}
+
+		@Override
+		public void write( final VolatileByteArray array, final ByteBuffer buffer )
+		{
+			buffer.put( array.getCurrentStorageArray() );
+		}
+
+		@Override
+		public VolatileByteArray read( final ByteBuffer buffer, final int[] dimensions ) throws IOException
+		{
+			final byte[] data = new byte[ buffer.remaining() ];
+			buffer.get( data );
+			return new VolatileByteArray( data, true );
+		}
+	};
+
+	final static public DiskCellCache.Serializer< VolatileIntArray > intArraySerializer = new DiskCellCache.Serializer< VolatileIntArray >()
+	{
+		@Override
+		public int sizeInBytes( final VolatileIntArray array )
+		{
+			return array.getCurrentStorageArray().length * Integer.BYTES;
+		}
+
+		@Override
+		public void write( final VolatileIntArray array, final ByteBuffer buffer )
+		{
+			final int[] data = array.getCurrentStorageArray();
+			buffer.asIntBuffer().put( data );
+			buffer.position( buffer.position() + data.length * Integer.BYTES );
+		}
+
+		@Override
+		public VolatileIntArray read( final ByteBuffer buffer, final int[] dimensions ) throws IOException
+		{
+			final int[] data = new int[ buffer.remaining() / Integer.BYTES ];
+			buffer.asIntBuffer().get( data );
+			return new VolatileIntArray( data, true );
+		}
+	};
+
+	/**
+	 * Stores the list offsets and the used part of the list data, the argMax
+	 * is computed again on demand after reading.
+	 * {@link CompactVolatileLabelMultisetArray Compact arrays} are expanded
+	 * into a temporary plain copy for writing, arrays in other encodings than
+	 * the plain {@link LongMappedAccessData} are not stored.
+	 */
+	final static public DiskCellCache.Serializer< VolatileLabelMultisetArray > labelMultisetSerializer = new DiskCellCache.Serializer< VolatileLabelMultisetArray >()
+	{
+		private long listSizeInBytes( final VolatileLabelMultisetArray array )
+		{
+			final long used = array.getListDataUsedSizeInBytes();
+			return used > 0 ? used : array.getListData().size();
+		}
+
+		@Override
+		public int sizeInBytes( final VolatileLabelMultisetArray array )
+		{
+			if ( !( array instanceof CompactVolatileLabelMultisetArray ) && !( array.getListData() instanceof LongMappedAccessData ) )
+				return -1;
+			final int numListLongs = ( int ) ( ( listSizeInBytes( array ) + Long.BYTES - 1 ) / Long.BYTES );
+			final long size = 4 + 8 + 4 + ( long ) array.getNumEntities() * Integer.BYTES + ( long ) numListLongs * Long.BYTES;
+			return size > Integer.MAX_VALUE ? -1 : ( int ) size;
+		}
+
+		@Override
+		public void write( final VolatileLabelMultisetArray cell, final ByteBuffer buffer )
+		{
+			final VolatileLabelMultisetArray array =
+					cell instanceof CompactVolatileLabelMultisetArray ?
+							( ( CompactVolatileLabelMultisetArray ) cell ).expand() :
+							cell;
+			final int[] data = array.getCurrentStorageArray();
+			final long listSizeInBytes = listSizeInBytes( array );
+			final int numListLongs = ( int ) ( ( listSizeInBytes + Long.BYTES - 1 ) / Long.BYTES );
+
+			buffer.putInt( data.length );
+			buffer.putLong( listSizeInBytes );
+			buffer.putInt( numListLongs );
+			buffer.asIntBuffer().put( data );
+			buffer.position( buffer.position() + data.length * Integer.BYTES );
+			buffer.asLongBuffer().put( ( ( LongMappedAccessData ) array.getListData() ).getData(), 0, numListLongs );
+			buffer.position( buffer.position() + numListLongs * Long.BYTES );
+		}
+
+		@Override
+		public VolatileLabelMultisetArray read( final ByteBuffer buffer, final int[] dimensions ) throws IOException
+		{
+			final int numEntities = buffer.getInt();
+			final long listSizeInBytes = buffer.getLong();
+			final int numListLongs = buffer.getInt();
+			if ( numEntities < 0 || numListLongs < 0 || ( ( long ) numEntities * Integer.BYTES + ( long ) numListLongs * Long.BYTES ) != buffer.remaining() )
+				throw new IOException( "Inconsistent label multiset cell." );
+
+			final int[] data = new int[ numEntities ];
+			buffer.asIntBuffer().get( data );
+			buffer.position( buffer.position() + numEntities * Integer.BYTES );
+
+			final MappedAccessData< LongMappedAccess > listData = LongMappedAccessData.factory.createStorage( Math.max( listSizeInBytes, 1 ) );
+			buffer.asLongBuffer().get( ( ( LongMappedAccessData ) listData ).getData(), 0, numListLongs );
+			buffer.position( buffer.position() + numListLongs * Long.BYTES );
+
+			return new VolatileLabelMultisetArray( data, listData, listSizeInBytes, true );
+		}
+	};
+
+	/**
+	 * Wrap a loader, or return it unchanged if {@code diskCache} is
+	 * {@code null}.
+	 */
+	static public < A > CacheArrayLoader< A > wrap(
+			final CacheArrayLoader< A > loader,
+			final DiskCellCache diskCache,
+			final String source,
+			final DiskCellCache.Serializer< A > serializer )
+	{
+		return diskCache == null ? loader : new DiskCacheArrayLoader<>( loader, diskCache, source, serializer );
+	}
+}
@@ -0,0 +1,463 @@
+package bdv.img;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Least recently used store of cell arrays in a local directory that is
+ * bounded by the sum of the file sizes.  Serves as a second level cache for
+ * remote sources such that cells fetched in a previous session are read from
+ * disk instead of being downloaded again.
+ *
+ * Cells are stored one file per cell at
+ * <code>&lt;directory&gt;/&lt;source hash&gt;/&lt;level&gt;/&lt;timepoint&gt;_&lt;min&gt;.cell</code>.
+ * Each file starts with a header holding the full key, the cell dimensions
+ * and the length and CRC32 of the payload.  Files whose header does not match
+ * the requested cell or whose payload is corrupt are deleted and reported as
+ * a miss.  Files are written to a temporary file first and then renamed such
+ * that a crashed session never leaves partial cells behind.
+ *
+ * The recency of cells is kept in memory and initialized from the modification
+ * times of the files when the store is opened.  Reading a cell updates its
+ * modification time such that the order survives restarts.
+ *
+ * The store does not know whether the remote data changed since a cell was
+ * written, loaders must only use it for immutable data.
+ */
+public class DiskCellCache
+{
+	/**
+	 * Writes cell arrays into and reads them from byte buffers.
+	 */
+	public interface Serializer< A >
+	{
+		/**
+		 * @return the number of bytes that {@link #write(Object, ByteBuffer)}
+		 *         will write, or a negative value if the array cannot be
+		 *         stored
+		 */
+		public int sizeInBytes( final A array );
+
+		public void write( final A array, final ByteBuffer buffer );
+
+		public A read( final ByteBuffer buffer, final int[] dimensions ) throws IOException;
+	}
+
+	final static private int MAGIC = 0x42434443;
+
+	final static private int VERSION = 1;
+
+	final static private String SUFFIX = ".cell";
+
+	final static private String TMP_SUFFIX = ".tmp";
+
+	final private Path directory;
+
+	/**
+	 * Size of a stored cell file.  Every write creates a new instance such
+	 * that a reader can tell whether the file was replaced since it looked
+	 * it up.
+	 */
+	static private class CellFile
+	{
+		final long size;
+
+		CellFile( final long size )
+		{
+			this.size = size;
+		}
+	}
+
+	final private LinkedHashMap< Path, CellFile > files = new LinkedHashMap<>( 256, 0.75f, true );
+
+	private long maxSizeInBytes;
+
+	private long sizeInBytes = 0;
+
+	final private AtomicLong hits = new AtomicLong();
+
+	final private AtomicLong misses = new AtomicLong();
+
+	final private AtomicLong evictions = new AtomicLong();
+
+	final private AtomicLong invalid = new AtomicLong();
+
+	/**
+	 * Open or create a store, cells already in the directory are indexed
+	 * from least to most recently modified.
+	 *
+	 * @param directory
+	 * @param maxSizeInBytes
+	 *            the byte budget shared by all cells in this store
+	 * @throws IOException
+	 */
+	public DiskCellCache( final Path directory, final long maxSizeInBytes ) throws IOException
+	{
+		this.directory = directory;
+		this.maxSizeInBytes = maxSizeInBytes;
+		Files.createDirectories( directory );
+
+		final List< Path > paths;
+		try ( final Stream< Path > stream = Files.walk( directory ) )
+		{
+			paths = stream.filter( Files::isRegularFile ).collect( Collectors.toList() );
+		}
+
+		final HashMap< Path, Long > lastModified = new HashMap<>();
+		final ArrayList< Path > cells = new ArrayList<>();
+		for ( final Path path : paths )
+		{
+			final String name = path.getFileName().toString();
+			if ( name.endsWith( TMP_SUFFIX ) )
+				Files.deleteIfExists( path );
+			else if ( name.endsWith( SUFFIX ) )
+			{
+				lastModified.put( path, Files.getLastModifiedTime( path ).toMillis() );
+				cells.add( path );
+			}
+		}
+		cells.sort( ( a, b ) -> Long.compare( lastModified.get( a ), lastModified.get( b ) ) );
+		for ( final Path path : cells )
+		{
+			final long size = Files.size( path );
+			files.put( path, new CellFile( size ) );
+			sizeInBytes += size;
+		}
+		evict();
+	}
+
+	static private String key( final String source, final int timepoint, final int level, final long[] min )
+	{
+		final StringBuilder key = new StringBuilder( source );
+		key.append( '/' ).append( timepoint ).append( '/' ).append( level );
+		for ( final long m : min )
+			key.append( '/' ).append( m );
+		return key.toString();
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the source such that cells of a source share a
+	 * directory with a short and file system safe name.
+	 */
+	static private String hash( final String source )
+	{
+		long h = 0xcbf29ce484222325l;
+		for ( final byte b : source.getBytes( StandardCharsets.UTF_8 ) )
+		{
+			h ^= b & 0xff;
+			h *= 0x100000001b3l;
+		}
+		return String.format( "%016x", h );
+	}
+
+	private Path path( final String source, final int timepoint, final int level, final long[] min )
+	{
+		final StringBuilder name = new StringBuilder();
+		name.append( timepoint );
+		for ( final long m : min )
+			name.append( '_' ).append( m );
+		name.append( SUFFIX );
+		return directory.resolve( hash( source ) ).resolve( Integer.toString( level ) ).resolve( name.toString() );
+	}
+
+	/**
+	 * Read a cell, {@code null} if it is not in the store or invalid.
+	 */
+	public < A > A get(
+			final String source,
+			final int timepoint,
+			final int level,
+			final long[] min,
+			final int[] dimensions,
+			final Serializer< A > serializer )
+	{
+		final Path path = path( source, timepoint, level, min );
+		final CellFile file;
+		synchronized ( this )
+		{
+			file = files.get( path );
+			if ( file == null )
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+
+		try
+		{
+			final ByteBuffer buffer;
+			try ( final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+			{
+				buffer = ByteBuffer.allocate( ( int ) channel.size() );
+				while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 );
+			}
+			buffer.flip();
+			final ByteBuffer payload = validate( buffer, key( source, timepoint, level, min ), dimensions );
+			if ( payload != null )
+			{
+				final A array = serializer.read( payload, dimensions );
+				touch( path );
+				hits.incrementAndGet();
+				return array;
+			}
+		}
+		catch ( final IOException | RuntimeException e )
+		{}
+
+		invalid.incrementAndGet();
+		misses.incrementAndGet();
+		remove( path, file );
+		return null;
+	}
+
+	static private void touch( final Path path )
+	{
+		try
+		{
+			Files.setLastModifiedTime( path, FileTime.fromMillis( System.currentTimeMillis() ) );
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	/**
+	 * Check the header and the CRC32 of the payload.
+	 *
+	 * @return the payload or {@code null} if the cell is invalid
+	 */
+	static private ByteBuffer validate( final ByteBuffer buffer, final String key, final int[] dimensions )
+	{
+		if ( buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION )
+			return null;
+
+		final int keyLength = buffer.getInt();
+		if ( keyLength < 0 || keyLength > buffer.remaining() )
+			return null;
+		final byte[] keyBytes = new byte[ keyLength ];
+		buffer.get( keyBytes );
+		if ( !key.equals( new String( keyBytes, StandardCharsets.UTF_8 ) ) )
+			return null;
+
+		if ( buffer.getInt() != dimensions.length )
+			return null;
+		for ( final int d : dimensions )
+			if ( buffer.getInt() != d )
+				return null;
+
+		final int payloadLength = buffer.getInt();
+		final long checksum = buffer.getLong();
+		if ( payloadLength != buffer.remaining() )
+			return null;
+
+		final CRC32 crc = new CRC32();
+		crc.update( buffer.duplicate() );
+		if ( crc.getValue() != checksum )
+			return null;
+
+		return buffer.slice();
+	}
+
+	/**
+	 * Write a cell.  Cells that cannot be serialized or that are larger than
+	 * the whole budget are not stored.  Failures to write are ignored, the
+	 * store is a cache.
+	 */
+	public < A > void put(
+			final String source,
+			final int timepoint,
+			final int level,
+			final long[] min,
+			final int[] dimensions,
+			final A array,
+			final Serializer< A > serializer )
+	{
+		final int payloadLength = serializer.sizeInBytes( array );
+		if ( payloadLength < 0 )
+			return;
+
+		final byte[] keyBytes = key( source, timepoint, level, min ).getBytes( StandardCharsets.UTF_8 );
+		final int headerLength = 4 * ( 5 + dimensions.length ) + keyBytes.length + 8;
+		final long fileSize = ( long ) headerLength + payloadLength;
+		if ( fileSize > getMaxSizeInBytes() )
+			return;
+
+		final ByteBuffer buffer = ByteBuffer.allocate( ( int ) fileSize );
+		buffer.position( headerLength );
+		serializer.write( array, buffer );
+		final ByteBuffer payload = ( ByteBuffer ) buffer.duplicate().position( headerLength );
+		final CRC32 crc = new CRC32();
+		crc.update( payload );
+
+		buffer.position( 0 );
+		buffer.putInt( MAGIC ).putInt( VERSION );
+		buffer.putInt( keyBytes.length ).put( keyBytes );
+		buffer.putInt( dimensions.length );
+		for ( final int d : dimensions )
+			buffer.putInt( d );
+		buffer.putInt( payloadLength ).putLong( crc.getValue() );
+		buffer.position( 0 );
+
+		final Path path = path( source, timepoint, level, min );
+		try
+		{
+			Files.createDirectories( path.getParent() );
+			final Path tmp = Files.createTempFile( path.getParent(), path.getFileName().toString(), TMP_SUFFIX );
+			try
+			{
+				try ( final FileChannel channel = FileChannel.open( tmp, StandardOpenOption.WRITE ) )
+				{
+					while ( buffer.hasRemaining() )
+						channel.write( buffer );
+				}
+				/* replace the file and its entry at once, see remove */
+				synchronized ( this )
+				{
+					Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+					final CellFile previous = files.put( path, new CellFile( fileSize ) );
+					if ( previous != null )
+						sizeInBytes -= previous.size;
+					sizeInBytes += fileSize;
+					evict();
+				}
+			}
+			finally
+			{
+				Files.deleteIfExists( tmp );
+			}
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	/**
+	 * Remove an invalid cell unless it was replaced by a {@link #put} since
+	 * it was looked up as {@code file}.
+	 */
+	synchronized private void remove( final Path path, final CellFile file )
+	{
+		if ( files.get( path ) != file )
+			return;
+		files.remove( path );
+		sizeInBytes -= file.size;
+		try
+		{
+			Files.deleteIfExists( path );
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	synchronized private void evict()
+	{
+		final Iterator< Map.Entry< Path, CellFile > > it = files.entrySet().iterator();
+		while ( sizeInBytes > maxSizeInBytes && it.hasNext() )
+		{
+			final Map.Entry< Path, CellFile > entry = it.next();
+			sizeInBytes -= entry.getValue().size;
+			it.remove();
+			evictions.incrementAndGet();
+			try
+			{
+				Files.deleteIfExists( entry.getKey() );
+			}
+			catch ( final IOException e )
+			{}
+		}
+	}
+
+	/**
+	 * Change the byte budget, deleting least recently used cells if
+	 * necessary.
+	 *
+	 * @param maxSizeInBytes
+	 */
+	synchronized public void setMaxSizeInBytes( final long maxSizeInBytes )
+	{
+		this.maxSizeInBytes = maxSizeInBytes;
+		evict();
+	}
+
+	synchronized public long getMaxSizeInBytes()
+	{
+		return maxSizeInBytes;
+	}
+
+	synchronized public long getSizeInBytes()
+	{
+		return sizeInBytes;
+	}
+
+	synchronized public int getNumCells()
+	{
+		return files.size();
+	}
+
+	public Path getDirectory()
+	{
+		return directory;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of cells that were found but failed validation
+	 */
+	public long getInvalid()
+	{
+		return invalid.get();
+	}
+
+	public void resetCounters()
+	{
+		hits.set( 0 );
+		misses.set( 0 );
+		evictions.set( 0 );
+		invalid.set( 0 );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%s[%s, size=%d/%d bytes, cells=%d, hits=%d, misses=%d, evictions=%d, invalid=%d]",
+				getClass().getSimpleName(),
+				directory,
+				getSizeInBytes(),
+				getMaxSizeInBytes(),
+				getNumCells(),
+				getHits(),
+				getMisses(),
+				getEvictions(),
+				getInvalid() );
+	}
+}
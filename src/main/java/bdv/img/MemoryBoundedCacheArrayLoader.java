@@ -0,0 +1,113 @@
+package bdv.img;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.EmptyArrayCreator;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+
+/**
+ * {@link CacheArrayLoader} that retains loaded arrays in a shared
+ * {@link MemoryBoundedCellCache} and serves them from there before asking
+ * the wrapped loader.
+ */
+public class MemoryBoundedCacheArrayLoader< A > implements CacheArrayLoader< A >
+{
+	final private CacheArrayLoader< A > loader;
+
+	final private MemoryBoundedCellCache cellCache;
+
+	final private MemoryBoundedCellCache.Weigher< ? super A > weigher;
+
+	public MemoryBoundedCacheArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final MemoryBoundedCellCache cellCache,
+			final MemoryBoundedCellCache.Weigher< ? super A > weigher )
+	{
+		this.loader = loader;
+		this.cellCache = cellCache;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Weigh arrays by the number of elements times
+	 * {@link CacheArrayLoader#getBytesPerElement()} of the wrapped loader.
+	 */
+	public MemoryBoundedCacheArrayLoader(
+			final CacheArrayLoader< A > loader,
+			final MemoryBoundedCellCache cellCache )
+	{
+		this( loader, cellCache, elementWeigher( loader ) );
+	}
+
+	@Override
+	public int getBytesPerElement()
+	{
+		return loader.getBytesPerElement();
+	}
+
+	@Override
+	public A loadArray(
+			final int timepoint,
+			final int setup,
+			final int level,
+			final int[] dimensions,
+			final long[] min ) throws InterruptedException
+	{
+		final A cached = cellCache.get( this, timepoint, setup, level, min );
+		if ( cached != null )
+			return cached;
+
+		final A array = loader.loadArray( timepoint, setup, level, dimensions, min );
+		if ( array != null )
+			cellCache.put( this, timepoint, setup, level, min, array, weigher.weigh( array, dimensions ) );
+		return array;
+	}
+
+	@Override
+	public EmptyArrayCreator< A > getEmptyArrayCreator()
+	{
+		return loader.getEmptyArrayCreator();
+	}
+
+	public MemoryBoundedCellCache getCellCache()
+	{
+		return cellCache;
+	}
+
+	static public < A > MemoryBoundedCellCache.Weigher< A > elementWeigher( final CacheArrayLoader< A > loader )
+	{
+		final int bytesPerElement = loader.getBytesPerElement();
+		return ( array, dimensions ) -> {
+			long numElements = 1;
+			for ( final int d : dimensions )
+				numElements *= d;
+			return numElements * bytesPerElement;
+		};
+	}
+
+	static public MemoryBoundedCellCache.Weigher< VolatileLabelMultisetArray > labelMultisetWeigher()
+	{
+		return ( array, dimensions ) -> array.getSizeInBytes();
+	}
+
+	/**
+	 * Wrap a label multiset loader, or return it unchanged if
+	 * {@code cellCache} is {@code null}.
+	 */
+	static public CacheArrayLoader< VolatileLabelMultisetArray > wrapLabelMultiset(
+			final CacheArrayLoader< VolatileLabelMultisetArray > loader,
+			final MemoryBoundedCellCache cellCache )
+	{
+		return cellCache == null ? loader : new MemoryBoundedCacheArrayLoader<>( loader, cellCache, labelMultisetWeigher() );
+	}
+
+	/**
+	 * Wrap a primitive array loader, or return it unchanged if
+	 * {@code cellCache} is {@code null}.
+	 */
+	static public < A > CacheArrayLoader< A > wrap(
+			final CacheArrayLoader< A > loader,
+			final MemoryBoundedCellCache cellCache )
+	{
+		return cellCache == null ? loader : new MemoryBoundedCacheArrayLoader<>( loader, cellCache );
+	}
+}
@@ -0,0 +1,238 @@
+package bdv.img;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used store of cell arrays that is bounded by the sum of the
+ * sizes of the stored cells in bytes rather than by their number.
+ *
+ * One instance can be shared by many
+ * {@link MemoryBoundedCacheArrayLoader MemoryBoundedCacheArrayLoaders} such
+ * that raw and label cells compete for a single budget.  Cells are strongly
+ * referenced while they are in the store, cells that were evicted are only
+ * held by the soft references of the cell cache and will be collected first
+ * under memory pressure.
+ */
+public class MemoryBoundedCellCache
+{
+	/**
+	 * Estimates the size of a cell array in bytes.
+	 */
+	public interface Weigher< A >
+	{
+		public long weigh( final A array, final int[] dimensions );
+	}
+
+	final static private class Key
+	{
+		final private Object owner;
+
+		final private int timepoint;
+
+		final private int setup;
+
+		final private int level;
+
+		final private long[] min;
+
+		final private int hashCode;
+
+		public Key( final Object owner, final int timepoint, final int setup, final int level, final long[] min )
+		{
+			this.owner = owner;
+			this.timepoint = timepoint;
+			this.setup = setup;
+			this.level = level;
+			this.min = min.clone();
+
+			int h = System.identityHashCode( owner );
+			h = 31 * h + timepoint;
+			h = 31 * h + setup;
+			h = 31 * h + level;
+			h = 31 * h + Arrays.hashCode( min );
+			hashCode = h;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( this == other )
+				return true;
+			if ( !( other instanceof Key ) )
+				return false;
+			final Key that = ( Key ) other;
+			return
+					owner == that.owner &&
+					timepoint == that.timepoint &&
+					setup == that.setup &&
+					level == that.level &&
+					Arrays.equals( min, that.min );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	final static private class Entry
+	{
+		final private Object array;
+
+		final private long sizeInBytes;
+
+		public Entry( final Object array, final long sizeInBytes )
+		{
+			this.array = array;
+			this.sizeInBytes = sizeInBytes;
+		}
+	}
+
+	final private LinkedHashMap< Key, Entry > cells = new LinkedHashMap<>( 256, 0.75f, true );
+
+	private long maxSizeInBytes;
+
+	private long sizeInBytes = 0;
+
+	final private AtomicLong hits = new AtomicLong();
+
+	final private AtomicLong misses = new AtomicLong();
+
+	final private AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSizeInBytes
+	 *            the byte budget shared by all cells in this store
+	 */
+	public MemoryBoundedCellCache( final long maxSizeInBytes )
+	{
+		this.maxSizeInBytes = maxSizeInBytes;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	synchronized < A > A get(
+			final Object owner,
+			final int timepoint,
+			final int setup,
+			final int level,
+			final long[] min )
+	{
+		final Entry entry = cells.get( new Key( owner, timepoint, setup, level, min ) );
+		if ( entry == null )
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return ( A ) entry.array;
+	}
+
+	synchronized void put(
+			final Object owner,
+			final int timepoint,
+			final int setup,
+			final int level,
+			final long[] min,
+			final Object array,
+			final long arraySizeInBytes )
+	{
+		/* cells larger than the whole budget are never retained */
+		if ( arraySizeInBytes > maxSizeInBytes )
+			return;
+
+		final Entry previous = cells.put( new Key( owner, timepoint, setup, level, min ), new Entry( array, arraySizeInBytes ) );
+		if ( previous != null )
+			sizeInBytes -= previous.sizeInBytes;
+		sizeInBytes += arraySizeInBytes;
+
+		evict();
+	}
+
+	private void evict()
+	{
+		final Iterator< Map.Entry< Key, Entry > > it = cells.entrySet().iterator();
+		while ( sizeInBytes > maxSizeInBytes && it.hasNext() )
+		{
+			sizeInBytes -= it.next().getValue().sizeInBytes;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Change the byte budget, evicting least recently used cells if
+	 * necessary.
+	 *
+	 * @param maxSizeInBytes
+	 */
+	synchronized public void setMaxSizeInBytes( final long maxSizeInBytes )
+	{
+		this.maxSizeInBytes = maxSizeInBytes;
+		evict();
+	}
+
+	synchronized public long getMaxSizeInBytes()
+	{
+		return maxSizeInBytes;
+	}
+
+	synchronized public long getSizeInBytes()
+	{
+		return sizeInBytes;
+	}
+
+	synchronized public int getNumCells()
+	{
+		return cells.size();
+	}
+
+	/**
+	 * Remove all cells without counting them as evictions.
+	 */
+	synchronized public void clear()
+	{
+		cells.clear();
+		sizeInBytes = 0;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	public void resetCounters()
+	{
+		hits.set( 0 );
+		misses.set( 0 );
+		evictions.set( 0 );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%s[size=%d/%d bytes, cells=%d, hits=%d, misses=%d, evictions=%d]",
+				getClass().getSimpleName(),
+				getSizeInBytes(),
+				getMaxSizeInBytes(),
+				getNumCells(),
+				getHits(),
+				getMisses(),
+				getEvictions() );
+	}
+}
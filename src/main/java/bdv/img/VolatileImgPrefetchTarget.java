@@ -0,0 +1,97 @@
+package bdv.img;
+
+import bdv.ViewerSetupImgLoader;
+import bdv.img.cache.VolatileCachedCellImg;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * {@link CellPrefetcher.Target} for the volatile images of a
+ * {@link ViewerSetupImgLoader}.  The prefetcher gets its own instances of
+ * the images that share the cells of the global cache with the images shown
+ * by the viewer.  Their cells are enqueued at the lowest priority of the
+ * loader and behind all cells that were requested before.
+ */
+public class VolatileImgPrefetchTarget implements CellPrefetcher.Target
+{
+	/** cell dimensions assumed for images that are not cell images */
+	final static private int[] DEFAULT_CELL_DIMENSIONS = new int[] { 64, 64, 64 };
+
+	final private ViewerSetupImgLoader< ?, ? > loader;
+
+	final private int timepoint;
+
+	final private CacheHints cacheHints;
+
+	final private RandomAccess< ? >[] accesses;
+
+	final private CellGrid[] grids;
+
+	public VolatileImgPrefetchTarget( final ViewerSetupImgLoader< ?, ? > loader, final int timepoint )
+	{
+		this.loader = loader;
+		this.timepoint = timepoint;
+		final int numLevels = loader.numMipmapLevels();
+		cacheHints = new CacheHints( LoadingStrategy.VOLATILE, numLevels - 1, false );
+		accesses = new RandomAccess[ numLevels ];
+		grids = new CellGrid[ numLevels ];
+	}
+
+	private void initLevel( final int level )
+	{
+		if ( accesses[ level ] != null )
+			return;
+
+		final RandomAccessibleInterval< ? > img = loader.getVolatileImage( timepoint, level );
+		if ( img instanceof VolatileCachedCellImg )
+			( ( VolatileCachedCellImg< ?, ? > ) img ).setCacheHints( cacheHints );
+
+		final long[] dimensions = new long[ img.numDimensions() ];
+		img.dimensions( dimensions );
+		if ( img instanceof AbstractCellImg )
+			grids[ level ] = ( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid();
+		else
+			grids[ level ] = new CellGrid( dimensions, DEFAULT_CELL_DIMENSIONS );
+		accesses[ level ] = img.randomAccess();
+	}
+
+	@Override
+	public int numLevels()
+	{
+		return accesses.length;
+	}
+
+	@Override
+	public AffineTransform3D getTransform( final int level )
+	{
+		return loader.getMipmapTransforms()[ level ];
+	}
+
+	@Override
+	public CellGrid getCellGrid( final int level )
+	{
+		initLevel( level );
+		return grids[ level ];
+	}
+
+	/**
+	 * Touch the first voxel of the cell which enqueues the cell if it is
+	 * not in the cache.
+	 */
+	@Override
+	public void request( final int level, final long[] cellGridPosition )
+	{
+		initLevel( level );
+		final RandomAccess< ? > access = accesses[ level ];
+		final int[] cellDimensions = new int[ cellGridPosition.length ];
+		grids[ level ].cellDimensions( cellDimensions );
+		for ( int d = 0; d < cellGridPosition.length; ++d )
+			access.setPosition( cellGridPosition[ d ] * cellDimensions[ d ], d );
+		access.get();
+	}
+}
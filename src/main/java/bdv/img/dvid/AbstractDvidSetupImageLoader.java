@@ -3,15 +3,19 @@ package bdv.img.dvid;
 import java.io.IOException;
 
 import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.AbstractCachedViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
 import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.JsonHelper;
+import bdv.util.dvid.Node;
 import net.imglib2.Volatile;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -77,6 +81,41 @@ public class AbstractDvidSetupImageLoader< T extends NativeType< T > , V extends
 		}
 	}
 
+	/**
+	 * @return whether the node is locked such that its data cannot change
+	 *         anymore, false if this cannot be determined
+	 */
+	static protected boolean isNodeLocked( final String apiUrl, final String nodeId )
+	{
+		try
+		{
+			final JsonObject info = JsonHelper.fetch( apiUrl + "/repo/" + nodeId + "/info", JsonObject.class );
+			return Node.isLocked( info.get( "DAG" ).getAsJsonObject(), nodeId );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Wrap a loader with a {@link DiskCellCache} if {@code diskCache} is not
+	 * {@code null} and the node is locked.  Cells of an unlocked node may
+	 * have changed since they were stored.
+	 */
+	static protected < A > CacheArrayLoader< A > wrapDiskCache(
+			final CacheArrayLoader< A > loader,
+			final DiskCellCache diskCache,
+			final String apiUrl,
+			final String nodeId,
+			final String source,
+			final DiskCellCache.Serializer< A > serializer )
+	{
+		if ( diskCache == null || !isNodeLocked( apiUrl, nodeId ) )
+			return loader;
+		return DiskCacheArrayLoader.wrap( loader, diskCache, source, serializer );
+	}
+
 	protected AbstractDvidSetupImageLoader(
 			final int setupId,
 			final T t,
@@ -0,0 +1,284 @@
+package bdv.img.dvid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Groups the block requests of concurrent cache fetcher threads into runs of
+ * consecutive blocks along X that are loaded with a single request, e.g. one
+ * DVID <code>raw</code> GET for the subvolume covered by the run.
+ *
+ * If other requests are in flight, a request lingers for a short time such
+ * that fetchers working on neighboring cells can register their requests, a
+ * request without concurrent requests is loaded immediately. The first
+ * request of a row that has not yet been claimed then claims the longest
+ * contiguous run of pending requests around it, loads the run and hands the
+ * blocks to the waiting requests.
+ */
+public class BlockBatcher< T >
+{
+	public interface RunLoader< T >
+	{
+		/**
+		 * Load {@code span} consecutive blocks along X starting at block grid
+		 * position (x, y, z).
+		 *
+		 * @return the {@code span} blocks in order of increasing x
+		 */
+		public List< T > load( int level, long x, long y, long z, int span ) throws IOException;
+	}
+
+	private static class Row
+	{
+		private final int level;
+
+		private final long y;
+
+		private final long z;
+
+		public Row( final int level, final long y, final long z )
+		{
+			this.level = level;
+			this.y = y;
+			this.z = z;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( !( other instanceof Row ) )
+				return false;
+			final Row row = ( Row ) other;
+			return level == row.level && y == row.y && z == row.z;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ( int ) ( ( ( level * 31 + y ) * 31 + z ) ^ ( z >>> 32 ) );
+		}
+	}
+
+	private static class Request< T >
+	{
+		private final CompletableFuture< T > future = new CompletableFuture<>();
+
+		private boolean claimed = false;
+	}
+
+	final static public long DEFAULT_LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+	final static public int DEFAULT_MAX_SPAN = 32;
+
+	private final RunLoader< T > loader;
+
+	private final long lingerNanos;
+
+	private final int maxSpan;
+
+	/** pending requests per row, x &gt; request */
+	private final HashMap< Row, TLongObjectHashMap< Request< T > > > pending = new HashMap<>();
+
+	/** number of requests that are pending or being loaded, guarded by {@link #pending} */
+	private int numInFlight = 0;
+
+	private final AtomicLong numRuns = new AtomicLong();
+
+	private final AtomicLong numBlocks = new AtomicLong();
+
+	public BlockBatcher( final RunLoader< T > loader, final long lingerNanos, final int maxSpan )
+	{
+		this.loader = loader;
+		this.lingerNanos = lingerNanos;
+		this.maxSpan = maxSpan;
+	}
+
+	public BlockBatcher( final RunLoader< T > loader )
+	{
+		this( loader, DEFAULT_LINGER_NANOS, DEFAULT_MAX_SPAN );
+	}
+
+	/**
+	 * Load the block at block grid position (x, y, z), possibly as part of
+	 * a run loaded for concurrent requests.  A request for a block that is
+	 * already pending waits for that request, or loads the block again if
+	 * that request was interrupted before it was loaded.
+	 */
+	public T load( final int level, final long x, final long y, final long z ) throws IOException, InterruptedException
+	{
+		final Row row = new Row( level, y, z );
+		final Request< T > request = new Request<>();
+		final Request< T > other;
+		final boolean linger;
+		synchronized ( pending )
+		{
+			TLongObjectHashMap< Request< T > > requests = pending.get( row );
+			if ( requests == null )
+			{
+				requests = new TLongObjectHashMap<>();
+				pending.put( row, requests );
+			}
+			other = requests.get( x );
+			if ( other == null )
+				requests.put( x, request );
+			/* wait for neighbors only if other loads are in flight */
+			linger = lingerNanos > 0 && numInFlight > 0;
+			++numInFlight;
+		}
+
+		try
+		{
+			if ( other != null )
+				return get( other.future );
+
+			try
+			{
+				if ( linger )
+					TimeUnit.NANOSECONDS.sleep( lingerNanos );
+			}
+			catch ( final InterruptedException e )
+			{
+				synchronized ( pending )
+				{
+					/* a claimed request is completed by the thread that claimed it */
+					if ( !request.claimed )
+					{
+						remove( row, x );
+						request.future.cancel( false );
+					}
+				}
+				throw e;
+			}
+
+			final ArrayList< Request< T > > run;
+			long first = x;
+			synchronized ( pending )
+			{
+				if ( request.claimed )
+					run = null;
+				else
+				{
+					final TLongObjectHashMap< Request< T > > requests = pending.get( row );
+					long last = x;
+					while ( last - first + 1 < maxSpan && requests.containsKey( first - 1 ) )
+						--first;
+					while ( last - first + 1 < maxSpan && requests.containsKey( last + 1 ) )
+						++last;
+					run = new ArrayList<>( ( int ) ( last - first + 1 ) );
+					for ( long i = first; i <= last; ++i )
+					{
+						final Request< T > r = requests.get( i );
+						r.claimed = true;
+						run.add( r );
+						remove( row, i );
+					}
+				}
+			}
+
+			if ( run != null )
+			{
+				numRuns.incrementAndGet();
+				numBlocks.addAndGet( run.size() );
+				try
+				{
+					final List< T > blocks = loader.load( level, first, y, z, run.size() );
+					for ( int i = 0; i < run.size(); ++i )
+						run.get( i ).future.complete( blocks.get( i ) );
+				}
+				catch ( final Throwable t )
+				{
+					for ( final Request< T > r : run )
+						r.future.completeExceptionally( t );
+				}
+			}
+
+			return get( request.future );
+		}
+		catch ( final CancellationException e )
+		{
+			/* the pending request for this block was abandoned */
+		}
+		finally
+		{
+			synchronized ( pending )
+			{
+				--numInFlight;
+			}
+		}
+		return load( level, x, y, z );
+	}
+
+	private void remove( final Row row, final long x )
+	{
+		final TLongObjectHashMap< Request< T > > requests = pending.get( row );
+		requests.remove( x );
+		if ( requests.isEmpty() )
+			pending.remove( row );
+	}
+
+	private static < T > T get( final CompletableFuture< T > future ) throws IOException, InterruptedException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new IOException( cause );
+		}
+	}
+
+	/**
+	 * Copy the part of a block that is covered by a cell into the cell array,
+	 * both starting at the same corner. Blocks at the border of the volume
+	 * are larger than their cells.
+	 *
+	 * @param block primitive array of the block
+	 * @param cell primitive array of the cell
+	 */
+	public static void crop(
+			final Object block,
+			final int[] blockDimensions,
+			final Object cell,
+			final int[] cellDimensions )
+	{
+		for ( int z = 0; z < cellDimensions[ 2 ]; ++z )
+			for ( int y = 0; y < cellDimensions[ 1 ]; ++y )
+				System.arraycopy(
+						block,
+						( z * blockDimensions[ 1 ] + y ) * blockDimensions[ 0 ],
+						cell,
+						( z * cellDimensions[ 1 ] + y ) * cellDimensions[ 0 ],
+						cellDimensions[ 0 ] );
+	}
+
+	/**
+	 * @return the number of runs loaded
+	 */
+	public long getNumRuns()
+	{
+		return numRuns.get();
+	}
+
+	/**
+	 * @return the number of blocks loaded in all runs
+	 */
+	public long getNumBlocks()
+	{
+		return numBlocks.get();
+	}
+}
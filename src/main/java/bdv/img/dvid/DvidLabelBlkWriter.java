@@ -11,6 +11,7 @@ import bdv.util.dvid.DatasetBlk;
 import bdv.util.dvid.DatasetBlkLabel;
 import bdv.util.dvid.Node;
 import bdv.util.dvid.Repository;
+import bdv.util.http.Codec;
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
@@ -96,6 +97,18 @@ public class DvidLabelBlkWriter
 		this( dataset, dataset.getBlockSize() );
 	}
 
+	/**
+	 * @param dataset
+	 *            labelblk data set, its codec is set to codec.
+	 * @param codec
+	 *            Compression of the posted labels.
+	 */
+	public DvidLabelBlkWriter( DatasetBlkLabel dataset, Codec codec ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( dataset );
+		dataset.setCodec( codec );
+	}
+
 	/**
 	 * @param image
 	 *            Image to be stored in dvid server.
@@ -9,6 +9,7 @@ import com.google.gson.JsonSyntaxException;
 import bdv.util.dvid.DatasetBlk;
 import bdv.util.dvid.DatasetBlkLabel;
 import bdv.util.dvid.Repository;
+import bdv.util.http.Codec;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.array.ArrayCursor;
 import net.imglib2.img.array.ArrayImg;
@@ -85,6 +86,18 @@ public class DvidLabels64Writer extends AbstractDvidImageWriter< UnsignedLongTyp
 		this( dataset, dataset.getBlockSize() );
 	}
 
+	/**
+	 * @param dataset
+	 *            labelblk data set, its codec is set to codec.
+	 * @param codec
+	 *            Compression of the posted labels.
+	 */
+	public DvidLabels64Writer( DatasetBlkLabel dataset, Codec codec ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( dataset );
+		dataset.setCodec( codec );
+	}
+
 	/**
 	 * This is for checking functionality. Adjust apiUrl, uuid and dataSet
 	 * according to your needs.
@@ -7,6 +7,7 @@ import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
+import bdv.img.DiskCellCache;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.ColorStream;
 
@@ -20,6 +21,26 @@ import bdv.util.ColorStream;
 public class DvidMultiscale2dImageLoader extends DvidMultiscale2dSetupImageLoader
 	implements ViewerImgLoader
 {
+	/**
+	 * http://hackathon.janelia.org/api/help/multiscale2d
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "graytiles"
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public DvidMultiscale2dImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		super( apiUrl, nodeId, dataInstanceId, 0, diskCache );
+	}
+
 	/**
 	 * http://hackathon.janelia.org/api/help/multiscale2d
 	 *
@@ -6,7 +6,10 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.AbstractViewerSetupImgLoader;
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
 import bdv.img.SetCache;
+import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.dvid.Multiscale2dDataInstance.Extended.Level;
@@ -46,7 +49,7 @@ public class DvidMultiscale2dSetupImageLoader
 
 	protected VolatileGlobalCellCache cache;
 
-	private final DvidMultiscale2dVolatileArrayLoader loader;
+	private final CacheArrayLoader< VolatileByteArray > loader;
 
 	final int setupId;
 
@@ -56,6 +59,7 @@ public class DvidMultiscale2dSetupImageLoader
 	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
 	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
 	 * @param dataInstanceId e.g. "graytiles"
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
 	 * @throws IOException
 	 * @throws JsonIOException
 	 * @throws JsonSyntaxException
@@ -64,7 +68,8 @@ public class DvidMultiscale2dSetupImageLoader
 			final String apiUrl,
 			final String nodeId,
 			final String dataInstanceId,
-			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
+			final int setupId,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super( new UnsignedByteType(), new VolatileUnsignedByteType() );
 
@@ -128,7 +133,13 @@ public class DvidMultiscale2dSetupImageLoader
 			mipmapTransforms[ l ] = mipmapTransform;
 		}
 
-		loader = new DvidMultiscale2dVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, zScales, cellDimensions );
+		loader = AbstractDvidSetupImageLoader.wrapDiskCache(
+				new DvidMultiscale2dVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, zScales, cellDimensions ),
+				diskCache,
+				apiUrl,
+				nodeId,
+				apiUrl + "/node/" + nodeId + "/" + dataInstanceId,
+				DiskCacheArrayLoader.byteArraySerializer );
 
 
 //		"http://hackathon.janelia.org/api/repo/2a3fd320aef011e4b0ce18037320227c/info"
@@ -139,6 +150,25 @@ public class DvidMultiscale2dSetupImageLoader
 
 	}
 
+	/**
+	 * http://hackathon.janelia.org/api/help/multiscale2d
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "graytiles"
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public DvidMultiscale2dSetupImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( apiUrl, nodeId, dataInstanceId, setupId, null );
+	}
+
 	protected < S extends NativeType< S > > VolatileCachedCellImg< S, VolatileByteArray > prepareCachedImage(
 			final int timepointId,
 			final int level,
@@ -1,18 +1,19 @@
 package bdv.img.dvid;
 
-import java.awt.image.BufferedImage;
-import java.awt.image.PixelGrabber;
 import java.io.IOException;
-import java.net.URL;
-
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.util.GrayImageDecoder;
+import bdv.util.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
 /**
  * {@link CacheArrayLoader} for
  * <a href= "http://emdata.janelia.org/api/help/multiscale2d">DVID's multiscale2d type</a>.
+ * Tiles are fetched on the calling thread and decoded by the
+ * {@link GrayImageDecoder#getDefault() shared decoder}.
  *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
@@ -47,26 +48,6 @@ public class DvidMultiscale2dVolatileArrayLoader implements CacheArrayLoader< Vo
 		return 1;
 	}
 
-	static private void readImage(
-			final String urlString,
-			final int w,
-			final int h,
-			final int[] data ) throws IOException, InterruptedException
-	{
-			final URL url = new URL( urlString );
-			final BufferedImage jpg = ImageIO.read( url );
-			/* This gymnastic is necessary to get reproducible gray
-			* values, just opening a JPG or PNG, even when saved by
-			* ImageIO, and grabbing its pixels results in gray values
-			* with a non-matching gamma transfer function, I cannot tell
-			* why... */
-			final BufferedImage image =
-					new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
-			image.createGraphics().drawImage( jpg, 0, 0, null );
-			final PixelGrabber pg = new PixelGrabber( image, 0, 0, w, h, data, 0, w );
-			pg.grabPixels();
-	}
-
 	private String makeUrl(
 			final int level,
 			final long col,
@@ -108,34 +89,39 @@ public class DvidMultiscale2dVolatileArrayLoader implements CacheArrayLoader< Vo
 
 		final int w = dimensions[ 0 ];
 		final int h = dimensions[ 1 ];
-		final int[] data = new int[ w * h ];
-		final byte[] bytes = new byte[ data.length ];
-
+		final int n = w * h;
+		final byte[] bytes = new byte[ n ];
 		try
 		{
 			if ( zScales[ level ] > 1 )
 			{
-				final long[] values = new long[ data.length ];
-				for ( long z = min[ 2 ] * zScales[ level ], dz = 0; dz < zScales[ level ]; ++dz )
+				/* fetch the next slice while the previous ones are decoded */
+				final int zScale = zScales[ level ];
+				final GrayImageDecoder decoder = GrayImageDecoder.getDefault();
+				final byte[] slices = GrayImageDecoder.borrowBuffer( n * zScale );
+				final ArrayList< Future< Void > > futures = new ArrayList<>();
+				for ( int dz = 0; dz < zScale; ++dz )
 				{
-					final String urlString = makeUrl( level, c, r, z );
-					readImage( urlString, w, h, data );
+					final String urlString = makeUrl( level, c, r, min[ 2 ] * zScale + dz );
+					futures.add( decoder.decodeAsync( HttpTransport.getDefault().get( urlString ), slices, dz * n, w, h ) );
+				}
+				for ( final Future< Void > future : futures )
+					GrayImageDecoder.await( future );
 
-					/* use blue channel from gray scale image */
-					for ( int i = 0; i < data.length; ++i )
-						values[ i ] += data[ i ] & 0xff;
+				for ( int i = 0; i < n; ++i )
+				{
+					int value = 0;
+					for ( int dz = 0, j = i; dz < zScale; ++dz, j += n )
+						value += slices[ j ] & 0xff;
+					bytes[ i ] = ( byte )( value / zScale );
 				}
-				for ( int i = 0; i < data.length; ++i )
-					bytes[ i ] = ( byte )( values[ i ] / zScales[ level ] );
+				GrayImageDecoder.returnBuffer( slices );
 			}
 			else
 			{
 				final String urlString = makeUrl( level, c, r, min[ 2 ] );
-				readImage( urlString, w, h, data );
-
-				/* use blue channel from gray scale image */
-				for ( int i = 0; i < data.length; ++i )
-					bytes[ i ] += ( byte )( data[ i ] & 0xff );
+				/* nothing to overlap with, decode on this thread */
+				GrayImageDecoder.decode( HttpTransport.getDefault().get( urlString ), bytes, 0, w, h );
 
 //				System.out.println( "success loading r=" + entry.key.r + " c=" + entry.key.c + " url(" + urlString + ")" );
 			}
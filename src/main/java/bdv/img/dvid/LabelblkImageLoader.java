@@ -6,7 +6,9 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerImgLoader;
+import bdv.img.DiskCellCache;
 import bdv.util.ColorStream;
+import bdv.util.http.Codec;
 
 /**
  * {@link ViewerImgLoader} for
@@ -18,6 +20,31 @@ import bdv.util.ColorStream;
 public class LabelblkImageLoader
 	extends LabelblkSetupImageLoader
 {
+	/**
+	 * http://emdata.janelia.org/api/help/labels64
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "bodies"
+	 * @param argbMask e.g. 0xffffffff for full opacity or 0x7fffffff for half opacity
+	 * @param codec compression of block transfers
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
+	 *
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public LabelblkImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int argbMask,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		super( apiUrl, nodeId, dataInstanceId, 0, argbMask, codec, diskCache );
+	}
+
 	/**
 	 * http://emdata.janelia.org/api/help/labels64
 	 *
@@ -7,6 +7,8 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.AbstractViewerSetupImgLoader;
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
 import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileCachedCellImg;
@@ -17,6 +19,7 @@ import bdv.labels.labelset.VolatileLabelMultisetType;
 import bdv.util.JsonHelper;
 import bdv.util.MipmapTransforms;
 import bdv.util.dvid.DatasetKeyValue;
+import bdv.util.http.Codec;
 import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.volatiles.CacheHints;
@@ -52,6 +55,8 @@ public class LabelblkMultisetSetupImageLoader
 	 * @param resolutions
 	 * @param dvidStores Array of {@link DatasetKeyValue} to manage
 	 * load/write of {@link VolatileLabelMultisetArray} from dvid store.
+	 * @param codec compression of the labels64 block transfers
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
 	 * @throws IOException
 	 * @throws JsonIOException
 	 * @throws JsonSyntaxException
@@ -63,7 +68,9 @@ public class LabelblkMultisetSetupImageLoader
 			final String nodeId,
 			final String dataInstanceId,
 			final double[][] resolutions,
-			final DatasetKeyValue[] dvidStores ) throws JsonSyntaxException, JsonIOException, IOException
+			final DatasetKeyValue[] dvidStores,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super( LabelMultisetType.type, VolatileLabelMultisetType.type );
 		this.setupId = setupId;
@@ -96,7 +103,13 @@ public class LabelblkMultisetSetupImageLoader
 
 		/* first loader is a labels64 source */
 		cellDimensions[ 0 ] = dataInstance.Extended.BlockSize;
-		loaders[ 0 ] = new LabelblkMultisetVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, cellDimensions[ 0 ] );
+		loaders[ 0 ] = AbstractDvidSetupImageLoader.wrapDiskCache(
+				new LabelblkMultisetVolatileArrayLoader( apiUrl, nodeId, dataInstanceId, cellDimensions[ 0 ], codec ),
+				diskCache,
+				apiUrl,
+				nodeId,
+				apiUrl + "/node/" + nodeId + "/" + dataInstanceId + "#labelmultiset",
+				DiskCacheArrayLoader.labelMultisetSerializer );
 
 		/* subsequent loaders are key value stores */
 		for ( int i = 0; i < dvidStores.length; ++i ) {
@@ -106,6 +119,20 @@ public class LabelblkMultisetSetupImageLoader
 		}
 	}
 
+	/**
+	 * Load labels64 blocks uncompressed and without disk cache.
+	 */
+	public LabelblkMultisetSetupImageLoader(
+			final int setupId,
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final double[][] resolutions,
+			final DatasetKeyValue[] dvidStores ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( setupId, apiUrl, nodeId, dataInstanceId, resolutions, dvidStores, Codec.NONE, null );
+	}
+
 	@Override
 	public void setCache( final VolatileGlobalCellCache cache )
 	{
@@ -2,8 +2,8 @@ package bdv.img.dvid;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.Arrays;
+import java.util.List;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.EmptyArrayCreator;
@@ -11,12 +11,18 @@ import bdv.labels.labelset.LabelMultisetEntry;
 import bdv.labels.labelset.LabelMultisetEntryList;
 import bdv.labels.labelset.LongMappedAccessData;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
+import bdv.util.http.Codec;
+import bdv.util.http.HttpTransport;
 import gnu.trove.list.array.TLongArrayList;
 
 /**
  * Loads a full resolution label block from a DVID labels64 source where each
  * voxel is assigned to a single label, and converts them into a LabelMultiset
- * with one element per voxel.
+ * with one element per voxel. Concurrent requests for neighboring blocks are
+ * loaded with a single <code>raw</code> request for the subvolume that they
+ * cover by a {@link BlockBatcher}.
+ * Responses can be requested compressed with a {@link Codec}, they are
+ * decompressed on the fetcher threads.
  */
 public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< VolatileLabelMultisetArray >
 {
@@ -28,16 +34,34 @@ public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< Vo
 
 	private final String dataInstanceId;
 
+	private final int[] blockDimensions;
+
+	private final Codec codec;
+
+	private final BlockBatcher< long[] > batcher = new BlockBatcher<>( this::loadRun );
+
 	public LabelblkMultisetVolatileArrayLoader(
 			final String apiUrl,
 			final String nodeId,
 			final String dataInstanceId,
-			final int[] blockDimensions )
+			final int[] blockDimensions,
+			final Codec codec )
 	{
 		theEmptyArray = new VolatileLabelMultisetArray( 1, false );
 		this.apiUrl = apiUrl;
 		this.nodeId = nodeId;
 		this.dataInstanceId = dataInstanceId;
+		this.blockDimensions = blockDimensions.clone();
+		this.codec = codec;
+	}
+
+	public LabelblkMultisetVolatileArrayLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int[] blockDimensions )
+	{
+		this( apiUrl, nodeId, dataInstanceId, blockDimensions, Codec.NONE );
 	}
 
 	// TODO: unused -- remove.
@@ -47,39 +71,48 @@ public class LabelblkMultisetVolatileArrayLoader implements CacheArrayLoader< Vo
 		return 8;
 	}
 
-	static private void readBlock(
-			final String urlString,
-			final int[] data,
-			final LongMappedAccessData listData ) throws IOException
+	/**
+	 * Load {@code span} blocks with a single <code>raw</code> request for the
+	 * subvolume that they cover. The ids are decoded and split into blocks
+	 * while reading the response.
+	 */
+	private List< long[] > loadRun(
+			final int level,
+			final long x,
+			final long y,
+			final long z,
+			final int span ) throws IOException
 	{
-		final byte[] bytes = new byte[ data.length * 8 ];
-		final URL url = new URL( urlString );
-		final InputStream in = url.openStream();
-
-		int off = 0, l = 0;
-		do
-		{
-			l = in.read( bytes, off, bytes.length - off );
-			off += l;
-		}
-		while ( l > 0 && off < bytes.length );
-		in.close();
+		final int blockWidth = blockDimensions[ 0 ];
+		final int runWidth = span * blockWidth;
+		final int blockSize = blockWidth * blockDimensions[ 1 ] * blockDimensions[ 2 ];
+		return HttpTransport.getDefault().get(
+				codec.appendTo( makeUrl( x, y, z, span ) ),
+				this,
+				( in, contentLength ) -> {
+					final InputStream decoded = codec.decode( in, contentLength, span * blockSize * 8 );
+					final long[][] blocks = new long[ span ][ blockSize ];
+					HttpTransport.readLongsLittleEndian( decoded, span * blockSize, ( k, id ) -> {
+						final int row = k / runWidth;
+						final int rx = k - row * runWidth;
+						final int b = rx / blockWidth;
+						blocks[ b ][ row * blockWidth + rx - b * blockWidth ] = id;
+					} );
+					return Arrays.asList( blocks );
+				} );
+	}
 
+	static private VolatileLabelMultisetArray createArray( final long[] ids )
+	{
+		final int[] data = new int[ ids.length ];
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
 		final TLongArrayList idAndOffsetList = new TLongArrayList();
 		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
 		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
 		long nextListOffset = 0;
-A:		for ( int i = 0, j = -1; i < data.length; ++i )
+A:		for ( int i = 0; i < data.length; ++i )
 		{
-			final long id =
-					( 0xffl & bytes[ ++j ] ) |
-					( ( 0xffl & bytes[ ++j ] ) << 8 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 16 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 24 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 32 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 40 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 48 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 56 );
+			final long id = ids[ i ];
 
 			// does the list [id x 1] already exist?
 			for ( int k = 0; k < idAndOffsetList.size(); k += 2 )
@@ -100,11 +133,14 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 			data[ i ] = ( int ) nextListOffset;
 			nextListOffset += list.getSizeInBytes();
 		}
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
 	}
 
 	private String makeUrl(
-			final long[] min,
-			final int[] dimensions )
+			final long x,
+			final long y,
+			final long z,
+			final int span )
 	{
 		final StringBuffer buf = new StringBuffer( apiUrl );
 
@@ -112,27 +148,18 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 		buf.append( nodeId );
 		buf.append( "/" );
 		buf.append( dataInstanceId );
-
-//		buf.append( "/blocks/" );
-//		buf.append( min[ 0 ] / dimensions[ 0 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 1 ] / dimensions[ 1 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 2 ] / dimensions[ 2 ] );
-//		buf.append( "/1" );
-
 		buf.append( "/raw/0_1_2/" );
-		buf.append( dimensions[ 0 ] );
+		buf.append( span * blockDimensions[ 0 ] );
 		buf.append( "_" );
-		buf.append( dimensions[ 1 ] );
+		buf.append( blockDimensions[ 1 ] );
 		buf.append( "_" );
-		buf.append( dimensions[ 2 ] );
+		buf.append( blockDimensions[ 2 ] );
 		buf.append( "/" );
-		buf.append( min[ 0 ] );
+		buf.append( x * blockDimensions[ 0 ] );
 		buf.append( "_" );
-		buf.append( min[ 1 ] );
+		buf.append( y * blockDimensions[ 1 ] );
 		buf.append( "_" );
-		buf.append( min[ 2 ] );
+		buf.append( z * blockDimensions[ 2 ] );
 
 		return buf.toString();
 	}
@@ -153,13 +180,19 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 //				+ "   min = " + Util.printCoordinates( min ) + "\n"
 //				+ ")"
 //				);
-		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
-
 		try
 		{
-			final String urlString = makeUrl( min, dimensions );
-			readBlock( urlString, data, listData );
+			final int numEntities = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
+			final long[] block = batcher.load(
+					level,
+					min[ 0 ] / blockDimensions[ 0 ],
+					min[ 1 ] / blockDimensions[ 1 ],
+					min[ 2 ] / blockDimensions[ 2 ] );
+			if ( block.length == numEntities )
+				return createArray( block );
+			final long[] ids = new long[ numEntities ];
+			BlockBatcher.crop( block, blockDimensions, ids, dimensions );
+			return createArray( ids );
 		}
 		catch ( final IOException e )
 		{
@@ -170,8 +203,6 @@ A:		for ( int i = 0, j = -1; i < data.length; ++i )
 							Arrays.toString( dimensions ) );
 			return null;
 		}
-
-		return new VolatileLabelMultisetArray( data, listData, true );
 	}
 
 	@Override
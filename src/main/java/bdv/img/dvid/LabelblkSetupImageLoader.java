@@ -6,7 +6,10 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerSetupImgLoader;
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
 import bdv.util.ColorStream;
+import bdv.util.http.Codec;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.volatiles.VolatileARGBType;
@@ -25,19 +28,54 @@ public class LabelblkSetupImageLoader extends
 	private LabelblkSetupImageLoader(
 			final ConstructorParameters parameters,
 			final int setupId,
-			final int argbMask ) throws JsonSyntaxException, JsonIOException, IOException
+			final int argbMask,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super(
 				setupId,
 				new ARGBType(),
 				new VolatileARGBType(),
 				parameters,
-				new LabelblkVolatileArrayLoader(
+				wrapDiskCache(
+						new LabelblkVolatileArrayLoader(
+								parameters.apiUrl,
+								parameters.nodeId,
+								parameters.dataInstanceId,
+								parameters.cellDimensions,
+								argbMask,
+								codec ),
+						diskCache,
 						parameters.apiUrl,
 						parameters.nodeId,
-						parameters.dataInstanceId,
-						parameters.cellDimensions,
-						argbMask ) );
+						parameters.apiUrl + "/node/" + parameters.nodeId + "/" + parameters.dataInstanceId + "#argb" + Integer.toHexString( argbMask ),
+						DiskCacheArrayLoader.intArraySerializer ) );
+	}
+
+	/**
+	 * http://hackathon.janelia.org/api/help/labels64
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "bodies"
+	 * @param argbMask e.g. 0xffffffff for full opacity or 0x7fffffff for half opacity
+	 * @param codec compression of block transfers
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
+	 *
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public LabelblkSetupImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId,
+			final int argbMask,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId, argbMask, codec, diskCache );
 	}
 
 	/**
@@ -59,7 +97,7 @@ public class LabelblkSetupImageLoader extends
 			final int setupId,
 			final int argbMask ) throws JsonSyntaxException, JsonIOException, IOException
 	{
-		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId, argbMask );
+		this( apiUrl, nodeId, dataInstanceId, setupId, argbMask, Codec.NONE, null );
 	}
 
 	/**
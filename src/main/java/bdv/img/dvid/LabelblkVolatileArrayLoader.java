@@ -2,16 +2,19 @@ package bdv.img.dvid;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.Arrays;
+import java.util.List;
 
 import bdv.img.cache.CacheArrayLoader;
 import bdv.util.ColorStream;
+import bdv.util.http.Codec;
+import bdv.util.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 
 /**
  * {@link CacheArrayLoader} for
  * <a href= "http://emdata.janelia.org/api/help/labels64">DVID's labels64 type</a>.
+ * Responses can be requested compressed with a {@link Codec}.
  *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
@@ -21,18 +24,34 @@ public class LabelblkVolatileArrayLoader implements CacheArrayLoader< VolatileIn
 	private final String nodeId;
 	private final String dataInstanceId;
 	private final int argbMask;
+	private final int[] blockDimensions;
+	private final Codec codec;
+	private final BlockBatcher< int[] > batcher = new BlockBatcher<>( this::loadRun );
 
 	public LabelblkVolatileArrayLoader(
 			final String apiUrl,
 			final String nodeId,
 			final String dataInstanceId,
 			final int[] blockDimensions,
-			final int argbMask )
+			final int argbMask,
+			final Codec codec )
 	{
 		this.apiUrl = apiUrl;
 		this.nodeId = nodeId;
 		this.dataInstanceId = dataInstanceId;
 		this.argbMask = argbMask;
+		this.blockDimensions = blockDimensions.clone();
+		this.codec = codec;
+	}
+
+	public LabelblkVolatileArrayLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int[] blockDimensions,
+			final int argbMask )
+	{
+		this( apiUrl, nodeId, dataInstanceId, blockDimensions, argbMask, Codec.NONE );
 	}
 
 	public LabelblkVolatileArrayLoader(
@@ -50,72 +69,61 @@ public class LabelblkVolatileArrayLoader implements CacheArrayLoader< VolatileIn
 		return 1;
 	}
 
-	private void readBlock(
-			final String urlString,
-			final int[] data ) throws IOException
+	/**
+	 * Load {@code span} blocks with a single <code>raw</code> request for the
+	 * subvolume that they cover, and split the response into blocks while
+	 * reading it.
+	 */
+	private List< int[] > loadRun(
+			final int level,
+			final long x,
+			final long y,
+			final long z,
+			final int span ) throws IOException
 	{
-		final byte[] bytes = new byte[ data.length * 8 ];
-		final URL url = new URL( urlString );
-		final InputStream in = url.openStream();
-
-		int off = 0, l = 0;
-		do
-		{
-			l = in.read( bytes, off, bytes.length - off );
-			off += l;
-		}
-		while ( l > 0 && off < bytes.length );
-
-		in.close();
-
-		for ( int i = 0, j = -1; i < data.length; ++i )
-		{
-			final long index =
-					( 0xffl & bytes[ ++j ] ) |
-					( ( 0xffl & bytes[ ++j ] ) << 8 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 16 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 24 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 32 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 40 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 48 ) |
-					( ( 0xffl & bytes[ ++j ] ) << 56 );
-			data[ i ] = ColorStream.get( index ) & argbMask;
-		}
+		final int blockWidth = blockDimensions[ 0 ];
+		final int runWidth = span * blockWidth;
+		final int blockSize = blockWidth * blockDimensions[ 1 ] * blockDimensions[ 2 ];
+		return HttpTransport.getDefault().get(
+				codec.appendTo( makeUrl( x, y, z, span ) ),
+				this,
+				( in, contentLength ) -> {
+					final InputStream decoded = codec.decode( in, contentLength, span * blockSize * 8 );
+					final int[][] blocks = new int[ span ][ blockSize ];
+					HttpTransport.readLongsLittleEndian( decoded, span * blockSize, ( k, index ) -> {
+						final int row = k / runWidth;
+						final int rx = k - row * runWidth;
+						final int b = rx / blockWidth;
+						blocks[ b ][ row * blockWidth + rx - b * blockWidth ] = ColorStream.get( index ) & argbMask;
+					} );
+					return Arrays.asList( blocks );
+				} );
 	}
 
 	private String makeUrl(
-			final long[] min,
-			final int[] dimensions )
+			final long x,
+			final long y,
+			final long z,
+			final int span )
 	{
 		final StringBuffer buf = new StringBuffer( apiUrl );
 
-		// <api URL>/node/3f8c/mymultiscale2d/tile/xy/0/10_10_20
-
 		buf.append( "/node/" );
 		buf.append( nodeId );
 		buf.append( "/" );
 		buf.append( dataInstanceId );
-
-//		buf.append( "/blocks/" );
-//		buf.append( min[ 0 ] / dimensions[ 0 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 1 ] / dimensions[ 1 ] );
-//		buf.append( "_" );
-//		buf.append( min[ 2 ] / dimensions[ 2 ] );
-//		buf.append( "/1" );
-
 		buf.append( "/raw/0_1_2/" );
-		buf.append( dimensions[ 0 ] );
+		buf.append( span * blockDimensions[ 0 ] );
 		buf.append( "_" );
-		buf.append( dimensions[ 1 ] );
+		buf.append( blockDimensions[ 1 ] );
 		buf.append( "_" );
-		buf.append( dimensions[ 2 ] );
+		buf.append( blockDimensions[ 2 ] );
 		buf.append( "/" );
-		buf.append( min[ 0 ] );
+		buf.append( x * blockDimensions[ 0 ] );
 		buf.append( "_" );
-		buf.append( min[ 1 ] );
+		buf.append( y * blockDimensions[ 1 ] );
 		buf.append( "_" );
-		buf.append( min[ 2 ] );
+		buf.append( z * blockDimensions[ 2 ] );
 
 		return buf.toString();
 	}
@@ -129,17 +137,27 @@ public class LabelblkVolatileArrayLoader implements CacheArrayLoader< VolatileIn
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
 	{
-		final int[] data = new int[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
-
+		final int numEntities = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
+		int[] data;
 
 		try
 		{
-			final String urlString = makeUrl( min, dimensions );
-//			System.out.println( urlString + " " + data.length );
-			readBlock( urlString, data );
+			final int[] block = batcher.load(
+					level,
+					min[ 0 ] / blockDimensions[ 0 ],
+					min[ 1 ] / blockDimensions[ 1 ],
+					min[ 2 ] / blockDimensions[ 2 ] );
+			if ( block.length == numEntities )
+				data = block;
+			else
+			{
+				data = new int[ numEntities ];
+				BlockBatcher.crop( block, blockDimensions, data, dimensions );
+			}
 		}
 		catch (final IOException e)
 		{
+			data = new int[ numEntities ];
 			System.out.println(
 					"failed loading min = " +
 					Arrays.toString( min ) +
@@ -6,6 +6,8 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerImgLoader;
+import bdv.img.DiskCellCache;
+import bdv.util.http.Codec;
 
 /**
  * {@link ViewerImgLoader} for
@@ -15,6 +17,28 @@ import bdv.ViewerImgLoader;
  */
 public class Uint8blkImageLoader extends Uint8blkSetupImageLoader
 {
+	/**
+	 * http://emdata.janelia.org/api/help/grayscale8
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "grayscale"
+	 * @param codec compression of block transfers
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public Uint8blkImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		super( apiUrl, nodeId, dataInstanceId, 0, codec, diskCache );
+	}
+
 	/**
 	 * http://emdata.janelia.org/api/help/grayscale8
 	 *
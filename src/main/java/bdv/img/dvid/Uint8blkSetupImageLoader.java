@@ -6,6 +6,9 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
 import bdv.ViewerSetupImgLoader;
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
+import bdv.util.http.Codec;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.volatiles.VolatileUnsignedByteType;
@@ -21,18 +24,50 @@ public class Uint8blkSetupImageLoader
 {
 	private Uint8blkSetupImageLoader(
 			final ConstructorParameters parameters,
-			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
+			final int setupId,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super(
 				setupId,
 				new UnsignedByteType(),
 				new VolatileUnsignedByteType(),
 				parameters,
-				new Uint8blkVolatileArrayLoader(
+				wrapDiskCache(
+						new Uint8blkVolatileArrayLoader(
+								parameters.apiUrl,
+								parameters.nodeId,
+								parameters.dataInstanceId,
+								parameters.cellDimensions,
+								codec ),
+						diskCache,
 						parameters.apiUrl,
 						parameters.nodeId,
-						parameters.dataInstanceId,
-						parameters.cellDimensions ) );
+						parameters.apiUrl + "/node/" + parameters.nodeId + "/" + parameters.dataInstanceId,
+						DiskCacheArrayLoader.byteArraySerializer ) );
+	}
+
+	/**
+	 * http://emdata.janelia.org/api/help/grayscale8
+	 *
+	 * @param apiUrl e.g. "http://hackathon.janelia.org/api"
+	 * @param nodeId e.g. "2a3fd320aef011e4b0ce18037320227c"
+	 * @param dataInstanceId e.g. "grayscale"
+	 * @param codec compression of block transfers
+	 * @param diskCache store for cells of a locked node, {@code null} to disable
+	 * @throws IOException
+	 * @throws JsonIOException
+	 * @throws JsonSyntaxException
+	 */
+	public Uint8blkSetupImageLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int setupId,
+			final Codec codec,
+			final DiskCellCache diskCache ) throws JsonSyntaxException, JsonIOException, IOException
+	{
+		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId, codec, diskCache );
 	}
 
 	/**
@@ -51,6 +86,6 @@ public class Uint8blkSetupImageLoader
 			final String dataInstanceId,
 			final int setupId ) throws JsonSyntaxException, JsonIOException, IOException
 	{
-		this( new ConstructorParameters( apiUrl, nodeId, dataInstanceId ), setupId );
+		this( apiUrl, nodeId, dataInstanceId, setupId, Codec.NONE, null );
 	}
 }
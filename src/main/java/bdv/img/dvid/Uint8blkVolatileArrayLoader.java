@@ -2,15 +2,21 @@ package bdv.img.dvid;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.util.http.Codec;
+import bdv.util.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
 /**
  * {@link CacheArrayLoader} for
  * <a href= "http://emdata.janelia.org/api/help/grayscale8">DVID's grayscale8 type</a>.
+ * Concurrent requests for neighboring blocks are loaded with a single
+ * <code>blocks</code> request by a {@link BlockBatcher}.  Responses can be
+ * requested compressed with a {@link Codec}.
  *
  * @author Stephan Saalfeld <saalfelds@janelia.hhmi.org>
  */
@@ -19,16 +25,31 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 	private final String apiUrl;
 	private final String nodeId;
 	private final String dataInstanceId;
+	private final int[] blockDimensions;
+	private final Codec codec;
+	private final BlockBatcher< byte[] > batcher = new BlockBatcher<>( this::loadRun );
 
 	public Uint8blkVolatileArrayLoader(
 			final String apiUrl,
 			final String nodeId,
 			final String dataInstanceId,
-			final int[] blockDimensions )
+			final int[] blockDimensions,
+			final Codec codec )
 	{
 		this.apiUrl = apiUrl;
 		this.nodeId = nodeId;
 		this.dataInstanceId = dataInstanceId;
+		this.blockDimensions = blockDimensions.clone();
+		this.codec = codec;
+	}
+
+	public Uint8blkVolatileArrayLoader(
+			final String apiUrl,
+			final String nodeId,
+			final String dataInstanceId,
+			final int[] blockDimensions )
+	{
+		this( apiUrl, nodeId, dataInstanceId, blockDimensions, Codec.NONE );
 	}
 
 	@Override
@@ -37,26 +58,39 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 		return 1;
 	}
 
-	static private void readBlock(
-			final String urlString,
-			final byte[] data ) throws IOException
+	/**
+	 * Load {@code span} blocks with a single request, the response is the
+	 * concatenation of the blocks.
+	 */
+	private List< byte[] > loadRun(
+			final int level,
+			final long x,
+			final long y,
+			final long z,
+			final int span ) throws IOException
 	{
-			final URL url = new URL( urlString );
-			final InputStream in = url.openStream();
-			int off = 0, l = 0;
-			do
-			{
-				l = in.read( data, off, data.length - off );
-				off += l;
-			}
-			while ( l > 0 && off < data.length );
-
-			in.close();
+		final int blockSize = blockDimensions[ 0 ] * blockDimensions[ 1 ] * blockDimensions[ 2 ];
+		return HttpTransport.getDefault().get(
+				codec.appendTo( makeUrl( x, y, z, span ) ),
+				this,
+				( in, contentLength ) -> {
+					final InputStream decoded = codec.decode( in, contentLength, span * blockSize );
+					final ArrayList< byte[] > blocks = new ArrayList<>( span );
+					for ( int i = 0; i < span; ++i )
+					{
+						final byte[] block = new byte[ blockSize ];
+						HttpTransport.readFully( decoded, block );
+						blocks.add( block );
+					}
+					return blocks;
+				} );
 	}
 
 	private String makeUrl(
-			final long[] min,
-			final int[] dimensions )
+			final long x,
+			final long y,
+			final long z,
+			final int span )
 	{
 		final StringBuffer buf = new StringBuffer( apiUrl );
 
@@ -65,17 +99,17 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 		buf.append( "/" );
 		buf.append( dataInstanceId );
 		buf.append( "/blocks/" );
-		buf.append( min[ 0 ] / dimensions[ 0 ] );
+		buf.append( x );
 		buf.append( "_" );
-		buf.append( min[ 1 ] / dimensions[ 1 ] );
+		buf.append( y );
 		buf.append( "_" );
-		buf.append( min[ 2 ] / dimensions[ 2 ] );
-		buf.append( "/1" );
+		buf.append( z );
+		buf.append( "/" );
+		buf.append( span );
 
 		return buf.toString();
 	}
 
-
 	@Override
 	public VolatileByteArray loadArray(
 			final int timepoint,
@@ -84,16 +118,27 @@ public class Uint8blkVolatileArrayLoader implements CacheArrayLoader< VolatileBy
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
 	{
-		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final int numEntities = dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ];
+		byte[] data;
 
 		try
 		{
-			final String urlString = makeUrl( min, dimensions );
-			readBlock( urlString, data );
-//			System.out.println( urlString + " " + data.length );
+			final byte[] block = batcher.load(
+					level,
+					min[ 0 ] / blockDimensions[ 0 ],
+					min[ 1 ] / blockDimensions[ 1 ],
+					min[ 2 ] / blockDimensions[ 2 ] );
+			if ( block.length == numEntities )
+				data = block;
+			else
+			{
+				data = new byte[ numEntities ];
+				BlockBatcher.crop( block, blockDimensions, data, dimensions );
+			}
 		}
 		catch (final IOException e)
 		{
+			data = new byte[ numEntities ];
 			System.out.println(
 					"failed loading min = " +
 					Arrays.toString( min ) +
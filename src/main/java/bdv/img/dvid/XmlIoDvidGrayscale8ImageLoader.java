@@ -4,6 +4,8 @@ import java.io.File;
 
 import org.jdom2.Element;
 
+import bdv.util.http.Codec;
+
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.ImgLoaderIo;
 import mpicbg.spim.data.generic.sequence.XmlIoBasicImgLoader;
@@ -24,9 +26,10 @@ public class XmlIoDvidGrayscale8ImageLoader
 		final String apiUrl = elem.getChildText( "apiUrl" );
 		final String nodeId = elem.getChildText( "nodeId" );
 		final String dataInstanceId = elem.getChildText( "dataInstanceId" );
+		final Codec codec = Codec.fromName( elem.getChildText( "compression" ) );
 		try
 		{
-			return new Uint8blkImageLoader( apiUrl, nodeId, dataInstanceId );
+			return new Uint8blkImageLoader( apiUrl, nodeId, dataInstanceId, codec, null );
 		}
 		catch ( final Exception e )
 		{
@@ -7,6 +7,8 @@ import mpicbg.spim.data.generic.sequence.XmlIoBasicImgLoader;
 
 import org.jdom2.Element;
 
+import bdv.util.http.Codec;
+
 @ImgLoaderIo( format = "dvid-labels64", type = LabelblkImageLoader.class )
 public class XmlIoDvidLabels64ImageLoader
 		implements XmlIoBasicImgLoader< LabelblkImageLoader >
@@ -23,9 +25,10 @@ public class XmlIoDvidLabels64ImageLoader
 		final String apiUrl = elem.getChildText( "apiUrl" );
 		final String nodeId = elem.getChildText( "nodeId" );
 		final String dataInstanceId = elem.getChildText( "dataInstanceId" );
+		final Codec codec = Codec.fromName( elem.getChildText( "compression" ) );
 		try
 		{
-			return new LabelblkImageLoader( apiUrl, nodeId, dataInstanceId );
+			return new LabelblkImageLoader( apiUrl, nodeId, dataInstanceId, 0xffffffff, codec, null );
 		}
 		catch ( Exception e )
 		{
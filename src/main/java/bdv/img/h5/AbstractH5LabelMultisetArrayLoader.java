@@ -20,6 +20,8 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 
 	protected final IHDF5IntReader scaleReader;
 
+	protected final IHDF5Reader scaleFileReader;
+
 	final protected String dataset;
 
 	public AbstractH5LabelMultisetArrayLoader(
@@ -28,6 +30,7 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 	{
 		theEmptyArray = new VolatileLabelMultisetArray( 1, false );
 		this.scaleReader = ( scaleReader == null ) ? null : scaleReader.uint32();
+		this.scaleFileReader = scaleReader;
 		this.dataset = dataset;
 	}
 
@@ -48,6 +51,7 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 
 		final String listsPath = String.format( "l%02d/z%05d/y%05d/x%05d/lists", level, min[ 2 ], min[ 1 ], min[ 0 ] );
 		final String dataPath = String.format( "l%02d/z%05d/y%05d/x%05d/data", level, min[ 2 ], min[ 1 ], min[ 0 ] );
+		final String argMaxPath = String.format( "l%02d/z%05d/y%05d/x%05d/argmax", level, min[ 2 ], min[ 1 ], min[ 0 ] );
 
 		final int[] offsets = scaleReader.readMDArray( dataPath ).getAsFlatArray();
 		final int[] lists = scaleReader.readArray( listsPath );
@@ -55,7 +59,10 @@ abstract public class AbstractH5LabelMultisetArrayLoader implements CacheArrayLo
 		final LongMappedAccess access = listData.createAccess();
 		for ( int i = 0; i < lists.length; ++i )
 			access.putInt( lists[ i ], i * 4 );
-		return new VolatileLabelMultisetArray( offsets, listData, 0, true );
+
+		/* argmax was not written by older versions, compute it on demand then */
+		final long[] argMax = scaleFileReader.exists( argMaxPath ) ? scaleFileReader.int64().readMDArray( argMaxPath ).getAsFlatArray() : null;
+		return new VolatileLabelMultisetArray( offsets, listData, 0, argMax, true );
 	}
 
 	@Override
@@ -94,6 +94,6 @@ A:		for ( int i = 0; i < data.length; ++i )
 		}
 //		System.out.println( listData.size() );
 
-		return new VolatileLabelMultisetArray( offsets, listData, true );
+		return new VolatileLabelMultisetArray( offsets, listData, nextListOffset, true );
 	}
 }
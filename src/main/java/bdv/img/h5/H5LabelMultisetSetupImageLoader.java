@@ -6,9 +6,13 @@ import bdv.AbstractCachedViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.ViewerSetupImgLoader;
 import bdv.cache.CacheControl;
+import bdv.img.CompactLabelMultisetArrayLoader;
+import bdv.img.MemoryBoundedCacheArrayLoader;
+import bdv.img.MemoryBoundedCellCache;
 import bdv.img.SetCache;
 import bdv.img.cache.CacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.labels.labelset.CompactVolatileLabelMultisetArray;
 import bdv.labels.labelset.LabelMultisetType;
 import bdv.labels.labelset.VolatileLabelMultisetArray;
 import bdv.labels.labelset.VolatileLabelMultisetType;
@@ -153,7 +157,9 @@ public class H5LabelMultisetSetupImageLoader
 			final int[] cellDimension,
 			final double[] resolution,
 			final double[] offset,
-			final VolatileGlobalCellCache cache ) throws IOException
+			final VolatileGlobalCellCache cache,
+			final MemoryBoundedCellCache cellCache,
+			final boolean compactCells ) throws IOException
 	{
 
 		super( setupId,
@@ -162,7 +168,9 @@ public class H5LabelMultisetSetupImageLoader
 				readResolutions( reader, scaleReader, dataset, resolution ),
 				new LabelMultisetType(),
 				new VolatileLabelMultisetType(),
-				typedLoader( reader, scaleReader, dataset ),
+				MemoryBoundedCacheArrayLoader.wrapLabelMultiset(
+						CompactLabelMultisetArrayLoader.wrap( typedLoader( reader, scaleReader, dataset ), compactCells ),
+						cellCache ),
 				cache );
 		this.offset = offset;
 		/* offset mipmap transforms */
@@ -176,6 +184,40 @@ public class H5LabelMultisetSetupImageLoader
 		}
 	}
 
+	public H5LabelMultisetSetupImageLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset,
+			final int setupId,
+			final int[] cellDimension,
+			final double[] resolution,
+			final double[] offset,
+			final VolatileGlobalCellCache cache ) throws IOException
+	{
+		this( reader, scaleReader, dataset, setupId, cellDimension, resolution, offset, cache, null, false );
+	}
+
+	/**
+	 * @param cellCache
+	 *            byte bounded cell store shared with other loaders, or
+	 *            {@code null} to rely on the cell count of {@code cache} only
+	 * @param compactCells
+	 *            store cells as {@link CompactVolatileLabelMultisetArray
+	 *            CompactVolatileLabelMultisetArrays} where that is smaller
+	 */
+	public H5LabelMultisetSetupImageLoader(
+			final IHDF5Reader reader,
+			final IHDF5Reader scaleReader,
+			final String dataset,
+			final int setupId,
+			final int[] cellDimension,
+			final VolatileGlobalCellCache cache,
+			final MemoryBoundedCellCache cellCache,
+			final boolean compactCells ) throws IOException
+	{
+		this( reader, scaleReader, dataset, setupId, cellDimension, readResolution( reader, dataset ), readOffset( reader, dataset ), cache, cellCache, compactCells );
+	}
+
 	public H5LabelMultisetSetupImageLoader(
 			final IHDF5Reader reader,
 			final IHDF5Reader scaleReader,
@@ -184,7 +226,7 @@ public class H5LabelMultisetSetupImageLoader
 			final int[] cellDimension,
 			final VolatileGlobalCellCache cache ) throws IOException
 	{
-		this( reader, scaleReader, dataset, setupId, cellDimension, readResolution( reader, dataset ), readOffset( reader, dataset ), cache );
+		this( reader, scaleReader, dataset, setupId, cellDimension, cache, null, false );
 	}
 
 	@Override
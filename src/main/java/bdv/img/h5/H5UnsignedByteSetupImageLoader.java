@@ -2,6 +2,8 @@ package bdv.img.h5;
 
 import java.io.IOException;
 
+import bdv.img.MemoryBoundedCacheArrayLoader;
+import bdv.img.MemoryBoundedCellCache;
 import bdv.img.cache.VolatileGlobalCellCache;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
@@ -42,6 +44,22 @@ public class H5UnsignedByteSetupImageLoader
 			final int setupId,
 			final int[] blockDimension,
 			final VolatileGlobalCellCache cache ) throws IOException
+	{
+		this( reader, dataset, setupId, blockDimension, cache, null );
+	}
+
+	/**
+	 * @param cellCache
+	 *            byte bounded cell store shared with other loaders, or
+	 *            {@code null} to rely on the cell count of {@code cache} only
+	 */
+	public H5UnsignedByteSetupImageLoader(
+			final IHDF5Reader reader,
+			final String dataset,
+			final int setupId,
+			final int[] blockDimension,
+			final VolatileGlobalCellCache cache,
+			final MemoryBoundedCellCache cellCache ) throws IOException
 	{
 		super(
 				reader,
@@ -50,7 +68,7 @@ public class H5UnsignedByteSetupImageLoader
 				blockDimension,
 				new UnsignedByteType(),
 				new VolatileUnsignedByteType(),
-				new H5ByteArrayLoader( reader, dataset ),
+				MemoryBoundedCacheArrayLoader.wrap( new H5ByteArrayLoader( reader, dataset ), cellCache ),
 				cache );
 	}
 }
@@ -2,6 +2,8 @@ package bdv.img.knossos;
 
 import java.io.IOException;
 
+import bdv.img.DiskCacheArrayLoader;
+import bdv.img.DiskCellCache;
 import bdv.img.cache.VolatileGlobalCellCache;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
@@ -52,21 +54,42 @@ public class KnossosUnsignedByteImageLoader extends AbstractKnossosImageLoader<
 	public KnossosUnsignedByteImageLoader(
 			final KnossosConfig config,
 			final String urlFormat,
-			final VolatileGlobalCellCache cache )
+			final VolatileGlobalCellCache cache,
+			final DiskCellCache diskCache )
 	{
 		super(
 				config,
 				urlFormat,
 				new UnsignedByteType(),
 				new VolatileUnsignedByteType(),
-				new KnossosUnsignedByteVolatileArrayLoader(
-						config.baseUrl,
-						urlFormat,
-						config.experimentName,
-						config.format ),
+				DiskCacheArrayLoader.wrap(
+						new KnossosUnsignedByteVolatileArrayLoader(
+								config.baseUrl,
+								urlFormat,
+								config.experimentName,
+								config.format ),
+						diskCache,
+						config.baseUrl + "#" + config.experimentName + "#" + config.format + "#" + urlFormat,
+						DiskCacheArrayLoader.byteArraySerializer ),
 				cache );
 	}
 
+	public KnossosUnsignedByteImageLoader(
+			final KnossosConfig config,
+			final String urlFormat,
+			final VolatileGlobalCellCache cache )
+	{
+		this( config, urlFormat, cache, null );
+	}
+
+	public KnossosUnsignedByteImageLoader(
+			final String configUrl,
+			final String urlFormat,
+			final VolatileGlobalCellCache cache,
+			final DiskCellCache diskCache ) throws IOException
+	{
+		this( fetchConfig( configUrl ), urlFormat, cache, diskCache );
+	}
 
 	public KnossosUnsignedByteImageLoader(
 			final String configUrl,
@@ -1,20 +1,28 @@
 package bdv.img.knossos;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 
 import bdv.img.cache.CacheArrayLoader;
+import bdv.util.GrayImageDecoder;
+import bdv.util.http.HttpTransport;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
+/**
+ * Loads 128&times;128&times;128 cubes of a KNOSSOS data set.  Cubes in
+ * <code>jpg</code> format are single 128&times;16384 images that are decoded
+ * with {@link GrayImageDecoder#decode(byte[], byte[], int, int, int)}, all
+ * other cubes are raw bytes.
+ */
 public class KnossosUnsignedByteVolatileArrayLoader implements CacheArrayLoader< VolatileByteArray >
 {
 	final private String urlFormat;
 
+	final private boolean isJpeg;
+
 	public KnossosUnsignedByteVolatileArrayLoader( final String baseUrl, final String urlFormat, final String experiment, final String format )
 	{
 		this.urlFormat = baseUrl + urlFormat.replace( "%5$s", experiment );
+		this.isJpeg = "jpg".equals( format );
 	}
 
 	@Override
@@ -62,16 +70,14 @@ public class KnossosUnsignedByteVolatileArrayLoader implements CacheArrayLoader<
 
 		try
 		{
-			final URL file = new URL( url );
-			final InputStream in = file.openStream();
-			final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-			final byte[] chunk = new byte[ 4096 ];
-			int l;
-			for ( l = in.read( chunk ); l > 0; l = in.read( chunk ) )
-			    byteStream.write( chunk, 0, l );
-
-			data = byteStream.toByteArray();
-			byteStream.close();
+			final byte[] bytes = HttpTransport.getDefault().get( url );
+			if ( isJpeg )
+			{
+				data = new byte[ 128 * 128 * 128 ];
+				GrayImageDecoder.decode( bytes, data, 0, 128, 128 * 128 );
+			}
+			else
+				data = bytes;
 		}
 		catch ( final IOException e )
 		{
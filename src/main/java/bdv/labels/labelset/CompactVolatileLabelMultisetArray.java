@@ -0,0 +1,396 @@
+package bdv.labels.labelset;
+
+import static bdv.labels.labelset.ByteUtils.INT_SIZE;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * A {@link VolatileLabelMultisetArray} that stores its lists in a compact
+ * encoding that is decoded on access.
+ *
+ * <p>
+ * Each voxel stores the index of its (distinct) list in a {@code byte[]},
+ * {@code short[]}, or {@code int[]} array, whichever is the narrowest that
+ * fits the number of distinct lists. The lists are stored in a single
+ * {@code byte[]} as a varint size followed by zigzag varint id deltas and
+ * varint counts. {@link #getValue(int, LabelMultisetEntryList)} decodes into
+ * private storage of the passed {@link LabelMultisetEntryList} which is
+ * reused as long as consecutive accesses hit the same list.
+ * </p>
+ *
+ * <p>
+ * Lists obtained from a compact array are decoded copies and must be treated
+ * as read-only.  The plain accessors {@link #getCurrentStorageArray()} and
+ * {@link #getListData()} decode into new arrays on every call that are not
+ * retained, such that the cell stays compact in memory.
+ * </p>
+ */
+public class CompactVolatileLabelMultisetArray extends VolatileLabelMultisetArray
+{
+	private final int numEntities;
+
+	private final byte[] byteIndices;
+
+	private final short[] shortIndices;
+
+	private final int[] intIndices;
+
+	/** start of each list in {@link #lists} */
+	private final int[] listOffsets;
+
+	private final byte[] lists;
+
+	/** argMax of each list */
+	private final long[] listArgMax;
+
+	private CompactVolatileLabelMultisetArray(
+			final int numEntities,
+			final byte[] byteIndices,
+			final short[] shortIndices,
+			final int[] intIndices,
+			final int[] listOffsets,
+			final byte[] lists,
+			final long[] listArgMax,
+			final boolean isValid )
+	{
+		super( isValid );
+		this.numEntities = numEntities;
+		this.byteIndices = byteIndices;
+		this.shortIndices = shortIndices;
+		this.intIndices = intIndices;
+		this.listOffsets = listOffsets;
+		this.lists = lists;
+		this.listArgMax = listArgMax;
+	}
+
+	/**
+	 * Create a compact copy of a {@link VolatileLabelMultisetArray}.
+	 *
+	 * @param array
+	 * @return
+	 */
+	public static CompactVolatileLabelMultisetArray compact( final VolatileLabelMultisetArray array )
+	{
+		final int[] data = array.getCurrentStorageArray();
+		final MappedAccessData< LongMappedAccess > listData = array.getListData();
+
+		/* map list offsets to list indices */
+		final TIntIntHashMap offsetToIndex = new TIntIntHashMap( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1, -1 );
+		final int[] indices = new int[ data.length ];
+		final TIntArrayList listOffsets = new TIntArrayList();
+		final TLongArrayList listArgMax = new TLongArrayList();
+		final ByteArrayBuilder out = new ByteArrayBuilder();
+		final LabelMultisetEntryList list = new LabelMultisetEntryList();
+		final LabelMultisetEntry entry = list.createRef();
+		for ( int i = 0; i < data.length; ++i )
+		{
+			int index = offsetToIndex.get( data[ i ] );
+			if ( index == -1 )
+			{
+				index = listOffsets.size();
+				offsetToIndex.put( data[ i ], index );
+				listOffsets.add( out.size() );
+
+				list.referToDataAt( listData, data[ i ] );
+				listArgMax.add( list.argMax() );
+				final int size = list.size();
+				out.writeVarInt( size );
+				long previousId = 0;
+				for ( int j = 0; j < size; ++j )
+				{
+					list.get( j, entry );
+					final long id = entry.getId();
+					out.writeVarLong( zigZag( id - previousId ) );
+					out.writeVarInt( entry.getCount() );
+					previousId = id;
+				}
+			}
+			indices[ i ] = index;
+		}
+		list.releaseRef( entry );
+
+		final int numLists = listOffsets.size();
+		byte[] byteIndices = null;
+		short[] shortIndices = null;
+		int[] intIndices = null;
+		if ( numLists <= 0x100 )
+		{
+			byteIndices = new byte[ indices.length ];
+			for ( int i = 0; i < indices.length; ++i )
+				byteIndices[ i ] = ( byte ) indices[ i ];
+		}
+		else if ( numLists <= 0x10000 )
+		{
+			shortIndices = new short[ indices.length ];
+			for ( int i = 0; i < indices.length; ++i )
+				shortIndices[ i ] = ( short ) indices[ i ];
+		}
+		else
+			intIndices = indices;
+
+		return new CompactVolatileLabelMultisetArray(
+				data.length,
+				byteIndices,
+				shortIndices,
+				intIndices,
+				listOffsets.toArray(),
+				out.toArray(),
+				listArgMax.toArray(),
+				array.isValid() );
+	}
+
+	private int getListIndex( final int index )
+	{
+		if ( byteIndices != null )
+			return byteIndices[ index ] & 0xff;
+		else if ( shortIndices != null )
+			return shortIndices[ index ] & 0xffff;
+		else
+			return intIndices[ index ];
+	}
+
+	@Override
+	public void getValue( final int index, final LabelMultisetEntryList ref )
+	{
+		decodeList( getListIndex( index ), ref );
+	}
+
+	private void decodeList( final int listIndex, final LabelMultisetEntryList ref )
+	{
+		if ( ref.referToDecodedList( this, listIndex ) )
+			return;
+
+		int pos = listOffsets[ listIndex ];
+
+		int size = 0;
+		for ( int shift = 0;; shift += 7 )
+		{
+			final byte b = lists[ pos++ ];
+			size |= ( b & 0x7f ) << shift;
+			if ( b >= 0 )
+				break;
+		}
+
+		ref.createDecodedList( this, listIndex, size );
+		final LabelMultisetEntry entry = ref.createRef();
+		long id = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			long zigZagDelta = 0;
+			for ( int shift = 0;; shift += 7 )
+			{
+				final byte b = lists[ pos++ ];
+				zigZagDelta |= ( long ) ( b & 0x7f ) << shift;
+				if ( b >= 0 )
+					break;
+			}
+			id += ( zigZagDelta >>> 1 ) ^ -( zigZagDelta & 1 );
+
+			int count = 0;
+			for ( int shift = 0;; shift += 7 )
+			{
+				final byte b = lists[ pos++ ];
+				count |= ( b & 0x7f ) << shift;
+				if ( b >= 0 )
+					break;
+			}
+
+			ref.get( i, entry );
+			entry.setId( id );
+			entry.setCount( count );
+		}
+		ref.releaseRef( entry );
+	}
+
+	@Override
+	public int listKey( final int index )
+	{
+		return getListIndex( index );
+	}
+
+	@Override
+	public int getNumEntities()
+	{
+		return numEntities;
+	}
+
+	@Override
+	public long argMax( final int index )
+	{
+		return listArgMax[ getListIndex( index ) ];
+	}
+
+	@Override
+	public long[] getArgMax()
+	{
+		final long[] argMax = new long[ numEntities ];
+		for ( int i = 0; i < numEntities; ++i )
+			argMax[ i ] = argMax( i );
+		return argMax;
+	}
+
+	/**
+	 * Plain offsets, decoded into a new array.
+	 */
+	@Override
+	public int[] getCurrentStorageArray()
+	{
+		final long[] plainListOffsets = plainListOffsets();
+		final int[] offsets = new int[ numEntities ];
+		for ( int i = 0; i < numEntities; ++i )
+			offsets[ i ] = ( int ) plainListOffsets[ getListIndex( i ) ];
+		return offsets;
+	}
+
+	/**
+	 * Plain list data, decoded into new storage.
+	 */
+	@Override
+	public MappedAccessData< LongMappedAccess > getListData()
+	{
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList decoded = new LabelMultisetEntryList();
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		long nextListOffset = 0;
+		for ( int listIndex = 0; listIndex < listOffsets.length; ++listIndex )
+		{
+			decodeList( listIndex, decoded );
+			list.createListAt( listData, nextListOffset );
+			for ( final LabelMultisetEntry e : decoded )
+				list.add( e );
+			nextListOffset += list.getSizeInBytes();
+		}
+		return listData;
+	}
+
+	@Override
+	public long getListDataUsedSizeInBytes()
+	{
+		return plainListOffsets()[ listOffsets.length ];
+	}
+
+	@Override
+	public long getSizeInBytes()
+	{
+		final long indicesSize;
+		if ( byteIndices != null )
+			indicesSize = byteIndices.length;
+		else if ( shortIndices != null )
+			indicesSize = ( long ) shortIndices.length * Short.BYTES;
+		else
+			indicesSize = ( long ) intIndices.length * Integer.BYTES;
+		return indicesSize + ( long ) listOffsets.length * ( Integer.BYTES + Long.BYTES ) + lists.length;
+	}
+
+	public int getNumLists()
+	{
+		return listOffsets.length;
+	}
+
+	/**
+	 * Number of entries of a list, read from its varint header.
+	 */
+	private int listSize( final int listIndex )
+	{
+		int pos = listOffsets[ listIndex ];
+		int size = 0;
+		for ( int shift = 0;; shift += 7 )
+		{
+			final byte b = lists[ pos++ ];
+			size |= ( b & 0x7f ) << shift;
+			if ( b >= 0 )
+				break;
+		}
+		return size;
+	}
+
+	/**
+	 * Start of each list in the plain {@link LongMappedAccessData} encoding
+	 * followed by the total size in bytes.
+	 */
+	private long[] plainListOffsets()
+	{
+		final long[] plainListOffsets = new long[ listOffsets.length + 1 ];
+		for ( int listIndex = 0; listIndex < listOffsets.length; ++listIndex )
+			plainListOffsets[ listIndex + 1 ] =
+					plainListOffsets[ listIndex ] +
+					INT_SIZE +
+					( long ) listSize( listIndex ) * LabelMultisetEntry.type.getSizeInBytes();
+		return plainListOffsets;
+	}
+
+	/**
+	 * Create a new plain representation with {@code int} offsets and
+	 * {@link LongMappedAccessData} lists, e.g. for writing the cell.  The
+	 * result is not retained.
+	 */
+	public VolatileLabelMultisetArray expand()
+	{
+		return new VolatileLabelMultisetArray(
+				getCurrentStorageArray(),
+				getListData(),
+				getListDataUsedSizeInBytes(),
+				isValid() );
+	}
+
+	private static long zigZag( final long value )
+	{
+		return ( value << 1 ) ^ ( value >> 63 );
+	}
+
+	/**
+	 * Minimal growing {@code byte[]} with varint encoding.
+	 */
+	private static class ByteArrayBuilder
+	{
+		private byte[] bytes = new byte[ 256 ];
+
+		private int size = 0;
+
+		public int size()
+		{
+			return size;
+		}
+
+		private void write( final byte b )
+		{
+			if ( size == bytes.length )
+			{
+				final byte[] copy = new byte[ bytes.length * 2 ];
+				System.arraycopy( bytes, 0, copy, 0, size );
+				bytes = copy;
+			}
+			bytes[ size++ ] = b;
+		}
+
+		public void writeVarInt( int value )
+		{
+			while ( ( value & ~0x7f ) != 0 )
+			{
+				write( ( byte ) ( ( value & 0x7f ) | 0x80 ) );
+				value >>>= 7;
+			}
+			write( ( byte ) value );
+		}
+
+		public void writeVarLong( long value )
+		{
+			while ( ( value & ~0x7fL ) != 0 )
+			{
+				write( ( byte ) ( ( value & 0x7f ) | 0x80 ) );
+				value >>>= 7;
+			}
+			write( ( byte ) value );
+		}
+
+		public byte[] toArray()
+		{
+			final byte[] copy = new byte[ size ];
+			System.arraycopy( bytes, 0, copy, 0, size );
+			return copy;
+		}
+	}
+}
@@ -39,6 +39,33 @@ public class Downscale
 			final long[] factors,
 			final long[] dimensions,
 			final long[] min )
+	{
+		return downscale( input, factors, dimensions, min, -1 );
+	}
+
+	/**
+	 *
+	 * @param input
+	 * @param factors
+	 *            downsampling factors of output block relative to input.
+	 * @param dimensions
+	 *            dimensions of the output block (in output resolution)
+	 * @param min
+	 *            minimum coordinate of output block (in output resolution).
+	 *            Corresponding input coordinates are <em>min * factors</em>.
+	 * @param maxNumEntries
+	 *            keep only the <em>maxNumEntries</em> fragments with the
+	 *            largest counts per output voxel and fold the remaining
+	 *            counts into {@link Label#INVALID}, no truncation if
+	 *            <em>maxNumEntries &lt; 1</em>.
+	 * @return
+	 */
+	public static VolatileLabelMultisetArray downscale(
+			final RandomAccessibleInterval< LabelMultisetType > input,
+			final long[] factors,
+			final long[] dimensions,
+			final long[] min,
+			final int maxNumEntries )
 	{
 		final int numElements = ( int ) Intervals.numElements( dimensions ); // num elements in output block
 		final int[] data = new int[ numElements ];
@@ -61,6 +88,8 @@ public class Downscale
 			list.createListAt( listData, nextListOffset );
 			for ( final LabelMultisetType ms : inNeighborhoods.next() )
 				list.mergeWith(	ms );
+			if ( maxNumEntries > 0 )
+				list.truncate( maxNumEntries, Label.INVALID );
 
 			int offset = lists.putIfAbsent( list );
 			if ( offset == -1 )
@@ -3,10 +3,15 @@ package bdv.labels.labelset;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
 import bdv.export.ExportMipmapInfo;
+import bdv.img.MemoryBoundedCellCache;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.h5.H5LabelMultisetSetupImageLoader;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
+import ch.systemsx.cisd.base.mdarray.MDLongArray;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
@@ -19,8 +24,17 @@ import net.imglib2.view.Views;
 
 public class DownscaleToHdf5
 {
+	static public class Parameters
+	{
+		@Parameter( names = { "--maxnumentries", "-k" }, description = "keep only the k fragments with the largest counts per voxel in downscaled levels, -1 to keep all" )
+		public int maxNumEntries = -1;
+	}
+
 	public static void main( final String[] args ) throws IOException
 	{
+		final Parameters params = new Parameters();
+		new JCommander( params, args );
+
 		final String fn = "/Users/pietzsch/workspace/data/bigcat/davi_v7_4k_refix_export.h5";
 		final String fnscaled = "/Users/pietzsch/Desktop/downscale-test.h5";
 
@@ -45,6 +59,9 @@ public class DownscaleToHdf5
 		final ExportMipmapInfo mipmapInfo = new ExportMipmapInfo( resolutions, subdivisions );
 		final int numLevels = resolutions.length;
 
+		/* bound cached source cells by bytes, list data of diverse regions is large */
+		final MemoryBoundedCellCache cellCache = new MemoryBoundedCellCache( 1024L * 1024 * 1024 );
+
 		for ( int level = 1; level < numLevels; ++level )
 		{
 			final IHDF5Reader reader = HDF5Factory.openForReading( fn );
@@ -55,7 +72,9 @@ public class DownscaleToHdf5
 					"/bodies",
 					1,
 					new int[] {64, 64, 8},
-					new VolatileGlobalCellCache( 1, 10 ) );
+					new VolatileGlobalCellCache( 1, 10 ),
+					cellCache,
+					false );
 
 
 			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs = new ArrayList<>();
@@ -79,14 +98,16 @@ public class DownscaleToHdf5
 
 					final String listsPath = String.format( "l%02d/z%05d/y%05d/x%05d/lists", l, min[ 2 ], min[ 1 ], min[ 0 ] );
 					final String dataPath = String.format( "l%02d/z%05d/y%05d/x%05d/data", l, min[ 2 ], min[ 1 ], min[ 0 ] );
+					final String argMaxPath = String.format( "l%02d/z%05d/y%05d/x%05d/argmax", l, min[ 2 ], min[ 1 ], min[ 0 ] );
 					writer.uint32().writeArray( listsPath, lists, HDF5IntStorageFeatures.INT_AUTO_SCALING_UNSIGNED_DELETE );
 					writer.uint32().writeMDArray( dataPath, block, HDF5IntStorageFeatures.INT_AUTO_SCALING_UNSIGNED_DELETE );
+					writer.int64().writeMDArray( argMaxPath, new MDLongArray( data.getArgMax(), bdv.img.hdf5.Util.reorder( blocksize ) ), HDF5IntStorageFeatures.INT_AUTO_SCALING_DELETE );
 				}
 			};
 			final LevelInfoWriter hdfLevelInfoWriter = new LevelInfoWriter()
 			{
 				@Override
-				public void writeLevelInfo( final long[] dimensions, final long[] factors, final long[] blocksize )
+				public void writeLevelInfo( final long[] dimensions, final long[] factors, final long[] blocksize, final int maxNumEntries )
 				{
 					System.out.println( "writing level " + l );
 					System.out.println( "dimensions = " + Util.printCoordinates( dimensions ) );
@@ -99,9 +120,12 @@ public class DownscaleToHdf5
 					writer.uint64().writeArray( dimensionsPath, dimensions );
 					writer.uint64().writeArray( factorsPath, factors );
 					writer.uint64().writeArray( blocksizePath, blocksize );
+					if ( maxNumEntries > 0 )
+						writer.uint32().setAttr( String.format( "l%02d", l ), "maxnumentries", maxNumEntries );
 				}
 			};
-			writeLevelToHdf5File( imgs, mipmapInfo, level, hdfBlockWriter, hdfLevelInfoWriter );
+			writeLevelToHdf5File( imgs, mipmapInfo, level, params.maxNumEntries, hdfBlockWriter, hdfLevelInfoWriter );
+			cellCache.clear();
 			writer.close();
 			reader.close();
 		}
@@ -114,13 +138,35 @@ public class DownscaleToHdf5
 
 	public interface LevelInfoWriter
 	{
-		public void writeLevelInfo( final long[] dimensions, final long[] factors, final long[] blocksize );
+		/**
+		 * @param maxNumEntries
+		 *            max number of fragments per voxel if the level was
+		 *            truncated, -1 otherwise
+		 */
+		public void writeLevelInfo( final long[] dimensions, final long[] factors, final long[] blocksize, final int maxNumEntries );
+	}
+
+	public static void writeLevelToHdf5File(
+			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs,
+			final ExportMipmapInfo mipmapInfo,
+			final int level,
+			final BlockWriter writer,
+			final LevelInfoWriter levelInfoWriter )
+	{
+		writeLevelToHdf5File( imgs, mipmapInfo, level, -1, writer, levelInfoWriter );
 	}
 
+	/**
+	 * @param maxNumEntries
+	 *            keep only the <em>maxNumEntries</em> fragments with the
+	 *            largest counts per voxel, see
+	 *            {@link Downscale#downscale(RandomAccessibleInterval, long[], long[], long[], int)}
+	 */
 	public static void writeLevelToHdf5File(
 			final ArrayList< RandomAccessibleInterval< LabelMultisetType > > imgs,
 			final ExportMipmapInfo mipmapInfo,
 			final int level,
+			final int maxNumEntries,
 			final BlockWriter writer,
 			final LevelInfoWriter levelInfoWriter )
 	{
@@ -153,7 +199,7 @@ public class DownscaleToHdf5
 		for ( int d = 0; d < n; ++d )
 			dimensions[ d ] = Math.max( dimensions[ d ] / factors[ d ], 1 );
 
-		levelInfoWriter.writeLevelInfo( dimensions, Util.int2long( resolutions[ level ] ), Util.int2long( mipmapInfo.getSubdivisions()[ level ] ) );
+		levelInfoWriter.writeLevelInfo( dimensions, Util.int2long( resolutions[ level ] ), Util.int2long( mipmapInfo.getSubdivisions()[ level ] ), maxNumEntries );
 
 		final long[] minRequiredInput = new long[ n ];
 		final long[] maxRequiredInput = new long[ n ];
@@ -188,7 +234,7 @@ public class DownscaleToHdf5
 				final boolean isBorderCellInThisDim = ( currentCellPos[ d ] + 1 == numCells[ d ] );
 				currentCellDim[ d ] = isBorderCellInThisDim ? borderSize[ d ] : cellDimensions[ d ];
 			}
-			final VolatileLabelMultisetArray downscaled = Downscale.downscale( extendedImg, factors, currentCellDim, currentCellMin );
+			final VolatileLabelMultisetArray downscaled = Downscale.downscale( extendedImg, factors, currentCellDim, currentCellMin, maxNumEntries );
 			writer.writeBlock( downscaled, currentCellMin, currentCellDim );
 		}
 	}
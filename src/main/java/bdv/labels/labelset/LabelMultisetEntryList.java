@@ -1,5 +1,8 @@
 package bdv.labels.labelset;
 
+import static bdv.labels.labelset.ByteUtils.INT_SIZE;
+
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Set;
@@ -30,6 +33,89 @@ public class LabelMultisetEntryList
 		super( LabelMultisetEntry.type, data, baseOffset );
 	}
 
+	/**
+	 * private storage for lists decoded from
+	 * {@link CompactVolatileLabelMultisetArray compact cells}
+	 */
+	private LongMappedAccessData decoded = null;
+
+	private Object decodedSource = null;
+
+	private int decodedListIndex = -1;
+
+	@Override
+	public void createListAt( final MappedAccessData< LongMappedAccess > data, final long baseOffset )
+	{
+		if ( data == decoded )
+			decodedSource = null;
+		super.createListAt( data, baseOffset );
+	}
+
+	/**
+	 * Make this list refer to the decoded list {@code listIndex} of
+	 * {@code source} if that is what the private decode storage currently
+	 * holds.
+	 *
+	 * @return {@code true} if the decoded list was available,
+	 *         {@code false} if it has to be decoded with
+	 *         {@link #createDecodedList(Object, int, int)}.
+	 */
+	boolean referToDecodedList( final Object source, final int listIndex )
+	{
+		if ( decodedSource != source || decodedListIndex != listIndex )
+			return false;
+		referToDataAt( decoded, 0 );
+		return true;
+	}
+
+	/**
+	 * Make this list refer to the private decode storage, sized for
+	 * {@code size} entries which the caller has to fill in.
+	 */
+	void createDecodedList( final Object source, final int listIndex, final int size )
+	{
+		if ( decoded == null )
+			decoded = LongMappedAccessData.factory.createStorage( INT_SIZE + size * LabelMultisetEntry.SIZE_IN_BYTES );
+		referToDataAt( decoded, 0 );
+		ensureCapacity( size );
+		setSize( size );
+		decodedSource = source;
+		decodedListIndex = listIndex;
+	}
+
+	/**
+	 * Get the id of the entry with the largest count. Ties are resolved in
+	 * favor of the first (smallest) id. An entry with id {@link Label#INVALID}
+	 * (the remainder of {@link #truncate(int, long) truncated} lists) is only
+	 * returned if there is no other entry.
+	 *
+	 * @return the id of the entry with the largest count or
+	 *         {@link Label#TRANSPARENT} if there is no entry with a count
+	 *         greater than 0.
+	 */
+	public long argMax()
+	{
+		long maxId = Label.TRANSPARENT;
+		int maxCount = 0;
+		boolean hasInvalid = false;
+		for ( final LabelMultisetEntry e : this )
+		{
+			final int count = e.getCount();
+			if ( count > maxCount )
+			{
+				final long id = e.getId();
+				if ( id == Label.INVALID )
+					hasInvalid = true;
+				else
+				{
+					maxCount = count;
+					maxId = id;
+				}
+			}
+		}
+		return maxCount == 0 && hasInvalid ? Label.INVALID : maxId;
+	}
+
 	protected int multisetSize()
 	{
 		int size = 0;
@@ -154,6 +240,79 @@ public class LabelMultisetEntryList
 		setSize( newSize );
 	}
 
+	/**
+	 * Keep only the {@code maxNumEntries} entries with the largest counts and
+	 * fold the counts of all other entries into a single entry with
+	 * {@link LabelMultisetEntry#getId() id} <tt>remainderId</tt>. An existing
+	 * entry with <tt>remainderId</tt> is not counted as one of the kept
+	 * entries but receives the folded counts. Ties are resolved in favor of
+	 * smaller ids. The list must be sorted and remains sorted.
+	 *
+	 * @param maxNumEntries
+	 * @param remainderId
+	 */
+	public void truncate( final int maxNumEntries, final long remainderId )
+	{
+		final int size = size();
+		if ( size <= maxNumEntries )
+			return;
+
+		final LabelMultisetEntry e1 = createRef();
+		final LabelMultisetEntry e2 = createRef();
+
+		/* sort keys are (count, reverse position) such that the last ones are kept */
+		final long[] keys = new long[ size ];
+		int numRegular = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			get( i, e1 );
+			if ( e1.getId() != remainderId )
+				keys[ numRegular++ ] = ( ( long ) e1.getCount() << 32 ) | ( 0xffffffffL - i );
+		}
+
+		if ( numRegular > maxNumEntries )
+		{
+			Arrays.sort( keys, 0, numRegular );
+			final boolean[] keep = new boolean[ size ];
+			for ( int j = numRegular - maxNumEntries; j < numRegular; ++j )
+				keep[ ( int ) ( 0xffffffffL - ( keys[ j ] & 0xffffffffL ) ) ] = true;
+
+			int newSize = 0;
+			int remainderPos = -1;
+			int remainder = 0;
+			for ( int oldPos = 0; oldPos < size; ++oldPos )
+			{
+				get( oldPos, e1 );
+				final boolean isRemainder = e1.getId() == remainderId;
+				if ( isRemainder || keep[ oldPos ] )
+				{
+					if ( isRemainder )
+						remainderPos = newSize;
+					if ( newSize != oldPos )
+						get( newSize, e2 ).set( e1 );
+					++newSize;
+				}
+				else
+					remainder += e1.getCount();
+			}
+			setSize( newSize );
+
+			if ( remainderPos >= 0 )
+			{
+				get( remainderPos, e1 );
+				e1.setCount( e1.getCount() + remainder );
+			}
+			else
+			{
+				final LabelMultisetEntry entry = new LabelMultisetEntry( remainderId, remainder );
+				add( -( binarySearch( remainderId ) + 1 ), entry );
+			}
+		}
+
+		releaseRef( e2 );
+		releaseRef( e1 );
+	}
+
 	/**
 	 * Merge with other list. Both lists must be sorted.
 	 *
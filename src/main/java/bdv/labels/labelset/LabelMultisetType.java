@@ -203,6 +203,25 @@ public class LabelMultisetType extends AbstractNativeType< LabelMultisetType > i
 		return entrySet;
 	}
 
+	/**
+	 * Get the id of the entry with the largest count.
+	 *
+	 * @see LabelMultisetEntryList#argMax()
+	 */
+	public long argMax()
+	{
+		return access.argMax( i );
+	}
+
+	/**
+	 * Get the array that this type currently points into, use with
+	 * {@link #getIndex()}.
+	 */
+	public VolatileLabelMultisetArray getAccess()
+	{
+		return access;
+	}
+
 	@Override
 	public String toString()
 	{
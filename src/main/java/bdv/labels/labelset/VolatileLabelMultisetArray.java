@@ -1,12 +1,42 @@
 package bdv.labels.labelset;
 
+import java.util.Arrays;
+
 import bdv.img.cache.DefaultEmptyArrayCreator;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
 
 
 public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArrayDataAccess< VolatileLabelMultisetArray >
 {
+	/**
+	 * argMax of each distinct list, sorted by list offset.
+	 */
+	static private class ListArgMax
+	{
+		final private int[] offsets;
+
+		final private long[] ids;
+
+		public ListArgMax( final int[] offsets, final long[] ids )
+		{
+			this.offsets = offsets;
+			this.ids = ids;
+		}
+
+		public long get( final int offset )
+		{
+			return ids[ Arrays.binarySearch( offsets, offset ) ];
+		}
+
+		public long getSizeInBytes()
+		{
+			return ( long ) offsets.length * ( Integer.BYTES + Long.BYTES );
+		}
+	}
+
 	private boolean isValid = false;
 
 	private final int[] data;
@@ -15,6 +45,12 @@ public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArray
 
 	private final long listDataUsedSizeInBytes;
 
+	/**
+	 * id of the entry with the largest count per distinct list, computed on
+	 * demand if not passed at construction
+	 */
+	private volatile ListArgMax listArgMax;
+
 	public VolatileLabelMultisetArray( final int numEntities, final boolean isValid )
 	{
 		this.data = new int[ numEntities ];
@@ -37,18 +73,120 @@ public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArray
 			final MappedAccessData< LongMappedAccess > listData,
 			final long listDataUsedSizeInBytes,
 			final boolean isValid )
+	{
+		this( data, listData, listDataUsedSizeInBytes, null, isValid );
+	}
+
+	/**
+	 * @param argMax
+	 *            the {@link LabelMultisetEntryList#argMax() argMax} of each
+	 *            voxel or {@code null} to compute it when first requested,
+	 *            only one id per distinct list is kept
+	 */
+	public VolatileLabelMultisetArray(
+			final int[] data,
+			final MappedAccessData< LongMappedAccess > listData,
+			final long listDataUsedSizeInBytes,
+			final long[] argMax,
+			final boolean isValid )
 	{
 		this.data = data;
 		this.listData = listData;
 		this.listDataUsedSizeInBytes = listDataUsedSizeInBytes;
+		this.listArgMax = argMax == null ? null : listArgMax( data, argMax );
 		this.isValid = isValid;
 	}
 
+	/**
+	 * For subclasses that store offsets and list data in a different
+	 * encoding and override all accessors.
+	 */
+	protected VolatileLabelMultisetArray( final boolean isValid )
+	{
+		this( null, null, -1, isValid );
+	}
+
 	public void getValue( final int index, final LabelMultisetEntryList ref )
 	{
 		ref.referToDataAt( listData, data[ index ] );
 	}
 
+	/**
+	 * Get a key for the list at {@code index} that is equal for all voxels of
+	 * this array that share the same list.
+	 */
+	public int listKey( final int index )
+	{
+		return data[ index ];
+	}
+
+	public int getNumEntities()
+	{
+		return data.length;
+	}
+
+	/**
+	 * Get the id of the entry with the largest count at {@code index}
+	 * without iterating the list.
+	 */
+	public long argMax( final int index )
+	{
+		return listArgMax().get( data[ index ] );
+	}
+
+	/**
+	 * Get the id of the entry with the largest count for each voxel in a new
+	 * array, e.g. for writing it along with the lists.
+	 */
+	public long[] getArgMax()
+	{
+		final ListArgMax a = listArgMax();
+		final long[] argMax = new long[ data.length ];
+		for ( int i = 0; i < data.length; ++i )
+			argMax[ i ] = a.get( data[ i ] );
+		return argMax;
+	}
+
+	static private ListArgMax listArgMax( final int[] data, final long[] argMax )
+	{
+		final TIntLongHashMap offsetArgMax = new TIntLongHashMap();
+		for ( int i = 0; i < data.length; ++i )
+			offsetArgMax.put( data[ i ], argMax[ i ] );
+		final int[] offsets = offsetArgMax.keys();
+		Arrays.sort( offsets );
+		final long[] ids = new long[ offsets.length ];
+		for ( int j = 0; j < offsets.length; ++j )
+			ids[ j ] = offsetArgMax.get( offsets[ j ] );
+		return new ListArgMax( offsets, ids );
+	}
+
+	private ListArgMax listArgMax()
+	{
+		ListArgMax a = listArgMax;
+		if ( a == null )
+		{
+			synchronized ( this )
+			{
+				a = listArgMax;
+				if ( a == null )
+				{
+					final int[] offsets = new TIntHashSet( data ).toArray();
+					Arrays.sort( offsets );
+					final long[] ids = new long[ offsets.length ];
+					final LabelMultisetEntryList list = new LabelMultisetEntryList();
+					for ( int j = 0; j < offsets.length; ++j )
+					{
+						list.referToDataAt( listData, offsets[ j ] );
+						ids[ j ] = list.argMax();
+					}
+					a = new ListArgMax( offsets, ids );
+					listArgMax = a;
+				}
+			}
+		}
+		return a;
+	}
+
 	@Override
 	public VolatileLabelMultisetArray createArray( final int numEntities )
 	{
@@ -77,6 +215,19 @@ public class VolatileLabelMultisetArray implements VolatileAccess, VolatileArray
 		return listDataUsedSizeInBytes;
 	}
 
+	/**
+	 * Approximate memory footprint of this cell: the offsets plus the used
+	 * part of the list data (or the whole list data if the used size is not
+	 * known).
+	 */
+	public long getSizeInBytes()
+	{
+		final long listBytes = listDataUsedSizeInBytes > 0 ? listDataUsedSizeInBytes : listData.size();
+		final ListArgMax a = listArgMax;
+		final long argMaxBytes = a == null ? 0 : a.getSizeInBytes();
+		return ( long ) data.length * Integer.BYTES + listBytes + argMaxBytes;
+	}
+
 	@Override
 	public boolean isValid()
 	{
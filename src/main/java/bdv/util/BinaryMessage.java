@@ -0,0 +1,262 @@
+package bdv.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import bdv.util.http.Codec;
+import bdv.util.http.HttpTransport;
+
+/**
+ * Compact binary frames for messages exchanged over ZeroMQ with the solver
+ * and the id service.  A frame starts with an eight byte header
+ * <pre>
+ * magic (1 byte), version (1 byte), tag (1 byte), codec (1 byte),
+ * payload length before compression (int)
+ * </pre>
+ * followed by the payload, optionally compressed with a {@link Codec}.
+ * All primitives are little-endian, arrays are prefixed with their length.
+ * JSON messages start with a different byte, so both formats can be told
+ * apart on the same socket.
+ */
+public class BinaryMessage
+{
+	final static public byte MAGIC = ( byte ) 0xbc;
+
+	final static public byte VERSION = 1;
+
+	final static public int HEADER_SIZE = 8;
+
+	/** payloads smaller than this are not compressed */
+	final static public int MIN_COMPRESSED_SIZE = 1024;
+
+	/**
+	 * @return true if the frame is a binary message, false if it is
+	 *         anything else, typically JSON
+	 */
+	public static boolean isBinary( final byte[] frame )
+	{
+		return frame != null && frame.length >= HEADER_SIZE && frame[ 0 ] == MAGIC;
+	}
+
+	/**
+	 * Collects the payload of a message.
+	 */
+	static public class Writer
+	{
+		final private byte tag;
+
+		private ByteBuffer buffer;
+
+		public Writer( final byte tag, final int expectedPayloadSize )
+		{
+			this.tag = tag;
+			buffer = ByteBuffer.allocate( HEADER_SIZE + Math.max( 16, expectedPayloadSize ) ).order( ByteOrder.LITTLE_ENDIAN );
+			buffer.position( HEADER_SIZE );
+		}
+
+		public Writer( final byte tag )
+		{
+			this( tag, 64 );
+		}
+
+		private void ensureRemaining( final long n )
+		{
+			if ( buffer.remaining() < n )
+			{
+				final long capacity = Math.max( 2L * buffer.capacity(), buffer.position() + n );
+				if ( capacity > Integer.MAX_VALUE )
+					throw new IllegalArgumentException( "Message exceeds 2GB." );
+				final ByteBuffer grown = ByteBuffer.allocate( ( int ) capacity ).order( ByteOrder.LITTLE_ENDIAN );
+				buffer.flip();
+				grown.put( buffer );
+				buffer = grown;
+			}
+		}
+
+		public Writer putInt( final int value )
+		{
+			ensureRemaining( Integer.BYTES );
+			buffer.putInt( value );
+			return this;
+		}
+
+		public Writer putLong( final long value )
+		{
+			ensureRemaining( Long.BYTES );
+			buffer.putLong( value );
+			return this;
+		}
+
+		/**
+		 * Write a long array, {@code null} is written as an empty array.
+		 */
+		public Writer putLongs( final long[] values )
+		{
+			final int n = values == null ? 0 : values.length;
+			ensureRemaining( Integer.BYTES + ( long ) n * Long.BYTES );
+			buffer.putInt( n );
+			if ( n > 0 )
+			{
+				buffer.asLongBuffer().put( values );
+				buffer.position( buffer.position() + n * Long.BYTES );
+			}
+			return this;
+		}
+
+		/**
+		 * Write a UTF-8 string, {@code null} is written as length -1.
+		 */
+		public Writer putString( final String value )
+		{
+			if ( value == null )
+				return putInt( -1 );
+			final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+			ensureRemaining( Integer.BYTES + bytes.length );
+			buffer.putInt( bytes.length );
+			buffer.put( bytes );
+			return this;
+		}
+
+		public Writer putStrings( final String[] values )
+		{
+			final int n = values == null ? 0 : values.length;
+			putInt( n );
+			for ( int i = 0; i < n; ++i )
+				putString( values[ i ] );
+			return this;
+		}
+
+		/**
+		 * Create the frame.  The payload is compressed with {@code codec}
+		 * unless it is smaller than {@link BinaryMessage#MIN_COMPRESSED_SIZE}
+		 * or does not shrink.
+		 */
+		public byte[] toFrame( final Codec codec ) throws IOException
+		{
+			final byte[] array = buffer.array();
+			final int payloadSize = buffer.position() - HEADER_SIZE;
+			byte[] frame = null;
+			Codec frameCodec = Codec.NONE;
+			if ( codec != null && codec != Codec.NONE && payloadSize >= MIN_COMPRESSED_SIZE )
+			{
+				final byte[] compressed = codec.encode( Arrays.copyOfRange( array, HEADER_SIZE, HEADER_SIZE + payloadSize ) );
+				if ( compressed.length < payloadSize )
+				{
+					frame = new byte[ HEADER_SIZE + compressed.length ];
+					System.arraycopy( compressed, 0, frame, HEADER_SIZE, compressed.length );
+					frameCodec = codec;
+				}
+			}
+			if ( frame == null )
+				frame = Arrays.copyOf( array, HEADER_SIZE + payloadSize );
+
+			final ByteBuffer header = ByteBuffer.wrap( frame ).order( ByteOrder.LITTLE_ENDIAN );
+			header.put( MAGIC ).put( VERSION ).put( tag ).put( ( byte ) frameCodec.ordinal() ).putInt( payloadSize );
+			return frame;
+		}
+	}
+
+	/**
+	 * Reads the payload of a frame.  Reading beyond the payload throws an
+	 * {@link IOException}.
+	 */
+	static public class Reader
+	{
+		final private byte tag;
+
+		final private ByteBuffer buffer;
+
+		public Reader( final byte[] frame ) throws IOException
+		{
+			if ( !isBinary( frame ) )
+				throw new IOException( "Not a binary message." );
+			final ByteBuffer header = ByteBuffer.wrap( frame, 0, HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			header.get();
+			final byte version = header.get();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported binary message version " + version + "." );
+			tag = header.get();
+			final int codecId = header.get();
+			final int payloadSize = header.getInt();
+			final Codec[] codecs = Codec.values();
+			if ( codecId < 0 || codecId >= codecs.length || payloadSize < 0 )
+				throw new IOException( "Corrupt binary message header." );
+
+			final Codec codec = codecs[ codecId ];
+			if ( codec == Codec.NONE )
+			{
+				if ( frame.length - HEADER_SIZE != payloadSize )
+					throw new IOException( "Binary message has " + ( frame.length - HEADER_SIZE ) + " instead of " + payloadSize + " bytes." );
+				buffer = ByteBuffer.wrap( frame, HEADER_SIZE, payloadSize ).slice().order( ByteOrder.LITTLE_ENDIAN );
+			}
+			else
+			{
+				final byte[] payload = HttpTransport.readFully(
+						codec.decode(
+								new ByteArrayInputStream( frame, HEADER_SIZE, frame.length - HEADER_SIZE ),
+								frame.length - HEADER_SIZE,
+								payloadSize ),
+						payloadSize );
+				buffer = ByteBuffer.wrap( payload ).order( ByteOrder.LITTLE_ENDIAN );
+			}
+		}
+
+		public byte getTag()
+		{
+			return tag;
+		}
+
+		private void require( final long n ) throws IOException
+		{
+			if ( n < 0 || buffer.remaining() < n )
+				throw new IOException( "Truncated binary message." );
+		}
+
+		public int getInt() throws IOException
+		{
+			require( Integer.BYTES );
+			return buffer.getInt();
+		}
+
+		public long getLong() throws IOException
+		{
+			require( Long.BYTES );
+			return buffer.getLong();
+		}
+
+		public long[] getLongs() throws IOException
+		{
+			final int n = getInt();
+			require( ( long ) n * Long.BYTES );
+			final long[] values = new long[ n ];
+			buffer.asLongBuffer().get( values );
+			buffer.position( buffer.position() + n * Long.BYTES );
+			return values;
+		}
+
+		public String getString() throws IOException
+		{
+			final int n = getInt();
+			if ( n == -1 )
+				return null;
+			require( n );
+			final String value = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), n, StandardCharsets.UTF_8 );
+			buffer.position( buffer.position() + n );
+			return value;
+		}
+
+		public String[] getStrings() throws IOException
+		{
+			final int n = getInt();
+			require( n );
+			final String[] values = new String[ n ];
+			for ( int i = 0; i < n; ++i )
+				values[ i ] = getString();
+			return values;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package bdv.util;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * Decodes 8-bit images, typically JPEG tiles, into byte arrays on a
+ * dedicated pool of decoder threads such that fetcher threads can continue
+ * with network I/O while images are decoded.
+ *
+ * The gray values are the blue channel of the image drawn into an ARGB
+ * image, as the loaders always did.  Drawing copies the samples of single
+ * channel gray images unchanged, so single channel JPEGs are decoded
+ * straight into the target array through a {@link BufferedImage} that wraps
+ * it, without color conversion and without intermediate copies.  Other
+ * images, e.g. RGB, palette or ICC profile images, are decoded with
+ * {@link ImageIO} and drawn.  Note that reading the pixels of a gray image
+ * with {@link BufferedImage#getRGB(int, int)} would apply a gamma
+ * conversion and give different values.  Each decoder thread keeps its own
+ * JPEG reader.
+ */
+public class GrayImageDecoder
+{
+	final static private ColorSpace GRAY = ColorSpace.getInstance( ColorSpace.CS_GRAY );
+
+	final static private ComponentColorModel GRAY_MODEL = new ComponentColorModel( GRAY, false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_BYTE );
+
+	final static private ThreadLocal< ImageReader > jpegReaders = ThreadLocal.withInitial( () -> {
+		final Iterator< ImageReader > readers = ImageIO.getImageReadersByFormatName( "jpeg" );
+		return readers.hasNext() ? readers.next() : null;
+	} );
+
+	final static private ConcurrentLinkedQueue< byte[] > buffers = new ConcurrentLinkedQueue<>();
+
+	static private GrayImageDecoder defaultDecoder = null;
+
+	/**
+	 * Get the decoder shared by all loaders, with one thread per available
+	 * processor.
+	 */
+	public static synchronized GrayImageDecoder getDefault()
+	{
+		if ( defaultDecoder == null )
+			defaultDecoder = new GrayImageDecoder( Runtime.getRuntime().availableProcessors() );
+		return defaultDecoder;
+	}
+
+	final private ExecutorService exec;
+
+	public GrayImageDecoder( final int numThreads )
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		exec = Executors.newFixedThreadPool( numThreads, r -> {
+			final Thread thread = new Thread( r, "gray-image-decoder-" + threadCount.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+
+	/**
+	 * Decode an image on the decoder threads.  This pays off only if the
+	 * caller has other work to do, e.g. fetch the next image, before it
+	 * waits for the result, otherwise use
+	 * {@link #decode(byte[], byte[], int, int, int)}.
+	 *
+	 * @param encoded
+	 *            the encoded image
+	 * @param target
+	 *            receives the w&times;h gray values starting at offset, areas
+	 *            not covered by the image are set to zero
+	 */
+	public Future< Void > decodeAsync( final byte[] encoded, final byte[] target, final int offset, final int w, final int h )
+	{
+		return CompletableFuture.runAsync( () -> {
+			try
+			{
+				decode( encoded, target, offset, w, h );
+			}
+			catch ( final IOException e )
+			{
+				throw new DecodeException( e );
+			}
+		}, exec );
+	}
+
+	/**
+	 * Wait for a decoded image.
+	 */
+	public static void await( final Future< Void > future ) throws IOException, InterruptedException
+	{
+		try
+		{
+			future.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			if ( e.getCause() instanceof DecodeException )
+				throw ( IOException ) e.getCause().getCause();
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	final static private class DecodeException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public DecodeException( final IOException cause )
+		{
+			super( cause );
+		}
+	}
+
+	/**
+	 * Decode an image on the calling thread.
+	 *
+	 * @see #decodeAsync(byte[], byte[], int, int, int)
+	 */
+	public static void decode( final byte[] encoded, final byte[] target, final int offset, final int w, final int h ) throws IOException
+	{
+		final boolean isJpeg = encoded.length > 1 && ( encoded[ 0 ] & 0xff ) == 0xff && ( encoded[ 1 ] & 0xff ) == 0xd8;
+		final ImageReader reader = isJpeg ? jpegReaders.get() : null;
+		if ( reader != null )
+		{
+			try ( final MemoryCacheImageInputStream in = new MemoryCacheImageInputStream( new ByteArrayInputStream( encoded ) ) )
+			{
+				reader.setInput( in, true, true );
+				final ImageTypeSpecifier rawType = reader.getRawImageType( 0 );
+				if ( rawType != null && rawType.getNumBands() == 1 && reader.getWidth( 0 ) == w && reader.getHeight( 0 ) == h )
+				{
+					final ImageReadParam param = reader.getDefaultReadParam();
+					param.setDestination( wrap( target, offset, w, h ) );
+					reader.read( 0, param );
+				}
+				else
+					copy( reader.read( 0 ), target, offset, w, h );
+			}
+			finally
+			{
+				reader.reset();
+			}
+		}
+		else
+		{
+			final BufferedImage image = ImageIO.read( new ByteArrayInputStream( encoded ) );
+			if ( image == null )
+				throw new IOException( "Unsupported image format." );
+			copy( image, target, offset, w, h );
+		}
+	}
+
+	static private BufferedImage wrap( final byte[] target, final int offset, final int w, final int h )
+	{
+		final DataBufferByte buffer = new DataBufferByte( target, target.length );
+		final WritableRaster raster = Raster.createInterleavedRaster( buffer, w, h, w, 1, new int[] { offset }, null );
+		return new BufferedImage( GRAY_MODEL, raster, false, null );
+	}
+
+	/**
+	 * Copy the blue channel of the image drawn into an ARGB image.
+	 */
+	static private void copy( final BufferedImage image, final byte[] target, final int offset, final int w, final int h )
+	{
+		final BufferedImage argb = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+		argb.createGraphics().drawImage( image, 0, 0, null );
+		final int[] pixels = ( ( DataBufferInt ) argb.getRaster().getDataBuffer() ).getData();
+		for ( int i = 0; i < pixels.length; ++i )
+			target[ offset + i ] = ( byte ) pixels[ i ];
+	}
+
+	/**
+	 * Borrow a buffer of at least size bytes, e.g. for slices that are
+	 * combined into a cell.
+	 */
+	public static byte[] borrowBuffer( final int size )
+	{
+		for ( final Iterator< byte[] > it = buffers.iterator(); it.hasNext(); )
+		{
+			final byte[] buffer = it.next();
+			if ( buffer.length >= size && buffers.remove( buffer ) )
+				return buffer;
+		}
+		return new byte[ size ];
+	}
+
+	/**
+	 * Return a buffer for reuse.  At most a few buffers are retained.
+	 */
+	public static void returnBuffer( final byte[] buffer )
+	{
+		if ( buffers.size() < 16 )
+			buffers.offer( buffer );
+	}
+}
@@ -1,5 +1,11 @@
 package bdv.util;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.LongStream;
 
 import org.zeromq.ZContext;
@@ -7,13 +13,36 @@ import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Socket;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 
+import bdv.bigcat.Message;
 import gnu.trove.list.array.TLongArrayList;
 
+/**
+ * {@link IdService} that reserves ranges of ids from a remote service.
+ *
+ * The number of ids requested at once adapts to the consumption rate: it
+ * doubles when a range was used up within {@link #REFILL_INTERVAL_MS} and
+ * halves when it lasted ten times as long.  The next range is requested in
+ * the background when the current one is half used, so that
+ * {@link #next()} rarely waits for the network.  {@link #next(int)}
+ * reserves a contiguous block in a single request if the current range is
+ * too small.
+ *
+ * All socket communication happens on a single background thread.
+ */
 public class RemoteIdService implements IdService
 {
-	/* number of ids requested at once */
-	private static int count = 10;
+	/* bounds for the number of ids requested at once */
+	final static public int MIN_COUNT = 10;
+	final static public int MAX_COUNT = 1 << 20;
+
+	/* ranges should last about this long */
+	final static public long REFILL_INTERVAL_MS = 1000;
+
+	/* services that do not answer the handshake within this time get JSON */
+	final static public int HANDSHAKE_TIMEOUT_MS = 1000;
 
 	static private class Request
 	{
@@ -37,78 +66,302 @@ public class RemoteIdService implements IdService
 		}
 	}
 
+	/* tags of the binary id messages */
+	final static public byte ID_REQUEST = 0x10;
+	final static public byte ID_RESPONSE = 0x11;
+
 	final private Gson gson;
 
-	final private Socket socket;
+	final private ZContext ctx;
+
+	final private String url;
+
+	private Socket socket;
 
+	final private ExecutorService exec;
+
+	/* negotiated in the handshake */
+	private boolean binary = false;
+
+	/* number of ids requested at once */
+	private int count = MIN_COUNT;
+
+	/* current range */
 	private long next = 0;
 	private long end = 0;
+	private long rangeStartTime = 0;
+
+	/* range reserved in the background, empty if reserveBegin == reserveEnd */
+	private long reserveBegin = 0;
+	private long reserveEnd = 0;
+	private Future< long[] > refill = null;
+
+	private long numRequests = 0;
 
 	public RemoteIdService(
 			final ZContext ctx,
 			final String url )
 	{
-		gson = new Gson();
+		gson = new GsonBuilder()
+				.registerTypeAdapter( Message.class, new Message.Serializer() )
+				.registerTypeAdapter( Message.class, new Message.GSONDeserializer() )
+				.create();
+
+		exec = Executors.newSingleThreadExecutor( r -> {
+			final Thread thread = new Thread( r, "remote-id-service" );
+			thread.setDaemon( true );
+			return thread;
+		} );
 
 		/* connect */
-		socket = ctx.createSocket( ZMQ.REQ );
-		socket.connect( url );
+		this.ctx = ctx;
+		this.url = url;
+		connect();
+
+		await( exec.submit( () -> {
+			negotiate();
+			return null;
+		} ) );
 
 		/* init ID */
-		update();
+		synchronized ( this )
+		{
+			advance( false );
+		}
 	}
 
-	private synchronized void update()
+	private void connect()
+	{
+		socket = ctx.createSocket( ZMQ.REQ );
+		socket.connect( url );
+	}
+
+	/**
+	 * Offer the binary format.  Services that do not know the handshake
+	 * answer it like a request for zero ids, in which case JSON is used.
+	 * If there is no answer within {@link #HANDSHAKE_TIMEOUT_MS}, the
+	 * socket, which would wait for that answer forever, is replaced and
+	 * JSON is used as well.
+	 */
+	private void negotiate()
 	{
-		while ( !socket.send( gson.toJson( new Request( count ) ) ) )
+		while ( !socket.send( gson.toJson( new Message( new Message.HandshakeData() ) ) ) )
 			System.out.println( "Failed sending message." );
-		final Response response = gson.fromJson(
-				socket.recvStr(),
-				Response.class );
-		next = response.begin;
-		end = response.end;
-		System.out.println( "begin " + next + ", end " + end );
+		socket.setReceiveTimeOut( HANDSHAKE_TIMEOUT_MS );
+		final byte[] reply = socket.recv();
+		socket.setReceiveTimeOut( -1 );
+		if ( reply == null )
+		{
+			System.out.println( "Id service did not answer the handshake, using JSON." );
+			socket.setLinger( 0 );
+			ctx.destroySocket( socket );
+			connect();
+			binary = false;
+			return;
+		}
+		try
+		{
+			final Message message =
+					BinaryMessage.isBinary( reply ) ?
+							Message.fromBinary( reply ) :
+							gson.fromJson( new String( reply, StandardCharsets.UTF_8 ), Message.class );
+			final Object data = message.getData();
+			binary = data instanceof Message.HandshakeData && Message.HandshakeData.BINARY.equals( ( ( Message.HandshakeData )data ).getFormat() );
+		}
+		catch ( final IOException | JsonParseException e )
+		{
+			binary = false;
+		}
+	}
+
+	/**
+	 * Request a range of ids.  Runs on {@link #exec}.
+	 *
+	 * @return begin and end of the range
+	 */
+	private long[] fetch( final int count ) throws IOException
+	{
+		final long begin, end;
+		if ( binary )
+		{
+			final byte[] request = new BinaryMessage.Writer( ID_REQUEST ).putInt( count ).toFrame( null );
+			while ( !socket.send( request ) )
+				System.out.println( "Failed sending message." );
+			final BinaryMessage.Reader response = new BinaryMessage.Reader( socket.recv() );
+			if ( response.getTag() != ID_RESPONSE )
+				throw new IOException( "Unexpected id service response " + response.getTag() + "." );
+			begin = response.getLong();
+			end = response.getLong();
+		}
+		else
+		{
+			while ( !socket.send( gson.toJson( new Request( count ) ) ) )
+				System.out.println( "Failed sending message." );
+			final Response response = gson.fromJson(
+					socket.recvStr(),
+					Response.class );
+			begin = response.begin;
+			end = response.end;
+		}
+		System.out.println( "begin " + begin + ", end " + end );
+		return new long[] { begin, end };
+	}
+
+	private Future< long[] > request( final int count )
+	{
+		++numRequests;
+		return exec.submit( () -> fetch( count ) );
+	}
+
+	static private < T > T await( final Future< T > future )
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( "Failed to reserve ids.", e.getCause() );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while reserving ids.", e );
+		}
+	}
+
+	private void takeRefill()
+	{
+		final long[] range = await( refill );
+		refill = null;
+		reserveBegin = range[ 0 ];
+		reserveEnd = range[ 1 ];
+	}
+
+	/**
+	 * Adapt the number of ids requested at once to how long the current
+	 * range lasted.
+	 */
+	private void adaptCount()
+	{
+		final long elapsed = System.currentTimeMillis() - rangeStartTime;
+		if ( elapsed < REFILL_INTERVAL_MS )
+			count = Math.min( MAX_COUNT, count * 2 );
+		else if ( elapsed > 10 * REFILL_INTERVAL_MS )
+			count = Math.max( MIN_COUNT, count / 2 );
+	}
+
+	/**
+	 * Continue with the reserved range, wait for it or request it if
+	 * necessary.
+	 */
+	private void advance( final boolean adapt )
+	{
+		if ( adapt )
+			adaptCount();
+		if ( reserveBegin >= reserveEnd )
+		{
+			if ( refill == null )
+				refill = request( count );
+			takeRefill();
+		}
+		next = reserveBegin;
+		end = reserveEnd;
+		reserveBegin = reserveEnd = 0;
+		rangeStartTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Request the next range in the background once the current range is
+	 * half used.
+	 */
+	private void refill()
+	{
+		if ( refill != null )
+		{
+			if ( refill.isDone() )
+				takeRefill();
+		}
+		else if ( reserveBegin >= reserveEnd && end - next <= count / 2 )
+			refill = request( count );
 	}
 
 	@Override
 	public synchronized void invalidate( final long id )
 	{
-		while ( next < id )
-			update();
+		while ( next <= id )
+		{
+			if ( id < end )
+				next = id + 1;
+			else
+				advance( false );
+		}
+		refill();
 	}
 
 	@Override
 	public synchronized long next()
 	{
 		while ( next >= end )
-			update();
+			advance( true );
 
-		return next++;
+		final long id = next++;
+		refill();
+		return id;
 	}
 
 	/**
-	 * TODO may be request n - something new ids instead of looping...
+	 * Get n contiguous ids from the current range or, if it is too small,
+	 * from a single request for exactly n ids.  The ids are not contiguous
+	 * only if the service returns a smaller range than requested.
 	 */
 	@Override
 	public synchronized long[] next( final int n )
 	{
-		int m = 0;
-		TLongArrayList ids = new TLongArrayList();
-		do
+		if ( n <= 0 )
+			return new long[ 0 ];
+
+		if ( end - next >= n )
 		{
-			final long end1 = Math.min( end, next + n - ids.size() );
-			final long[] someIds =
-					LongStream.range(
-							next,
-							end1 ).toArray();
-			ids.add( someIds );
-			if ( end1 < end )
-				next = end1;
-			else
-				update();
+			final long[] ids = LongStream.range( next, next + n ).toArray();
+			next += n;
+			refill();
+			return ids;
 		}
-		while ( ids.size() < n );
 
+		final long[] range = await( request( n ) );
+		if ( range[ 1 ] - range[ 0 ] >= n )
+			return LongStream.range( range[ 0 ], range[ 0 ] + n ).toArray();
+
+		final TLongArrayList ids = new TLongArrayList( n );
+		ids.add( LongStream.range( range[ 0 ], range[ 1 ] ).toArray() );
+		while ( ids.size() < n )
+			ids.add( next() );
 		return ids.toArray();
 	}
+
+	/**
+	 * @return the number of ids currently requested at once
+	 */
+	public synchronized int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return the number of ranges requested from the service
+	 */
+	public synchronized long getNumRequests()
+	{
+		return numRequests;
+	}
+
+	/**
+	 * Stop the background thread.  The socket belongs to the context passed
+	 * to the constructor.
+	 */
+	public void shutdown()
+	{
+		exec.shutdown();
+	}
 }
@@ -7,6 +7,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
+import bdv.util.http.Codec;
 import bdv.util.http.HttpRequest;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
@@ -22,12 +23,31 @@ public abstract class DatasetBlk< T > extends Dataset
 {
 	
 	protected final int[] blockSize;
+	
+	protected Codec codec = Codec.NONE;
 
 	public DatasetBlk( Node node, String name, String type ) throws JsonSyntaxException, JsonIOException, IOException
 	{
 		super( node, name, type );
 		this.blockSize = getBlockSize();
 	}
+	
+	/**
+	 * @return Compression of data sent by {@link #put}.
+	 */
+	public Codec getCodec()
+	{
+		return codec;
+	}
+	
+	/**
+	 * @param codec Compression of data sent by {@link #put}, where
+	 * supported by the data type.
+	 */
+	public void setCodec( Codec codec )
+	{
+		this.codec = codec;
+	}
 
 	/**
 	 * @param target {@link RandomAccessibleInterval} to be written into.
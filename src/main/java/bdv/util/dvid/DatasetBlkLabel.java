@@ -7,6 +7,7 @@ import java.nio.ByteBuffer;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 
+import bdv.util.http.Codec;
 import bdv.util.http.HttpRequest;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
@@ -16,6 +17,8 @@ import net.imglib2.view.Views;
  * @author Philipp Hanslovsky <hanslovskyp@janelia.hhmi.org>
  *
  * Dataset class corresponding to dvid dataype labelblk.
+ * 
+ * {@link #put} compresses the posted labels with {@link #getCodec()}.
  *
  */
 public class DatasetBlkLabel extends DatasetBlk< UnsignedLongType >
@@ -33,9 +36,25 @@ public class DatasetBlkLabel extends DatasetBlk< UnsignedLongType >
 			int[] offset
 			) throws MalformedURLException, IOException
 	{
-		HttpRequest.postRequest( 
-				getIntervalRequestUrl( source, offset ), 
-				Views.flatIterable( source ), "application/octet-stream" );
+		if ( codec == Codec.NONE )
+		{
+			HttpRequest.postRequest( 
+					getIntervalRequestUrl( source, offset ), 
+					Views.flatIterable( source ), "application/octet-stream" );
+			return;
+		}
+		
+		int size = Long.BYTES;
+		for ( int d = 0; d < source.numDimensions(); ++d )
+			size *= source.dimension( d );
+		
+		ByteBuffer bb = ByteBuffer.allocate( size );
+		for ( UnsignedLongType s : Views.flatIterable( source ) )
+			bb.putLong( s.getIntegerLong() );
+		
+		HttpRequest.postRequest(
+				codec.appendTo( getIntervalRequestUrl( source, offset ) ),
+				codec.encode( bb.array() ) );
 	}
 
 	@Override
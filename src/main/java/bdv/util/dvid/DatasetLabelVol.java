@@ -1,15 +1,18 @@
 package bdv.util.dvid;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import bdv.util.http.HttpRequest;
+import bdv.util.http.HttpTransport;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 
 /**
@@ -52,6 +55,31 @@ public class DatasetLabelVol extends Dataset
 		return data;
 	}
 	
+	/**
+	 * @param canvas Write label into this {@link AbstractCellImg}, e.g. the label canvas.
+	 * @param label Label whose sparse volume is requested and drawn.
+	 * @param offset Specifies the top left corner of canvas with respect to the dvid dataset.
+	 * @param options Options of the sparsevol request.
+	 * @param exec If not null, collect spans per cell and fill cells in parallel.
+	 * @return Number of voxels written.
+	 * 
+	 * Stream the sparse volume of label from the server straight into the cells of canvas.
+	 * 
+	 */
+	public long drawInto(
+			AbstractCellImg< ?, ?, ? extends Cell< ? >, ? > canvas,
+			UnsignedLongType label,
+			long[] offset,
+			Map< String, String > options,
+			ExecutorService exec ) throws MalformedURLException, IOException, InterruptedException
+	{
+		String url = getRequestString( getSparsevolRequestString( label ), null, options );
+		SparseVolCellWriter writer = new SparseVolCellWriter( canvas, offset, label.get(), exec != null );
+		HttpTransport.getDefault().stream( url, ( in, contentLength ) -> writer.write( in ) );
+		writer.apply( exec );
+		return writer.getNumVoxels();
+	}
+	
 	/**
 	 * @param target Write labels into this {@link RandomAccessibleInterval}.
 	 * @param rleData Run length encoded byte[] as returned by {@link DatasetLabelVol#getSparseVol}
@@ -59,6 +87,8 @@ public class DatasetLabelVol extends Dataset
 	 * @param offset Specifies the top left corner of target with respect to the dvid dataset.
 	 * 
 	 * Write run length encoded pixel labels into a {@link RandomAccessibleInterval}.
+	 * Spans are clipped to target. For cell images of 64-bit integers, use
+	 * {@link SparseVolCellWriter} which fills cell arrays directly.
 	 * 
 	 */
 	public static void drawInto( 
@@ -68,55 +98,34 @@ public class DatasetLabelVol extends Dataset
 			long[] offset
 			)
 	{
-		ByteBuffer bb = ByteBuffer.wrap( rleData );
-		byte payloadDescriptor = bb.get();
-		assert payloadDescriptor == 0: "Expected zero payload!";
-		int nDim = bb.get() & 0xff;
-		assert nDim == 3: "Expected three dimensions";
-		int runDim = bb.get() & 0xff;
-		assert runDim >= 0 && runDim <= 2: "Run dimension must be less than three";
-		bb.get(); // ignore reserved byte
-		bb.getInt(); // ignore (number of pixels, falls back to 0 right now);
-		bb.getInt(); // ignore (number of spans <- what is that?);
-		RandomAccess< UnsignedLongType > ra = target.randomAccess();
-		long runDimLength = target.dimension( runDim );
-		ArrayList< Integer > nonRunDims = new ArrayList< Integer >();
-		for ( int d = 0; d < 3; ++d )
-			if( d != runDim )
-				nonRunDims.add(  d  );
-		long[] dims = new long[ 3 ];
-		target.dimensions( dims );
-		System.out.println( runDim + " " + bb.position() + "   LAENGE!" );
-		while( bb.position() < rleData.length )
+		final RandomAccess< UnsignedLongType > ra = target.randomAccess();
+		final long[] min = new long[ 3 ];
+		final long[] max = new long[ 3 ];
+		target.min( min );
+		target.max( max );
+		final long[] start = new long[ 3 ];
+		try
+		{
+			final InputStream in = new ByteArrayInputStream( rleData );
+			final SparseVolDecoder.Header header = SparseVolDecoder.readHeader( in );
+			final int runDim = header.runDimension;
+			SparseVolDecoder.decodeSpans( in, ( x, y, z, length ) -> {
+				start[ 0 ] = x - offset[ 0 ];
+				start[ 1 ] = y - offset[ 1 ];
+				start[ 2 ] = z - offset[ 2 ];
+				for ( int d = 0; d < 3; ++d )
+					if ( d != runDim && ( start[ d ] < min[ d ] || start[ d ] > max[ d ] ) )
+						return;
+				final long end = Math.min( start[ runDim ] + length - 1, max[ runDim ] );
+				start[ runDim ] = Math.max( start[ runDim ], min[ runDim ] );
+				ra.setPosition( start );
+				for ( long i = start[ runDim ]; i <= end; ++i, ra.fwd( runDim ) )
+					ra.get().set( label );
+			} );
+		}
+		catch ( IOException e )
 		{
-			long[] startingCoordinates = new long[]
-					{
-							bb.getInt() - offset[ 0 ],
-							bb.getInt() - offset[ 1 ],
-							bb.getInt() - offset[ 2 ]
-					};
-			System.out.println( Arrays.toString( startingCoordinates ) );
-			boolean isOutOfBounds = false;
-			for( Integer d : nonRunDims )
-			{
-				long v = startingCoordinates[ d.intValue() ];
-				if ( v < 0l || v >= dims[ d ] )
-				{
-					isOutOfBounds = true;
-					break;
-				}
-			}
-			if ( isOutOfBounds ) continue;
-			long offsetRunDimLength = startingCoordinates[ runDim ] + runDimLength;
-			long maxLength = Math.min(  offsetRunDimLength, dims[ runDim ] );
-			for ( 
-					ra.setPosition( startingCoordinates ); 
-					ra.getLongPosition( runDim ) < maxLength;
-					ra.fwd( runDim )
-				)
-			{
-				ra.get().set( label );
-			}
+			throw new IllegalArgumentException( "Invalid sparse volume.", e );
 		}
 	}
 
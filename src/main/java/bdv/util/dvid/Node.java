@@ -8,14 +8,18 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map.Entry;
 
 import net.imglib2.util.Pair;
 import bdv.util.http.HttpRequest;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
 
 /**
  * @author Philipp Hanslovsky <hanslovskyp@janelia.hhmi.org>
@@ -63,6 +67,43 @@ public class Node
 		return repository.getServer().getApiUrl() +"/node/" + this.uuid;
 	}
 
+	/**
+	 * @return true if this node is locked, i.e. committed, such that its
+	 *         data cannot change anymore
+	 * @throws JsonSyntaxException
+	 * @throws JsonIOException
+	 * @throws IOException
+	 */
+	public boolean isLocked() throws JsonSyntaxException, JsonIOException, IOException
+	{
+		return isLocked( repository.getDAG(), uuid );
+	}
+
+	/**
+	 *
+	 * Check whether a node is locked.
+	 *
+	 * @param dag DAG of commits as returned by {@link Repository#getDAG()}
+	 * @param uuid uuid of the node
+	 * @return true if the node is listed as locked in dag, false if it is not
+	 * locked or not listed
+	 */
+	public static boolean isLocked( final JsonObject dag, final String uuid )
+	{
+		final JsonObject nodes = dag.get( "Nodes" ).getAsJsonObject();
+		for ( final Entry< String, JsonElement > entry : nodes.entrySet() )
+		{
+			final JsonObject node = entry.getValue().getAsJsonObject();
+			final JsonElement nodeUuid = node.get( "UUID" );
+			if ( uuidEquivalenceCheck( nodeUuid == null ? entry.getKey() : nodeUuid.getAsString(), uuid ) )
+			{
+				final JsonElement locked = node.get( "Locked" );
+				return locked != null && locked.getAsBoolean();
+			}
+		}
+		return false;
+	}
+
 	/**
 	 *
 	 * Commit and fix a note. No changes can be applied to this note after
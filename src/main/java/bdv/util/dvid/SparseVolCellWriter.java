@@ -0,0 +1,227 @@
+package bdv.util.dvid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * Writes a label into the voxels of a sparse volume that fall into a
+ * {@link AbstractCellImg} of 64-bit integers, e.g. the label canvas.
+ *
+ * Spans are clipped to the image arithmetically and split at cell borders,
+ * each piece is filled into the cell's storage array in one go. Either
+ * spans are filled as they are decoded, or they are collected per cell and
+ * filled in parallel by {@link #apply(ExecutorService)}.
+ *
+ */
+public class SparseVolCellWriter implements SparseVolDecoder.SpanConsumer
+{
+	private final RandomAccess< ? extends Cell< ? > > cellAccess;
+
+	private final long[] offset;
+
+	private final long[] dimensions;
+
+	private final int[] cellDimensions;
+
+	private final long label;
+
+	private final boolean deferred;
+
+	/** cell &gt; (index, length) pairs of spans */
+	private final LinkedHashMap< Cell< ? >, TIntArrayList > cellSpans = new LinkedHashMap<>();
+
+	private final long[] position = new long[ 3 ];
+
+	private final long[] cellPosition = new long[ 3 ];
+
+	private int runDimension = 0;
+
+	private long numVoxels = 0;
+
+	/**
+	 * @param img
+	 *            Target image, its storage must be long[] arrays or implement
+	 *            {@link LongAccess}.
+	 * @param offset
+	 *            Position of the image origin in the dvid data set.
+	 * @param label
+	 *            Label to be written.
+	 * @param deferred
+	 *            Collect spans per cell and fill them in
+	 *            {@link #apply(ExecutorService)} instead of filling them as
+	 *            they are decoded.
+	 */
+	public SparseVolCellWriter(
+			final AbstractCellImg< ?, ?, ? extends Cell< ? >, ? > img,
+			final long[] offset,
+			final long label,
+			final boolean deferred )
+	{
+		final CellGrid grid = img.getCellGrid();
+		this.cellAccess = img.getCells().randomAccess();
+		this.offset = offset.clone();
+		this.dimensions = grid.getImgDimensions();
+		this.cellDimensions = new int[ grid.numDimensions() ];
+		grid.cellDimensions( cellDimensions );
+		this.label = label;
+		this.deferred = deferred;
+	}
+
+	/**
+	 * Decode a sparse volume and write its spans.
+	 */
+	public SparseVolDecoder.Header write( final InputStream in ) throws IOException
+	{
+		final SparseVolDecoder.Header header = SparseVolDecoder.readHeader( in );
+		runDimension = header.runDimension;
+		SparseVolDecoder.decodeSpans( in, this );
+		return header;
+	}
+
+	@Override
+	public void accept( final int x, final int y, final int z, final int length )
+	{
+		position[ 0 ] = x - offset[ 0 ];
+		position[ 1 ] = y - offset[ 1 ];
+		position[ 2 ] = z - offset[ 2 ];
+		for ( int d = 0; d < 3; ++d )
+			if ( d != runDimension && ( position[ d ] < 0 || position[ d ] >= dimensions[ d ] ) )
+				return;
+
+		final int r = runDimension;
+		long start = Math.max( position[ r ], 0 );
+		final long end = Math.min( position[ r ] + length, dimensions[ r ] );
+		if ( start >= end )
+			return;
+		numVoxels += end - start;
+
+		for ( int d = 0; d < 3; ++d )
+			cellPosition[ d ] = position[ d ] / cellDimensions[ d ];
+
+		while ( start < end )
+		{
+			position[ r ] = start;
+			cellPosition[ r ] = start / cellDimensions[ r ];
+			cellAccess.setPosition( cellPosition );
+			final Cell< ? > cell = cellAccess.get();
+
+			final long cellEnd = Math.min( ( cellPosition[ r ] + 1 ) * cellDimensions[ r ], end );
+			int index = 0;
+			int stride = 1;
+			int runStride = 1;
+			for ( int d = 0; d < 3; ++d )
+			{
+				if ( d == r )
+					runStride = stride;
+				index += ( int ) ( position[ d ] - cell.min( d ) ) * stride;
+				stride *= cell.dimension( d );
+			}
+			final int n = ( int ) ( cellEnd - start );
+
+			if ( deferred )
+			{
+				TIntArrayList spans = cellSpans.get( cell );
+				if ( spans == null )
+				{
+					spans = new TIntArrayList();
+					cellSpans.put( cell, spans );
+				}
+				spans.add( index );
+				spans.add( n );
+			}
+			else
+				fill( cell, index, n, runStride, label );
+
+			start = cellEnd;
+		}
+	}
+
+	private static int runStride( final Cell< ? > cell, final int runDimension )
+	{
+		int stride = 1;
+		for ( int d = 0; d < runDimension; ++d )
+			stride *= cell.dimension( d );
+		return stride;
+	}
+
+	private static void fill( final Cell< ? > cell, final int index, final int n, final int stride, final long label )
+	{
+		final Object data = cell.getData();
+		if ( data instanceof ArrayDataAccess )
+		{
+			final Object array = ( ( ArrayDataAccess< ? > ) data ).getCurrentStorageArray();
+			if ( array instanceof long[] )
+			{
+				final long[] values = ( long[] ) array;
+				if ( stride == 1 )
+					Arrays.fill( values, index, index + n, label );
+				else
+					for ( int i = 0, j = index; i < n; ++i, j += stride )
+						values[ j ] = label;
+				return;
+			}
+		}
+		final LongAccess access = ( LongAccess ) data;
+		for ( int i = 0, j = index; i < n; ++i, j += stride )
+			access.setValue( j, label );
+	}
+
+	private void fill( final Cell< ? > cell, final TIntArrayList spans )
+	{
+		final int stride = runStride( cell, runDimension );
+		for ( int i = 0; i < spans.size(); i += 2 )
+			fill( cell, spans.getQuick( i ), spans.getQuick( i + 1 ), stride, label );
+	}
+
+	/**
+	 * Fill the collected spans, one task per cell. Spans are filled
+	 * sequentially if exec is null.
+	 */
+	public void apply( final ExecutorService exec ) throws InterruptedException
+	{
+		if ( exec == null )
+		{
+			for ( final Entry< Cell< ? >, TIntArrayList > entry : cellSpans.entrySet() )
+				fill( entry.getKey(), entry.getValue() );
+		}
+		else
+		{
+			final ArrayList< Future< ? > > futures = new ArrayList<>();
+			for ( final Entry< Cell< ? >, TIntArrayList > entry : cellSpans.entrySet() )
+				futures.add( exec.submit( () -> fill( entry.getKey(), entry.getValue() ) ) );
+			try
+			{
+				for ( final Future< ? > future : futures )
+					future.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				throw new RuntimeException( e.getCause() );
+			}
+		}
+		cellSpans.clear();
+	}
+
+	/**
+	 * @return the number of voxels within the image
+	 */
+	public long getNumVoxels()
+	{
+		return numVoxels;
+	}
+}
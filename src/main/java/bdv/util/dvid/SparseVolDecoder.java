@@ -0,0 +1,140 @@
+package bdv.util.dvid;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for dvid's run length encoded sparse volumes as
+ * returned by labelvol sparsevol requests:
+ *
+ * <pre>
+ * byte   payload descriptor (0 = binary sparse volume)
+ * uint8  number of dimensions
+ * uint8  run dimension
+ * byte   reserved
+ * uint32 number of voxels (0 if not set)
+ * uint32 number of spans (0 if not set)
+ * repeated for each span:
+ *   int32 x, y, z of span start
+ *   int32 length of span along run dimension
+ * </pre>
+ *
+ * All values are little endian. Spans are read through a fixed buffer and
+ * passed to a {@link SpanConsumer} as they arrive, the payload is never
+ * held in memory as a whole.
+ *
+ */
+public class SparseVolDecoder
+{
+	private static final int HEADER_SIZE = 12;
+
+	private static final int SPAN_SIZE = 16;
+
+	private static final int BUFFER_SIZE = 4096 * SPAN_SIZE;
+
+	public static interface SpanConsumer
+	{
+		/**
+		 * Receive a span of length voxels along the run dimension starting at
+		 * (x, y, z).
+		 */
+		public void accept( int x, int y, int z, int length );
+	}
+
+	public static class Header
+	{
+		public final int payloadDescriptor;
+
+		public final int numDimensions;
+
+		public final int runDimension;
+
+		public final long numVoxels;
+
+		public final long numSpans;
+
+		public Header( final int payloadDescriptor, final int numDimensions, final int runDimension, final long numVoxels, final long numSpans )
+		{
+			this.payloadDescriptor = payloadDescriptor;
+			this.numDimensions = numDimensions;
+			this.runDimension = runDimension;
+			this.numVoxels = numVoxels;
+			this.numSpans = numSpans;
+		}
+	}
+
+	private static int readInt( final byte[] buffer, final int i )
+	{
+		return ( buffer[ i ] & 0xff ) | ( ( buffer[ i + 1 ] & 0xff ) << 8 ) | ( ( buffer[ i + 2 ] & 0xff ) << 16 ) | ( ( buffer[ i + 3 ] & 0xff ) << 24 );
+	}
+
+	private static void readFully( final InputStream in, final byte[] buffer, final int length ) throws IOException
+	{
+		for ( int off = 0; off < length; )
+		{
+			final int l = in.read( buffer, off, length - off );
+			if ( l < 0 )
+				throw new IOException( "Premature end of sparse volume header." );
+			off += l;
+		}
+	}
+
+	/**
+	 * Read the header of a sparse volume.
+	 */
+	public static Header readHeader( final InputStream in ) throws IOException
+	{
+		final byte[] header = new byte[ HEADER_SIZE ];
+		readFully( in, header, HEADER_SIZE );
+		final Header h = new Header(
+				header[ 0 ],
+				header[ 1 ] & 0xff,
+				header[ 2 ] & 0xff,
+				readInt( header, 4 ) & 0xffffffffl,
+				readInt( header, 8 ) & 0xffffffffl );
+		if ( h.payloadDescriptor != 0 )
+			throw new IOException( "Expected binary sparse volume, payload descriptor is " + h.payloadDescriptor + "." );
+		if ( h.numDimensions != 3 )
+			throw new IOException( "Expected three dimensions, found " + h.numDimensions + "." );
+		if ( h.runDimension > 2 )
+			throw new IOException( "Run dimension must be less than three, found " + h.runDimension + "." );
+		return h;
+	}
+
+	/**
+	 * Decode a sparse volume and pass all spans to consumer.
+	 *
+	 * @return the header
+	 */
+	public static Header decode( final InputStream in, final SpanConsumer consumer ) throws IOException
+	{
+		final Header header = readHeader( in );
+		decodeSpans( in, consumer );
+		return header;
+	}
+
+	/**
+	 * Decode the spans following the header of a sparse volume and pass
+	 * them to consumer.
+	 */
+	public static void decodeSpans( final InputStream in, final SpanConsumer consumer ) throws IOException
+	{
+		final byte[] buffer = new byte[ BUFFER_SIZE ];
+		int filled = 0;
+		for ( int l = in.read( buffer ); l >= 0; l = in.read( buffer, filled, buffer.length - filled ) )
+		{
+			filled += l;
+			int i = 0;
+			for ( ; i + SPAN_SIZE <= filled; i += SPAN_SIZE )
+				consumer.accept(
+						readInt( buffer, i ),
+						readInt( buffer, i + 4 ),
+						readInt( buffer, i + 8 ),
+						readInt( buffer, i + 12 ) );
+			filled -= i;
+			System.arraycopy( buffer, i, buffer, 0, filled );
+		}
+		if ( filled != 0 )
+			throw new IOException( "Sparse volume ends within a span." );
+	}
+}
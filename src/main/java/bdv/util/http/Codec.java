@@ -0,0 +1,113 @@
+package bdv.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of DVID block payloads, negotiated through the
+ * <code>compression</code> query parameter of the request.
+ *
+ * Decoding happens on the thread that reads the response, i.e. the cache
+ * fetcher threads for the remote loaders.
+ */
+public enum Codec
+{
+	NONE( null ),
+	GZIP( "gzip" ),
+	LZ4( "lz4" );
+
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+	private final String name;
+
+	private Codec( final String name )
+	{
+		this.name = name;
+	}
+
+	/**
+	 * @return the value of the <code>compression</code> query parameter or
+	 *         null for {@link #NONE}
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return {@code url} with the <code>compression</code> query parameter
+	 *         appended if this is not {@link #NONE}
+	 */
+	public String appendTo( final String url )
+	{
+		if ( name == null )
+			return url;
+		return url + ( url.indexOf( '?' ) < 0 ? "?" : "&" ) + "compression=" + name;
+	}
+
+	/**
+	 * Compress a payload for sending.
+	 */
+	public byte[] encode( final byte[] data ) throws IOException
+	{
+		switch ( this )
+		{
+		case GZIP:
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream( data.length / 8 + 64 );
+			try ( final GZIPOutputStream out = new GZIPOutputStream( bytes, GZIP_BUFFER_SIZE ) )
+			{
+				out.write( data );
+			}
+			return bytes.toByteArray();
+		case LZ4:
+			return Lz4.compress( data );
+		default:
+			return data;
+		}
+	}
+
+	/**
+	 * Wrap a response body such that it can be read uncompressed.
+	 *
+	 * @param in
+	 *            the response body
+	 * @param contentLength
+	 *            length of the response body or -1 if unknown
+	 * @param decodedLength
+	 *            length of the uncompressed payload, LZ4 blocks do not
+	 *            carry it
+	 */
+	public InputStream decode( final InputStream in, final int contentLength, final int decodedLength ) throws IOException
+	{
+		switch ( this )
+		{
+		case GZIP:
+			return new GZIPInputStream( in, GZIP_BUFFER_SIZE );
+		case LZ4:
+			final byte[] compressed = HttpTransport.readFully( in, contentLength );
+			final byte[] decompressed = new byte[ decodedLength ];
+			Lz4.decompress( compressed, 0, compressed.length, decompressed );
+			return new ByteArrayInputStream( decompressed );
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * @return the codec for a <code>compression</code> query parameter value,
+	 *         {@link #NONE} for null, empty or "none"
+	 */
+	public static Codec fromName( final String name )
+	{
+		if ( name == null || name.isEmpty() || name.equalsIgnoreCase( "none" ) )
+			return NONE;
+		for ( final Codec codec : values() )
+			if ( name.equalsIgnoreCase( codec.name ) )
+				return codec;
+		throw new IllegalArgumentException( "Unknown compression " + name + "." );
+	}
+}
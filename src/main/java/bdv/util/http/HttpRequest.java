@@ -1,5 +1,6 @@
 package bdv.util.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -24,6 +25,8 @@ import net.imglib2.type.numeric.integer.UnsignedLongType;
  * @author Philipp Hanslovsky <hanslovskyp@janelia.hhmi.org>
  * 
  * Convenience methods for requests and responses.
+ * 
+ * GET requests go through the shared {@link HttpTransport}.
  *
  */
 public class HttpRequest
@@ -167,32 +170,21 @@ public class HttpRequest
 	 * {@link HTTPException}.
 	 * 
 	 * @param url Url for GET request. 
-	 * @return Data sent by the server in response as byte[].
+	 * @return Data sent by the server in response as byte[], shared with
+	 * concurrent requests for the same url, do not modify.
 	 * @throws MalformedURLException
 	 * @throws IOException
 	 */
 	public static byte[] getRequest( String url ) throws MalformedURLException, IOException
 	{
-		HttpURLConnection connection = ( HttpURLConnection ) new URL( url ).openConnection();
-		int response = connection.getResponseCode();
-		if ( response != 200 )
-			throw new HTTPException( response );
-		
-		byte[] bytes;
-		String transferEncoding = connection.getHeaderField( "Transfer-Encoding" );
-		if ( transferEncoding != null && transferEncoding.compareToIgnoreCase( "chunked" ) == 0 )
+		try
 		{
-			ChunkedByteArrayResponseHandler handler = new ChunkedByteArrayResponseHandler( 1024 );
-			getRequest( connection, handler );
-			bytes = handler.getArray();
-		} else
+			return HttpTransport.getDefault().get( url );
+		}
+		catch ( HttpTransport.StatusException e )
 		{
-			int contentLength = Integer.parseInt( connection.getHeaderField( "Content-Length" ) );
-			bytes = new byte[ contentLength ];
-			getRequest( connection, new ByteArrayResponseHandler( bytes ) );
+			throw new HTTPException( e.getStatus() );
 		}
-		connection.disconnect();
-		return bytes;
 	}
 	
 	/**
@@ -200,9 +192,7 @@ public class HttpRequest
 	 * HTTP Get request:
 	 * GET url
 	 * 
-	 * Only use this, if you know the data size beforehand and
-	 * you are sure that the header field "Transfer-Encoding" does
-	 * not exist or is not "chunked".
+	 * Reads at most bytes.length bytes of the response into bytes.
 	 * 
 	 * If the HTTP status code is not 200, this method throws
 	 * {@link HTTPException}.
@@ -215,23 +205,20 @@ public class HttpRequest
 	 */
 	public static byte[] getRequest( String url, byte[] bytes ) throws MalformedURLException, IOException
 	{
-		HttpURLConnection connection = ( HttpURLConnection ) new URL( url ).openConnection();
-		int response = connection.getResponseCode();
-		if ( response != 200 )
-			throw new HTTPException( response );
-		getRequest( connection, new ByteArrayResponseHandler( bytes ) );
-		connection.disconnect();
+		try
+		{
+			HttpTransport.getDefault().get( url, bytes );
+		}
+		catch ( HttpTransport.StatusException e )
+		{
+			throw new HTTPException( e.getStatus() );
+		}
 		return bytes;
 	}
 	
 	public static void getRequest( String url, ResponseHandler handler ) throws MalformedURLException, IOException
 	{
-		HttpURLConnection connection = ( HttpURLConnection ) new URL( url ).openConnection();
-		int response = connection.getResponseCode();
-		if ( response != 200 )
-			throw new HTTPException( response );
-		getRequest( connection, handler );
-		connection.disconnect();
+		handler.handle( new ByteArrayInputStream( getRequest( url ) ) );
 	}
 
 	/**
@@ -0,0 +1,507 @@
+package bdv.util.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared transport for GET requests of the remote loaders.
+ *
+ * <ul>
+ * <li>Connections are reused: responses are always read to the end and
+ * closed but never {@link HttpURLConnection#disconnect() disconnected} such
+ * that the JDK keeps the socket alive for the next request to the same
+ * host.</li>
+ * <li>The number of concurrent requests per host is bounded, requests beyond
+ * that bound wait for a free connection instead of opening new ones.</li>
+ * <li>Concurrent requests for the same URL are coalesced into one request
+ * whose response is shared by all callers.</li>
+ * </ul>
+ *
+ * Responses may be shared between callers and must not be modified.
+ *
+ * {@link Decoder Decoders} read the response straight from the connection's
+ * stream into their target arrays. The static helpers read through pooled
+ * buffers such that decoding a block creates no garbage besides its result.
+ */
+public class HttpTransport
+{
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	public static final int DEFAULT_READ_TIMEOUT = 60000;
+
+	/**
+	 * Thrown if the server responds with a status other than 200.
+	 */
+	public static class StatusException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		public StatusException( final String url, final int status )
+		{
+			super( "HTTP " + status + " for " + url );
+			this.status = status;
+		}
+
+		public int getStatus()
+		{
+			return status;
+		}
+	}
+
+	/**
+	 * Decodes a response body from the connection's stream.
+	 */
+	public interface Decoder< T >
+	{
+		/**
+		 * @param in
+		 *            the response body, closed by the caller
+		 * @param contentLength
+		 *            length of the body or -1 if unknown
+		 */
+		public T decode( final InputStream in, final int contentLength ) throws IOException;
+	}
+
+	/**
+	 * Receives the values decoded by
+	 * {@link HttpTransport#readLongsLittleEndian(InputStream, int, LongSink)}.
+	 */
+	public interface LongSink
+	{
+		public void accept( final int index, final long value );
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ConcurrentLinkedQueue< byte[] > buffers = new ConcurrentLinkedQueue<>();
+
+	private static final Decoder< byte[] > byteArrayDecoder = HttpTransport::readFully;
+
+	/**
+	 * Identifies in-flight requests whose decoded results can be shared.
+	 */
+	private static final class RequestKey
+	{
+		private final String url;
+
+		private final Object decoderKey;
+
+		public RequestKey( final String url, final Object decoderKey )
+		{
+			this.url = url;
+			this.decoderKey = decoderKey;
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( !( other instanceof RequestKey ) )
+				return false;
+			final RequestKey key = ( RequestKey ) other;
+			return url.equals( key.url ) && decoderKey.equals( key.decoderKey );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * url.hashCode() + decoderKey.hashCode();
+		}
+	}
+
+	private static HttpTransport defaultTransport = null;
+
+	/**
+	 * Get the transport shared by all loaders.
+	 */
+	public static synchronized HttpTransport getDefault()
+	{
+		if ( defaultTransport == null )
+			defaultTransport = new HttpTransport( DEFAULT_MAX_CONNECTIONS_PER_HOST );
+		return defaultTransport;
+	}
+
+	/**
+	 * Replace the transport shared by all loaders, e.g. with one that allows
+	 * a different number of connections per host.
+	 */
+	public static synchronized void setDefault( final HttpTransport transport )
+	{
+		defaultTransport = transport;
+	}
+
+	/**
+	 * Set the number of idle connections per host that the JDK keeps alive
+	 * (http.maxConnections) unless that has been set on the command line.
+	 * This is read once by the JDK, i.e. it must be called at startup before
+	 * the first connection is opened.
+	 */
+	public static void configureKeepAlive( final int maxConnectionsPerHost )
+	{
+		if ( System.getProperty( "http.maxConnections" ) == null )
+			System.setProperty( "http.maxConnections", Integer.toString( maxConnectionsPerHost ) );
+	}
+
+	private final int maxConnectionsPerHost;
+
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	private final ConcurrentHashMap< String, Semaphore > hostPermits = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap< RequestKey, FutureTask< ? > > inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong numRequests = new AtomicLong();
+
+	private final AtomicLong numCoalesced = new AtomicLong();
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            maximum number of concurrent requests per host, see also
+	 *            {@link #configureKeepAlive(int)}
+	 */
+	public HttpTransport( final int maxConnectionsPerHost )
+	{
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	public void setTimeouts( final int connectTimeout, final int readTimeout )
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Number of requests sent to a server.
+	 */
+	public long getNumRequests()
+	{
+		return numRequests.get();
+	}
+
+	/**
+	 * Number of calls that were served by another call's in-flight request.
+	 */
+	public long getNumCoalesced()
+	{
+		return numCoalesced.get();
+	}
+
+	/**
+	 * GET the content at {@code url}.
+	 *
+	 * @param url
+	 * @return the response body, possibly shared with concurrent callers for
+	 *         the same {@code url}
+	 * @throws IOException
+	 *             if the request failed, {@link StatusException} if the status
+	 *             was not 200
+	 */
+	public byte[] get( final String url ) throws IOException
+	{
+		return get( url, byteArrayDecoder, byteArrayDecoder );
+	}
+
+	/**
+	 * GET the content at {@code url} and decode it while reading from the
+	 * connection. Concurrent calls with the same {@code url} and equal
+	 * {@code decoderKey} share one request and its decoded result.
+	 *
+	 * @param url
+	 * @param decoderKey
+	 *            identifies how the response is decoded, e.g. the loader
+	 *            that decodes it, such that calls with equal keys can share
+	 *            their results
+	 * @param decoder
+	 * @return the decoded response
+	 * @throws IOException
+	 *             if the request failed, {@link StatusException} if the status
+	 *             was not 200
+	 */
+	@SuppressWarnings( "unchecked" )
+	public < T > T get( final String url, final Object decoderKey, final Decoder< T > decoder ) throws IOException
+	{
+		final RequestKey key = new RequestKey( url, decoderKey );
+		final FutureTask< T > task = new FutureTask<>( () -> fetch( url, decoder ) );
+		final FutureTask< T > existingTask = ( FutureTask< T > ) inFlight.putIfAbsent( key, task );
+		if ( existingTask == null )
+		{
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				inFlight.remove( key, task );
+			}
+			return getResult( task );
+		}
+		numCoalesced.incrementAndGet();
+		return getResult( existingTask );
+	}
+
+	/**
+	 * GET the content at {@code url} directly into {@code bytes}. At most
+	 * {@code bytes.length} bytes are read. Requests into caller provided
+	 * arrays are not coalesced.
+	 *
+	 * @return the number of bytes read
+	 */
+	public int get( final String url, final byte[] bytes ) throws IOException
+	{
+		return fetch( url, ( in, contentLength ) -> readFully( in, bytes ) );
+	}
+
+	/**
+	 * GET the content at {@code url} and decode it while reading from the
+	 * connection without coalescing, for decoders with side effects such as
+	 * writing into caller provided targets.
+	 *
+	 * @return the decoded response
+	 */
+	public < T > T stream( final String url, final Decoder< T > decoder ) throws IOException
+	{
+		return fetch( url, decoder );
+	}
+
+	private static < T > T getResult( final FutureTask< T > task ) throws IOException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( e.getMessage() );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new IOException( cause );
+		}
+	}
+
+	private Semaphore getPermits( final URL url )
+	{
+		final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		final String host = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		Semaphore permits = hostPermits.get( host );
+		if ( permits == null )
+		{
+			permits = new Semaphore( maxConnectionsPerHost, true );
+			final Semaphore existingPermits = hostPermits.putIfAbsent( host, permits );
+			if ( existingPermits != null )
+				permits = existingPermits;
+		}
+		return permits;
+	}
+
+	private < T > T fetch( final String urlString, final Decoder< T > decoder ) throws IOException
+	{
+		final URL url = new URL( urlString );
+		final Semaphore permits = getPermits( url );
+		try
+		{
+			permits.acquire();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( e.getMessage() );
+		}
+		try
+		{
+			numRequests.incrementAndGet();
+			final URLConnection connection = url.openConnection();
+			connection.setConnectTimeout( connectTimeout );
+			connection.setReadTimeout( readTimeout );
+			if ( connection instanceof HttpURLConnection )
+			{
+				final HttpURLConnection httpConnection = ( HttpURLConnection ) connection;
+				final int status = httpConnection.getResponseCode();
+				if ( status != HttpURLConnection.HTTP_OK )
+				{
+					/* read the error body too, otherwise the connection cannot be reused */
+					final InputStream err = httpConnection.getErrorStream();
+					if ( err != null )
+						drainAndClose( err );
+					throw new StatusException( urlString, status );
+				}
+			}
+			final InputStream in = connection.getInputStream();
+			final T value;
+			try
+			{
+				value = decoder.decode( in, connection.getContentLength() );
+			}
+			catch ( final IOException | RuntimeException e )
+			{
+				/* do not drain after a failure, the connection is not reused */
+				try
+				{
+					in.close();
+				}
+				catch ( final IOException closeException )
+				{
+					e.addSuppressed( closeException );
+				}
+				throw e;
+			}
+			drainAndClose( in );
+			return value;
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+	private static byte[] borrowBuffer()
+	{
+		final byte[] buffer = buffers.poll();
+		return buffer == null ? new byte[ BUFFER_SIZE ] : buffer;
+	}
+
+	private static void returnBuffer( final byte[] buffer )
+	{
+		buffers.offer( buffer );
+	}
+
+	/**
+	 * Read the remainder of a response such that the connection can be
+	 * reused, and close it.
+	 */
+	private static void drainAndClose( final InputStream in ) throws IOException
+	{
+		final byte[] buffer = borrowBuffer();
+		try
+		{
+			while ( in.read( buffer ) >= 0 );
+		}
+		finally
+		{
+			returnBuffer( buffer );
+			in.close();
+		}
+	}
+
+	/**
+	 * Read a response into a new {@code byte[]}.
+	 *
+	 * @param contentLength
+	 *            length of the response or -1 if unknown
+	 */
+	public static byte[] readFully( final InputStream in, final int contentLength ) throws IOException
+	{
+		if ( contentLength >= 0 )
+		{
+			final byte[] bytes = new byte[ contentLength ];
+			final int length = readFully( in, bytes );
+			if ( length < contentLength )
+				throw new IOException( "Premature end of response, read " + length + " of " + contentLength + " bytes." );
+			return bytes;
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = borrowBuffer();
+		try
+		{
+			for ( int l = in.read( buffer ); l >= 0; l = in.read( buffer ) )
+				out.write( buffer, 0, l );
+		}
+		finally
+		{
+			returnBuffer( buffer );
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Read a response directly into {@code bytes} until it is full or the
+	 * response ends.
+	 *
+	 * @return the number of bytes read
+	 */
+	public static int readFully( final InputStream in, final byte[] bytes ) throws IOException
+	{
+		int off = 0;
+		for ( int l = 0; off < bytes.length && l >= 0; )
+		{
+			l = in.read( bytes, off, bytes.length - off );
+			if ( l > 0 )
+				off += l;
+		}
+		return off;
+	}
+
+	/**
+	 * Decode up to {@code n} little endian 64-bit values from a response
+	 * through a pooled buffer.
+	 *
+	 * @return the number of values decoded
+	 */
+	public static int readLongsLittleEndian( final InputStream in, final int n, final LongSink sink ) throws IOException
+	{
+		final byte[] buffer = borrowBuffer();
+		try
+		{
+			int i = 0;
+			int filled = 0;
+			while ( i < n )
+			{
+				/* never read beyond the n values, the stream may continue with other data */
+				final int l = in.read( buffer, filled, ( int ) Math.min( buffer.length - filled, ( long ) ( n - i ) * 8 - filled ) );
+				if ( l < 0 )
+					break;
+				filled += l;
+				int j = 0;
+				for ( ; j + 8 <= filled && i < n; j += 8, ++i )
+				{
+					final long value =
+							( 0xffl & buffer[ j ] ) |
+							( ( 0xffl & buffer[ j + 1 ] ) << 8 ) |
+							( ( 0xffl & buffer[ j + 2 ] ) << 16 ) |
+							( ( 0xffl & buffer[ j + 3 ] ) << 24 ) |
+							( ( 0xffl & buffer[ j + 4 ] ) << 32 ) |
+							( ( 0xffl & buffer[ j + 5 ] ) << 40 ) |
+							( ( 0xffl & buffer[ j + 6 ] ) << 48 ) |
+							( ( 0xffl & buffer[ j + 7 ] ) << 56 );
+					sink.accept( i, value );
+				}
+				filled -= j;
+				System.arraycopy( buffer, j, buffer, 0, filled );
+			}
+			return i;
+		}
+		finally
+		{
+			returnBuffer( buffer );
+		}
+	}
+}
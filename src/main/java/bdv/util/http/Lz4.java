@@ -0,0 +1,200 @@
+package bdv.util.http;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compression and decompression of the
+ * <a href="https://github.com/lz4/lz4/blob/master/doc/lz4_Block_format.md">LZ4
+ * block format</a> as used by DVID for <code>compression=lz4</code>
+ * payloads. Blocks carry no header, the decompressed size must be known by
+ * the caller.
+ *
+ * The compressor is a simple greedy single-hash matcher. It does not reach
+ * the ratio of the reference implementation but is fast and good enough for
+ * label blocks that consist mostly of long runs of few ids.
+ */
+public class Lz4
+{
+	private static final int MIN_MATCH = 4;
+
+	private static final int LAST_LITERALS = 5;
+
+	private static final int MF_LIMIT = 12;
+
+	private static final int MAX_DISTANCE = 65535;
+
+	private static final int HASH_LOG = 14;
+
+	private Lz4()
+	{}
+
+	/**
+	 * @return the maximum size of a compressed block of {@code length} bytes
+	 */
+	public static int maxCompressedLength( final int length )
+	{
+		return length + length / 255 + 16;
+	}
+
+	private static int readInt( final byte[] src, final int i )
+	{
+		return ( src[ i ] & 0xff ) | ( ( src[ i + 1 ] & 0xff ) << 8 ) | ( ( src[ i + 2 ] & 0xff ) << 16 ) | ( ( src[ i + 3 ] & 0xff ) << 24 );
+	}
+
+	private static int hash( final int value )
+	{
+		return ( value * -1640531535 ) >>> ( 32 - HASH_LOG );
+	}
+
+	private static int writeLength( int length, final byte[] dst, int op )
+	{
+		for ( ; length >= 255; length -= 255 )
+			dst[ op++ ] = ( byte ) 255;
+		dst[ op++ ] = ( byte ) length;
+		return op;
+	}
+
+	private static int writeLiterals( final byte[] src, final int anchor, final int literalLength, final byte[] dst, final int tokenPosition, final int matchToken )
+	{
+		int op = tokenPosition + 1;
+		if ( literalLength >= 15 )
+		{
+			dst[ tokenPosition ] = ( byte ) ( ( 15 << 4 ) | matchToken );
+			op = writeLength( literalLength - 15, dst, op );
+		}
+		else
+			dst[ tokenPosition ] = ( byte ) ( ( literalLength << 4 ) | matchToken );
+		System.arraycopy( src, anchor, dst, op, literalLength );
+		return op + literalLength;
+	}
+
+	/**
+	 * Compress {@code length} bytes of {@code src} starting at {@code offset}.
+	 *
+	 * @return the compressed block
+	 */
+	public static byte[] compress( final byte[] src, final int offset, final int length )
+	{
+		final byte[] dst = new byte[ maxCompressedLength( length ) ];
+		final int end = offset + length;
+		int anchor = offset;
+		int op = 0;
+
+		if ( length > MF_LIMIT )
+		{
+			final int[] table = new int[ 1 << HASH_LOG ];
+			Arrays.fill( table, -1 );
+			final int matchLimit = end - LAST_LITERALS;
+			final int mfLimit = end - MF_LIMIT;
+			int ip = offset;
+			while ( ip < mfLimit )
+			{
+				final int value = readInt( src, ip );
+				final int h = hash( value );
+				final int ref = table[ h ];
+				table[ h ] = ip;
+				if ( ref < 0 || ip - ref > MAX_DISTANCE || readInt( src, ref ) != value )
+				{
+					++ip;
+					continue;
+				}
+
+				int matchLength = MIN_MATCH;
+				while ( ip + matchLength < matchLimit && src[ ref + matchLength ] == src[ ip + matchLength ] )
+					++matchLength;
+
+				final int tokenPosition = op;
+				final int extraMatchLength = matchLength - MIN_MATCH;
+				op = writeLiterals( src, anchor, ip - anchor, dst, tokenPosition, Math.min( extraMatchLength, 15 ) );
+				final int distance = ip - ref;
+				dst[ op++ ] = ( byte ) distance;
+				dst[ op++ ] = ( byte ) ( distance >>> 8 );
+				if ( extraMatchLength >= 15 )
+					op = writeLength( extraMatchLength - 15, dst, op );
+
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+
+		op = writeLiterals( src, anchor, end - anchor, dst, op, 0 );
+		return Arrays.copyOf( dst, op );
+	}
+
+	public static byte[] compress( final byte[] src )
+	{
+		return compress( src, 0, src.length );
+	}
+
+	/**
+	 * Decompress an LZ4 block into {@code dst} which must have exactly the
+	 * decompressed size.
+	 *
+	 * @throws IOException
+	 *             if the block is corrupt or does not match the size of
+	 *             {@code dst}
+	 */
+	public static void decompress( final byte[] src, final int offset, final int length, final byte[] dst ) throws IOException
+	{
+		final int end = offset + length;
+		int ip = offset;
+		int op = 0;
+		try
+		{
+			while ( ip < end )
+			{
+				final int token = src[ ip++ ] & 0xff;
+
+				int literalLength = token >>> 4;
+				if ( literalLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[ ip++ ] & 0xff;
+						literalLength += b;
+					}
+					while ( b == 255 );
+				}
+				System.arraycopy( src, ip, dst, op, literalLength );
+				ip += literalLength;
+				op += literalLength;
+				if ( ip >= end )
+					break;
+
+				final int distance = ( src[ ip ] & 0xff ) | ( ( src[ ip + 1 ] & 0xff ) << 8 );
+				ip += 2;
+				if ( distance == 0 || distance > op )
+					throw new IOException( "Corrupt LZ4 block, invalid match distance " + distance + " at " + op + "." );
+
+				int matchLength = token & 0x0f;
+				if ( matchLength == 15 )
+				{
+					int b;
+					do
+					{
+						b = src[ ip++ ] & 0xff;
+						matchLength += b;
+					}
+					while ( b == 255 );
+				}
+				matchLength += MIN_MATCH;
+
+				final int ref = op - distance;
+				if ( distance >= matchLength )
+					System.arraycopy( dst, ref, dst, op, matchLength );
+				else
+					for ( int i = 0; i < matchLength; ++i )
+						dst[ op + i ] = dst[ ref + i ];
+				op += matchLength;
+			}
+		}
+		catch ( final IndexOutOfBoundsException e )
+		{
+			throw new IOException( "Corrupt LZ4 block or wrong decompressed size " + dst.length + ".", e );
+		}
+		if ( op != dst.length )
+			throw new IOException( "LZ4 block decompressed to " + op + " bytes, expected " + dst.length + "." );
+	}
+}
@@ -0,0 +1,120 @@
+package bdv.zmqtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import bdv.bigcat.Message;
+import bdv.util.BinaryMessage;
+import bdv.util.http.Codec;
+
+/**
+ * Round-trip throughput of fragment-segment LUT messages over an in-process
+ * ZeroMQ pair, JSON versus the binary format with each compression.  The
+ * echo side decodes every message and encodes it again, as the solver
+ * would.
+ */
+public class ZmqMessageBenchmark
+{
+	final static private Gson gson = new GsonBuilder()
+			.registerTypeAdapter( Message.class, new Message.Serializer() )
+			.registerTypeAdapter( Message.class, new Message.GSONDeserializer() )
+			.create();
+
+	private static byte[] encode( final Message message, final Codec codec ) throws IOException
+	{
+		return codec == null ?
+				gson.toJson( message ).getBytes( StandardCharsets.UTF_8 ) :
+				message.toBinary( codec );
+	}
+
+	private static Message decode( final byte[] frame ) throws IOException
+	{
+		return BinaryMessage.isBinary( frame ) ?
+				Message.fromBinary( frame ) :
+				gson.fromJson( new String( frame, StandardCharsets.UTF_8 ), Message.class );
+	}
+
+	private static Message createLut( final int n )
+	{
+		final Random rnd = new Random( 1 );
+		final Message.FragmentSegmentLUTData data = new Message.FragmentSegmentLUTData();
+		data.fragments = new long[ n ];
+		data.segments = new long[ n ];
+		for ( int i = 0; i < n; ++i )
+		{
+			data.fragments[ i ] = 1000000000L + i;
+			data.segments[ i ] = 2000000000L + rnd.nextInt( n / 20 + 1 );
+		}
+		return new Message( data );
+	}
+
+	/**
+	 * @param args
+	 *            number of fragments per LUT and number of round trips,
+	 *            default 1000000 and 10
+	 */
+	public static void main( final String[] args ) throws IOException, InterruptedException
+	{
+		final int n = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000000;
+		final int numRoundTrips = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10;
+		final Message lut = createLut( n );
+
+		final ZContext ctx = new ZContext();
+		final Socket client = ctx.createSocket( ZMQ.PAIR );
+		final Socket server = ctx.createSocket( ZMQ.PAIR );
+		server.bind( "inproc://message-benchmark" );
+		client.connect( "inproc://message-benchmark" );
+
+		final Codec[] formats = new Codec[] { null, Codec.NONE, Codec.LZ4, Codec.GZIP };
+		for ( final Codec format : formats )
+		{
+			final Thread echo = new Thread( () -> {
+				try
+				{
+					for ( int i = 0; i < numRoundTrips + 1; ++i )
+						server.send( encode( decode( server.recv() ), format ) );
+				}
+				catch ( final IOException e )
+				{
+					e.printStackTrace();
+				}
+			} );
+			echo.start();
+
+			long bytes = 0;
+			long t = 0;
+			for ( int i = 0; i < numRoundTrips + 1; ++i )
+			{
+				/* the first round trip warms up */
+				final long t0 = System.nanoTime();
+				final byte[] frame = encode( lut, format );
+				client.send( frame );
+				decode( client.recv() );
+				if ( i > 0 )
+				{
+					t += System.nanoTime() - t0;
+					bytes += frame.length;
+				}
+			}
+			echo.join();
+
+			final double seconds = t / 1e9;
+			System.out.println( String.format(
+					"%-12s %12d bytes/message %10.1f round trips/s %10.1f MB/s",
+					format == null ? "json" : "binary " + format.name().toLowerCase(),
+					bytes / numRoundTrips,
+					numRoundTrips / seconds,
+					2.0 * bytes / seconds / 1024 / 1024 ) );
+		}
+
+		ctx.destroy();
+	}
+}
@@ -0,0 +1,98 @@
+package bdv.bigcat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import bdv.util.BinaryMessage;
+import bdv.util.http.Codec;
+
+public class MessageTest
+{
+	final static private Gson gson = new GsonBuilder()
+			.registerTypeAdapter( Message.class, new Message.Serializer() )
+			.registerTypeAdapter( Message.class, new Message.GSONDeserializer() )
+			.create();
+
+	private static Message createLut( final int n )
+	{
+		final Random rnd = new Random( 11 );
+		final Message.FragmentSegmentLUTData data = new Message.FragmentSegmentLUTData();
+		data.sequence = 17;
+		data.fragments = new long[ n ];
+		data.segments = new long[ n ];
+		for ( int i = 0; i < n; ++i )
+		{
+			data.fragments[ i ] = i + 1;
+			data.segments[ i ] = 100000 + rnd.nextInt( n / 10 + 1 );
+		}
+		return new Message( data );
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException
+	{
+		final Message.MergeAndSeparateData mergeAndSeparate = new Message.MergeAndSeparateData();
+		mergeAndSeparate.fragments = new long[] { 1, 2, Long.MAX_VALUE };
+		mergeAndSeparate.from = new long[ 0 ];
+
+		for ( final Codec codec : Codec.values() )
+		{
+			final Message lut = createLut( 10000 );
+			final byte[] frame = lut.toBinary( codec );
+			Assert.assertTrue( BinaryMessage.isBinary( frame ) );
+			final Message.FragmentSegmentLUTData expected = ( Message.FragmentSegmentLUTData ) lut.getData();
+			final Message.FragmentSegmentLUTData actual = ( Message.FragmentSegmentLUTData ) Message.fromBinary( frame ).getData();
+			Assert.assertEquals( expected.sequence, actual.sequence );
+			Assert.assertArrayEquals( expected.fragments, actual.fragments );
+			Assert.assertArrayEquals( expected.segments, actual.segments );
+
+			final Message.MergeAndSeparateData decoded = ( Message.MergeAndSeparateData ) Message.fromBinary( new Message( mergeAndSeparate ).toBinary( codec ) ).getData();
+			Assert.assertArrayEquals( mergeAndSeparate.fragments, decoded.fragments );
+			Assert.assertArrayEquals( mergeAndSeparate.from, decoded.from );
+		}
+
+		final byte[] compressed = createLut( 10000 ).toBinary( Codec.LZ4 );
+		final byte[] uncompressed = createLut( 10000 ).toBinary( Codec.NONE );
+		Assert.assertTrue( compressed.length < uncompressed.length );
+	}
+
+	@Test
+	public void testHandshake() throws IOException
+	{
+		final Message.HandshakeData offer = new Message.HandshakeData();
+		final Message.HandshakeData supported = new Message.HandshakeData();
+		supported.formats = new String[] { Message.HandshakeData.JSON, Message.HandshakeData.BINARY };
+		supported.compressions = new String[] { Codec.GZIP.getName() };
+
+		final String json = gson.toJson( new Message( offer ) );
+		Assert.assertFalse( BinaryMessage.isBinary( json.getBytes( StandardCharsets.UTF_8 ) ) );
+		final Message received = gson.fromJson( json, Message.class );
+		Assert.assertEquals( Message.MessageType.HANDSHAKE, received.getType() );
+
+		final Message.HandshakeData answer = supported.select( ( Message.HandshakeData ) received.getData() );
+		Assert.assertEquals( Message.HandshakeData.BINARY, answer.getFormat() );
+		Assert.assertEquals( Codec.GZIP, answer.getCodec() );
+
+		final Message.HandshakeData decoded = ( Message.HandshakeData ) Message.fromBinary( new Message( answer ).toBinary( Codec.NONE ) ).getData();
+		Assert.assertArrayEquals( answer.formats, decoded.formats );
+		Assert.assertArrayEquals( answer.compressions, decoded.compressions );
+
+		/* answer of a solver that does not know the handshake */
+		Assert.assertNull( gson.fromJson( "{\"begin\":0,\"end\":10}", Message.class ).getData() );
+	}
+
+	@Test( expected = IOException.class )
+	public void testTruncated() throws IOException
+	{
+		final byte[] frame = createLut( 100 ).toBinary( Codec.NONE );
+		Message.fromBinary( Arrays.copyOf( frame, frame.length - 5 ) );
+	}
+}
@@ -0,0 +1,172 @@
+package bdv.bigcat.annotation;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.util.LocalIdService;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+
+public class AnnotationsHdf5StoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	final private Random rnd = new Random(42);
+
+	private String createFile() throws Exception {
+
+		final File file = folder.newFile("annotations.h5");
+		file.delete();
+		HDF5Factory.open(file).close();
+		return file.getAbsolutePath();
+	}
+
+	private RealPoint randomPosition() {
+
+		return new RealPoint(rnd.nextInt(1000), rnd.nextInt(1000), rnd.nextInt(1000));
+	}
+
+	/**
+	 * Synapses and pairs of partners that are mostly in different chunks.
+	 */
+	private Annotations createAnnotations() {
+
+		final Annotations annotations = new Annotations();
+		long id = 1;
+		for (int i = 0; i < 100; ++i)
+			annotations.add(new Synapse(id++, randomPosition(), i % 3 == 0 ? "synapse " + i : ""));
+		for (int i = 0; i < 100; ++i) {
+			final PreSynapticSite pre = new PreSynapticSite(id++, randomPosition(), "");
+			final PostSynapticSite post = new PostSynapticSite(id++, randomPosition(), i % 5 == 0 ? "post " + i : "");
+			pre.setPartner(post);
+			post.setPartner(pre);
+			annotations.add(pre);
+			annotations.add(post);
+		}
+		return annotations;
+	}
+
+	private static String describe(final Annotation a) {
+
+		final Annotation partner =
+				a instanceof PreSynapticSite ? ((PreSynapticSite)a).getPartner() :
+				a instanceof PostSynapticSite ? ((PostSynapticSite)a).getPartner() : null;
+		return a.getClass().getSimpleName() + " " + a.getPosition() + " '" + a.getComment() + "' " + (partner == null ? "-" : partner.getId());
+	}
+
+	private static void assertEquals(final Annotations expected, final Annotations actual) {
+
+		final Map<Long, String> expectedDescriptions = new HashMap<Long, String>();
+		for (final Annotation a : expected.getAnnotations())
+			expectedDescriptions.put(a.getId(), describe(a));
+		final Map<Long, String> actualDescriptions = new HashMap<Long, String>();
+		for (final Annotation a : actual.getAnnotations())
+			actualDescriptions.put(a.getId(), describe(a));
+		Assert.assertEquals(expectedDescriptions, actualDescriptions);
+	}
+
+	private static ConvexPolytope box(final double[] min, final double[] max) {
+
+		return new ConvexPolytope(
+				new HyperPlane(1, 0, 0, min[0]),
+				new HyperPlane(-1, 0, 0, -max[0]),
+				new HyperPlane(0, 1, 0, min[1]),
+				new HyperPlane(0, -1, 0, -max[1]),
+				new HyperPlane(0, 0, 1, min[2]),
+				new HyperPlane(0, 0, -1, -max[2]));
+	}
+
+	private static Annotations readAll(final String filename) throws Exception {
+
+		final AnnotationsHdf5Store store = new AnnotationsHdf5Store(filename, new LocalIdService());
+		final Annotations annotations = store.read();
+		annotations.getLocalAnnotations(box(new double[]{-1e6, -1e6, -1e6}, new double[]{1e6, 1e6, 1e6}));
+		store.awaitLoading();
+		return annotations;
+	}
+
+	@Test
+	public void testUnchunked() throws Exception {
+
+		final String filename = createFile();
+		final Annotations annotations = createAnnotations();
+		new AnnotationsHdf5Store(filename, new LocalIdService()).write(annotations);
+
+		// written as 0.2
+		assertEquals(annotations, new AnnotationsHdf5Store(filename, new LocalIdService()).read());
+
+		// 0.1 has the same layout
+		final IHDF5Writer writer = HDF5Factory.open(filename);
+		writer.string().setAttr("/", "file_format", "0.1");
+		writer.close();
+		assertEquals(annotations, new AnnotationsHdf5Store(filename, new LocalIdService()).read());
+	}
+
+	@Test
+	public void testChunked() throws Exception {
+
+		final String filename = createFile();
+		final Annotations annotations = createAnnotations();
+		final AnnotationsHdf5Store store = new AnnotationsHdf5Store(filename, new LocalIdService());
+		store.setChunkSize(new double[]{250, 250, 250});
+		store.write(annotations);
+
+		// chunks are loaded only when queried
+		final LocalIdService idService = new LocalIdService();
+		final AnnotationsHdf5Store chunkedStore = new AnnotationsHdf5Store(filename, idService);
+		final Annotations loaded = chunkedStore.read();
+		Assert.assertTrue(loaded.getAnnotations().isEmpty());
+		Assert.assertTrue(idService.next() > 300);
+
+		final ConvexPolytope polytope = box(new double[]{0, 0, 0}, new double[]{200, 200, 200});
+		loaded.getLocalAnnotations(polytope);
+		chunkedStore.awaitLoading();
+		for (final Annotation a : annotations.getLocalAnnotations(polytope)) {
+			Assert.assertNotNull(loaded.getById(a.getId()));
+			Assert.assertEquals(describe(a), describe(loaded.getById(a.getId())));
+		}
+		Assert.assertTrue(loaded.getAnnotations().size() < annotations.getAnnotations().size());
+
+		assertEquals(annotations, readAll(filename));
+	}
+
+	@Test
+	public void testConvertAndMoveIntoUnloadedChunk() throws Exception {
+
+		final String filename = createFile();
+		final Annotations annotations = createAnnotations();
+		new AnnotationsHdf5Store(filename, new LocalIdService()).write(annotations);
+
+		// converted from 0.2 on write
+		final AnnotationsHdf5Store store = new AnnotationsHdf5Store(filename, new LocalIdService());
+		final Annotations converted = store.read();
+		store.setChunkSize(new double[]{250, 250, 250});
+		store.write(converted);
+		assertEquals(annotations, readAll(filename));
+
+		// move an annotation from a loaded chunk into one that is not loaded
+		final AnnotationsHdf5Store chunkedStore = new AnnotationsHdf5Store(filename, new LocalIdService());
+		final Annotations loaded = chunkedStore.read();
+		final ConvexPolytope polytope = box(new double[]{0, 0, 0}, new double[]{200, 200, 200});
+		loaded.getLocalAnnotations(polytope);
+		chunkedStore.awaitLoading();
+		final Annotation moved = loaded.getLocalAnnotations(polytope).get(0);
+		final RealPoint target = new RealPoint(900, 900, 900);
+		loaded.move(moved, target);
+		annotations.move(annotations.getById(moved.getId()), target);
+		chunkedStore.write(loaded);
+
+		assertEquals(annotations, readAll(filename));
+	}
+}
@@ -0,0 +1,112 @@
+package bdv.bigcat.annotation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.kdtree.ConvexPolytope;
+import net.imglib2.algorithm.kdtree.HyperPlane;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+
+public class AnnotationsTest {
+
+	final private Random rnd = new Random(23);
+
+	private RealPoint randomPosition() {
+
+		return new RealPoint(rnd.nextDouble() * 5000 - 1000, rnd.nextDouble() * 5000, rnd.nextDouble() * 800);
+	}
+
+	private ConvexPolytope randomBox() {
+
+		final double[] min = new double[] { rnd.nextDouble() * 4000 - 1000, rnd.nextDouble() * 4000, rnd.nextDouble() * 600 };
+		final double[] size = new double[] { rnd.nextDouble() * 2000, rnd.nextDouble() * 2000, rnd.nextDouble() * 200 };
+		final double[] n = new double[] { rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5, rnd.nextDouble() - 0.5 };
+		return new ConvexPolytope(
+				new HyperPlane(1, 0, 0, min[0]),
+				new HyperPlane(-1, 0, 0, -min[0] - size[0]),
+				new HyperPlane(0, 1, 0, min[1]),
+				new HyperPlane(0, -1, 0, -min[1] - size[1]),
+				new HyperPlane(0, 0, 1, min[2]),
+				new HyperPlane(0, 0, -1, -min[2] - size[2]),
+				new HyperPlane(n[0], n[1], n[2], n[0] * min[0] + n[1] * min[1] + n[2] * min[2]));
+	}
+
+	private static void assertQueries(final Annotations annotations, final ConvexPolytope polytope, final RealPoint pos, final int k) {
+
+		final HashSet<Annotation> expectedInside = new HashSet<Annotation>();
+		for (final Annotation a : annotations.getAnnotations()) {
+			boolean inside = true;
+			for (final HyperPlane plane : polytope.getHyperplanes()) {
+				final double[] n = plane.getNormal();
+				double dot = 0;
+				for (int d = 0; d < 3; ++d)
+					dot += n[d] * a.getPosition().getDoublePosition(d);
+				inside &= dot >= plane.getDistance();
+			}
+			if (inside)
+				expectedInside.add(a);
+		}
+		final List<Annotation> inside = annotations.getLocalAnnotations(polytope);
+		Assert.assertEquals(expectedInside.size(), inside.size());
+		Assert.assertEquals(expectedInside, new HashSet<Annotation>(inside));
+
+		final List<Annotation> values = new ArrayList<Annotation>(annotations.getAnnotations());
+		final List<RealPoint> positions = new ArrayList<RealPoint>();
+		for (final Annotation a : values)
+			positions.add(a.getPosition());
+		final KNearestNeighborSearchOnKDTree<Annotation> search = new KNearestNeighborSearchOnKDTree<Annotation>(new KDTree<Annotation>(values, positions), k);
+		search.search(pos);
+		final List<Annotation> nearest = annotations.getKNearest(pos, k);
+		Assert.assertEquals(Math.min(k, values.size()), nearest.size());
+		for (int i = 0; i < nearest.size(); ++i)
+			Assert.assertEquals(search.getSquareDistance(i), squDistance(nearest.get(i).getPosition(), pos), 1e-6);
+	}
+
+	private static double squDistance(final RealPoint a, final RealPoint b) {
+
+		double sum = 0;
+		for (int d = 0; d < 3; ++d) {
+			final double diff = a.getDoublePosition(d) - b.getDoublePosition(d);
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	@Test
+	public void testIncrementalQueries() {
+
+		final Annotations annotations = new Annotations();
+		final List<Annotation> added = new ArrayList<Annotation>();
+		long id = 0;
+		for (int i = 0; i < 20000; ++i) {
+			final Synapse synapse = new Synapse(id++, randomPosition(), "");
+			annotations.add(synapse);
+			added.add(synapse);
+		}
+
+		for (int round = 0; round < 50; ++round) {
+			for (int i = 0; i < 100; ++i) {
+				final Synapse synapse = new Synapse(id++, randomPosition(), "");
+				annotations.add(synapse);
+				added.add(synapse);
+				annotations.remove(added.remove(rnd.nextInt(added.size())));
+				annotations.move(added.get(rnd.nextInt(added.size())), randomPosition());
+			}
+			assertQueries(annotations, randomBox(), randomPosition(), 1 + rnd.nextInt(20));
+		}
+
+		/* far away queries and more neighbors than annotations */
+		assertQueries(annotations, randomBox(), new RealPoint(1e7, -1e7, 1e6), 5);
+		final Annotations few = new Annotations();
+		few.add(new Synapse(0, new RealPoint(1, 2, 3), ""));
+		few.add(new Synapse(1, new RealPoint(1000, 2, 3), ""));
+		assertQueries(few, randomBox(), new RealPoint(500, 0, 0), 5);
+	}
+}
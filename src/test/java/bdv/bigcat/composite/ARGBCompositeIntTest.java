@@ -0,0 +1,91 @@
+package bdv.bigcat.composite;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.type.numeric.ARGBType;
+
+public class ARGBCompositeIntTest
+{
+	final static private int[] corners = new int[] { 0, 1, 127, 128, 254, 255 };
+
+	private static void assertWithinOneLsb(
+			final Composite< ARGBType, ARGBType > reference,
+			final Composite< ARGBType, ARGBType > fixed )
+	{
+		final ARGBType a1 = new ARGBType();
+		final ARGBType a2 = new ARGBType();
+		final ARGBType b = new ARGBType();
+
+		final Random rnd = new Random( 13 );
+		final int n = 1 << 20;
+		final int[] argbs = new int[ 2 * n + 2 * corners.length * corners.length ];
+		for ( int i = 0; i < 2 * n; ++i )
+			argbs[ i ] = rnd.nextInt();
+		/* all combinations of extreme channels and alphas */
+		for ( int i = 0, j = 2 * n; i < corners.length; ++i )
+			for ( int k = 0; k < corners.length; ++k )
+			{
+				argbs[ j++ ] = ARGBType.rgba( corners[ i ], corners[ k ], corners[ ( i + k ) % corners.length ], corners[ k ] );
+				argbs[ j++ ] = ARGBType.rgba( corners[ k ], corners[ i ], corners[ i ], corners[ i ] );
+			}
+
+		for ( int i = 0; i < argbs.length; i += 2 )
+		{
+			a1.set( argbs[ i ] );
+			a2.set( argbs[ i ] );
+			b.set( argbs[ i + 1 ] );
+			reference.compose( a1, b );
+			fixed.compose( a2, b );
+			final int expected = a1.get();
+			final int actual = a2.get();
+			for ( int s = 0; s < 32; s += 8 )
+			{
+				final int diff = Math.abs( ( ( expected >>> s ) & 0xff ) - ( ( actual >>> s ) & 0xff ) );
+				if ( diff > 1 )
+					Assert.fail( String.format(
+							"%s: %08x over %08x expected %08x but was %08x",
+							fixed.getClass().getSimpleName(), argbs[ i + 1 ], argbs[ i ], expected, actual ) );
+			}
+		}
+	}
+
+	@Test
+	public void testAlpha()
+	{
+		assertWithinOneLsb( new ARGBCompositeAlpha(), new ARGBCompositeAlphaInt() );
+	}
+
+	@Test
+	public void testAlphaAdd()
+	{
+		assertWithinOneLsb( new ARGBCompositeAlphaAdd(), new ARGBCompositeAlphaAddInt() );
+	}
+
+	@Test
+	public void testAlphaMultiply()
+	{
+		assertWithinOneLsb( new ARGBCompositeAlphaMultiply(), new ARGBCompositeAlphaMultiplyInt() );
+	}
+
+	@Test
+	public void testAlphaYCbCr()
+	{
+		assertWithinOneLsb( new ARGBCompositeAlphaYCbCr(), new ARGBCompositeAlphaYCbCrInt() );
+	}
+
+	@Test
+	public void testAlphaOver()
+	{
+		for ( int alphaA = 0; alphaA < 256; ++alphaA )
+			for ( int alphaB = 0; alphaB < 256; ++alphaB )
+			{
+				final double aA = alphaA / 255.0;
+				final double aB = alphaB / 255.0;
+				final int expected = ( int )( ( aA + aB - aA * aB ) * 255 );
+				Assert.assertEquals( expected, FixedPoint.alphaOver( alphaA, alphaB ), 1 );
+			}
+	}
+}
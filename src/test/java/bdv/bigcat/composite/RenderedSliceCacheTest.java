@@ -0,0 +1,138 @@
+package bdv.bigcat.composite;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.viewer.Source;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+
+public class RenderedSliceCacheTest
+{
+	/**
+	 * Fills the target with the number of projectors created so far, the
+	 * result is complete if {@link #valid} is set.
+	 */
+	static class CountingFactory implements AccumulateProjectorFactory< ARGBType >
+	{
+		int numCreated = 0;
+
+		boolean valid = true;
+
+		@Override
+		public VolatileProjector createAccumulateProjector(
+				final ArrayList< VolatileProjector > sourceProjectors,
+				final ArrayList< Source< ? > > sources,
+				final ArrayList< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+				final RandomAccessibleInterval< ARGBType > targetScreenImage,
+				final int numThreads,
+				final ExecutorService executorService )
+		{
+			final int value = ++numCreated;
+			final boolean isValid = valid;
+			return new VolatileProjector()
+			{
+				@Override
+				public boolean map()
+				{
+					return map( true );
+				}
+
+				@Override
+				public boolean map( final boolean clearUntouchedTargetPixels )
+				{
+					for ( final ARGBType t : Views.flatIterable( targetScreenImage ) )
+						t.set( value );
+					return true;
+				}
+
+				@Override
+				public void cancel()
+				{}
+
+				@Override
+				public long getLastFrameRenderNanoTime()
+				{
+					return 0;
+				}
+
+				@Override
+				public boolean isValid()
+				{
+					return isValid;
+				}
+			};
+		}
+	}
+
+	private static int render( final RenderedSliceCache cache, final ArrayImg< ARGBType, IntArray > target )
+	{
+		for ( final ARGBType t : target )
+			t.set( 0 );
+		final VolatileProjector projector = cache.createAccumulateProjector(
+				new ArrayList< VolatileProjector >(),
+				new ArrayList< Source< ? > >(),
+				new ArrayList< RandomAccessible< ARGBType > >(),
+				target,
+				1,
+				null );
+		Assert.assertTrue( projector.map() );
+		final int value = target.firstElement().get();
+		for ( final ARGBType t : target )
+			Assert.assertEquals( value, t.get() );
+		return value;
+	}
+
+	@Test
+	public void testHitMissInvalidation()
+	{
+		final CountingFactory factory = new CountingFactory();
+		final AtomicLong version = new AtomicLong();
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( 16, 8 );
+		final RenderedSliceCache cache = new RenderedSliceCache( factory, 2 * 16 * 8 * 4 );
+		cache.addVersion( version::get );
+
+		/* miss, then hit */
+		Assert.assertEquals( 1, render( cache, target ) );
+		Assert.assertEquals( 1, render( cache, target ) );
+		Assert.assertEquals( 1, factory.numCreated );
+		Assert.assertEquals( 1, cache.getNumHits() );
+		Assert.assertEquals( 1, cache.getNumMisses() );
+
+		/* an edit invalidates */
+		version.incrementAndGet();
+		Assert.assertEquals( 2, render( cache, target ) );
+		Assert.assertEquals( 2, render( cache, target ) );
+		Assert.assertEquals( 2, factory.numCreated );
+
+		/* so does another screen size */
+		Assert.assertEquals( 3, render( cache, ArrayImgs.argbs( 8, 16 ) ) );
+
+		/* incomplete images are not cached */
+		factory.valid = false;
+		version.incrementAndGet();
+		Assert.assertEquals( 4, render( cache, target ) );
+		Assert.assertEquals( 5, render( cache, target ) );
+
+		/* the budget holds two images, the least recently used are evicted */
+		factory.valid = true;
+		version.set( 0 );
+		Assert.assertEquals( 6, render( cache, target ) );
+		version.set( 1 );
+		Assert.assertEquals( 7, render( cache, target ) );
+		version.set( 0 );
+		Assert.assertEquals( 6, render( cache, target ) );
+		Assert.assertEquals( 3, cache.getNumHits() );
+	}
+}
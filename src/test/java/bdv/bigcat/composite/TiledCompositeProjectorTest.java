@@ -0,0 +1,192 @@
+package bdv.bigcat.composite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+
+public class TiledCompositeProjectorTest
+{
+	/* not a multiple of the tile size to have partial tiles */
+	final static private int width = 150;
+
+	final static private int height = 100;
+
+	final private Random rnd = new Random( 11 );
+
+	final private ExecutorService executorService = Executors.newFixedThreadPool( 4 );
+
+	@After
+	public void tearDown()
+	{
+		executorService.shutdown();
+	}
+
+	private ArrayImg< ARGBType, IntArray > opaque()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( width, height );
+		for ( final ARGBType t : img )
+			t.set( 0xff000000 | rnd.nextInt( 1 << 24 ) );
+		return img;
+	}
+
+	/**
+	 * Transparent except for a few blocks, transparent pixels have random
+	 * colors.
+	 */
+	private ArrayImg< ARGBType, IntArray > sparse( final int numBlocks )
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( width, height );
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = rnd.nextInt( 1 << 24 );
+		for ( int b = 0; b < numBlocks; ++b )
+		{
+			final int x0 = rnd.nextInt( width - 10 );
+			final int y0 = rnd.nextInt( height - 10 );
+			for ( int y = y0; y < y0 + 10; ++y )
+				for ( int x = x0; x < x0 + 10; ++x )
+					data[ y * width + x ] = rnd.nextInt();
+		}
+		return img;
+	}
+
+	private ArrayImg< ARGBType, IntArray > dirty()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( width, height );
+		for ( final ARGBType t : img )
+			t.set( rnd.nextInt() );
+		return img;
+	}
+
+	private static ArrayImg< ARGBType, IntArray > copy( final ArrayImg< ARGBType, IntArray > img )
+	{
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		return ArrayImgs.argbs( data.clone(), img.dimension( 0 ), img.dimension( 1 ) );
+	}
+
+	private static int[] data( final ArrayImg< ARGBType, IntArray > img )
+	{
+		return img.update( null ).getCurrentStorageArray();
+	}
+
+	/**
+	 * Compose with {@link CompositeProjector} into {@code expected} and
+	 * with {@link TiledCompositeProjector} into {@code target} in the
+	 * calling thread and with the executor service.
+	 *
+	 * @return the number of skipped source tiles
+	 */
+	private int assertSameAsCompositeProjector(
+			final ArrayList< ArrayImg< ARGBType, IntArray > > sources,
+			final List< Composite< ARGBType, ARGBType > > composites,
+			final ArrayImg< ARGBType, IntArray > expected,
+			final ArrayImg< ARGBType, IntArray > target )
+	{
+		final CompositeProjector< ARGBType > projector = new CompositeProjector< ARGBType >(
+				new ArrayList< VolatileProjector >(),
+				sources,
+				expected,
+				1,
+				null );
+		projector.setComposites( composites );
+		Assert.assertTrue( projector.map() );
+
+		int numSkipped = -1;
+		for ( final ExecutorService service : new ExecutorService[] { null, executorService } )
+		{
+			final ArrayImg< ARGBType, IntArray > reusedTarget = copy( target );
+			final TiledCompositeProjector tiledProjector = new TiledCompositeProjector(
+					new ArrayList< VolatileProjector >(),
+					sources,
+					reusedTarget,
+					4,
+					service );
+			tiledProjector.setComposites( composites );
+			Assert.assertTrue( tiledProjector.map() );
+			Assert.assertArrayEquals( data( expected ), data( reusedTarget ) );
+			numSkipped = tiledProjector.getNumSkippedTiles();
+		}
+		return numSkipped;
+	}
+
+	@Test
+	public void testCopyAndAlpha()
+	{
+		final ArrayList< ArrayImg< ARGBType, IntArray > > sources = new ArrayList<>( Arrays.asList( opaque(), sparse( 3 ), sparse( 0 ) ) );
+		final List< Composite< ARGBType, ARGBType > > composites = Arrays.asList(
+				new CompositeCopy< ARGBType >(),
+				new ARGBCompositeAlphaYCbCrInt(),
+				new ARGBCompositeAlphaInt() );
+		final ArrayImg< ARGBType, IntArray > target = dirty();
+		final int numSkipped = assertSameAsCompositeProjector( sources, composites, copy( target ), target );
+
+		/* all tiles of the empty source and some of the sparse source */
+		Assert.assertTrue( numSkipped > 6 );
+	}
+
+	@Test
+	public void testTransparentCopy()
+	{
+		/* a copied source overwrites the target even if it is transparent */
+		final ArrayList< ArrayImg< ARGBType, IntArray > > sources = new ArrayList<>( Arrays.asList( sparse( 0 ), sparse( 2 ) ) );
+		final List< Composite< ARGBType, ARGBType > > composites = Arrays.asList(
+				new CompositeCopy< ARGBType >(),
+				new ARGBCompositeAlphaAddInt() );
+		final ArrayImg< ARGBType, IntArray > target = dirty();
+		assertSameAsCompositeProjector( sources, composites, copy( target ), target );
+	}
+
+	@Test
+	public void testAlphaOnly()
+	{
+		/* without a copied source, tiles are composed onto transparent black */
+		final ArrayList< ArrayImg< ARGBType, IntArray > > sources = new ArrayList<>( Arrays.asList( sparse( 3 ), sparse( 3 ) ) );
+		final List< Composite< ARGBType, ARGBType > > composites = Arrays.asList(
+				new ARGBCompositeAlphaInt(),
+				new ARGBCompositeAlphaMultiplyInt() );
+		assertSameAsCompositeProjector( sources, composites, ArrayImgs.argbs( width, height ), dirty() );
+	}
+
+	@Test
+	public void testInterrupted() throws InterruptedException
+	{
+		/* keep the only worker busy such that the tiles are still queued when interrupted */
+		final ExecutorService singleThreadService = Executors.newSingleThreadExecutor();
+		final CountDownLatch release = new CountDownLatch( 1 );
+		singleThreadService.submit( () -> {
+			release.await();
+			return null;
+		} );
+
+		final TiledCompositeProjector projector = new TiledCompositeProjector(
+				new ArrayList< VolatileProjector >(),
+				new ArrayList<>( Arrays.asList( opaque() ) ),
+				ArrayImgs.argbs( width, height ),
+				4,
+				singleThreadService );
+		projector.setComposites( Arrays.asList( new CompositeCopy< ARGBType >() ) );
+
+		Thread.currentThread().interrupt();
+		final boolean success = projector.map();
+		final boolean interrupted = Thread.interrupted();
+		release.countDown();
+		singleThreadService.shutdown();
+
+		Assert.assertFalse( success );
+		Assert.assertTrue( interrupted );
+	}
+}
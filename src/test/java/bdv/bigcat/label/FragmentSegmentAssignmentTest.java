@@ -0,0 +1,54 @@
+package bdv.bigcat.label;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.util.LocalIdService;
+import gnu.trove.map.hash.TLongLongHashMap;
+
+public class FragmentSegmentAssignmentTest
+{
+	@Test
+	public void testApplyLutDelta()
+	{
+		final Random rnd = new Random( 7 );
+		final int numFragments = 1000;
+		final long[] fragments = new long[ numFragments ];
+		final long[] segments = new long[ numFragments ];
+		for ( int i = 0; i < numFragments; ++i )
+		{
+			fragments[ i ] = i + 1;
+			segments[ i ] = 10000 + rnd.nextInt( 50 );
+		}
+
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment( fragments, segments, new LocalIdService() );
+		for ( int k = 0; k < 20; ++k )
+		{
+			final int n = rnd.nextInt( 200 );
+			final long[] deltaFragments = new long[ n ];
+			final long[] deltaSegments = new long[ n ];
+			for ( int i = 0; i < n; ++i )
+			{
+				/* includes repeated and new fragments */
+				deltaFragments[ i ] = 1 + rnd.nextInt( numFragments + 100 );
+				deltaSegments[ i ] = 10000 + rnd.nextInt( 60 );
+			}
+			assignment.applyLutDelta( deltaFragments, deltaSegments );
+
+			final TLongLongHashMap lut = new TLongLongHashMap( assignment.getLut() );
+			final FragmentSegmentAssignment reference = new FragmentSegmentAssignment( lut.keys(), lut.values(), new LocalIdService() );
+			for ( final long segment : reference.ilut.keys() )
+			{
+				final long[] expected = reference.getFragments( segment );
+				final long[] actual = assignment.getFragments( segment );
+				Arrays.sort( expected );
+				Arrays.sort( actual );
+				Assert.assertArrayEquals( expected, actual );
+			}
+			Assert.assertEquals( reference.ilut.size(), assignment.ilut.size() );
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package bdv.bigcat.ui;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import bdv.bigcat.label.FragmentSegmentAssignment;
+import bdv.bigcat.label.SegmentMultisetCache;
+import bdv.labels.labelset.LabelMultisetEntry;
+import bdv.labels.labelset.LabelMultisetEntryList;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import bdv.labels.labelset.VolatileLabelMultisetType;
+import bdv.util.LocalIdService;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileARGBType;
+
+public class SegmentLabelMultisetARGBConverterTest
+{
+	final static int numFragments = 40;
+
+	final static int numEntities = 4096;
+
+	static VolatileLabelMultisetArray createArray( final Random rnd )
+	{
+		final int numLists = 100;
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+		final int[] listOffsets = new int[ numLists ];
+		int nextListOffset = 0;
+		for ( int i = 0; i < numLists; ++i )
+		{
+			listOffsets[ i ] = nextListOffset;
+			list.createListAt( listData, nextListOffset );
+			for ( long id = 1 + rnd.nextInt( 5 ); id <= numFragments; id += 1 + rnd.nextInt( 8 ) )
+			{
+				entry.setId( id );
+				entry.setCount( 1 + rnd.nextInt( 100 ) );
+				list.add( entry );
+			}
+			nextListOffset += list.getSizeInBytes();
+		}
+
+		final int[] data = new int[ numEntities ];
+		for ( int i = 0; i < numEntities; ++i )
+			data[ i ] = listOffsets[ rnd.nextInt( numLists ) ];
+
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
+	}
+
+	static void assertSameColors(
+			final VolatileLabelMultisetArray array,
+			final VolatileLabelMultisetARGBConverter expected,
+			final VolatileLabelMultisetARGBConverter actual )
+	{
+		final VolatileLabelMultisetType input = new VolatileLabelMultisetType( array, true );
+		final VolatileARGBType e = new VolatileARGBType();
+		final VolatileARGBType a = new VolatileARGBType();
+		for ( int i = 0; i < numEntities; ++i )
+		{
+			input.updateIndex( i );
+			expected.convert( input, e );
+			actual.convert( input, a );
+			final int ea = e.get().get();
+			final int aa = a.get().get();
+			/* merged counts may round differently */
+			Assert.assertEquals( ARGBType.alpha( ea ), ARGBType.alpha( aa ), 1 );
+			Assert.assertEquals( ARGBType.red( ea ), ARGBType.red( aa ), 1 );
+			Assert.assertEquals( ARGBType.green( ea ), ARGBType.green( aa ), 1 );
+			Assert.assertEquals( ARGBType.blue( ea ), ARGBType.blue( aa ), 1 );
+		}
+	}
+
+	@Test
+	public void testConvert()
+	{
+		final Random rnd = new Random( 11 );
+		final long[] fragments = new long[ numFragments ];
+		final long[] segments = new long[ numFragments ];
+		for ( int i = 0; i < numFragments; ++i )
+		{
+			fragments[ i ] = i + 1;
+			segments[ i ] = 1000 + rnd.nextInt( 6 );
+		}
+		final FragmentSegmentAssignment assignment = new FragmentSegmentAssignment( fragments, segments, new LocalIdService() );
+		final GoldenAngleSaturatedARGBStream stream = new GoldenAngleSaturatedARGBStream( assignment );
+		stream.setAlpha( 0x20 );
+
+		final VolatileLabelMultisetArray array = createArray( rnd );
+		final SegmentMultisetCache segmentCache = new SegmentMultisetCache( assignment );
+		final VolatileLabelMultisetARGBConverter fragmentConverter = new VolatileLabelMultisetARGBConverter( stream );
+		final SegmentLabelMultisetARGBConverter segmentConverter = new SegmentLabelMultisetARGBConverter( stream, segmentCache );
+
+		assertSameColors( array, fragmentConverter, segmentConverter );
+
+		/* highlight the active fragment and its segment */
+		for ( final long activeFragment : new long[] { 7, 8, 23 } )
+		{
+			stream.setActive( activeFragment );
+			assertSameColors( array, fragmentConverter, segmentConverter );
+		}
+
+		/* merged cells are invalidated when fragments are reassigned */
+		assignment.mergeSegments( assignment.getSegment( 3 ), assignment.getSegment( 4 ) );
+		assignment.detachFragment( 23 );
+		stream.clearCache();
+		assertSameColors( array, fragmentConverter, segmentConverter );
+	}
+}
@@ -0,0 +1,114 @@
+package bdv.img;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class CellPrefetcherTest
+{
+	private static class TestTarget implements CellPrefetcher.Target
+	{
+		final CellGrid grid = new CellGrid( new long[] { 1000, 1000, 100000 }, new int[] { 64, 64, 64 } );
+
+		final ArrayList< long[] > requests = new ArrayList<>();
+
+		@Override
+		public int numLevels()
+		{
+			return 1;
+		}
+
+		@Override
+		public AffineTransform3D getTransform( final int level )
+		{
+			return new AffineTransform3D();
+		}
+
+		@Override
+		public CellGrid getCellGrid( final int level )
+		{
+			return grid;
+		}
+
+		@Override
+		public void request( final int level, final long[] cellGridPosition )
+		{
+			requests.add( cellGridPosition.clone() );
+		}
+	}
+
+	/**
+	 * Viewer transform at section z as set by TranslateZController.
+	 */
+	private static AffineTransform3D atZ( final double z )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set( -z, 2, 3 );
+		return transform;
+	}
+
+	@Test
+	public void testScrollZ()
+	{
+		final TestTarget target = new TestTarget();
+		final CellPrefetcher prefetcher = new CellPrefetcher( Arrays.asList( target ), 3, 1000 );
+
+		/* the first view has no direction */
+		prefetcher.update( atZ( 0 ), 200, 100 );
+		Assert.assertEquals( 0, target.requests.size() );
+
+		/* 4 x 2 cells per section, the next three sections ahead */
+		prefetcher.update( atZ( 64 ), 200, 100 );
+		Assert.assertEquals( 24, target.requests.size() );
+		final HashSet< Long > zs = new HashSet<>();
+		for ( final long[] cell : target.requests )
+			zs.add( cell[ 2 ] );
+		Assert.assertEquals( new HashSet<>( Arrays.asList( 2l, 3l, 4l ) ), zs );
+
+		/* the next section was prefetched, only one new section ahead */
+		prefetcher.update( atZ( 128 ), 200, 100 );
+		Assert.assertEquals( 32, target.requests.size() );
+		Assert.assertEquals( 32, prefetcher.getNumRequested() );
+		Assert.assertEquals( 8, prefetcher.getNumUsed() );
+		Assert.assertEquals( 24, prefetcher.getNumPending() );
+
+		/* reversing the direction prefetches behind */
+		prefetcher.update( atZ( 64 ), 200, 100 );
+		for ( int i = 32; i < target.requests.size(); ++i )
+			Assert.assertEquals( 0, target.requests.get( i )[ 2 ] );
+		Assert.assertEquals( 40, target.requests.size() );
+	}
+
+	@Test
+	public void testBudgetAndZoom()
+	{
+		final TestTarget target = new TestTarget();
+		final CellPrefetcher prefetcher = new CellPrefetcher( Arrays.asList( target ), 3, 10 );
+		prefetcher.update( atZ( 0 ), 200, 100 );
+		prefetcher.update( atZ( 64 ), 200, 100 );
+		Assert.assertEquals( 10, target.requests.size() );
+
+		/* zooming is not extrapolated */
+		final AffineTransform3D zoomed = atZ( 128 );
+		zoomed.scale( 2 );
+		prefetcher.update( zoomed, 200, 100 );
+		Assert.assertEquals( 10, target.requests.size() );
+
+		/* pending cells are bounded, growing steps miss the predictions */
+		for ( int k = 3; k < 20; ++k )
+		{
+			final AffineTransform3D t = atZ( 64 * k * ( k + 1 ) / 2 );
+			t.scale( 2 );
+			prefetcher.update( t, 200, 100 );
+		}
+		Assert.assertTrue( prefetcher.getNumPending() <= 40 );
+		Assert.assertTrue( prefetcher.getNumExpired() > 0 );
+		Assert.assertEquals( prefetcher.getNumRequested(), prefetcher.getNumUsed() + prefetcher.getNumExpired() + prefetcher.getNumPending() );
+	}
+}
@@ -0,0 +1,254 @@
+package bdv.img;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.DefaultEmptyArrayCreator;
+import bdv.img.cache.EmptyArrayCreator;
+import bdv.labels.labelset.LabelMultisetEntry;
+import bdv.labels.labelset.LabelMultisetEntryList;
+import bdv.labels.labelset.LongMappedAccessData;
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+
+public class DiskCellCacheTest
+{
+	private static final int[] dimensions = new int[] { 10, 10, 10 };
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory( "diskcellcache" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try ( final Stream< Path > paths = Files.walk( directory ) )
+		{
+			paths.sorted( ( a, b ) -> b.compareTo( a ) ).forEach( p -> p.toFile().delete() );
+		}
+	}
+
+	private static VolatileByteArray bytes( final int value )
+	{
+		final byte[] data = new byte[ 1000 ];
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( byte ) ( value + i );
+		return new VolatileByteArray( data, true );
+	}
+
+	private static long[] min( final long x )
+	{
+		return new long[] { x, 0, 0 };
+	}
+
+	@Test
+	public void testEvictionAndRestart() throws IOException
+	{
+		final DiskCellCache.Serializer< VolatileByteArray > serializer = DiskCacheArrayLoader.byteArraySerializer;
+		DiskCellCache cache = new DiskCellCache( directory, 3000 );
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, bytes( 0 ), serializer );
+		cache.put( "http://a", 0, 0, min( 10 ), dimensions, bytes( 1 ), serializer );
+		Assert.assertEquals( 2, cache.getNumCells() );
+
+		/* touch the first cell such that the second is least recently used */
+		Assert.assertArrayEquals( bytes( 0 ).getCurrentStorageArray(), cache.get( "http://a", 0, 0, min( 0 ), dimensions, serializer ).getCurrentStorageArray() );
+		cache.put( "http://a", 0, 0, min( 20 ), dimensions, bytes( 2 ), serializer );
+		Assert.assertEquals( 1, cache.getEvictions() );
+		Assert.assertNull( cache.get( "http://a", 0, 0, min( 10 ), dimensions, serializer ) );
+
+		/* other sources and levels are different cells */
+		Assert.assertNull( cache.get( "http://b", 0, 0, min( 0 ), dimensions, serializer ) );
+		Assert.assertNull( cache.get( "http://a", 0, 1, min( 0 ), dimensions, serializer ) );
+
+		/* a new session finds the cells of the previous one */
+		final long sizeInBytes = cache.getSizeInBytes();
+		cache = new DiskCellCache( directory, 3000 );
+		Assert.assertEquals( 2, cache.getNumCells() );
+		Assert.assertEquals( sizeInBytes, cache.getSizeInBytes() );
+		Assert.assertArrayEquals( bytes( 2 ).getCurrentStorageArray(), cache.get( "http://a", 0, 0, min( 20 ), dimensions, serializer ).getCurrentStorageArray() );
+
+		/* a smaller budget removes cells from disk */
+		cache.setMaxSizeInBytes( 1500 );
+		Assert.assertEquals( 1, cache.getNumCells() );
+		try ( final Stream< Path > paths = Files.walk( directory ) )
+		{
+			Assert.assertEquals( 1, paths.filter( p -> p.toString().endsWith( ".cell" ) ).count() );
+		}
+	}
+
+	@Test
+	public void testCorruption() throws IOException
+	{
+		final DiskCellCache.Serializer< VolatileByteArray > serializer = DiskCacheArrayLoader.byteArraySerializer;
+		final DiskCellCache cache = new DiskCellCache( directory, 1 << 20 );
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, bytes( 0 ), serializer );
+
+		final Path file;
+		try ( final Stream< Path > paths = Files.walk( directory ) )
+		{
+			file = paths.filter( p -> p.toString().endsWith( ".cell" ) ).findFirst().get();
+		}
+		try ( final RandomAccessFile raf = new RandomAccessFile( file.toFile(), "rw" ) )
+		{
+			raf.seek( raf.length() - 1 );
+			raf.write( 0x55 );
+		}
+
+		Assert.assertNull( cache.get( "http://a", 0, 0, min( 0 ), dimensions, serializer ) );
+		Assert.assertEquals( 1, cache.getInvalid() );
+		Assert.assertEquals( 0, cache.getNumCells() );
+		Assert.assertFalse( Files.exists( file ) );
+
+		/* different cell dimensions do not match */
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, bytes( 0 ), serializer );
+		Assert.assertNull( cache.get( "http://a", 0, 0, min( 0 ), new int[] { 10, 10, 9 }, serializer ) );
+	}
+
+	@Test
+	public void testInvalidReadDoesNotRemoveConcurrentPut() throws Exception
+	{
+		final DiskCellCache.Serializer< VolatileByteArray > serializer = DiskCacheArrayLoader.byteArraySerializer;
+		final DiskCellCache cache = new DiskCellCache( directory, 1 << 20 );
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, bytes( 0 ), serializer );
+
+		/* a reader that fails after another thread replaced the cell */
+		final CountDownLatch reading = new CountDownLatch( 1 );
+		final CountDownLatch replaced = new CountDownLatch( 1 );
+		final DiskCellCache.Serializer< VolatileByteArray > failing = new DiskCellCache.Serializer< VolatileByteArray >()
+		{
+			@Override
+			public int sizeInBytes( final VolatileByteArray array )
+			{
+				return serializer.sizeInBytes( array );
+			}
+
+			@Override
+			public void write( final VolatileByteArray array, final ByteBuffer buffer )
+			{
+				serializer.write( array, buffer );
+			}
+
+			@Override
+			public VolatileByteArray read( final ByteBuffer buffer, final int[] dimensions ) throws IOException
+			{
+				reading.countDown();
+				try
+				{
+					replaced.await();
+				}
+				catch ( final InterruptedException e )
+				{}
+				throw new IOException( "failed" );
+			}
+		};
+		final Thread reader = new Thread( () -> cache.get( "http://a", 0, 0, min( 0 ), dimensions, failing ) );
+		reader.start();
+		reading.await();
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, bytes( 1 ), serializer );
+		replaced.countDown();
+		reader.join();
+
+		Assert.assertEquals( 1, cache.getInvalid() );
+		Assert.assertEquals( 1, cache.getNumCells() );
+		Assert.assertArrayEquals( bytes( 1 ).getCurrentStorageArray(), cache.get( "http://a", 0, 0, min( 0 ), dimensions, serializer ).getCurrentStorageArray() );
+	}
+
+	@Test
+	public void testLoader() throws InterruptedException, IOException
+	{
+		final AtomicInteger numLoads = new AtomicInteger();
+		final CacheArrayLoader< VolatileByteArray > remote = new CacheArrayLoader< VolatileByteArray >()
+		{
+			@Override
+			public int getBytesPerElement()
+			{
+				return 1;
+			}
+
+			@Override
+			public VolatileByteArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min )
+			{
+				numLoads.incrementAndGet();
+				return min[ 0 ] < 0 ? new VolatileByteArray( 1, false ) : bytes( ( int ) min[ 0 ] );
+			}
+
+			@Override
+			public EmptyArrayCreator< VolatileByteArray > getEmptyArrayCreator()
+			{
+				return new DefaultEmptyArrayCreator<>( new VolatileByteArray( 1, false ) );
+			}
+		};
+
+		final DiskCellCache cache = new DiskCellCache( directory, 1 << 20 );
+		Assert.assertSame( remote, DiskCacheArrayLoader.wrap( remote, null, "http://a", DiskCacheArrayLoader.byteArraySerializer ) );
+
+		final CacheArrayLoader< VolatileByteArray > loader = DiskCacheArrayLoader.wrap( remote, cache, "http://a", DiskCacheArrayLoader.byteArraySerializer );
+		for ( int i = 0; i < 2; ++i )
+			Assert.assertArrayEquals( bytes( 7 ).getCurrentStorageArray(), loader.loadArray( 0, 0, 0, dimensions, min( 7 ) ).getCurrentStorageArray() );
+		Assert.assertEquals( 1, numLoads.get() );
+
+		/* failed loads are not stored */
+		for ( int i = 0; i < 2; ++i )
+			Assert.assertFalse( loader.loadArray( 0, 0, 0, dimensions, min( -1 ) ).isValid() );
+		Assert.assertEquals( 3, numLoads.get() );
+	}
+
+	@Test
+	public void testLabelMultiset() throws IOException
+	{
+		final int[] data = new int[ 1000 ];
+		final long[] ids = new long[ data.length ];
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		long offset = 0;
+		for ( int id = 0; id < 3; ++id )
+		{
+			list.createListAt( listData, offset );
+			list.add( new LabelMultisetEntry( id, 1 ) );
+			offset += list.getSizeInBytes();
+		}
+		for ( int i = 0; i < data.length; ++i )
+		{
+			ids[ i ] = i % 3;
+			list.referToDataAt( listData, 0 );
+			long o = 0;
+			for ( int k = 0; k < ids[ i ]; ++k )
+			{
+				list.referToDataAt( listData, o );
+				o += list.getSizeInBytes();
+			}
+			data[ i ] = ( int ) o;
+		}
+		final VolatileLabelMultisetArray array = new VolatileLabelMultisetArray( data, listData, offset, true );
+
+		final DiskCellCache cache = new DiskCellCache( directory, 1 << 20 );
+		cache.put( "http://a", 0, 0, min( 0 ), dimensions, array, DiskCacheArrayLoader.labelMultisetSerializer );
+		final VolatileLabelMultisetArray read = cache.get( "http://a", 0, 0, min( 0 ), dimensions, DiskCacheArrayLoader.labelMultisetSerializer );
+		Assert.assertNotNull( read );
+		Assert.assertArrayEquals( data, read.getCurrentStorageArray() );
+		Assert.assertArrayEquals( ids, read.getArgMax() );
+		final LabelMultisetEntryList readList = new LabelMultisetEntryList();
+		for ( int i = 0; i < data.length; ++i )
+		{
+			read.getValue( i, readList );
+			Assert.assertEquals( 1, readList.size() );
+			Assert.assertEquals( ids[ i ], readList.get( 0 ).getId() );
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package bdv.img;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryBoundedCellCacheTest
+{
+	@Test
+	public void testEviction()
+	{
+		final Object owner = new Object();
+		final MemoryBoundedCellCache cache = new MemoryBoundedCellCache( 100 );
+
+		cache.put( owner, 0, 0, 0, new long[] { 0, 0, 0 }, "a", 40 );
+		cache.put( owner, 0, 0, 0, new long[] { 1, 0, 0 }, "b", 40 );
+		Assert.assertEquals( 80, cache.getSizeInBytes() );
+
+		/* touch a such that b is least recently used */
+		Assert.assertEquals( "a", cache.get( owner, 0, 0, 0, new long[] { 0, 0, 0 } ) );
+
+		cache.put( owner, 0, 0, 0, new long[] { 2, 0, 0 }, "c", 40 );
+		Assert.assertEquals( 80, cache.getSizeInBytes() );
+		Assert.assertEquals( 1, cache.getEvictions() );
+		Assert.assertNull( cache.get( owner, 0, 0, 0, new long[] { 1, 0, 0 } ) );
+		Assert.assertEquals( "c", cache.get( owner, 0, 0, 0, new long[] { 2, 0, 0 } ) );
+
+		/* cells larger than the budget are not retained */
+		cache.put( owner, 0, 0, 0, new long[] { 3, 0, 0 }, "d", 101 );
+		Assert.assertNull( cache.get( owner, 0, 0, 0, new long[] { 3, 0, 0 } ) );
+
+		Assert.assertEquals( 2, cache.getHits() );
+		Assert.assertEquals( 2, cache.getMisses() );
+
+		cache.setMaxSizeInBytes( 40 );
+		Assert.assertEquals( 1, cache.getNumCells() );
+		Assert.assertEquals( "c", cache.get( owner, 0, 0, 0, new long[] { 2, 0, 0 } ) );
+	}
+
+	@Test
+	public void testOwners()
+	{
+		final MemoryBoundedCellCache cache = new MemoryBoundedCellCache( 100 );
+		final long[] min = new long[] { 0, 0, 0 };
+		cache.put( "raw", 0, 0, 0, min, "a", 10 );
+		cache.put( "labels", 0, 0, 0, min, "b", 10 );
+		Assert.assertEquals( "a", cache.get( "raw", 0, 0, 0, min ) );
+		Assert.assertEquals( "b", cache.get( "labels", 0, 0, 0, min ) );
+	}
+}
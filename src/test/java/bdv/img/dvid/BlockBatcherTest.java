@@ -0,0 +1,142 @@
+package bdv.img.dvid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockBatcherTest
+{
+	@Test
+	public void testRuns() throws Exception
+	{
+		final BlockBatcher< String > batcher = new BlockBatcher<>(
+				( level, x, y, z, span ) -> {
+					final ArrayList< String > blocks = new ArrayList<>();
+					for ( int i = 0; i < span; ++i )
+						blocks.add( level + "/" + ( x + i ) + "_" + y + "_" + z );
+					return blocks;
+				},
+				TimeUnit.MILLISECONDS.toNanos( 200 ),
+				4 );
+
+		final ExecutorService exec = Executors.newFixedThreadPool( 8 );
+		final ArrayList< Future< String > > futures = new ArrayList<>();
+		for ( int i = 0; i < 8; ++i )
+		{
+			final long x = i;
+			futures.add( exec.submit( () -> batcher.load( 1, x, 2, 3 ) ) );
+		}
+		for ( int i = 0; i < 8; ++i )
+			Assert.assertEquals( "1/" + i + "_2_3", futures.get( i ).get() );
+		exec.shutdown();
+
+		Assert.assertEquals( 8, batcher.getNumBlocks() );
+		Assert.assertTrue( batcher.getNumRuns() >= 2 );
+		Assert.assertTrue( batcher.getNumRuns() < 8 );
+	}
+
+	@Test
+	public void testNoLingerWithoutConcurrentRequests() throws Exception
+	{
+		final BlockBatcher< String > batcher = new BlockBatcher<>(
+				( level, x, y, z, span ) -> {
+					final ArrayList< String > blocks = new ArrayList<>();
+					for ( int i = 0; i < span; ++i )
+						blocks.add( level + "/" + ( x + i ) + "_" + y + "_" + z );
+					return blocks;
+				},
+				TimeUnit.SECONDS.toNanos( 10 ),
+				4 );
+
+		final long t = System.nanoTime();
+		for ( int i = 0; i < 4; ++i )
+			Assert.assertEquals( "0/" + i + "_0_0", batcher.load( 0, i, 0, 0 ) );
+		Assert.assertTrue( System.nanoTime() - t < TimeUnit.SECONDS.toNanos( 5 ) );
+		Assert.assertEquals( 4, batcher.getNumRuns() );
+	}
+
+	@Test
+	public void testFailedRun() throws Exception
+	{
+		final BlockBatcher< String > batcher = new BlockBatcher<>(
+				( level, x, y, z, span ) -> {
+					throw new IOException( "failed" );
+				} );
+		try
+		{
+			batcher.load( 0, 0, 0, 0 );
+			Assert.fail( "expected exception" );
+		}
+		catch ( final IOException e )
+		{
+			Assert.assertEquals( "failed", e.getMessage() );
+		}
+	}
+
+	@Test
+	public void testInterruptedWhileLingering() throws Exception
+	{
+		final CountDownLatch loading = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final BlockBatcher< String > batcher = new BlockBatcher<>(
+				( level, x, y, z, span ) -> {
+					if ( x == 100 )
+					{
+						loading.countDown();
+						try
+						{
+							release.await();
+						}
+						catch ( final InterruptedException e )
+						{
+							throw new IOException( e );
+						}
+					}
+					final ArrayList< String > blocks = new ArrayList<>();
+					for ( int i = 0; i < span; ++i )
+						blocks.add( level + "/" + ( x + i ) + "_" + y + "_" + z );
+					return blocks;
+				},
+				TimeUnit.MILLISECONDS.toNanos( 500 ),
+				4 );
+
+		final ExecutorService exec = Executors.newFixedThreadPool( 3 );
+
+		/* keep a load in flight such that the next requests linger */
+		final Future< String > inFlight = exec.submit( () -> batcher.load( 0, 100, 0, 0 ) );
+		loading.await();
+
+		final Future< String > interrupted = exec.submit( () -> batcher.load( 0, 0, 0, 0 ) );
+		Thread.sleep( 100 );
+		final Future< String > duplicate = exec.submit( () -> batcher.load( 0, 0, 0, 0 ) );
+		Thread.sleep( 100 );
+		interrupted.cancel( true );
+
+		/* the duplicate loads the block itself */
+		Assert.assertEquals( "0/0_0_0", duplicate.get( 5, TimeUnit.SECONDS ) );
+
+		release.countDown();
+		Assert.assertEquals( "0/100_0_0", inFlight.get( 5, TimeUnit.SECONDS ) );
+		exec.shutdown();
+	}
+
+	@Test
+	public void testCrop()
+	{
+		final int[] blockDimensions = new int[] { 4, 3, 2 };
+		final int[] block = new int[ 24 ];
+		for ( int i = 0; i < block.length; ++i )
+			block[ i ] = i;
+		final int[] cellDimensions = new int[] { 2, 2, 1 };
+		final int[] cell = new int[ 4 ];
+		BlockBatcher.crop( block, blockDimensions, cell, cellDimensions );
+		Assert.assertArrayEquals( new int[] { 0, 1, 4, 5 }, cell );
+	}
+}
@@ -0,0 +1,171 @@
+package bdv.img.dvid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.labels.labelset.VolatileLabelMultisetArray;
+import bdv.util.ColorStream;
+import bdv.util.dvid.DatasetBlkLabel;
+import bdv.util.dvid.MockDvidServer;
+import bdv.util.dvid.Repository;
+import bdv.util.http.Codec;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+
+public class CompressedTransferTest
+{
+	private static final int[] dimensions = new int[] { 80, 64, 32 };
+
+	private static final int[] blockSize = new int[] { 32, 32, 32 };
+
+	private MockDvidServer server;
+
+	/* a few large fragments, label volumes compress well */
+	private static long label( final int x, final int y, final int z )
+	{
+		return 1 + x / 20 + 7 * ( y / 24 ) + 31 * ( ( x + y + z ) / 40 );
+	}
+
+	@Before
+	public void startServer() throws IOException
+	{
+		server = new MockDvidServer( "abcd", "labels", dimensions, blockSize );
+		final long[] volume = server.getVolume();
+		for ( int z = 0, i = 0; z < dimensions[ 2 ]; ++z )
+			for ( int y = 0; y < dimensions[ 1 ]; ++y )
+				for ( int x = 0; x < dimensions[ 0 ]; ++x, ++i )
+					volume[ i ] = label( x, y, z );
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop();
+	}
+
+	@Test
+	public void testLoad() throws InterruptedException
+	{
+		final EnumMap< Codec, Long > bytesSent = new EnumMap<>( Codec.class );
+		for ( final Codec codec : Codec.values() )
+		{
+			server.resetCounters();
+			final LabelblkMultisetVolatileArrayLoader loader = new LabelblkMultisetVolatileArrayLoader(
+					server.getApiUrl(), server.getUuid(), server.getName(), blockSize, codec );
+			for ( int bx = 0; bx * blockSize[ 0 ] < dimensions[ 0 ]; ++bx )
+			{
+				final long[] min = new long[] { bx * blockSize[ 0 ], 32, 0 };
+				final int[] cellDimensions = new int[] { Math.min( blockSize[ 0 ], dimensions[ 0 ] - bx * blockSize[ 0 ] ), 32, 32 };
+				final VolatileLabelMultisetArray array = loader.loadArray( 0, 0, 0, cellDimensions, min );
+				final long[] argMax = array.getArgMax();
+				for ( int z = 0, i = 0; z < cellDimensions[ 2 ]; ++z )
+					for ( int y = 0; y < cellDimensions[ 1 ]; ++y )
+						for ( int x = 0; x < cellDimensions[ 0 ]; ++x, ++i )
+							Assert.assertEquals( codec.toString(), label( ( int ) min[ 0 ] + x, ( int ) min[ 1 ] + y, ( int ) min[ 2 ] + z ), argMax[ i ] );
+			}
+			bytesSent.put( codec, server.getBytesSent() );
+		}
+
+		Assert.assertTrue( bytesSent.get( Codec.GZIP ) * 10 < bytesSent.get( Codec.NONE ) );
+		Assert.assertTrue( bytesSent.get( Codec.LZ4 ) * 10 < bytesSent.get( Codec.NONE ) );
+	}
+
+	@Test
+	public void testLoadLabelblk() throws InterruptedException
+	{
+		final EnumMap< Codec, Long > bytesSent = new EnumMap<>( Codec.class );
+		for ( final Codec codec : Codec.values() )
+		{
+			server.resetCounters();
+			final LabelblkVolatileArrayLoader loader = new LabelblkVolatileArrayLoader(
+					server.getApiUrl(), server.getUuid(), server.getName(), blockSize, 0xffffffff, codec );
+			for ( int bx = 0; bx * blockSize[ 0 ] < dimensions[ 0 ]; ++bx )
+			{
+				final long[] min = new long[] { bx * blockSize[ 0 ], 32, 0 };
+				final int[] cellDimensions = new int[] { Math.min( blockSize[ 0 ], dimensions[ 0 ] - bx * blockSize[ 0 ] ), 32, 32 };
+				final int[] data = loader.loadArray( 0, 0, 0, cellDimensions, min ).getCurrentStorageArray();
+				for ( int z = 0, i = 0; z < cellDimensions[ 2 ]; ++z )
+					for ( int y = 0; y < cellDimensions[ 1 ]; ++y )
+						for ( int x = 0; x < cellDimensions[ 0 ]; ++x, ++i )
+							Assert.assertEquals( codec.toString(), ColorStream.get( label( ( int ) min[ 0 ] + x, ( int ) min[ 1 ] + y, ( int ) min[ 2 ] + z ) ), data[ i ] );
+			}
+			bytesSent.put( codec, server.getBytesSent() );
+		}
+
+		Assert.assertTrue( bytesSent.get( Codec.GZIP ) * 10 < bytesSent.get( Codec.NONE ) );
+		Assert.assertTrue( bytesSent.get( Codec.LZ4 ) * 10 < bytesSent.get( Codec.NONE ) );
+	}
+
+	@Test
+	public void testLoadConcurrently() throws Exception
+	{
+		/* concurrent loads of a row are batched into runs */
+		final LabelblkMultisetVolatileArrayLoader loader = new LabelblkMultisetVolatileArrayLoader(
+				server.getApiUrl(), server.getUuid(), server.getName(), blockSize, Codec.LZ4 );
+		final ExecutorService exec = Executors.newFixedThreadPool( 6 );
+		final ArrayList< long[] > mins = new ArrayList<>();
+		final ArrayList< Future< VolatileLabelMultisetArray > > futures = new ArrayList<>();
+		for ( int by = 0; by * blockSize[ 1 ] < dimensions[ 1 ]; ++by )
+			for ( int bx = 0; bx * blockSize[ 0 ] < dimensions[ 0 ]; ++bx )
+			{
+				final long[] min = new long[] { bx * blockSize[ 0 ], by * blockSize[ 1 ], 0 };
+				final int[] cellDimensions = new int[] { Math.min( blockSize[ 0 ], dimensions[ 0 ] - bx * blockSize[ 0 ] ), 32, 32 };
+				mins.add( min );
+				futures.add( exec.submit( () -> loader.loadArray( 0, 0, 0, cellDimensions, min ) ) );
+			}
+		for ( int j = 0; j < futures.size(); ++j )
+		{
+			final long[] min = mins.get( j );
+			final VolatileLabelMultisetArray array = futures.get( j ).get();
+			final int width = array.getCurrentStorageArray().length / ( 32 * 32 );
+			for ( int z = 0, i = 0; z < 32; ++z )
+				for ( int y = 0; y < 32; ++y )
+					for ( int x = 0; x < width; ++x, ++i )
+						Assert.assertEquals( label( ( int ) min[ 0 ] + x, ( int ) min[ 1 ] + y, z ), array.argMax( i ) );
+		}
+		exec.shutdown();
+	}
+
+	@Test
+	public void testPut() throws IOException
+	{
+		final DatasetBlkLabel dataset = new DatasetBlkLabel( new Repository( server.getUrl(), server.getUuid() ).getRootNode(), server.getName() );
+		final long[] labels = new long[ 32 * 32 * 32 ];
+		for ( int i = 0; i < labels.length; ++i )
+			labels[ i ] = 1000 + i / 4096;
+		final ArrayImg< UnsignedLongType, LongArray > image = ArrayImgs.unsignedLongs( labels, 32, 32, 32 );
+
+		for ( final Codec codec : Codec.values() )
+		{
+			server.resetCounters();
+			dataset.setCodec( codec );
+			dataset.put( image, new int[] { 32, 0, 0 } );
+			if ( codec == Codec.NONE )
+				Assert.assertEquals( labels.length * 8, server.getBytesReceived() );
+			else
+				Assert.assertTrue( server.getBytesReceived() * 10 < labels.length * 8 );
+
+			final long[] volume = server.getVolume();
+			for ( int z = 0, i = 0; z < 32; ++z )
+				for ( int y = 0; y < 32; ++y )
+					for ( int x = 0; x < 32; ++x, ++i )
+						Assert.assertEquals( labels[ i ], volume[ ( z * dimensions[ 1 ] + y ) * dimensions[ 0 ] + x + 32 ] );
+			/* reset */
+			for ( int z = 0; z < 32; ++z )
+				for ( int y = 0; y < 32; ++y )
+					for ( int x = 0; x < 32; ++x )
+						volume[ ( z * dimensions[ 1 ] + y ) * dimensions[ 0 ] + x + 32 ] = label( x + 32, y, z );
+		}
+	}
+}
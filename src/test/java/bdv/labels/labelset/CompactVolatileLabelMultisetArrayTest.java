@@ -0,0 +1,76 @@
+package bdv.labels.labelset;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactVolatileLabelMultisetArrayTest
+{
+	static VolatileLabelMultisetArray createArray( final int numEntities, final int numLists, final long seed )
+	{
+		final Random rnd = new Random( seed );
+		final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage( 32 );
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( listData, 0 );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+		final int[] listOffsets = new int[ numLists ];
+		int nextListOffset = 0;
+		for ( int i = 0; i < numLists; ++i )
+		{
+			listOffsets[ i ] = nextListOffset;
+			list.createListAt( listData, nextListOffset );
+			final int size = 1 + rnd.nextInt( 5 );
+			long id = i == 0 ? Label.TRANSPARENT : rnd.nextInt( 1000 );
+			for ( int j = 0; j < size; ++j )
+			{
+				entry.setId( id );
+				entry.setCount( 1 + rnd.nextInt( 300 ) );
+				list.add( entry );
+				id += 1 + rnd.nextInt( 100000 );
+			}
+			nextListOffset += list.getSizeInBytes();
+		}
+
+		final int[] data = new int[ numEntities ];
+		for ( int i = 0; i < numEntities; ++i )
+			data[ i ] = listOffsets[ rnd.nextInt( numLists ) ];
+
+		return new VolatileLabelMultisetArray( data, listData, nextListOffset, true );
+	}
+
+	static void assertSameLists( final VolatileLabelMultisetArray expected, final VolatileLabelMultisetArray actual, final int numEntities )
+	{
+		final LabelMultisetEntryList e = new LabelMultisetEntryList();
+		final LabelMultisetEntryList a = new LabelMultisetEntryList();
+		for ( int i = 0; i < numEntities; ++i )
+		{
+			expected.getValue( i, e );
+			actual.getValue( i, a );
+			Assert.assertEquals( e, a );
+			Assert.assertEquals( expected.argMax( i ), actual.argMax( i ) );
+		}
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		for ( final int numLists : new int[] { 1, 200, 3000, 70000 } )
+		{
+			final int numEntities = 64 * 64 * 8 * ( numLists > 0x10000 ? 4 : 1 );
+			final VolatileLabelMultisetArray plain = createArray( numEntities, numLists, numLists );
+			final CompactVolatileLabelMultisetArray compact = CompactVolatileLabelMultisetArray.compact( plain );
+
+			assertSameLists( plain, compact, numEntities );
+			assertSameLists( plain, compact.expand(), numEntities );
+
+			/* plain accessors decode consistently and are not retained */
+			final int[] offsets = compact.getCurrentStorageArray();
+			Assert.assertNotSame( offsets, compact.getCurrentStorageArray() );
+			assertSameLists(
+					plain,
+					new VolatileLabelMultisetArray( offsets, compact.getListData(), compact.getListDataUsedSizeInBytes(), true ),
+					numEntities );
+			Assert.assertTrue( compact.getSizeInBytes() < plain.getSizeInBytes() );
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package bdv.labels.labelset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LabelMultisetEntryListTest
+{
+	static LabelMultisetEntryList createList( final TreeMap< Long, Integer > counts )
+	{
+		final LabelMultisetEntryList list = new LabelMultisetEntryList( counts.size() );
+		final LabelMultisetEntry entry = new LabelMultisetEntry( 0, 1 );
+		for ( final Map.Entry< Long, Integer > e : counts.entrySet() )
+		{
+			entry.setId( e.getKey() );
+			entry.setCount( e.getValue() );
+			list.add( entry );
+		}
+		return list;
+	}
+
+	/**
+	 * Keep the k regular entries with the largest counts, ties resolved in
+	 * favor of smaller ids, and fold all others into the remainder.
+	 */
+	static TreeMap< Long, Integer > truncate( final TreeMap< Long, Integer > counts, final int k, final long remainderId )
+	{
+		final ArrayList< Long > regular = new ArrayList<>( counts.keySet() );
+		regular.remove( remainderId );
+		if ( counts.size() <= k || regular.size() <= k )
+			return counts;
+
+		Collections.sort( regular, ( a, b ) -> {
+			final int c = Integer.compare( counts.get( b ), counts.get( a ) );
+			return c == 0 ? Long.compare( a, b ) : c;
+		} );
+
+		final TreeMap< Long, Integer > truncated = new TreeMap<>();
+		int remainder = counts.containsKey( remainderId ) ? counts.get( remainderId ) : 0;
+		for ( int i = 0; i < regular.size(); ++i )
+		{
+			final long id = regular.get( i );
+			if ( i < k )
+				truncated.put( id, counts.get( id ) );
+			else
+				remainder += counts.get( id );
+		}
+		truncated.put( remainderId, remainder );
+		return truncated;
+	}
+
+	@Test
+	public void testTruncate()
+	{
+		final Random rnd = new Random( 17 );
+		for ( int n = 0; n < 2000; ++n )
+		{
+			final TreeMap< Long, Integer > counts = new TreeMap<>();
+			final int size = rnd.nextInt( 40 );
+			for ( int i = 0; i < size; ++i )
+				/* few distinct counts to produce ties */
+				counts.put( ( long ) rnd.nextInt( 1000 ), 1 + rnd.nextInt( 8 ) );
+			if ( rnd.nextBoolean() )
+				counts.put( Label.INVALID, 1 + rnd.nextInt( 100 ) );
+			final int k = 1 + rnd.nextInt( 20 );
+
+			final LabelMultisetEntryList list = createList( counts );
+			final int multisetSize = list.multisetSize();
+			list.truncate( k, Label.INVALID );
+
+			Assert.assertEquals( createList( truncate( counts, k, Label.INVALID ) ), list );
+			Assert.assertEquals( multisetSize, list.multisetSize() );
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package bdv.labels.labelset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VolatileLabelMultisetArrayTest
+{
+	@Test
+	public void testArgMax()
+	{
+		final int numEntities = 64 * 64 * 8;
+		final int numLists = 300;
+		final VolatileLabelMultisetArray array = CompactVolatileLabelMultisetArrayTest.createArray( numEntities, numLists, 5 );
+		final long sizeWithoutArgMax = array.getSizeInBytes();
+
+		final LabelMultisetEntryList list = new LabelMultisetEntryList();
+		for ( int i = 0; i < numEntities; ++i )
+		{
+			array.getValue( i, list );
+			Assert.assertEquals( list.argMax(), array.argMax( i ) );
+		}
+
+		/* one id per distinct list, not per voxel */
+		Assert.assertTrue( array.getSizeInBytes() - sizeWithoutArgMax <= numLists * ( Integer.BYTES + Long.BYTES ) );
+
+		/* per voxel argMax passed at construction */
+		final long[] argMax = array.getArgMax();
+		final VolatileLabelMultisetArray copy = new VolatileLabelMultisetArray(
+				array.getCurrentStorageArray(),
+				array.getListData(),
+				array.getListDataUsedSizeInBytes(),
+				argMax,
+				true );
+		for ( int i = 0; i < numEntities; ++i )
+			Assert.assertEquals( argMax[ i ], copy.argMax( i ) );
+	}
+}
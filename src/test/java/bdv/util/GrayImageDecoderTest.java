@@ -0,0 +1,92 @@
+package bdv.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.PixelGrabber;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GrayImageDecoderTest
+{
+	private static final int w = 64;
+
+	private static final int h = 48;
+
+	private static byte[] encode( final int type, final String format ) throws IOException
+	{
+		final BufferedImage image = new BufferedImage( w, h, type );
+		for ( int y = 0; y < h; ++y )
+			for ( int x = 0; x < w; ++x )
+			{
+				final int v = ( x * 3 + y * 5 ) & 0xff;
+				if ( type == BufferedImage.TYPE_BYTE_GRAY )
+					image.getRaster().setSample( x, y, 0, v );
+				else
+					image.setRGB( x, y, 0xff000000 | ( v << 16 ) | ( v << 8 ) | v );
+			}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write( image, format, out );
+		return out.toByteArray();
+	}
+
+	/**
+	 * Blue channel of the image decoded by {@link ImageIO} and drawn into an
+	 * ARGB image, as the loaders did before.
+	 */
+	private static byte[] reference( final byte[] encoded ) throws IOException, InterruptedException
+	{
+		final BufferedImage image = ImageIO.read( new ByteArrayInputStream( encoded ) );
+		final BufferedImage argb = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+		argb.createGraphics().drawImage( image, 0, 0, null );
+		final int[] data = new int[ w * h ];
+		new PixelGrabber( argb, 0, 0, w, h, data, 0, w ).grabPixels();
+		final byte[] bytes = new byte[ w * h ];
+		for ( int i = 0; i < data.length; ++i )
+			bytes[ i ] = ( byte ) data[ i ];
+		return bytes;
+	}
+
+	@Test
+	public void testDecode() throws IOException, InterruptedException
+	{
+		final GrayImageDecoder decoder = new GrayImageDecoder( 2 );
+		final byte[][] encoded = new byte[][] {
+			encode( BufferedImage.TYPE_BYTE_GRAY, "jpg" ),
+			encode( BufferedImage.TYPE_INT_RGB, "jpg" ),
+			encode( BufferedImage.TYPE_BYTE_GRAY, "png" ),
+			encode( BufferedImage.TYPE_BYTE_INDEXED, "png" ) };
+
+		final byte[] target = new byte[ 1 + encoded.length * w * h ];
+		final ArrayList< Future< Void > > futures = new ArrayList<>();
+		for ( int i = 0; i < encoded.length; ++i )
+			futures.add( decoder.decodeAsync( encoded[ i ], target, 1 + i * w * h, w, h ) );
+		for ( final Future< Void > future : futures )
+			GrayImageDecoder.await( future );
+
+		Assert.assertEquals( 0, target[ 0 ] );
+		for ( int i = 0; i < encoded.length; ++i )
+		{
+			final byte[] expected = reference( encoded[ i ] );
+			for ( int j = 0; j < expected.length; ++j )
+				Assert.assertEquals( "image " + i + " pixel " + j, expected[ j ], target[ 1 + i * w * h + j ] );
+		}
+
+		/* gray values survive without gamma conversion */
+		final byte[] png = new byte[ w * h ];
+		GrayImageDecoder.decode( encoded[ 2 ], png, 0, w, h );
+		Assert.assertEquals( ( 10 * 3 + 7 * 5 ) & 0xff, png[ 7 * w + 10 ] & 0xff );
+	}
+
+	@Test( expected = IOException.class )
+	public void testInvalid() throws IOException, InterruptedException
+	{
+		GrayImageDecoder.await( new GrayImageDecoder( 1 ).decodeAsync( new byte[] { 1, 2, 3 }, new byte[ w * h ], 0, w, h ) );
+	}
+}
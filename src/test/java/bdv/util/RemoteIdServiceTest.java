@@ -0,0 +1,182 @@
+package bdv.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import bdv.bigcat.Message;
+import gnu.trove.set.hash.TLongHashSet;
+
+public class RemoteIdServiceTest
+{
+	final static private Gson gson = new GsonBuilder()
+			.registerTypeAdapter( Message.class, new Message.Serializer() )
+			.registerTypeAdapter( Message.class, new Message.GSONDeserializer() )
+			.create();
+
+	private ZContext ctx;
+
+	private int numServers = 0;
+
+	/**
+	 * Stand-in for the id service that answers the handshake only if
+	 * {@code binary} is set, like a service that predates it otherwise.
+	 */
+	private String startServer( final boolean binary )
+	{
+		final String url = "inproc://ids" + numServers++;
+		final Socket server = ctx.createSocket( ZMQ.REP );
+		server.bind( url );
+		final Thread thread = new Thread( () -> {
+			long next = 1;
+			try
+			{
+				while ( !Thread.currentThread().isInterrupted() )
+				{
+					final byte[] request = server.recv();
+					if ( request == null )
+						break;
+					final int count;
+					if ( BinaryMessage.isBinary( request ) )
+					{
+						count = new BinaryMessage.Reader( request ).getInt();
+						server.send( new BinaryMessage.Writer( RemoteIdService.ID_RESPONSE ).putLong( next ).putLong( next + count ).toFrame( null ) );
+					}
+					else
+					{
+						final String json = new String( request, StandardCharsets.UTF_8 );
+						final JsonObject jsonObject = gson.fromJson( json, JsonObject.class );
+						if ( binary && jsonObject.has( "type" ) )
+						{
+							final Message.HandshakeData offer = ( Message.HandshakeData ) gson.fromJson( json, Message.class ).getData();
+							server.send( gson.toJson( new Message( new Message.HandshakeData().select( offer ) ) ) );
+							continue;
+						}
+						count = jsonObject.has( "count" ) ? jsonObject.get( "count" ).getAsInt() : 0;
+						server.send( "{\"begin\":" + next + ",\"end\":" + ( next + count ) + "}" );
+					}
+					next += count;
+				}
+			}
+			catch ( final IOException | RuntimeException e )
+			{}
+		} );
+		thread.setDaemon( true );
+		thread.start();
+		return url;
+	}
+
+	/**
+	 * Stand-in for an id service that does not answer messages it does not
+	 * understand, like the handshake.  Uses a ROUTER socket because a REP
+	 * socket cannot drop a request.
+	 */
+	private String startSilentServer()
+	{
+		final String url = "inproc://ids" + numServers++;
+		final Socket server = ctx.createSocket( ZMQ.ROUTER );
+		server.bind( url );
+		final Thread thread = new Thread( () -> {
+			long next = 1;
+			try
+			{
+				while ( !Thread.currentThread().isInterrupted() )
+				{
+					final byte[] identity = server.recv();
+					final byte[] delimiter = server.recv();
+					final byte[] request = server.recv();
+					if ( identity == null || delimiter == null || request == null )
+						break;
+					final JsonObject jsonObject = gson.fromJson( new String( request, StandardCharsets.UTF_8 ), JsonObject.class );
+					if ( jsonObject.has( "type" ) )
+						continue;
+					final int count = jsonObject.has( "count" ) ? jsonObject.get( "count" ).getAsInt() : 0;
+					server.sendMore( identity );
+					server.sendMore( "" );
+					server.send( "{\"begin\":" + next + ",\"end\":" + ( next + count ) + "}" );
+					next += count;
+				}
+			}
+			catch ( final RuntimeException e )
+			{}
+		} );
+		thread.setDaemon( true );
+		thread.start();
+		return url;
+	}
+
+	@Before
+	public void setUp()
+	{
+		ctx = new ZContext();
+	}
+
+	@After
+	public void tearDown()
+	{
+		ctx.destroy();
+	}
+
+	private static void testService( final RemoteIdService idService )
+	{
+		final TLongHashSet ids = new TLongHashSet();
+		for ( int i = 0; i < 10000; ++i )
+			Assert.assertTrue( ids.add( idService.next() ) );
+
+		/* consumed quickly, so batches grow and fewer requests are needed */
+		Assert.assertTrue( idService.getCount() > RemoteIdService.MIN_COUNT );
+		Assert.assertTrue( idService.getNumRequests() < 10000 / RemoteIdService.MIN_COUNT );
+
+		for ( final int n : new int[] { 1, 7, 1000, 100000 } )
+		{
+			final long numRequests = idService.getNumRequests();
+			final long[] block = idService.next( n );
+			Assert.assertEquals( n, block.length );
+			for ( int i = 1; i < n; ++i )
+				Assert.assertEquals( block[ 0 ] + i, block[ i ] );
+			for ( final long id : block )
+				Assert.assertTrue( ids.add( id ) );
+			Assert.assertTrue( idService.getNumRequests() - numRequests <= 2 );
+		}
+
+		final long max = Arrays.stream( ids.toArray() ).max().getAsLong();
+		idService.invalidate( max + 12345 );
+		Assert.assertTrue( idService.next() > max + 12345 );
+	}
+
+	@Test
+	public void testBinary()
+	{
+		final RemoteIdService idService = new RemoteIdService( ctx, startServer( true ) );
+		testService( idService );
+		idService.shutdown();
+	}
+
+	@Test
+	public void testJsonFallback()
+	{
+		final RemoteIdService idService = new RemoteIdService( ctx, startServer( false ) );
+		testService( idService );
+		idService.shutdown();
+	}
+
+	@Test
+	public void testHandshakeTimeout()
+	{
+		final RemoteIdService idService = new RemoteIdService( ctx, startSilentServer() );
+		testService( idService );
+		idService.shutdown();
+	}
+}
@@ -0,0 +1,208 @@
+package bdv.util.dvid;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import bdv.util.http.Codec;
+import bdv.util.http.HttpTransport;
+
+/**
+ * Minimal local DVID endpoint for a single labelblk data set, backed by an
+ * in-memory volume. Supports
+ *
+ * <ul>
+ * <li>GET <code>info</code>,</li>
+ * <li>GET <code>raw/0_1_2/w_h_d/x_y_z</code> (little endian labels),</li>
+ * <li>POST <code>raw/0_1_2/w_h_d/x_y_z</code> (big endian labels),</li>
+ * </ul>
+ *
+ * with the <code>compression</code> query parameter, and counts the bytes of
+ * request and response bodies.
+ */
+public class MockDvidServer
+{
+	private final HttpServer server;
+
+	private final String uuid;
+
+	private final String name;
+
+	private final long[] volume;
+
+	private final int[] dimensions;
+
+	private final int[] blockSize;
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	public MockDvidServer( final String uuid, final String name, final int[] dimensions, final int[] blockSize ) throws IOException
+	{
+		this.uuid = uuid;
+		this.name = name;
+		this.dimensions = dimensions;
+		this.blockSize = blockSize;
+		volume = new long[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.setExecutor( Executors.newCachedThreadPool() );
+		server.createContext( "/api/node/" + uuid + "/" + name + "/", this::handle );
+		server.start();
+	}
+
+	public String getUrl()
+	{
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public String getApiUrl()
+	{
+		return getUrl() + "/api";
+	}
+
+	public String getUuid()
+	{
+		return uuid;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long[] getVolume()
+	{
+		return volume;
+	}
+
+	public long getBytesSent()
+	{
+		return bytesSent.get();
+	}
+
+	public long getBytesReceived()
+	{
+		return bytesReceived.get();
+	}
+
+	public void resetCounters()
+	{
+		bytesSent.set( 0 );
+		bytesReceived.set( 0 );
+	}
+
+	public void stop()
+	{
+		server.stop( 0 );
+	}
+
+	private static Codec codec( final URI uri )
+	{
+		final String query = uri.getQuery();
+		if ( query != null )
+			for ( final String parameter : query.split( "&" ) )
+				if ( parameter.startsWith( "compression=" ) )
+					return Codec.fromName( parameter.substring( "compression=".length() ) );
+		return Codec.NONE;
+	}
+
+	private static int[] parse( final String s )
+	{
+		final String[] fields = s.split( "_" );
+		final int[] values = new int[ fields.length ];
+		for ( int i = 0; i < fields.length; ++i )
+			values[ i ] = Integer.parseInt( fields[ i ] );
+		return values;
+	}
+
+	private void respond( final HttpExchange exchange, final int status, final byte[] body ) throws IOException
+	{
+		bytesSent.addAndGet( body.length );
+		exchange.sendResponseHeaders( status, body.length == 0 ? -1 : body.length );
+		try ( final OutputStream out = exchange.getResponseBody() )
+		{
+			out.write( body );
+		}
+	}
+
+	private void handle( final HttpExchange exchange ) throws IOException
+	{
+		final URI uri = exchange.getRequestURI();
+		final String[] request = uri.getPath().substring( ( "/api/node/" + uuid + "/" + name + "/" ).length() ).split( "/" );
+		final Codec codec = codec( uri );
+		try
+		{
+			if ( request[ 0 ].equals( "info" ) )
+				respond( exchange, 200, info().getBytes( "UTF-8" ) );
+			else if ( request[ 0 ].equals( "raw" ) && exchange.getRequestMethod().equals( "GET" ) )
+				respond( exchange, 200, codec.encode( getRaw( parse( request[ 2 ] ), parse( request[ 3 ] ) ) ) );
+			else if ( request[ 0 ].equals( "raw" ) && exchange.getRequestMethod().equals( "POST" ) )
+			{
+				final int[] size = parse( request[ 2 ] );
+				final int[] offset = parse( request[ 3 ] );
+				final byte[] body = HttpTransport.readFully( exchange.getRequestBody(), -1 );
+				bytesReceived.addAndGet( body.length );
+				final InputStream in = codec.decode( new ByteArrayInputStream( body ), body.length, size[ 0 ] * size[ 1 ] * size[ 2 ] * 8 );
+				putRaw( size, offset, HttpTransport.readFully( in, size[ 0 ] * size[ 1 ] * size[ 2 ] * 8 ) );
+				respond( exchange, 200, new byte[ 0 ] );
+			}
+			else
+				respond( exchange, 404, new byte[ 0 ] );
+		}
+		catch ( final RuntimeException e )
+		{
+			respond( exchange, 400, new byte[ 0 ] );
+		}
+	}
+
+	private String info()
+	{
+		return "{\"Base\":{\"TypeName\":\"labelblk\",\"Name\":\"" + name + "\"},\"Extended\":{" +
+				"\"BlockSize\":[" + blockSize[ 0 ] + "," + blockSize[ 1 ] + "," + blockSize[ 2 ] + "]," +
+				"\"MinPoint\":[0,0,0]," +
+				"\"MaxPoint\":[" + ( dimensions[ 0 ] - 1 ) + "," + ( dimensions[ 1 ] - 1 ) + "," + ( dimensions[ 2 ] - 1 ) + "]}}";
+	}
+
+	private long get( final int x, final int y, final int z )
+	{
+		if ( x < dimensions[ 0 ] && y < dimensions[ 1 ] && z < dimensions[ 2 ] )
+			return volume[ ( z * dimensions[ 1 ] + y ) * dimensions[ 0 ] + x ];
+		return 0;
+	}
+
+	private byte[] getRaw( final int[] size, final int[] offset )
+	{
+		final ByteBuffer bytes = ByteBuffer.allocate( size[ 0 ] * size[ 1 ] * size[ 2 ] * 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		for ( int z = 0; z < size[ 2 ]; ++z )
+			for ( int y = 0; y < size[ 1 ]; ++y )
+				for ( int x = 0; x < size[ 0 ]; ++x )
+					bytes.putLong( get( offset[ 0 ] + x, offset[ 1 ] + y, offset[ 2 ] + z ) );
+		return bytes.array();
+	}
+
+	private synchronized void putRaw( final int[] size, final int[] offset, final byte[] data )
+	{
+		final ByteBuffer bytes = ByteBuffer.wrap( data );
+		for ( int z = 0; z < size[ 2 ]; ++z )
+			for ( int y = 0; y < size[ 1 ]; ++y )
+				for ( int x = 0; x < size[ 0 ]; ++x )
+				{
+					final long value = bytes.getLong();
+					final int vx = offset[ 0 ] + x, vy = offset[ 1 ] + y, vz = offset[ 2 ] + z;
+					if ( vx < dimensions[ 0 ] && vy < dimensions[ 1 ] && vz < dimensions[ 2 ] )
+						volume[ ( vz * dimensions[ 1 ] + vy ) * dimensions[ 0 ] + vx ] = value;
+				}
+	}
+}
@@ -0,0 +1,24 @@
+package bdv.util.dvid;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+public class NodeTest
+{
+	@Test
+	public void testIsLocked()
+	{
+		final JsonObject dag = new Gson().fromJson(
+				"{\"Root\":\"a1b2\",\"Nodes\":{"
+						+ "\"a1b2c3\":{\"UUID\":\"a1b2c3\",\"VersionID\":1,\"Locked\":true},"
+						+ "\"d4e5f6\":{\"UUID\":\"d4e5f6\",\"VersionID\":2,\"Locked\":false}}}",
+				JsonObject.class );
+		Assert.assertTrue( Node.isLocked( dag, "a1b2c3" ) );
+		Assert.assertTrue( Node.isLocked( dag, "a1b2" ) );
+		Assert.assertFalse( Node.isLocked( dag, "d4e5" ) );
+		Assert.assertFalse( Node.isLocked( dag, "ffff" ) );
+	}
+}
@@ -0,0 +1,110 @@
+package bdv.util.dvid;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+
+public class SparseVolDecoderTest
+{
+	private static final long[] dimensions = new long[] { 50, 40, 30 };
+
+	private static final long[] offset = new long[] { 10, -5, 3 };
+
+	private static final long label = 42;
+
+	/**
+	 * Random spans, partially outside of the target, and the reference result.
+	 */
+	private static byte[] createSparseVol( final int runDimension, final long[] reference )
+	{
+		final Random rnd = new Random( 13 + runDimension );
+		final int numSpans = 2000;
+		final ByteBuffer bytes = ByteBuffer.allocate( 12 + 16 * numSpans ).order( ByteOrder.LITTLE_ENDIAN );
+		bytes.put( ( byte ) 0 ).put( ( byte ) 3 ).put( ( byte ) runDimension ).put( ( byte ) 0 );
+		bytes.putInt( 0 ).putInt( numSpans );
+		for ( int i = 0; i < numSpans; ++i )
+		{
+			final int[] start = new int[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+				start[ d ] = ( int ) ( offset[ d ] + rnd.nextInt( ( int ) dimensions[ d ] + 20 ) - 10 );
+			final int length = 1 + rnd.nextInt( 60 );
+			bytes.putInt( start[ 0 ] ).putInt( start[ 1 ] ).putInt( start[ 2 ] ).putInt( length );
+
+			final long[] p = new long[ 3 ];
+			for ( int k = 0; k < length; ++k )
+			{
+				for ( int d = 0; d < 3; ++d )
+					p[ d ] = start[ d ] - offset[ d ] + ( d == runDimension ? k : 0 );
+				if ( p[ 0 ] >= 0 && p[ 0 ] < dimensions[ 0 ] && p[ 1 ] >= 0 && p[ 1 ] < dimensions[ 1 ] && p[ 2 ] >= 0 && p[ 2 ] < dimensions[ 2 ] )
+					reference[ ( int ) ( ( p[ 2 ] * dimensions[ 1 ] + p[ 1 ] ) * dimensions[ 0 ] + p[ 0 ] ) ] = label;
+			}
+		}
+		return bytes.array();
+	}
+
+	private static void assertEquals( final long[] reference, final CellImg< LongType, ? > img )
+	{
+		final ArrayImg< LongType, LongArray > expected = ArrayImgs.longs( reference, dimensions );
+		final Cursor< LongType > e = expected.cursor();
+		final Cursor< LongType > a = Views.flatIterable( img ).cursor();
+		while ( e.hasNext() )
+			Assert.assertEquals( e.next().get(), a.next().get() );
+	}
+
+	@Test
+	public void testCellWriter() throws IOException, InterruptedException
+	{
+		final ExecutorService exec = Executors.newFixedThreadPool( 4 );
+		for ( int runDimension = 0; runDimension < 3; ++runDimension )
+		{
+			final long[] reference = new long[ ( int ) ( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ) ];
+			final byte[] sparseVol = createSparseVol( runDimension, reference );
+			long numVoxels = 0;
+			for ( final long v : reference )
+				if ( v == label )
+					++numVoxels;
+
+			for ( final ExecutorService e : new ExecutorService[] { null, exec } )
+			{
+				final CellImg< LongType, ? > canvas = new CellImgFactory< LongType >( 16, 8, 12 ).create( dimensions, new LongType() );
+				final SparseVolCellWriter writer = new SparseVolCellWriter( canvas, offset, label, e != null );
+				writer.write( new ByteArrayInputStream( sparseVol ) );
+				writer.apply( e );
+				assertEquals( reference, canvas );
+				Assert.assertTrue( writer.getNumVoxels() >= numVoxels );
+			}
+
+			final ArrayImg< UnsignedLongType, LongArray > target = ArrayImgs.unsignedLongs( dimensions );
+			DatasetLabelVol.drawInto( target, sparseVol, new UnsignedLongType( label ), offset );
+			final Cursor< UnsignedLongType > t = target.cursor();
+			for ( final long v : reference )
+				Assert.assertEquals( v, t.next().get() );
+		}
+		exec.shutdown();
+	}
+
+	@Test( expected = IOException.class )
+	public void testTruncated() throws IOException
+	{
+		final byte[] sparseVol = createSparseVol( 0, new long[ ( int ) ( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ) ] );
+		final ByteArrayInputStream in = new ByteArrayInputStream( sparseVol, 0, sparseVol.length - 3 );
+		SparseVolDecoder.decode( in, ( x, y, z, length ) -> {} );
+	}
+}
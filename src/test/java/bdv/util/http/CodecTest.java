@@ -0,0 +1,59 @@
+package bdv.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodecTest
+{
+	private static byte[] roundTrip( final Codec codec, final byte[] data ) throws IOException
+	{
+		final byte[] encoded = codec.encode( data );
+		return HttpTransport.readFully( codec.decode( new ByteArrayInputStream( encoded ), encoded.length, data.length ), data.length );
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final Random rnd = new Random( 17 );
+		final byte[] random = new byte[ 100003 ];
+		rnd.nextBytes( random );
+		final byte[] runs = new byte[ 100003 ];
+		for ( int i = 0; i < runs.length; ++i )
+			runs[ i ] = ( byte ) ( i / 1000 + ( i % 97 == 0 ? 1 : 0 ) );
+		final byte[][] inputs = new byte[][] { new byte[ 0 ], new byte[] { 1, 2, 3 }, new byte[ 13 ], random, runs };
+
+		for ( final Codec codec : Codec.values() )
+			for ( final byte[] data : inputs )
+				Assert.assertArrayEquals( codec.toString(), data, roundTrip( codec, data ) );
+	}
+
+	@Test
+	public void testLz4Ratio() throws IOException
+	{
+		final byte[] zeros = new byte[ 32 * 32 * 32 * 8 ];
+		final byte[] compressed = Lz4.compress( zeros );
+		Assert.assertTrue( compressed.length < zeros.length / 200 );
+		final byte[] decompressed = new byte[ zeros.length ];
+		Lz4.decompress( compressed, 0, compressed.length, decompressed );
+		Assert.assertArrayEquals( zeros, decompressed );
+	}
+
+	@Test( expected = IOException.class )
+	public void testLz4WrongSize() throws IOException
+	{
+		final byte[] compressed = Lz4.compress( new byte[ 1000 ] );
+		Lz4.decompress( compressed, 0, compressed.length, new byte[ 999 ] );
+	}
+
+	@Test
+	public void testAppendTo()
+	{
+		Assert.assertEquals( "http://a/b", Codec.NONE.appendTo( "http://a/b" ) );
+		Assert.assertEquals( "http://a/b?compression=lz4", Codec.LZ4.appendTo( "http://a/b" ) );
+		Assert.assertEquals( "http://a/b?interactive=false&compression=gzip", Codec.GZIP.appendTo( "http://a/b?interactive=false" ) );
+	}
+}
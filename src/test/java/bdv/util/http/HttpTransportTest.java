@@ -0,0 +1,241 @@
+package bdv.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpTransportTest
+{
+	private HttpServer server;
+
+	private String baseUrl;
+
+	private final AtomicInteger numRequests = new AtomicInteger();
+
+	private final AtomicInteger numConcurrent = new AtomicInteger();
+
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+	private final Set< Integer > clientPorts = ConcurrentHashMap.newKeySet();
+
+	private final CountDownLatch release = new CountDownLatch( 1 );
+
+	private static void respond( final HttpExchange exchange, final int status, final byte[] body ) throws IOException
+	{
+		exchange.sendResponseHeaders( status, body.length );
+		try ( final OutputStream out = exchange.getResponseBody() )
+		{
+			out.write( body );
+		}
+	}
+
+	@Before
+	public void startServer() throws IOException
+	{
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.setExecutor( Executors.newCachedThreadPool() );
+		server.createContext( "/block", exchange -> {
+			numRequests.incrementAndGet();
+			clientPorts.add( exchange.getRemoteAddress().getPort() );
+			respond( exchange, 200, exchange.getRequestURI().getPath().getBytes( "UTF-8" ) );
+		} );
+		server.createContext( "/slow", exchange -> {
+			numRequests.incrementAndGet();
+			final int n = numConcurrent.incrementAndGet();
+			maxConcurrent.accumulateAndGet( n, Math::max );
+			try
+			{
+				release.await( 10, TimeUnit.SECONDS );
+				Thread.sleep( 20 );
+			}
+			catch ( final InterruptedException e )
+			{}
+			numConcurrent.decrementAndGet();
+			respond( exchange, 200, exchange.getRequestURI().getPath().getBytes( "UTF-8" ) );
+		} );
+		server.createContext( "/missing", exchange -> respond( exchange, 404, new byte[ 0 ] ) );
+		server.start();
+		baseUrl = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop( 0 );
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 4 );
+		for ( int i = 0; i < 20; ++i )
+			Assert.assertEquals( "/block/" + i, new String( transport.get( baseUrl + "/block/" + i ), "UTF-8" ) );
+
+		Assert.assertEquals( 20, numRequests.get() );
+		Assert.assertEquals( 1, clientPorts.size() );
+	}
+
+	@Test
+	public void testCoalescing() throws Exception
+	{
+		final HttpTransport transport = new HttpTransport( 4 );
+		final ExecutorService exec = Executors.newFixedThreadPool( 8 );
+		final ArrayList< Future< byte[] > > futures = new ArrayList<>();
+		for ( int i = 0; i < 8; ++i )
+			futures.add( exec.submit( () -> transport.get( baseUrl + "/slow/0" ) ) );
+
+		while ( transport.getNumCoalesced() < 7 )
+			Thread.sleep( 5 );
+		release.countDown();
+
+		for ( final Future< byte[] > future : futures )
+			Assert.assertEquals( "/slow/0", new String( future.get(), "UTF-8" ) );
+		exec.shutdown();
+
+		Assert.assertEquals( 1, numRequests.get() );
+		Assert.assertEquals( 1, transport.getNumRequests() );
+	}
+
+	@Test
+	public void testDecoderKeys() throws Exception
+	{
+		final HttpTransport transport = new HttpTransport( 4 );
+		final ExecutorService exec = Executors.newFixedThreadPool( 4 );
+		final HttpTransport.Decoder< Integer > lengthDecoder = ( in, contentLength ) -> HttpTransport.readFully( in, -1 ).length;
+		final Future< Integer > length1 = exec.submit( () -> transport.get( baseUrl + "/slow/0", "length", lengthDecoder ) );
+		final Future< Integer > length2 = exec.submit( () -> transport.get( baseUrl + "/slow/0", "length", lengthDecoder ) );
+		final Future< String > string = exec.submit( () -> transport.get( baseUrl + "/slow/0", "string", ( in, contentLength ) -> new String( HttpTransport.readFully( in, -1 ), "UTF-8" ) ) );
+
+		/* calls with different decoder keys do not share results */
+		while ( numRequests.get() < 2 || transport.getNumCoalesced() < 1 )
+			Thread.sleep( 5 );
+		release.countDown();
+
+		Assert.assertEquals( 7, length1.get().intValue() );
+		Assert.assertEquals( 7, length2.get().intValue() );
+		Assert.assertEquals( "/slow/0", string.get() );
+		exec.shutdown();
+
+		Assert.assertEquals( 2, numRequests.get() );
+	}
+
+	@Test
+	public void testMaxConnectionsPerHost() throws Exception
+	{
+		final HttpTransport transport = new HttpTransport( 2 );
+		final ExecutorService exec = Executors.newFixedThreadPool( 8 );
+		final ArrayList< Future< byte[] > > futures = new ArrayList<>();
+		for ( int i = 0; i < 8; ++i )
+		{
+			final String url = baseUrl + "/slow/" + i;
+			futures.add( exec.submit( () -> transport.get( url ) ) );
+		}
+
+		/* hold the first requests such that the others pile up */
+		while ( numConcurrent.get() < 2 )
+			Thread.sleep( 5 );
+		Thread.sleep( 200 );
+		Assert.assertEquals( 2, numRequests.get() );
+		Assert.assertEquals( 2, maxConcurrent.get() );
+		release.countDown();
+
+		for ( final Future< byte[] > future : futures )
+			future.get();
+		exec.shutdown();
+
+		Assert.assertEquals( 8, numRequests.get() );
+		Assert.assertEquals( 2, maxConcurrent.get() );
+	}
+
+	@Test
+	public void testReadLongsLittleEndian() throws IOException
+	{
+		final int n = 20000;
+		final ByteBuffer buffer = ByteBuffer.allocate( n * 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		for ( int i = 0; i < n; ++i )
+			buffer.putLong( i * 0x0101010101L - 17 );
+
+		/* deliver odd sized chunks such that values span reads */
+		final InputStream in = new ByteArrayInputStream( buffer.array() )
+		{
+			@Override
+			public synchronized int read( final byte[] b, final int off, final int len )
+			{
+				return super.read( b, off, Math.min( len, 8191 ) );
+			}
+		};
+		final long[] values = new long[ n ];
+		Assert.assertEquals( n, HttpTransport.readLongsLittleEndian( in, n, ( i, value ) -> values[ i ] = value ) );
+		for ( int i = 0; i < n; ++i )
+			Assert.assertEquals( i * 0x0101010101L - 17, values[ i ] );
+	}
+
+	@Test
+	public void testReadLongsLittleEndianStopsAtN() throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( 300 * 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		for ( int i = 0; i < 300; ++i )
+			buffer.putLong( i );
+
+		/* consecutive calls on one stream must not consume each other's values */
+		final InputStream in = new ByteArrayInputStream( buffer.array() );
+		final long[] values = new long[ 300 ];
+		for ( int offset = 0; offset < 300; offset += 100 )
+		{
+			final int o = offset;
+			Assert.assertEquals( 100, HttpTransport.readLongsLittleEndian( in, 100, ( i, value ) -> values[ o + i ] = value ) );
+		}
+		for ( int i = 0; i < 300; ++i )
+			Assert.assertEquals( i, values[ i ] );
+		Assert.assertEquals( -1, in.read() );
+	}
+
+	@Test
+	public void testDecoder() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 4 );
+		final int[] lengths = new int[ 3 ];
+		for ( int i = 0; i < lengths.length; ++i )
+			lengths[ i ] = transport.get( baseUrl + "/block/" + i, this, ( in, contentLength ) -> HttpTransport.readFully( in, new byte[ 4 ] ) );
+
+		/* partially decoded responses are drained such that the connection is reused */
+		Assert.assertArrayEquals( new int[] { 4, 4, 4 }, lengths );
+		Assert.assertEquals( 1, clientPorts.size() );
+	}
+
+	@Test
+	public void testStatus() throws IOException
+	{
+		final HttpTransport transport = new HttpTransport( 4 );
+		try
+		{
+			transport.get( baseUrl + "/missing" );
+			Assert.fail( "expected status exception" );
+		}
+		catch ( final HttpTransport.StatusException e )
+		{
+			Assert.assertEquals( 404, e.getStatus() );
+		}
+	}
+}